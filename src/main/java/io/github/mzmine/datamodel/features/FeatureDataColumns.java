@@ -0,0 +1,286 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.DoubleType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.FloatType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.IntegerType;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Columnar storage of the number types ({@link FloatType}, {@link DoubleType},
+ * {@link IntegerType}) of all rows or all features of one {@link ModularFeatureList}. Every
+ * {@link ModularDataModel} owns one index into all columns. The values are stored in primitive
+ * arrays, so no boxed numbers and no {@link javafx.beans.property.Property} are kept per row.
+ * Properties are only created on demand, e.g., for the visible cells of the feature table (see
+ * {@link ModularDataModel#get(DataType)}).
+ * <p>
+ * Columns are split into segments of growing size (16, 32, 64, ...). Segments are never copied or
+ * moved, so values can be written concurrently while other threads allocate new indices. New
+ * segments are filled before they are published, so readers never see an unfilled segment.
+ */
+public class FeatureDataColumns {
+
+  private static final int FIRST_SEGMENT_BITS = 4;
+  private static final int FIRST_SEGMENT_SIZE = 1 << FIRST_SEGMENT_BITS;
+  // enough segments for Integer.MAX_VALUE indices
+  private static final int MAX_SEGMENTS = 32 - FIRST_SEGMENT_BITS;
+
+  // bit patterns of missing values, never produced by floatToIntBits / doubleToLongBits
+  private static final int NO_FLOAT = 0x7fc0beef;
+  private static final long NO_DOUBLE = 0x7ff8beefbeefbeefL;
+  // not a valid ID, charge or scan number
+  private static final int NO_INTEGER = Integer.MIN_VALUE;
+
+  private final Map<Class<? extends DataType>, Column> columns = new ConcurrentHashMap<>();
+
+  private int size = 0;
+  private int[] freeIndices = new int[16];
+  private int freeCount = 0;
+
+  /**
+   * @return true if the values of this type are stored in primitive columns
+   */
+  public static boolean isColumnType(@Nullable DataType<?> type) {
+    return type instanceof FloatType || type instanceof DoubleType || type instanceof IntegerType;
+  }
+
+  /**
+   * Reserves a new index in all columns. All values of this index are null.
+   *
+   * @return the index
+   */
+  public synchronized int allocate() {
+    if (freeCount > 0) {
+      return freeIndices[--freeCount];
+    }
+    return size++;
+  }
+
+  /**
+   * Removes all values of this index and reuses it for the next {@link #allocate()}
+   *
+   * @param index an index returned by {@link #allocate()}
+   */
+  public synchronized void release(int index) {
+    for (Column column : columns.values()) {
+      column.clear(index);
+    }
+    if (freeCount == freeIndices.length) {
+      freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+    }
+    freeIndices[freeCount++] = index;
+  }
+
+  /**
+   * @return the value of this type or null
+   */
+  @Nullable
+  public Object get(@Nonnull DataType<?> type, int index) {
+    final Column column = columns.get(type.getClass());
+    return column == null ? null : column.get(index);
+  }
+
+  /**
+   * Sets the value of a type. Numbers are converted to the number class of the type.
+   *
+   * @param value a {@link Number} or null
+   */
+  public void set(@Nonnull DataType<?> type, int index, @Nullable Object value) {
+    Column column = columns.get(type.getClass());
+    if (column == null) {
+      if (value == null) {
+        return;
+      }
+      column = columns.computeIfAbsent(type.getClass(), c -> createColumn(type));
+    }
+    column.set(index, (Number) value);
+  }
+
+  /**
+   * Copies all values of one index to the index of another storage
+   */
+  public void copyTo(int index, @Nonnull FeatureDataColumns target, int targetIndex) {
+    for (Column column : columns.values()) {
+      final Object value = column.get(index);
+      if (value != null) {
+        target.set(column.type, targetIndex, value);
+      }
+    }
+  }
+
+  private static Column createColumn(DataType<?> type) {
+    if (type instanceof FloatType) {
+      return new FloatColumn(type);
+    } else if (type instanceof DoubleType) {
+      return new DoubleColumn(type);
+    } else if (type instanceof IntegerType) {
+      return new IntegerColumn(type);
+    }
+    throw new IllegalArgumentException(
+        "Data type " + type.getClass().getName() + " cannot be stored in a column");
+  }
+
+  private static int segment(int index) {
+    return 31 - Integer.numberOfLeadingZeros(index + FIRST_SEGMENT_SIZE) - FIRST_SEGMENT_BITS;
+  }
+
+  private static int offset(int index, int segment) {
+    return index + FIRST_SEGMENT_SIZE - (FIRST_SEGMENT_SIZE << segment);
+  }
+
+  private abstract static class Column {
+
+    private final DataType<?> type;
+
+    Column(DataType<?> type) {
+      this.type = type;
+    }
+
+    abstract Object get(int index);
+
+    abstract void set(int index, Number value);
+
+    void clear(int index) {
+      set(index, null);
+    }
+  }
+
+  /**
+   * Float and integer values are both stored as int bits
+   */
+  private abstract static class IntBitsColumn extends Column {
+
+    private final AtomicReferenceArray<int[]> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final int missing;
+
+    IntBitsColumn(DataType<?> type, int missing) {
+      super(type);
+      this.missing = missing;
+    }
+
+    int getBits(int index) {
+      final int segment = segment(index);
+      final int[] values = segments.get(segment);
+      return values == null ? missing : values[offset(index, segment)];
+    }
+
+    void setBits(int index, int bits) {
+      final int segment = segment(index);
+      int[] values = segments.get(segment);
+      if (values == null) {
+        if (bits == missing) {
+          return;
+        }
+        values = createSegment(segment);
+      }
+      values[offset(index, segment)] = bits;
+    }
+
+    private int[] createSegment(int segment) {
+      final int[] values = new int[FIRST_SEGMENT_SIZE << segment];
+      Arrays.fill(values, missing);
+      // another thread might have published the segment first
+      return segments.compareAndSet(segment, null, values) ? values : segments.get(segment);
+    }
+  }
+
+  private static final class FloatColumn extends IntBitsColumn {
+
+    FloatColumn(DataType<?> type) {
+      super(type, NO_FLOAT);
+    }
+
+    @Override
+    Object get(int index) {
+      final int bits = getBits(index);
+      return bits == NO_FLOAT ? null : Float.intBitsToFloat(bits);
+    }
+
+    @Override
+    void set(int index, Number value) {
+      setBits(index, value == null ? NO_FLOAT : Float.floatToIntBits(value.floatValue()));
+    }
+  }
+
+  private static final class IntegerColumn extends IntBitsColumn {
+
+    IntegerColumn(DataType<?> type) {
+      super(type, NO_INTEGER);
+    }
+
+    @Override
+    Object get(int index) {
+      final int value = getBits(index);
+      return value == NO_INTEGER ? null : value;
+    }
+
+    @Override
+    void set(int index, Number value) {
+      setBits(index, value == null ? NO_INTEGER : value.intValue());
+    }
+  }
+
+  private static final class DoubleColumn extends Column {
+
+    private final AtomicReferenceArray<long[]> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+
+    DoubleColumn(DataType<?> type) {
+      super(type);
+    }
+
+    @Override
+    Object get(int index) {
+      final int segment = segment(index);
+      final long[] values = segments.get(segment);
+      if (values == null) {
+        return null;
+      }
+      final long bits = values[offset(index, segment)];
+      return bits == NO_DOUBLE ? null : Double.longBitsToDouble(bits);
+    }
+
+    @Override
+    void set(int index, Number value) {
+      final int segment = segment(index);
+      long[] values = segments.get(segment);
+      if (values == null) {
+        if (value == null) {
+          return;
+        }
+        values = createSegment(segment);
+      }
+      values[offset(index, segment)] =
+          value == null ? NO_DOUBLE : Double.doubleToLongBits(value.doubleValue());
+    }
+
+    private long[] createSegment(int segment) {
+      final long[] values = new long[FIRST_SEGMENT_SIZE << segment];
+      Arrays.fill(values, NO_DOUBLE);
+      // another thread might have published the segment first
+      return segments.compareAndSet(segment, null, values) ? values : segments.get(segment);
+    }
+  }
+}
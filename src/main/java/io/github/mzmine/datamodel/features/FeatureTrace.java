@@ -0,0 +1,412 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import javafx.collections.ObservableListBase;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Compact chromatogram of a {@link ModularFeature}: the scan numbers and the m/z and intensity
+ * values of the data points in primitive arrays or in a memory-mapped {@link FeatureTraceArena}.
+ * Replaces the lists of boxed scan numbers and data point objects of the
+ * {@link io.github.mzmine.datamodel.features.types.numbers.ScanNumbersType} and
+ * {@link io.github.mzmine.datamodel.features.types.numbers.DataPointsType}. Data points that carry
+ * additional information (e.g., gap, exact m/z or mobility data points) are kept as objects.
+ * <p>
+ * Instances are immutable, so they can be shared and read by multiple threads.
+ */
+public class FeatureTrace {
+
+  public static final FeatureTrace EMPTY =
+      new FeatureTrace(null, new int[0], -1, 0, new double[0], new double[0], null, -1, 0, true);
+
+  // null for traces on the heap
+  private final @Nullable FeatureTraceArena arena;
+
+  private final int[] scanNumbers;
+  private final long scanAddress;
+  private final int numScans;
+  // scan numbers are ascending, the usual case
+  private final boolean sorted;
+
+  private final double[] mzValues;
+  private final double[] intensities;
+  // only if the data points cannot be stored as m/z and intensity
+  private final DataPoint[] dataPoints;
+  private final long pointAddress;
+  private final int numPoints;
+
+  private FeatureTrace(FeatureTraceArena arena, int[] scanNumbers, long scanAddress, int numScans,
+      double[] mzValues, double[] intensities, DataPoint[] dataPoints, long pointAddress,
+      int numPoints, boolean sorted) {
+    this.arena = arena;
+    this.scanNumbers = scanNumbers;
+    this.scanAddress = scanAddress;
+    this.numScans = numScans;
+    this.mzValues = mzValues;
+    this.intensities = intensities;
+    this.dataPoints = dataPoints;
+    this.pointAddress = pointAddress;
+    this.numPoints = numPoints;
+    this.sorted = sorted;
+  }
+
+  /**
+   * Creates a new trace
+   *
+   * @param arena the memory-mapped storage or null to keep all values on the heap
+   */
+  @Nonnull
+  static FeatureTrace create(@Nonnull int[] scanNumbers, @Nonnull DataPoint[] dataPoints,
+      @Nullable FeatureTraceArena arena) {
+    // only plain data points are stored as m/z and intensity, all subclasses (e.g., gap, exact
+    // m/z, merged, mobility or processed data points) carry more information
+    boolean compact = true;
+    for (DataPoint dp : dataPoints) {
+      if (dp.getClass() != SimpleDataPoint.class) {
+        compact = false;
+        break;
+      }
+    }
+
+    if (compact) {
+      final double[] mzValues = new double[dataPoints.length];
+      final double[] intensities = new double[dataPoints.length];
+      for (int i = 0; i < dataPoints.length; i++) {
+        mzValues[i] = dataPoints[i].getMZ();
+        intensities[i] = dataPoints[i].getIntensity();
+      }
+      return create(scanNumbers, mzValues, intensities, arena);
+    }
+
+    final boolean sorted = isSorted(scanNumbers);
+    if (arena != null) {
+      final long scanAddress = putScanNumbers(scanNumbers, arena);
+      if (scanAddress >= 0) {
+        return new FeatureTrace(arena, null, scanAddress, scanNumbers.length, null, null,
+            dataPoints.clone(), -1, dataPoints.length, sorted);
+      }
+      // too large for the arena, keep on the heap
+    }
+
+    return new FeatureTrace(null, scanNumbers.clone(), -1, scanNumbers.length, null, null,
+        dataPoints.clone(), -1, dataPoints.length, sorted);
+  }
+
+  /**
+   * Creates a new trace from the m/z and intensity values, e.g., when a feature list is loaded
+   *
+   * @param mzValues    m/z values of the data points, there may be less data points than scans
+   * @param intensities intensities of the data points
+   * @param arena       the memory-mapped storage or null to keep all values on the heap
+   */
+  @Nonnull
+  static FeatureTrace create(@Nonnull int[] scanNumbers, @Nonnull double[] mzValues,
+      @Nonnull double[] intensities, @Nullable FeatureTraceArena arena) {
+    if (mzValues.length != intensities.length) {
+      throw new IllegalArgumentException("Different number of m/z values and intensities");
+    }
+    final int numPoints = mzValues.length;
+    final boolean sorted = isSorted(scanNumbers);
+
+    if (arena != null) {
+      final long scanAddress = putScanNumbers(scanNumbers, arena);
+      final long pointAddress =
+          scanAddress >= 0 ? arena.allocate(numPoints * 2 * Double.BYTES) : -1;
+      if (pointAddress >= 0) {
+        for (int i = 0; i < numPoints; i++) {
+          arena.putDouble(pointAddress + i * 2L * Double.BYTES, mzValues[i]);
+          arena.putDouble(pointAddress + (i * 2L + 1) * Double.BYTES, intensities[i]);
+        }
+        return new FeatureTrace(arena, null, scanAddress, scanNumbers.length, null, null, null,
+            pointAddress, numPoints, sorted);
+      }
+      // too large for the arena, keep on the heap
+    }
+
+    return new FeatureTrace(null, scanNumbers.clone(), -1, scanNumbers.length, mzValues.clone(),
+        intensities.clone(), null, -1, numPoints, sorted);
+  }
+
+  private static boolean isSorted(int[] scanNumbers) {
+    for (int i = 1; i < scanNumbers.length; i++) {
+      if (scanNumbers[i - 1] > scanNumbers[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the address of the scan numbers in the arena or -1 if they do not fit
+   */
+  private static long putScanNumbers(int[] scanNumbers, FeatureTraceArena arena) {
+    final long scanAddress = arena.allocate(scanNumbers.length * Integer.BYTES);
+    for (int i = 0; scanAddress >= 0 && i < scanNumbers.length; i++) {
+      arena.putInt(scanAddress + (long) i * Integer.BYTES, scanNumbers[i]);
+    }
+    return scanAddress;
+  }
+
+  /**
+   * @return a trace with the same data points and new scan numbers
+   */
+  @Nonnull
+  FeatureTrace withScanNumbers(@Nonnull List<Integer> scanNumbers,
+      @Nullable FeatureTraceArena arena) {
+    final int[] scans = scanNumbers.stream().mapToInt(Integer::intValue).toArray();
+    return create(scans, getDataPointArray(), arena);
+  }
+
+  /**
+   * @return a trace with the same scan numbers and new data points
+   */
+  @Nonnull
+  FeatureTrace withDataPoints(@Nonnull List<DataPoint> dataPoints,
+      @Nullable FeatureTraceArena arena) {
+    return create(getScanNumberArray(), dataPoints.toArray(new DataPoint[0]), arena);
+  }
+
+  /**
+   * @return this trace if it is already stored in the arena, otherwise a copy in the arena
+   */
+  @Nonnull
+  FeatureTrace moveTo(@Nullable FeatureTraceArena arena) {
+    if (this.arena == arena) {
+      return this;
+    }
+    return create(getScanNumberArray(), getDataPointArray(), arena);
+  }
+
+  @Nullable
+  FeatureTraceArena getArena() {
+    return arena;
+  }
+
+  /**
+   * @return the number of bytes of this trace in the arena, 0 for traces on the heap
+   */
+  long getArenaBytes() {
+    if (arena == null) {
+      return 0;
+    }
+    final long pointBytes = pointAddress >= 0 ? numPoints * 2L * Double.BYTES : 0;
+    return (long) numScans * Integer.BYTES + pointBytes;
+  }
+
+  public int getNumberOfScans() {
+    return numScans;
+  }
+
+  public int getNumberOfDataPoints() {
+    return numPoints;
+  }
+
+  public int getScanNumber(int index) {
+    if (arena != null) {
+      return arena.getInt(scanAddress + (long) index * Integer.BYTES);
+    }
+    return scanNumbers[index];
+  }
+
+  public double getMZ(int index) {
+    if (dataPoints != null) {
+      return dataPoints[index].getMZ();
+    }
+    if (arena != null) {
+      return arena.getDouble(pointAddress + index * 2L * Double.BYTES);
+    }
+    return mzValues[index];
+  }
+
+  public double getIntensity(int index) {
+    if (dataPoints != null) {
+      return dataPoints[index].getIntensity();
+    }
+    if (arena != null) {
+      return arena.getDouble(pointAddress + (index * 2L + 1) * Double.BYTES);
+    }
+    return intensities[index];
+  }
+
+  @Nonnull
+  public DataPoint getDataPoint(int index) {
+    if (dataPoints != null) {
+      return dataPoints[index];
+    }
+    return new SimpleDataPoint(getMZ(index), getIntensity(index));
+  }
+
+  /**
+   * Index of a scan number, binary search for ascending scan numbers
+   *
+   * @return the index or -1 if the scan is not part of this trace
+   */
+  public int indexOf(int scanNumber) {
+    if (sorted) {
+      int low = 0;
+      int high = numScans - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        final int value = getScanNumber(mid);
+        if (value < scanNumber) {
+          low = mid + 1;
+        } else if (value > scanNumber || (mid > 0 && getScanNumber(mid - 1) == scanNumber)) {
+          // first occurrence like List.indexOf
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+    for (int i = 0; i < numScans; i++) {
+      if (getScanNumber(i) == scanNumber) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the data point of this scan or null
+   */
+  @Nullable
+  public DataPoint getDataPointForScan(int scanNumber) {
+    final int index = indexOf(scanNumber);
+    return index < 0 || index >= numPoints ? null : getDataPoint(index);
+  }
+
+  @Nonnull
+  public int[] getScanNumberArray() {
+    if (scanNumbers != null) {
+      return scanNumbers.clone();
+    }
+    final int[] scans = new int[numScans];
+    for (int i = 0; i < numScans; i++) {
+      scans[i] = getScanNumber(i);
+    }
+    return scans;
+  }
+
+  @Nonnull
+  public DataPoint[] getDataPointArray() {
+    final DataPoint[] points = new DataPoint[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      points[i] = getDataPoint(i);
+    }
+    return points;
+  }
+
+  /**
+   * Writes the scan numbers (int) and the m/z and intensity values (float) of all scans without
+   * creating any data point. Scans without data point are written with m/z and intensity 0.
+   */
+  public void write(@Nonnull DataOutput scanOut, @Nonnull DataOutput mzOut,
+      @Nonnull DataOutput intensityOut) throws IOException {
+    for (int i = 0; i < numScans; i++) {
+      scanOut.writeInt(getScanNumber(i));
+      if (i < numPoints) {
+        mzOut.writeFloat((float) getMZ(i));
+        intensityOut.writeFloat((float) getIntensity(i));
+      } else {
+        mzOut.writeFloat(0f);
+        intensityOut.writeFloat(0f);
+      }
+    }
+  }
+
+  /**
+   * @return an unmodifiable list view of the scan numbers
+   */
+  @Nonnull
+  public ScanNumberList getScanNumbers() {
+    return new ScanNumberList();
+  }
+
+  /**
+   * @return an unmodifiable list view of the data points
+   */
+  @Nonnull
+  public DataPointList getDataPoints() {
+    return new DataPointList();
+  }
+
+  /**
+   * Unmodifiable view of the scan numbers
+   */
+  public class ScanNumberList extends ObservableListBase<Integer> {
+
+    @Override
+    public Integer get(int index) {
+      if (index < 0 || index >= numScans) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return getScanNumber(index);
+    }
+
+    @Override
+    public int size() {
+      return numScans;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+      return o instanceof Integer ? FeatureTrace.this.indexOf((Integer) o) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return indexOf(o) >= 0;
+    }
+
+    public FeatureTrace getTrace() {
+      return FeatureTrace.this;
+    }
+  }
+
+  /**
+   * Unmodifiable view of the data points
+   */
+  public class DataPointList extends ObservableListBase<DataPoint> {
+
+    @Override
+    public DataPoint get(int index) {
+      if (index < 0 || index >= numPoints) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return getDataPoint(index);
+    }
+
+    @Override
+    public int size() {
+      return numPoints;
+    }
+
+    public FeatureTrace getTrace() {
+      return FeatureTrace.this;
+    }
+  }
+}
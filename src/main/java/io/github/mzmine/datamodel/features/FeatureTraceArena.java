@@ -0,0 +1,169 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Cleaner;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Append-only off-heap storage of {@link FeatureTrace}s of one feature list in a memory-mapped
+ * temporary file. The file is mapped in chunks of growing size, a block is never split between two
+ * chunks. The blocks of replaced traces are not reused, because other threads may still read the
+ * old trace; they are only counted as released. Once most of the arena is released, the feature
+ * list copies the current traces to a new arena (see {@link ModularFeatureList}). The whole file
+ * is deleted as soon as the arena and all traces stored in it are garbage collected.
+ */
+class FeatureTraceArena {
+
+  private static final Logger logger = Logger.getLogger(FeatureTraceArena.class.getName());
+
+  private static final Cleaner cleaner = Cleaner.create();
+
+  private static final int FIRST_CHUNK_SIZE = 1 << 20;
+  private static final int MAX_CHUNK_SIZE = 1 << 26;
+
+  private final FileChannel channel;
+
+  // chunks are only appended, readers use the array without locking
+  private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+  private volatile long[] chunkOffsets = new long[0];
+  private long fileSize = 0;
+  private int position = 0;
+  // bytes of all blocks and of the blocks of replaced traces
+  private long allocatedBytes = 0;
+  private long releasedBytes = 0;
+
+  private FeatureTraceArena(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * @return a new arena or null if the temporary file could not be created
+   */
+  static FeatureTraceArena create() {
+    try {
+      File file = File.createTempFile("mzmine", ".traces");
+      file.deleteOnExit();
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      FeatureTraceArena arena = new FeatureTraceArena(raf.getChannel());
+      cleaner.register(arena, () -> {
+        try {
+          raf.close();
+        } catch (IOException e) {
+          // file is deleted on exit
+        }
+        file.delete();
+      });
+      return arena;
+    } catch (IOException e) {
+      logger.warning("Cannot create a memory-mapped file for feature data, keeping it in memory: "
+          + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Reserves a continuous block of bytes
+   *
+   * @return the address of the block or -1 if the block is too large or the file cannot grow
+   */
+  synchronized long allocate(int bytes) {
+    if (bytes > MAX_CHUNK_SIZE) {
+      return -1;
+    }
+    MappedByteBuffer[] current = chunks;
+    if (current.length == 0 || current[current.length - 1].capacity() - position < bytes) {
+      int size = current.length == 0 ? FIRST_CHUNK_SIZE
+          : Math.min(MAX_CHUNK_SIZE, current[current.length - 1].capacity() * 2);
+      size = Math.max(size, bytes);
+      try {
+        MappedByteBuffer chunk = channel.map(MapMode.READ_WRITE, fileSize, size);
+        long[] offsets = Arrays.copyOf(chunkOffsets, current.length + 1);
+        offsets[current.length] = fileSize;
+        current = Arrays.copyOf(current, current.length + 1);
+        current[current.length - 1] = chunk;
+        chunkOffsets = offsets;
+        chunks = current;
+        fileSize += size;
+        position = 0;
+      } catch (IOException e) {
+        logger.warning("Cannot extend the memory-mapped feature data file: " + e.getMessage());
+        return -1;
+      }
+    }
+    long address = chunkOffsets[current.length - 1] + position;
+    position += bytes;
+    allocatedBytes += bytes;
+    return address;
+  }
+
+  /**
+   * Counts the bytes of a trace that is not used any more. The block is not overwritten.
+   */
+  synchronized void release(long bytes) {
+    releasedBytes += bytes;
+  }
+
+  /**
+   * @return the number of bytes of all blocks
+   */
+  synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * @return the number of bytes of the blocks of replaced traces
+   */
+  synchronized long getReleasedBytes() {
+    return releasedBytes;
+  }
+
+  int getInt(long address) {
+    int chunk = chunkOf(address);
+    return chunks[chunk].getInt((int) (address - chunkOffsets[chunk]));
+  }
+
+  double getDouble(long address) {
+    int chunk = chunkOf(address);
+    return chunks[chunk].getDouble((int) (address - chunkOffsets[chunk]));
+  }
+
+  void putInt(long address, int value) {
+    int chunk = chunkOf(address);
+    chunks[chunk].putInt((int) (address - chunkOffsets[chunk]), value);
+  }
+
+  void putDouble(long address, double value) {
+    int chunk = chunkOf(address);
+    chunks[chunk].putDouble((int) (address - chunkOffsets[chunk]), value);
+  }
+
+  private int chunkOf(long address) {
+    final long[] offsets = chunkOffsets;
+    int index = Arrays.binarySearch(offsets, address);
+    return index >= 0 ? index : -index - 2;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import io.github.mzmine.datamodel.features.types.DataType;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import javafx.beans.property.Property;
+
+/**
+ * Map of all types of a {@link ModularDataModel} to their properties. A property is only created
+ * when its value is read, see {@link ModularDataModel#get(DataType)}, so iterating the keys does
+ * not create any property.
+ */
+@SuppressWarnings("rawtypes")
+class LazyPropertyMap extends AbstractMap<DataType, Property<?>> {
+
+  private final ModularDataModel model;
+
+  LazyPropertyMap(ModularDataModel model) {
+    this.model = model;
+  }
+
+  @Override
+  public Property<?> get(Object key) {
+    return key instanceof DataType ? model.get((DataType) key) : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof DataType && model.getTypes().containsKey(key.getClass());
+  }
+
+  @Override
+  public Property<?> put(DataType key, Property<?> value) {
+    final Property<?> previous = model.getPropertyMap().get(key);
+    model.setProperty(key, value);
+    return previous;
+  }
+
+  @Override
+  public Property<?> remove(Object key) {
+    if (!(key instanceof DataType)) {
+      return null;
+    }
+    final Property<?> previous = model.getPropertyMap().get(key);
+    model.removeProperty((Class) key.getClass());
+    return previous;
+  }
+
+  @Override
+  public Set<Entry<DataType, Property<?>>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<DataType, Property<?>>> iterator() {
+        final Iterator<DataType> types = model.getTypes().values().iterator();
+        return new Iterator<>() {
+          @Override
+          public boolean hasNext() {
+            return types.hasNext();
+          }
+
+          @Override
+          public Entry<DataType, Property<?>> next() {
+            return new LazyEntry(types.next());
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return model.getTypes().size();
+      }
+    };
+  }
+
+  /**
+   * Creates the property on the first call of {@link #getValue()}
+   */
+  private final class LazyEntry implements Entry<DataType, Property<?>> {
+
+    private final DataType type;
+
+    private LazyEntry(DataType type) {
+      this.type = type;
+    }
+
+    @Override
+    public DataType getKey() {
+      return type;
+    }
+
+    @Override
+    public Property<?> getValue() {
+      return model.get(type);
+    }
+
+    @Override
+    public Property<?> setValue(Property<?> value) {
+      return put(type, value);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import javafx.beans.property.Property;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
+import javax.annotation.Nullable;
 
 public interface ModularDataModel {
 
@@ -40,12 +41,42 @@ public interface ModularDataModel {
   public ObservableMap<Class<? extends DataType>, DataType> getTypes();
 
   /**
-   * The map containing all mappings to the types defined in getTypes
+   * The map containing all properties that were created so far. Properties of the types defined in
+   * getTypes are created on first access by {@link #get(DataType)}.
+   * 
+   * @return
+   */
+  public ObservableMap<DataType, Property<?>> getPropertyMap();
+
+  /**
+   * The map containing all mappings to the types defined in getTypes. Properties are created when
+   * their value is read from the map, use {@link #getValue(DataType)} to read single values.
    * 
    * @param
    * @return
    */
-  public ObservableMap<DataType, Property<?>> getMap();
+  default ObservableMap<DataType, Property<?>> getMap() {
+    return FXCollections.observableMap(new LazyPropertyMap(this));
+  }
+
+  /**
+   * The columnar storage of the number types or null if all values are stored in properties
+   * 
+   * @return
+   */
+  @Nullable
+  default FeatureDataColumns getColumns() {
+    return null;
+  }
+
+  /**
+   * The index of this model in {@link #getColumns()}
+   * 
+   * @return
+   */
+  default int getColumnIndex() {
+    return -1;
+  }
 
   /**
    * Get DataType column of this DataModel
@@ -103,7 +134,15 @@ public interface ModularDataModel {
    * @return
    */
   default Object getValue(DataType type) {
-    return getMap().get(type).getValue();
+    if (type == null)
+      return null;
+    FeatureDataColumns columns = getColumns();
+    // read primitive columns without creating a property
+    if (columns != null && FeatureDataColumns.isColumnType(type))
+      return columns.get(type, getColumnIndex());
+
+    Property<?> property = get(type);
+    return property == null ? null : property.getValue();
   }
 
   /**
@@ -115,18 +154,41 @@ public interface ModularDataModel {
    */
   default Object getValue(Class tclass) {
     DataType type = getTypeColumn(tclass);
-    return get(type).getValue();
+    return getValue(type);
   }
 
   /**
-   * Property for this datatype
+   * Property for this datatype. The property is created on first access and bound to the columnar
+   * storage of number types, so only call this method if a property is really needed, e.g., for a
+   * table cell or a binding. Use {@link #getValue(DataType)} to only read the value.
    * 
    * @param <T>
    * @param type
-   * @return
+   * @return the property or null if the type is not defined in getTypes
    */
   default <T extends Property<?>> T get(DataType<T> type) {
-    return (T) getMap().get(type);
+    if (type == null)
+      return null;
+    synchronized (this) {
+      T property = (T) getPropertyMap().get(type);
+      if (property == null && getTypes().containsKey(type.getClass())) {
+        DataType<T> realType = getTypes().get(type.getClass());
+        property = realType.createProperty();
+        bindToColumns(realType, property);
+        getPropertyMap().put(realType, property);
+      }
+      return property;
+    }
+  }
+
+  /**
+   * @param type
+   * @return true if the property of this type was already created
+   */
+  default boolean hasProperty(DataType<?> type) {
+    synchronized (this) {
+      return type != null && getPropertyMap().get(type) != null;
+    }
   }
 
   /**
@@ -180,8 +242,29 @@ public interface ModularDataModel {
 
     DataType realType = getTypes().get(type.getClass());
     // only set datatype -> property value once
-    if (getMap().get(realType) == null)
-      getMap().put(realType, value);
+    synchronized (this) {
+      if (getPropertyMap().get(realType) == null) {
+        bindToColumns(realType, value);
+        getPropertyMap().put(realType, value);
+      }
+    }
+  }
+
+  /**
+   * Initializes a new property of a number type with the value of the columns and writes all
+   * changes, e.g., by edits or bindings, back to the columns
+   */
+  private void bindToColumns(DataType<?> type, Property property) {
+    FeatureDataColumns columns = getColumns();
+    if (columns == null || !FeatureDataColumns.isColumnType(type))
+      return;
+    property.setValue(columns.get(type, getColumnIndex()));
+    property.addListener((observable, oldValue, newValue) -> {
+      FeatureDataColumns currentColumns = getColumns();
+      // released models keep the value in the property only
+      if (currentColumns != null)
+        currentColumns.set(type, getColumnIndex(), newValue);
+    });
   }
 
   /**
@@ -208,6 +291,20 @@ public interface ModularDataModel {
       throw new TypeColumnUndefinedException(this, tclass);
 
     DataType realType = getTypeColumn(tclass);
+    FeatureDataColumns columns = getColumns();
+    if (columns != null && FeatureDataColumns.isColumnType(realType)) {
+      Property property;
+      synchronized (this) {
+        property = getPropertyMap().get(realType);
+      }
+      // an existing property writes its new value to the columns
+      if (property != null)
+        property.setValue(value);
+      else
+        columns.set(realType, getColumnIndex(), value);
+      return;
+    }
+
     Property property = get(realType);
     // lists need to be ObservableList
     if (value instanceof List && !(value instanceof ObservableList))
@@ -227,8 +324,14 @@ public interface ModularDataModel {
    */
   default <T extends Property<?>> void removeProperty(Class<? extends DataType<T>> tclass) {
     DataType type = getTypeColumn(tclass);
-    if (type != null)
-      getMap().remove(type);
+    if (type == null)
+      return;
+    synchronized (this) {
+      getPropertyMap().remove(type);
+    }
+    FeatureDataColumns columns = getColumns();
+    if (columns != null && FeatureDataColumns.isColumnType(type))
+      columns.set(type, getColumnIndex(), null);
   }
 
   /**
@@ -20,6 +20,7 @@ package io.github.mzmine.datamodel.features;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -33,6 +34,7 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.DetectionType;
 import io.github.mzmine.datamodel.features.types.RawFileType;
+import io.github.mzmine.datamodel.features.types.exceptions.TypeColumnUndefinedException;
 import io.github.mzmine.datamodel.features.types.numbers.AreaType;
 import io.github.mzmine.datamodel.features.types.numbers.AsymmetryFactorType;
 import io.github.mzmine.datamodel.features.types.numbers.BestScanNumberType;
@@ -64,8 +66,13 @@ import javafx.collections.ObservableMap;
 public class ModularFeature implements Feature, ModularDataModel {
 
   private @Nonnull ModularFeatureList flist;
+  // number types are stored in the columns of the feature list, other properties are created on
+  // first access
   private final ObservableMap<DataType, Property<?>> map =
       FXCollections.observableMap(new HashMap<>());
+  private int columnIndex;
+  // scan numbers and data points of ScanNumbersType and DataPointsType
+  private FeatureTrace trace = FeatureTrace.EMPTY;
 
   // TODO: private variables to data types
   private SimpleFeatureInformation featureInfo;
@@ -80,11 +87,7 @@ public class ModularFeature implements Feature, ModularDataModel {
 
   public ModularFeature(@Nonnull ModularFeatureList flist) {
     this.flist = flist;
-
-    // add type property columns to maps
-    flist.getFeatureTypes().values().forEach(type -> {
-      this.setProperty(type, type.createProperty());
-    });
+    columnIndex = flist.getFeatureColumns().allocate();
   }
 
   // NOT TESTED
@@ -98,7 +101,7 @@ public class ModularFeature implements Feature, ModularDataModel {
       @Nonnull Range<Float> rtRange, @Nonnull Range<Double> mzRange,
       @Nonnull Range<Float> intensityRange) {
 
-    this(new ModularFeatureList("", dataFile));
+    this(temporaryFeatureList(dataFile));
 
     assert dataFile != null;
     assert scanNumbers != null;
@@ -207,22 +210,197 @@ public class ModularFeature implements Feature, ModularDataModel {
     }
   }
 
+  /**
+   * Feature list for features that are created before their final feature list is known. Keeps
+   * the chromatograms on the heap until the feature is moved to its final list.
+   */
+  private static ModularFeatureList temporaryFeatureList(RawDataFile dataFile) {
+    ModularFeatureList flist = new ModularFeatureList("", dataFile);
+    flist.disableTraceArena();
+    return flist;
+  }
+
   @Override
   public ObservableMap<Class<? extends DataType>, DataType> getTypes() {
     return flist.getFeatureTypes();
   }
 
   @Override
-  public ObservableMap<DataType, Property<?>> getMap() {
+  public ObservableMap<DataType, Property<?>> getPropertyMap() {
     return map;
   }
 
+  @Override
+  public FeatureDataColumns getColumns() {
+    return columnIndex < 0 ? null : flist.getFeatureColumns();
+  }
+
+  /**
+   * Frees the index of this feature in the columns of its feature list once the feature is not used
+   * anymore, e.g., after it was removed from its row. The number values are lost.
+   */
+  public void releaseColumns() {
+    synchronized (this) {
+      if (columnIndex < 0)
+        return;
+      flist.getFeatureColumns().release(columnIndex);
+      columnIndex = -1;
+    }
+  }
+
+  @Override
+  public int getColumnIndex() {
+    return columnIndex;
+  }
+
+  /**
+   * The ScanNumbersType and DataPointsType are views of the compact {@link FeatureTrace}
+   */
+  private static boolean isTraceType(Class<?> tclass) {
+    return ScanNumbersType.class.equals(tclass) || DataPointsType.class.equals(tclass);
+  }
+
+  @Override
+  public Object getValue(DataType type) {
+    if (type != null && isTraceType(type.getClass())) {
+      return ScanNumbersType.class.equals(type.getClass()) ? getScanNumbers() : getDataPoints();
+    }
+    return ModularDataModel.super.getValue(type);
+  }
+
+  @Override
+  public <T extends Property<?>> T get(DataType<T> type) {
+    if (type != null && isTraceType(type.getClass())) {
+      synchronized (this) {
+        Property property = map.get(type);
+        if (property == null && getTypes().containsKey(type.getClass())) {
+          DataType realType = getTypes().get(type.getClass());
+          property = realType.createProperty();
+          property.setValue(getValue(realType));
+          // lists set directly to the property replace the trace
+          property.addListener((observable, oldValue, newValue) -> {
+            if (!isViewOfTrace(newValue)) {
+              setTraceValues(realType.getClass(), (List<?>) newValue);
+            }
+          });
+          map.put(realType, property);
+        }
+        return (T) property;
+      }
+    }
+    return ModularDataModel.super.get(type);
+  }
+
+  @Override
+  public <T extends Property<?>> void set(Class<? extends DataType<T>> tclass, Object value) {
+    if (isTraceType(tclass)) {
+      if (!getTypes().containsKey(tclass)) {
+        throw new TypeColumnUndefinedException(this, tclass);
+      }
+      setTraceValues(tclass, (List<?>) value);
+      return;
+    }
+    ModularDataModel.super.set(tclass, value);
+  }
+
+  private void setTraceValues(Class<?> tclass, @Nullable List<?> values) {
+    final List<?> list = values == null ? List.of() : values;
+    Property property;
+    final FeatureTrace oldTrace;
+    final ModularFeatureList oldList;
+    synchronized (this) {
+      oldTrace = trace;
+      oldList = flist;
+      if (ScanNumbersType.class.equals(tclass)) {
+        trace = trace.withScanNumbers((List<Integer>) list, flist.getTraceArena());
+      } else {
+        trace = trace.withDataPoints((List<DataPoint>) list, flist.getTraceArena());
+      }
+      property = map.get(getTypes().get(tclass));
+    }
+    // update existing properties, e.g., of the feature table
+    if (property != null) {
+      property.setValue(getValue(getTypes().get(tclass)));
+    }
+    oldList.releaseTrace(oldTrace);
+  }
+
+  /**
+   * Copies the trace to the current arena of the feature list, e.g., when the feature list
+   * compacts its arena
+   */
+  void moveTraceToArena() {
+    final FeatureTrace oldTrace;
+    Property scanNumbersProperty, dataPointsProperty;
+    synchronized (this) {
+      oldTrace = trace;
+      trace = trace.moveTo(flist.getTraceArena());
+      if (trace == oldTrace) {
+        return;
+      }
+      scanNumbersProperty = map.get(getTypes().get(ScanNumbersType.class));
+      dataPointsProperty = map.get(getTypes().get(DataPointsType.class));
+    }
+    // existing properties hold views of the old trace
+    if (scanNumbersProperty != null) {
+      scanNumbersProperty.setValue(getScanNumbers());
+    }
+    if (dataPointsProperty != null) {
+      dataPointsProperty.setValue(getDataPoints());
+    }
+  }
+
+  /**
+   * Sets the scan numbers and data points without creating boxed values or data point objects,
+   * e.g., when a feature list is loaded
+   *
+   * @param mzValues    m/z values of the data points, there may be less data points than scans
+   * @param intensities intensities of the data points
+   */
+  public void setFeatureTrace(@Nonnull int[] scanNumbers, @Nonnull double[] mzValues,
+      @Nonnull double[] intensities) {
+    final FeatureTrace newTrace =
+        FeatureTrace.create(scanNumbers, mzValues, intensities, flist.getTraceArena());
+    Property scanNumbersProperty, dataPointsProperty;
+    final FeatureTrace oldTrace;
+    final ModularFeatureList oldList;
+    synchronized (this) {
+      oldTrace = trace;
+      oldList = flist;
+      trace = newTrace;
+      scanNumbersProperty = map.get(getTypes().get(ScanNumbersType.class));
+      dataPointsProperty = map.get(getTypes().get(DataPointsType.class));
+    }
+    // update existing properties, e.g., of the feature table
+    if (scanNumbersProperty != null) {
+      scanNumbersProperty.setValue(getScanNumbers());
+    }
+    if (dataPointsProperty != null) {
+      dataPointsProperty.setValue(getDataPoints());
+    }
+    oldList.releaseTrace(oldTrace);
+  }
+
+  private boolean isViewOfTrace(Object value) {
+    final FeatureTrace current = trace;
+    return (value instanceof FeatureTrace.ScanNumberList
+        && ((FeatureTrace.ScanNumberList) value).getTrace() == current)
+        || (value instanceof FeatureTrace.DataPointList
+            && ((FeatureTrace.DataPointList) value).getTrace() == current);
+  }
+
+  /**
+   * The compact chromatogram of this feature. Faster than {@link #getScanNumbers()} and
+   * {@link #getDataPoints()} for iterating over all values.
+   */
+  @Nonnull
+  public FeatureTrace getFeatureTrace() {
+    return trace;
+  }
+
   @Override
   public DataPoint getDataPoint(int scan) {
-    int index = getScanNumbers().indexOf(scan);
-    if (index < 0)
-      return null;
-    return getDataPoints().get(index);
+    return trace.getDataPointForScan(scan);
   }
 
   @Nonnull
@@ -286,27 +464,20 @@ public class ModularFeature implements Feature, ModularDataModel {
 
   @Override
   public float getFWHM() {
-    if (get(FwhmType.class) == null || get(FwhmType.class).getValue() == null) {
-      return Float.NaN;
-    }
-    return get(FwhmType.class).getValue();
+    Float fwhm = (Float) getValue(FwhmType.class);
+    return fwhm == null ? Float.NaN : fwhm;
   }
 
   @Override
   public float getTailingFactor() {
-    if (get(TailingFactorType.class) == null || get(TailingFactorType.class).getValue() == null) {
-      return Float.NaN;
-    }
-    return get(TailingFactorType.class).getValue();
+    Float tf = (Float) getValue(TailingFactorType.class);
+    return tf == null ? Float.NaN : tf;
   }
 
   @Override
   public float getAsymmetryFactor() {
-    if (get(AsymmetryFactorType.class) == null
-        || get(AsymmetryFactorType.class).getValue() == null) {
-      return Float.NaN;
-    }
-    return get(AsymmetryFactorType.class).getValue();
+    Float af = (Float) getValue(AsymmetryFactorType.class);
+    return af == null ? Float.NaN : af;
   }
 
   @Override
@@ -367,7 +538,29 @@ public class ModularFeature implements Feature, ModularDataModel {
 
   @Override
   public void setFeatureList(@Nonnull FeatureList flist) {
-    this.flist = (ModularFeatureList) flist;
+    ModularFeatureList newList = (ModularFeatureList) flist;
+    if (newList != this.flist) {
+      // move the number values to the columns of the new feature list
+      FeatureDataColumns oldColumns = this.flist.getFeatureColumns();
+      int newIndex = newList.getFeatureColumns().allocate();
+      if (columnIndex >= 0) {
+        oldColumns.copyTo(columnIndex, newList.getFeatureColumns(), newIndex);
+        oldColumns.release(columnIndex);
+      }
+      final ModularFeatureList oldList = this.flist;
+      final FeatureTrace oldTrace;
+      final boolean moved;
+      synchronized (this) {
+        columnIndex = newIndex;
+        this.flist = newList;
+        oldTrace = trace;
+        trace = trace.moveTo(newList.getTraceArena());
+        moved = trace != oldTrace;
+      }
+      if (moved) {
+        oldList.releaseTrace(oldTrace);
+      }
+    }
   }
 
   public ListProperty<Integer> getScanNumbersProperty() {
@@ -404,7 +597,7 @@ public class ModularFeature implements Feature, ModularDataModel {
   @Nonnull
   @Override
   public ObservableList<Integer> getScanNumbers() {
-    return get(ScanNumbersType.class).getValue();
+    return trace.getScanNumbers();
   }
 
   @Override
@@ -419,11 +612,11 @@ public class ModularFeature implements Feature, ModularDataModel {
 
   @Override
   public ObservableList<DataPoint> getDataPoints() {
-    return get(DataPointsType.class).getValue();
+    return trace.getDataPoints();
   }
 
   public float getRT() {
-    return get(RTType.class).getValue();
+    return (Float) getValue(RTType.class);
   }
 
   @Nonnull
@@ -433,14 +626,14 @@ public class ModularFeature implements Feature, ModularDataModel {
   }
 
   public double getMZ() {
-    return get(MZType.class).getValue();
+    return (Double) getValue(MZType.class);
   }
 
   public float getHeight() {
-    return get(HeightType.class).getValue();
+    return (Float) getValue(HeightType.class);
   }
 
   public float getArea() {
-    return get(AreaType.class).getValue();
+    return (Float) getValue(AreaType.class);
   }
 }
@@ -10,6 +10,9 @@ import io.github.mzmine.datamodel.features.types.numbers.MZType;
 import io.github.mzmine.datamodel.features.types.numbers.RTRangeType;
 import io.github.mzmine.datamodel.features.types.numbers.RTType;
 import io.github.mzmine.datamodel.features.types.numbers.TailingFactorType;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineConfiguration;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.DataTypeUtils;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -24,6 +27,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javafx.collections.ObservableList;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.types.CommentType;
@@ -47,6 +51,15 @@ public class ModularFeatureList implements FeatureList {
       new LinkedHashMap<>();
   private ObservableMap<Class<? extends DataType>, DataType> featureTypes;
 
+  // primitive storage of all number types of rows and features
+  private final FeatureDataColumns rowColumns = new FeatureDataColumns();
+  private final FeatureDataColumns featureColumns = new FeatureDataColumns();
+  // off-heap storage of feature chromatograms, created on first use if enabled
+  private boolean useTraceArena;
+  private FeatureTraceArena traceArena;
+  // the traces are copied to a new arena once this many bytes of replaced traces are held
+  private static final long MIN_RELEASED_ARENA_BYTES = 64L * 1024 * 1024;
+
   // bindings for values
   private final List<RowBinding> rowBindings = new ArrayList<>();
 
@@ -75,6 +88,7 @@ public class ModularFeatureList implements FeatureList {
     featureListRows = FXCollections.observableArrayList();
     descriptionOfAppliedTasks = FXCollections.observableArrayList();
     dateCreated = DATA_FORMAT.format(new Date());
+    useTraceArena = isMemoryMappedFeatureDataEnabled();
 
     // Type columns will be ordered in the order of types initialization
     addRowType(new IDType());
@@ -109,15 +123,17 @@ public class ModularFeatureList implements FeatureList {
   }
 
   /**
-   * Bind row types to feature types to calculate averages, sums, min, max, counts.
+   * Bind row types to feature types to calculate averages, sums, min, max, counts. The binding is
+   * applied once the property of the row type is created, e.g., by a table cell, so rows that are
+   * never shown do not create the properties of their features.
    * 
    * @param bindings list of bindings
    */
   public void addRowBinding(@Nonnull List<RowBinding> bindings) {
     for (RowBinding b : bindings) {
       rowBindings.add(b);
-      // apply to all rows
-      modularStream().forEach(b::apply);
+      // apply to all rows that already created the property
+      modularStream().filter(row -> row.hasProperty(b.getRowType())).forEach(b::apply);
     }
   }
 
@@ -126,12 +142,35 @@ public class ModularFeatureList implements FeatureList {
   }
 
   /**
-   * Apply all bindings to all this row
+   * Apply all bindings to all this row. Only binds the row types that already have a property, the
+   * other types are bound on creation of the property
    * 
    * @param row
    */
   private void applyRowBindings(ModularFeatureListRow row) {
-    rowBindings.forEach(bind -> bind.apply(row));
+    rowBindings.stream().filter(bind -> row.hasProperty(bind.getRowType()))
+        .forEach(bind -> bind.apply(row));
+  }
+
+  /**
+   * Apply the bindings of a row type to the new property of this row
+   * 
+   * @param row
+   * @param rowType
+   */
+  void applyRowBindings(ModularFeatureListRow row, DataType<?> rowType) {
+    rowBindings.stream().filter(bind -> rowType.equals(bind.getRowType()))
+        .forEach(bind -> bind.apply(row));
+  }
+
+  /**
+   * @param rowType
+   * @return the binding of the row type to the feature values or null
+   */
+  @Nullable
+  RowBinding getRowBinding(DataType<?> rowType) {
+    return rowBindings.stream().filter(bind -> rowType.equals(bind.getRowType())).findFirst()
+        .orElse(null);
   }
 
   /**
@@ -146,11 +185,8 @@ public class ModularFeatureList implements FeatureList {
   public void addFeatureType(@Nonnull List<DataType<?>> types) {
     for (DataType<?> type : types) {
       if (!featureTypesLinkedMap.containsKey(type.getClass())) {
+        // features create the property on first access
         featureTypesLinkedMap.put(type.getClass(), type);
-        // add to maps
-        modularStreamFeatures().forEach(f -> {
-          f.setProperty(type, type.createProperty());
-        });
         featureTypes = FXCollections.observableMap(featureTypesLinkedMap);
       }
     }
@@ -163,11 +199,8 @@ public class ModularFeatureList implements FeatureList {
   public void addRowType(@Nonnull List<DataType<?>> types) {
     for (DataType<?> type : types) {
       if (!rowTypesLinkedMap.containsKey(type.getClass())) {
+        // rows create the property on first access
         rowTypesLinkedMap.put(type.getClass(), type);
-        // add type columns to maps
-        modularStream().forEach(row -> {
-          row.setProperty(type, type.createProperty());
-        });
         rowTypes = FXCollections.observableMap(rowTypesLinkedMap);
       }
     }
@@ -186,6 +219,81 @@ public class ModularFeatureList implements FeatureList {
     return rowTypes;
   }
 
+  /**
+   * Columnar storage of the number types of all rows
+   */
+  FeatureDataColumns getRowColumns() {
+    return rowColumns;
+  }
+
+  /**
+   * Columnar storage of the number types of all features
+   */
+  FeatureDataColumns getFeatureColumns() {
+    return featureColumns;
+  }
+
+  /**
+   * The memory-mapped storage of the feature chromatograms
+   *
+   * @return the arena or null if the chromatograms are stored on the heap
+   */
+  synchronized FeatureTraceArena getTraceArena() {
+    if (useTraceArena && traceArena == null) {
+      traceArena = FeatureTraceArena.create();
+      // fall back to the heap if the file cannot be created
+      useTraceArena = traceArena != null;
+    }
+    return traceArena;
+  }
+
+  /**
+   * Keep the feature chromatograms on the heap, e.g., for temporary feature lists
+   */
+  synchronized void disableTraceArena() {
+    useTraceArena = false;
+  }
+
+  /**
+   * Counts the arena bytes of a trace that was replaced and copies the current traces to a new
+   * arena once most of the arena is released. Must not be called while holding the lock of a
+   * feature.
+   */
+  void releaseTrace(@Nonnull FeatureTrace oldTrace) {
+    synchronized (this) {
+      final FeatureTraceArena arena = oldTrace.getArena();
+      if (arena == null || arena != traceArena) {
+        return;
+      }
+      arena.release(oldTrace.getArenaBytes());
+      final long releasedBytes = arena.getReleasedBytes();
+      if (releasedBytes < MIN_RELEASED_ARENA_BYTES
+          || releasedBytes < arena.getAllocatedBytes() / 2) {
+        return;
+      }
+      // new traces go to a new arena, the old arena is deleted when no trace references it
+      traceArena = FeatureTraceArena.create();
+      useTraceArena = traceArena != null;
+    }
+    for (FeatureListRow row : new ArrayList<>(getRows())) {
+      for (Feature feature : row.getFeatures()) {
+        if (feature instanceof ModularFeature) {
+          ((ModularFeature) feature).moveTraceToArena();
+        }
+      }
+    }
+  }
+
+  private static boolean isMemoryMappedFeatureDataEnabled() {
+    // feature lists may be used without initializing the MZmineCore
+    final MZmineConfiguration configuration = MZmineCore.getConfiguration();
+    if (configuration == null || configuration.getPreferences() == null) {
+      return false;
+    }
+    return configuration.getPreferences()
+        .getParameter(MZminePreferences.memoryMappedFeatureData).getValue();
+  }
+
   /**
    * Returns number of raw data files participating in the alignment
    */
@@ -342,7 +450,8 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public void removeRow(FeatureListRow row) {
-    featureListRows.remove(row);
+    if (featureListRows.remove(row) && row instanceof ModularFeatureListRow)
+      ((ModularFeatureListRow) row).releaseColumns();
     updateMaxIntensity();
   }
 
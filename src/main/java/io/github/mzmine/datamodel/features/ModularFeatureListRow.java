@@ -74,6 +74,8 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
    */
   private final ObservableMap<DataType, Property<?>> map =
       FXCollections.observableMap(new HashMap<>());
+  // index of the number types in the row columns of the feature list
+  private int columnIndex;
 
   private final Map<RawDataFile, ModularFeature> features;
 
@@ -97,10 +99,8 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
 
   public ModularFeatureListRow(@Nonnull ModularFeatureList flist) {
     this.flist = flist;
-    // add type property columns to maps
-    flist.getRowTypes().values().forEach(type -> {
-      this.setProperty(type, type.createProperty());
-    });
+    // properties are created on first access, number types are stored in columns
+    columnIndex = flist.getRowColumns().allocate();
 
     List<RawDataFile> raws = flist.getRawDataFiles();
     if (!raws.isEmpty()) {
@@ -167,10 +167,72 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
   }
 
   @Override
-  public ObservableMap<DataType, Property<?>> getMap() {
+  public ObservableMap<DataType, Property<?>> getPropertyMap() {
     return map;
   }
 
+  /**
+   * Creates the property on first access and binds it to the feature values if the feature list
+   * defines a row binding for this type. Binding creates the properties of all features, so this is
+   * meant for the cells of the feature table; use {@link #getValue(DataType)} to read values.
+   */
+  @Override
+  public <T extends Property<?>> T get(DataType<T> type) {
+    synchronized (this) {
+      boolean created = !hasProperty(type);
+      T property = ModularDataModel.super.get(type);
+      if (created && property != null) {
+        flist.applyRowBindings(this, type);
+      }
+      return property;
+    }
+  }
+
+  /**
+   * Bound types are read from their property if the row is shown in a table, otherwise the value is
+   * calculated from the feature values without creating any property
+   */
+  @Override
+  public Object getValue(DataType type) {
+    final RowBinding binding = type == null ? null : flist.getRowBinding(type);
+    if (binding != null) {
+      final Property<?> property;
+      synchronized (this) {
+        property = getPropertyMap().get(type);
+      }
+      return property != null ? property.getValue() : binding.evaluate(this);
+    }
+    return ModularDataModel.super.getValue(type);
+  }
+
+  @Override
+  public FeatureDataColumns getColumns() {
+    return columnIndex < 0 ? null : flist.getRowColumns();
+  }
+
+  /**
+   * Frees the indices of this row and its features in the columns of the feature list once the
+   * row is not used anymore, e.g., after it was removed or for temporary copies. The number values
+   * are lost.
+   */
+  public void releaseColumns() {
+    synchronized (this) {
+      if (columnIndex < 0)
+        return;
+      flist.getRowColumns().release(columnIndex);
+      columnIndex = -1;
+    }
+    for (ModularFeature feature : features.values()) {
+      if (feature != null)
+        feature.releaseColumns();
+    }
+  }
+
+  @Override
+  public int getColumnIndex() {
+    return columnIndex;
+  }
+
   public Stream<Feature> streamFeatures() {
     return this.getFeatures().stream().filter(Objects::nonNull);
   }
@@ -182,15 +244,15 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
   }
 
   public Range<Double> getMZRange() {
-    return get(MZRangeType.class).getValue();
+    return (Range<Double>) getValue(MZRangeType.class);
   }
 
   public float getHeight() {
-    return get(HeightType.class).getValue();
+    return (Float) getValue(HeightType.class);
   }
 
   public float getArea() {
-    return get(AreaType.class).getValue();
+    return (Float) getValue(AreaType.class);
   }
 
   public ObservableMap<RawDataFile, ModularFeature> getFilesFeatures() {
@@ -228,7 +290,7 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
     if (hasFeature(raw)) {
       ModularFeature old = getFeature(raw);
       for (DataType<?> type : flist.getFeatureTypes().values()) {
-        old.set(type, modularFeature.get(type).getValue());
+        old.set(type, modularFeature.getValue(type));
       }
     } else {
       features.put(raw, modularFeature);
@@ -248,8 +310,8 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
    * @return
    */
   public int getID() {
-    Property<Integer> idProp = get(IDType.class);
-    return idProp == null || idProp.getValue() == null ? -1 : get(IDType.class).getValue();
+    Integer id = (Integer) getValue(IDType.class);
+    return id == null ? -1 : id;
   }
 
 
@@ -260,7 +322,9 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
 
   @Override
   public void removeFeature(RawDataFile file) {
-    this.features.remove(file);
+    ModularFeature removed = this.features.remove(file);
+    if (removed != null)
+      removed.releaseColumns();
     calculateAverageValues();
   }
 
@@ -345,7 +409,20 @@ public class ModularFeatureListRow implements FeatureListRow, ModularDataModel {
       throw new IllegalArgumentException(
           "Cannot set non-modular feature list to modular feature list row.");
     }
-    this.flist = (ModularFeatureList) flist;
+    ModularFeatureList newList = (ModularFeatureList) flist;
+    if (newList != this.flist) {
+      // move the number values to the columns of the new feature list
+      FeatureDataColumns oldColumns = this.flist.getRowColumns();
+      int newIndex = newList.getRowColumns().allocate();
+      if (columnIndex >= 0) {
+        oldColumns.copyTo(columnIndex, newList.getRowColumns(), newIndex);
+        oldColumns.release(columnIndex);
+      }
+      synchronized (this) {
+        columnIndex = newIndex;
+        this.flist = newList;
+      }
+    }
   }
 
   public String getComment() {
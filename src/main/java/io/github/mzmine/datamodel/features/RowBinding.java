@@ -39,6 +39,20 @@ public class RowBinding {
     this.bindingType = bindingType;
   }
 
+  /**
+   * The row type that is bound to the feature values
+   */
+  public DataType getRowType() {
+    return rowType;
+  }
+
+  /**
+   * The current value of the binding, without creating any property of the row or its features
+   */
+  public Object evaluate(ModularFeatureListRow row) {
+    return featureType.evaluateBinding(bindingType, row);
+  }
+
   public void apply(ModularFeatureListRow row) {
     ObjectBinding<?> binding = featureType.createBinding(bindingType, row);
     row.get(rowType).bind(binding);
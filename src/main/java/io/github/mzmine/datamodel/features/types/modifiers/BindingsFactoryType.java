@@ -1,10 +1,41 @@
 package io.github.mzmine.datamodel.features.types.modifiers;
 
+import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
 import javafx.beans.binding.ObjectBinding;
+import javafx.beans.property.Property;
+import javafx.beans.property.SimpleObjectProperty;
 
 public interface BindingsFactoryType {
 
+  /**
+   * Binding over the properties of one type of all features
+   *
+   * @param bind              the aggregation
+   * @param featureProperties the properties of this type of all features of a row
+   * @return the binding
+   */
+  public ObjectBinding<?> createBinding(BindingsType bind, Property<?>[] featureProperties);
 
-  public ObjectBinding<?> createBinding(BindingsType bind, ModularFeatureListRow row);
+  /**
+   * Binding over the properties of all features of a row. Creates the properties of this type of
+   * all features, so only use it for rows that are shown, e.g., in the feature table.
+   */
+  default ObjectBinding<?> createBinding(BindingsType bind, ModularFeatureListRow row) {
+    Property<?>[] prop = row.streamFeatures().map(f -> ((ModularFeature) f).get((DataType) this))
+        .toArray(Property[]::new);
+    return createBinding(bind, prop);
+  }
+
+  /**
+   * The current value of {@link #createBinding(BindingsType, ModularFeatureListRow)}. Reads the
+   * values of the features without creating or binding any of their properties.
+   */
+  default Object evaluateBinding(BindingsType bind, ModularFeatureListRow row) {
+    Property<?>[] prop = row.streamFeatures()
+        .map(f -> new SimpleObjectProperty<>(((ModularFeature) f).getValue((DataType) this)))
+        .toArray(Property[]::new);
+    return createBinding(bind, prop).get();
+  }
 }
@@ -18,10 +18,8 @@
 
 package io.github.mzmine.datamodel.features.types.numbers.abstr;
 
-import io.github.mzmine.datamodel.features.ModularFeature;
 import java.text.NumberFormat;
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.types.exceptions.UndefinedRowBindingException;
 import io.github.mzmine.datamodel.features.types.modifiers.BindingsType;
 import javafx.beans.binding.Bindings;
@@ -35,12 +33,9 @@ public abstract class DoubleRangeType extends NumberRangeType<Double> {
   }
 
   @Override
-  public ObjectBinding<?> createBinding(BindingsType bind, ModularFeatureListRow row) {
-    // get all properties of all features
+  public ObjectBinding<?> createBinding(BindingsType bind, Property<?>[] featureProperties) {
     @SuppressWarnings("unchecked")
-    Property<Range<Double>>[] prop =
-        row.streamFeatures().map(f -> (ModularFeature) f)
-            .map(f -> f.get(this)).toArray(Property[]::new);
+    Property<Range<Double>>[] prop = (Property<Range<Double>>[]) featureProperties;
     switch (bind) {
       case RANGE:
         return Bindings.createObjectBinding(() -> {
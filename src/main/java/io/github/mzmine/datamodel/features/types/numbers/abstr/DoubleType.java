@@ -18,12 +18,10 @@
 
 package io.github.mzmine.datamodel.features.types.numbers.abstr;
 
-import io.github.mzmine.datamodel.features.ModularFeature;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import javax.annotation.Nonnull;
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.types.exceptions.UndefinedRowBindingException;
 import io.github.mzmine.datamodel.features.types.modifiers.BindingsFactoryType;
 import io.github.mzmine.datamodel.features.types.modifiers.BindingsType;
@@ -54,11 +52,9 @@ public abstract class DoubleType extends NumberType<Property<Double>>
   }
 
   @Override
-  public ObjectBinding<?> createBinding(BindingsType bind, ModularFeatureListRow row) {
-    // get all properties of all features
+  public ObjectBinding<?> createBinding(BindingsType bind, Property<?>[] featureProperties) {
     @SuppressWarnings("unchecked")
-    Property<Double>[] prop = row.streamFeatures().map(f -> (ModularFeature) f)
-        .map(f -> f.get(this)).toArray(Property[]::new);
+    Property<Double>[] prop = (Property<Double>[]) featureProperties;
     switch (bind) {
       case AVERAGE:
         return Bindings.createObjectBinding(() -> {
@@ -25,6 +25,7 @@ import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.ParameterSetParameter;
 import io.github.mzmine.parameters.parametertypes.WindowSettingsParameter;
 import io.github.mzmine.parameters.parametertypes.colorpalette.ColorPaletteParameter;
@@ -87,10 +88,41 @@ public class MZminePreferences extends SimpleParameterSet {
   public static final BooleanParameter darkMode =
       new BooleanParameter("Dark mode", "Enables dark mode throughout MZmine.", false);
 
+  public static final BooleanParameter memoryMappedFeatureData = new BooleanParameter(
+      "Memory-mapped feature data",
+      "Store the chromatograms of features in temporary memory-mapped files instead of the Java "
+          + "heap. Reduces the memory usage of large feature lists.",
+      false);
+
+  public static final BooleanParameter uncompressedProjectScans = new BooleanParameter(
+      "Store scan data uncompressed",
+      "Save the scan data of projects without compression. The project files are larger, but "
+          + "they open without extracting the scan data.",
+      false);
+
+  public static final BooleanParameter incrementalProjectSave = new BooleanParameter(
+      "Parallel incremental project save",
+      "Save raw data files and feature lists in parallel and copy the scan data that did not "
+          + "change since the project was last saved or opened from the previous project file.",
+      false);
+
+  public static final IntegerParameter importReadsPerDevice = new IntegerParameter(
+      "Raw data import: files read per storage device",
+      "Maximum number of raw data files (mzML, mzXML, netCDF, ...) that are imported at once from "
+          + "the same disk or network share. Too many parallel reads slow down the device.",
+      2, 1, null);
+
+  public static final IntegerParameter importConvertedFiles = new IntegerParameter(
+      "Raw data import: files converted in parallel",
+      "Maximum number of raw data files that are converted at once (Thermo and Waters raw files, "
+          + "Bruker TDF and compressed files). These imports are mainly limited by the processor.",
+      Runtime.getRuntime().availableProcessors(), 1, null);
+
   public MZminePreferences() {
     super(new Parameter[] {mzFormat, rtFormat, mobilityFormat, intensityFormat, ppmFormat,
         numOfThreads, proxySettings, rExecPath, sendStatistics, windowSetttings, sendErrorEMail,
-        stdColorPalette, chartParam});
+        stdColorPalette, chartParam, memoryMappedFeatureData, uncompressedProjectScans,
+        incrementalProjectSave, importReadsPerDevice, importConvertedFiles});
   }
 
   @Override
@@ -19,6 +19,8 @@
 package io.github.mzmine.main;
 
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.DerivedRawDataFileImpl;
+import io.github.mzmine.project.impl.DerivedRawDataFileImpl.ScanTransform;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -237,6 +239,15 @@ public final class MZmineCore {
     return new RawDataFileImpl(name);
   }
 
+  /**
+   * Creates a raw data file that transforms the scans of other raw data files when they are read,
+   * see {@link DerivedRawDataFileImpl}
+   */
+  public static DerivedRawDataFileImpl createDerivedFile(String name, ScanTransform transform)
+      throws IOException {
+    return new DerivedRawDataFileImpl(name, transform);
+  }
+
   public static RawDataFileWriter createNewIMSFile(String name) throws IOException {
     return new IMSRawDataFileImpl(name);
   }
@@ -23,7 +23,9 @@ import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParamete
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import com.google.common.collect.ImmutableList;
 import io.github.mzmine.datamodel.MZmineProject;
@@ -31,10 +33,13 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.PerFileProcessingModule;
+import io.github.mzmine.modules.io.rawdataimport.RawDataImportModule;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
@@ -75,10 +80,11 @@ public class BatchTask extends AbstractTask {
 
 
     // Process individual batch steps
-    for (int i = 0; i < totalSteps; i++) {
+    for (int i = 0; i < totalSteps;) {
 
-      processQueueStep(i);
-      processedSteps++;
+      final int steps = processQueueStep(i);
+      i += steps;
+      processedSteps += steps;
 
       // If we are canceled or ran into error, stop here
       if (isCanceled() || (getStatus() == TaskStatus.ERROR)) {
@@ -92,7 +98,11 @@ public class BatchTask extends AbstractTask {
 
   }
 
-  private void processQueueStep(int stepNumber) {
+  /**
+   * @return the number of processed steps, more than one if the following steps were run for each
+   *         imported file
+   */
+  private int processQueueStep(int stepNumber) {
 
     logger.info("Starting step # " + (stepNumber + 1));
 
@@ -122,7 +132,7 @@ public class BatchTask extends AbstractTask {
           setStatus(TaskStatus.ERROR);
           setErrorMessage("Invalid parameter settings for module " + method.getName() + ": "
               + "Missing parameter value for " + p.getName());
-          return;
+          return 1;
         }
         selectedFiles.setBatchLastFiles(createdFiles);
       }
@@ -144,7 +154,7 @@ public class BatchTask extends AbstractTask {
           setStatus(TaskStatus.ERROR);
           setErrorMessage("Invalid parameter settings for module " + method.getName() + ": "
               + "Missing parameter value for " + p.getName());
-          return;
+          return 1;
         }
         selectedFeatureLists.setBatchLastFeatureLists(createdPls);
       }
@@ -172,12 +182,22 @@ public class BatchTask extends AbstractTask {
     if (exitCode != ExitCode.OK) {
       setStatus(TaskStatus.ERROR);
       setErrorMessage("Could not start batch step " + method.getName());
-      return;
+      return 1;
     }
 
     // If current step didn't produce any tasks, continue with next step
     if (currentStepTasks.isEmpty())
-      return;
+      return 1;
+
+    // the following steps that process each file on its own are started for every file as soon as
+    // it is imported
+    final List<MZmineProcessingStep<?>> perFileSteps = (method instanceof RawDataImportModule)
+        ? getPerFileSteps(stepNumber + 1) : List.of();
+    final Map<RawDataFile, PerFileProgress> importedFiles = new LinkedHashMap<>();
+    if (!perFileSteps.isEmpty()) {
+      logger.info("Running steps # " + (stepNumber + 2) + " to # "
+          + (stepNumber + 1 + perFileSteps.size()) + " for each file as soon as it is imported");
+    }
 
     boolean allTasksFinished = false;
 
@@ -186,11 +206,16 @@ public class BatchTask extends AbstractTask {
 
     while (!allTasksFinished) {
 
+      if (!perFileSteps.isEmpty() && !isCanceled() && startPerFileSteps(perFileSteps,
+          beforeDataFiles, importedFiles, currentStepTasks) < 0) {
+        return 1;
+      }
+
       // If we canceled the batch, cancel all running tasks
       if (isCanceled()) {
         for (Task stepTask : currentStepTasks)
           stepTask.cancel();
-        return;
+        return 1;
       }
 
       // First set to true, then check all tasks
@@ -208,7 +233,7 @@ public class BatchTask extends AbstractTask {
         if (stepStatus == TaskStatus.ERROR) {
           setStatus(TaskStatus.ERROR);
           setErrorMessage(stepTask.getTaskDescription() + ": " + stepTask.getErrorMessage());
-          return;
+          return 1;
         }
 
         // If user canceled any of the tasks, we have to cancel the
@@ -217,11 +242,21 @@ public class BatchTask extends AbstractTask {
           setStatus(TaskStatus.CANCELED);
           for (Task t : currentStepTasks)
             t.cancel();
-          return;
+          return 1;
         }
 
       }
 
+      // the last tasks of a file may have finished after its next step was checked
+      if (allTasksFinished && !perFileSteps.isEmpty()) {
+        final int started =
+            startPerFileSteps(perFileSteps, beforeDataFiles, importedFiles, currentStepTasks);
+        if (started < 0) {
+          return 1;
+        }
+        allTasksFinished = started == 0;
+      }
+
       // Wait 1s before checking the tasks again
       if (!allTasksFinished) {
         synchronized (this) {
@@ -235,6 +270,128 @@ public class BatchTask extends AbstractTask {
 
     }
 
+    if (perFileSteps.isEmpty()) {
+      return 1;
+    }
+
+    // the per file steps do not create raw data files, the following steps use the imported files
+    // and the feature lists of the per file steps
+    createdDataFiles = new ArrayList<>(importedFiles.keySet());
+    createdFeatureLists = new ArrayList<>(project.getFeatureLists());
+    createdFeatureLists.removeAll(beforeFeatureLists);
+    if (!createdDataFiles.isEmpty())
+      previousCreatedDataFiles = createdDataFiles;
+    if (!createdFeatureLists.isEmpty())
+      previousCreatedFeatureLists = createdFeatureLists;
+    return 1 + perFileSteps.size();
+  }
+
+  /**
+   * @return the steps after the given step that can be run for each imported file on its own
+   */
+  private List<MZmineProcessingStep<?>> getPerFileSteps(int firstStep) {
+    final List<MZmineProcessingStep<?>> steps = new ArrayList<>();
+    for (int i = firstStep; i < totalSteps; i++) {
+      final MZmineProcessingStep<?> step = queue.get(i);
+      if (!(step.getModule() instanceof PerFileProcessingModule)
+          || !usesBatchLastFiles(step.getParameterSet())) {
+        break;
+      }
+      steps.add(step);
+    }
+    return steps;
+  }
+
+  /**
+   * @return true if the files of the step are the ones created by the previous batch step
+   */
+  private static boolean usesBatchLastFiles(ParameterSet parameters) {
+    boolean batchLastFiles = false;
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (p instanceof RawDataFilesParameter) {
+        final RawDataFilesSelection selection = ((RawDataFilesParameter) p).getValue();
+        if (selection == null
+            || selection.getSelectionType() != RawDataFilesSelectionType.BATCH_LAST_FILES) {
+          return false;
+        }
+        batchLastFiles = true;
+      }
+    }
+    return batchLastFiles;
+  }
+
+  /**
+   * Starts the first per file step of newly imported files and the next per file step of files
+   * whose previous step finished
+   *
+   * @param stepTasks all tasks of the import and the per file steps, the started tasks are added
+   * @return the number of started steps, -1 if a step could not be started
+   */
+  private int startPerFileSteps(List<MZmineProcessingStep<?>> perFileSteps,
+      List<RawDataFile> beforeDataFiles, Map<RawDataFile, PerFileProgress> importedFiles,
+      List<Task> stepTasks) {
+    // every file is added to the project as soon as it is imported
+    for (RawDataFile file : project.getRawDataFiles()) {
+      if (!beforeDataFiles.contains(file) && !importedFiles.containsKey(file)) {
+        importedFiles.put(file, new PerFileProgress());
+      }
+    }
+
+    int started = 0;
+    for (Map.Entry<RawDataFile, PerFileProgress> entry : importedFiles.entrySet()) {
+      final RawDataFile file = entry.getKey();
+      final PerFileProgress progress = entry.getValue();
+      if (progress.nextStep >= perFileSteps.size() || !progress.isFinished()) {
+        continue;
+      }
+
+      final MZmineProcessingStep<?> step = perFileSteps.get(progress.nextStep);
+      final MZmineProcessingModule module = (MZmineProcessingModule) step.getModule();
+      final ParameterSet parameters = step.getParameterSet().cloneParameterSet();
+      for (Parameter<?> p : parameters.getParameters()) {
+        if (p instanceof RawDataFilesParameter) {
+          ((RawDataFilesParameter) p).getValue().setBatchLastFiles(new RawDataFile[] {file});
+        }
+      }
+
+      final ArrayList<String> messages = new ArrayList<>();
+      if (!parameters.checkParameterValues(messages)) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage("Invalid parameter settings for module " + module.getName() + ": "
+            + Arrays.toString(messages.toArray()));
+        return -1;
+      }
+
+      progress.tasks.clear();
+      if (module.runModule(project, parameters, progress.tasks) != ExitCode.OK) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage("Could not start batch step " + module.getName() + " for " + file);
+        return -1;
+      }
+      progress.nextStep++;
+      stepTasks.addAll(progress.tasks);
+      MZmineCore.getTaskController().addTasks(progress.tasks.toArray(new Task[0]));
+      started++;
+    }
+    return started;
+  }
+
+  /**
+   * The per file steps of one imported file
+   */
+  private static class PerFileProgress {
+
+    private int nextStep = 0;
+    private final List<Task> tasks = new ArrayList<>();
+
+    private boolean isFinished() {
+      for (Task task : tasks) {
+        if (task.getStatus() != TaskStatus.FINISHED) {
+          return false;
+        }
+      }
+      return true;
+    }
   }
 
   @Override
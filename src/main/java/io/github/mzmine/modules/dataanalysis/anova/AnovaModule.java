@@ -17,7 +17,6 @@
 package io.github.mzmine.modules.dataanalysis.anova;
 
 import io.github.mzmine.datamodel.features.FeatureList;
-import io.github.mzmine.datamodel.features.FeatureListRow;
 import java.util.Collection;
 import javax.annotation.Nonnull;
 import io.github.mzmine.datamodel.MZmineProject;
@@ -52,7 +51,7 @@ public class AnovaModule implements MZmineProcessingModule {
         parameters.getParameter(AnovaParameters.featureLists).getValue().getMatchingFeatureLists();
 
     for (FeatureList featureList : featureLists) {
-      tasks.add(new AnovaTask(featureList.getRows().toArray(FeatureListRow[]::new), parameters));
+      tasks.add(new AnovaTask(featureList, parameters));
     }
 
     return ExitCode.OK;
@@ -50,7 +50,8 @@ public class AnovaParameters extends SimpleParameterSet {
 
     // Add a message
     String message = "<html>To view the results of ANOVA test, export the feature list to CSV file "
-        + "and look for column ANOVA_P_VALUE. Click Help for details.</html>";
+        + "and look for column ANOVA_P_VALUE. The feature table shows the p-values and, for two "
+        + "groups, the t-test p-values and log2 fold changes. Click Help for details.</html>";
 
     ParameterSetupDialog dialog = new ParameterSetupDialog(valueCheckRequired, this, message);
     dialog.showAndWait();
@@ -16,21 +16,17 @@
 
 package io.github.mzmine.modules.dataanalysis.anova;
 
-import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
-import java.util.*;
-import java.util.Map.Entry;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.numbers.AnovaPValueType;
+import io.github.mzmine.datamodel.features.types.numbers.FoldChangeType;
+import io.github.mzmine.datamodel.features.types.numbers.TTestPValueType;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-
 import java.util.stream.IntStream;
 
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-import org.apache.commons.math3.distribution.FDistribution;
-import org.apache.commons.math3.exception.MathIllegalArgumentException;
-
 import io.github.mzmine.datamodel.*;
 import io.github.mzmine.datamodel.impl.SimpleFeatureInformation;
 import io.github.mzmine.main.MZmineCore;
@@ -48,11 +44,13 @@ public class AnovaTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
   private double finishedPercentage = 0.0;
 
+  private final FeatureList featureList;
   private final FeatureListRow[] featureListRows;
   private final UserParameter userParameter;
 
-  public AnovaTask(FeatureListRow[] featureListRows, ParameterSet parameters) {
-    this.featureListRows = featureListRows;
+  public AnovaTask(FeatureList featureList, ParameterSet parameters) {
+    this.featureList = featureList;
+    this.featureListRows = featureList.getRows().toArray(FeatureListRow[]::new);
     this.userParameter = parameters.getParameter(AnovaParameters.selectionData).getValue();
   }
 
@@ -102,30 +100,49 @@ public class AnovaTask extends AbstractTask {
       return;
     }
 
-    List<Set<RawDataFile>> groups = getGroups(userParameter);
-
     finishedPercentage = 0.0;
-    final double finishedStep = 1.0 / featureListRows.length;
 
-    for (FeatureListRow row : featureListRows) {
+    // extract the heights once, grouped by the parameter value of each file
+    MZmineProject project = MZmineCore.getProjectManager().getCurrentProject();
+    GroupedIntensityMatrix matrix = new GroupedIntensityMatrix(featureListRows,
+        featureList.getRawDataFiles(), file -> project.getParameterValue(userParameter, file));
+    finishedPercentage = 0.4;
+    if (isCanceled()) {
+      return;
+    }
 
-      if (isCanceled()) {
-        break;
-      }
+    double[] anovaPValues = GroupStatistics.oneWayAnova(matrix);
 
-      finishedPercentage += finishedStep;
+    // t-test and fold change if there are exactly two groups
+    final boolean twoGroups = matrix.getNumberOfGroups() == 2;
+    double[] tTestPValues = null;
+    double[] foldChanges = null;
+    if (twoGroups) {
+      logger.info("Fold changes are " + matrix.getGroupValue(1) + " / " + matrix.getGroupValue(0));
+      tTestPValues = GroupStatistics.welchTTest(matrix, 0, 1);
+      foldChanges = GroupStatistics.log2FoldChange(matrix, 0, 1);
+    }
+    finishedPercentage = 0.8;
+    if (isCanceled()) {
+      return;
+    }
 
-      double[][] intensityGroups = new double[groups.size()][];
-      for (int i = 0; i < groups.size(); ++i) {
-        Set<RawDataFile> groupFiles = groups.get(i);
-        intensityGroups[i] =
-            row.getFeatures().stream().filter(feature -> groupFiles.contains(feature.getRawDataFile()))
-                .mapToDouble(Feature::getHeight).toArray();
+    // Save results
+    final boolean modular = featureList instanceof ModularFeatureList;
+    if (modular) {
+      if (twoGroups) {
+        ((ModularFeatureList) featureList).addRowType(new AnovaPValueType(),
+            new TTestPValueType(), new FoldChangeType());
+      } else {
+        ((ModularFeatureList) featureList).addRowType(new AnovaPValueType());
       }
+    }
+    final double[] tTests = tTestPValues;
+    final double[] folds = foldChanges;
+    IntStream.range(0, featureListRows.length).parallel().forEach(i -> {
+      FeatureListRow row = featureListRows[i];
+      Double pValue = Double.isNaN(anovaPValues[i]) ? null : anovaPValues[i];
 
-      Double pValue = oneWayAnova(intensityGroups);
-
-      // Save results
       FeatureInformation featureInformation = row.getFeatureInformation();
       if (featureInformation == null) {
         featureInformation = new SimpleFeatureInformation();
@@ -133,81 +150,16 @@ public class AnovaTask extends AbstractTask {
       featureInformation.getAllProperties().put(P_VALUE_KEY,
           pValue == null ? EMPTY_STRING : pValue.toString());
       row.setFeatureInformation(featureInformation);
-    }
-  }
 
-  private List<Set<RawDataFile>> getGroups(UserParameter factor) {
-
-    MZmineProject project = MZmineCore.getProjectManager().getCurrentProject();
-
-    // Find the parameter value of each data file
-    Map<RawDataFile, Object> paramMap = new HashMap<>();
-    for (FeatureListRow row : featureListRows) {
-      for (RawDataFile file : row.getRawDataFiles()) {
-        Object paramValue = project.getParameterValue(factor, file);
-        if (paramValue != null) {
-          paramMap.put(file, paramValue);
+      if (modular && row instanceof ModularFeatureListRow) {
+        ModularFeatureListRow modularRow = (ModularFeatureListRow) row;
+        modularRow.set(AnovaPValueType.class, pValue);
+        if (twoGroups) {
+          modularRow.set(TTestPValueType.class, Double.isNaN(tTests[i]) ? null : tTests[i]);
+          modularRow.set(FoldChangeType.class, Double.isNaN(folds[i]) ? null : folds[i]);
         }
       }
-    }
-
-    // Find unique parameter values
-    Object[] paramValues = paramMap.values().stream().distinct().toArray();
-
-    // Form groups of files for each parameter value
-    List<Set<RawDataFile>> groups = new ArrayList<>(paramValues.length);
-    for (Object paramValue : paramValues) {
-      groups.add(paramMap.entrySet().stream().filter(e -> paramValue.equals(e.getValue()))
-          .map(Entry::getKey).collect(Collectors.toSet()));
-    }
-
-    return groups;
-  }
-
-  @Nullable
-  private Double oneWayAnova(@Nonnull double[][] intensityGroups) {
-
-    int numGroups = intensityGroups.length;
-    long numIntensities = Arrays.stream(intensityGroups).flatMapToDouble(Arrays::stream).count();
-
-    double[] groupMeans = Arrays.stream(intensityGroups)
-        .mapToDouble(intensities -> Arrays.stream(intensities).average().orElse(0.0)).toArray();
-
-    double overallMean =
-        Arrays.stream(intensityGroups).flatMapToDouble(Arrays::stream).average().orElse(0.0);
-
-    double sumOfSquaresOfError = IntStream.range(0, intensityGroups.length).mapToDouble(
-        i -> Arrays.stream(intensityGroups[i]).map(x -> x - groupMeans[i]).map(x -> x * x).sum())
-        .sum();
-
-    double sumOfSquaresOfTreatment =
-        (numGroups - 1) * Arrays.stream(groupMeans).map(x -> x - overallMean).map(x -> x * x).sum();
-
-    long degreesOfFreedomOfTreatment = numGroups - 1;
-    long degreesOfFreedomOfError = numIntensities - numGroups;
-
-    if (degreesOfFreedomOfTreatment <= 0 || degreesOfFreedomOfError <= 0) {
-      return null;
-    }
-
-    double meanSquareOfTreatment = sumOfSquaresOfTreatment / degreesOfFreedomOfTreatment;
-    double meanSquareOfError = sumOfSquaresOfError / degreesOfFreedomOfError;
-
-    if (meanSquareOfError == 0.0) {
-      return null;
-    }
-
-    double anovaStatistics = meanSquareOfTreatment / meanSquareOfError;
-
-    Double pValue = null;
-    try {
-      FDistribution distribution =
-          new FDistribution(degreesOfFreedomOfTreatment, degreesOfFreedomOfError);
-      pValue = 1.0 - distribution.cumulativeProbability(anovaStatistics);
-    } catch (MathIllegalArgumentException ex) {
-      logger.warning("Error during F-distribution calculation: " + ex.getMessage());
-    }
-
-    return pValue;
+    });
+    finishedPercentage = 1.0;
   }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataanalysis.anova;
+
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import org.apache.commons.math3.special.Beta;
+
+/**
+ * Statistics of all rows of a {@link GroupedIntensityMatrix}, computed in parallel. Missing
+ * values are left out. Undefined results, e.g., without variance or with too few values, are NaN.
+ * The p-values are computed from the regularized incomplete beta function, which is also used by
+ * the F- and t-distributions of commons-math, so no distribution object is created per row.
+ */
+public class GroupStatistics {
+
+  /**
+   * Count, mean and sum of squared deviations of the values of one row in one group
+   */
+  private static class Moments {
+
+    private int count;
+    private double mean;
+    private double sumOfSquares;
+
+    private Moments(float[] values, int from, int to) {
+      double sum = 0;
+      for (int i = from; i < to; i++) {
+        if (!Float.isNaN(values[i])) {
+          sum += values[i];
+          count++;
+        }
+      }
+      if (count == 0) {
+        return;
+      }
+      mean = sum / count;
+      for (int i = from; i < to; i++) {
+        if (!Float.isNaN(values[i])) {
+          final double deviation = values[i] - mean;
+          sumOfSquares += deviation * deviation;
+        }
+      }
+    }
+  }
+
+  private static Moments moments(GroupedIntensityMatrix matrix, int group, int row) {
+    final int size = matrix.getGroupSize(group);
+    return new Moments(matrix.values[group], row * size, row * size + size);
+  }
+
+  /**
+   * One-way analysis of variance of the groups with at least one value
+   *
+   * @return the p-value of each row
+   */
+  @Nonnull
+  public static double[] oneWayAnova(@Nonnull GroupedIntensityMatrix matrix) {
+    final int numGroups = matrix.getNumberOfGroups();
+    final double[] pValues = new double[matrix.getNumberOfRows()];
+    IntStream.range(0, pValues.length).parallel().forEach(row -> {
+      final Moments[] groups = new Moments[numGroups];
+      int nonEmptyGroups = 0;
+      long count = 0;
+      double sum = 0;
+      double sumOfSquaresOfError = 0;
+      for (int g = 0; g < numGroups; g++) {
+        groups[g] = moments(matrix, g, row);
+        if (groups[g].count > 0) {
+          nonEmptyGroups++;
+          count += groups[g].count;
+          sum += groups[g].mean * groups[g].count;
+          sumOfSquaresOfError += groups[g].sumOfSquares;
+        }
+      }
+      final double overallMean = count == 0 ? 0 : sum / count;
+      double sumOfSquaresOfTreatment = 0;
+      for (Moments group : groups) {
+        if (group.count > 0) {
+          final double deviation = group.mean - overallMean;
+          sumOfSquaresOfTreatment += group.count * deviation * deviation;
+        }
+      }
+
+      final long degreesOfFreedomOfTreatment = nonEmptyGroups - 1;
+      final long degreesOfFreedomOfError = count - nonEmptyGroups;
+      if (degreesOfFreedomOfTreatment <= 0 || degreesOfFreedomOfError <= 0
+          || sumOfSquaresOfError == 0) {
+        pValues[row] = Double.NaN;
+        return;
+      }
+      final double f = (sumOfSquaresOfTreatment / degreesOfFreedomOfTreatment)
+          / (sumOfSquaresOfError / degreesOfFreedomOfError);
+      pValues[row] = fDistributionUpperTail(f, degreesOfFreedomOfTreatment,
+          degreesOfFreedomOfError);
+    });
+    return pValues;
+  }
+
+  /**
+   * Welch's two-sided t-test of two groups
+   *
+   * @return the p-value of each row
+   */
+  @Nonnull
+  public static double[] welchTTest(@Nonnull GroupedIntensityMatrix matrix, int groupA,
+      int groupB) {
+    final double[] pValues = new double[matrix.getNumberOfRows()];
+    IntStream.range(0, pValues.length).parallel().forEach(row -> {
+      final Moments a = moments(matrix, groupA, row);
+      final Moments b = moments(matrix, groupB, row);
+      if (a.count < 2 || b.count < 2) {
+        pValues[row] = Double.NaN;
+        return;
+      }
+      final double varianceA = a.sumOfSquares / (a.count - 1) / a.count;
+      final double varianceB = b.sumOfSquares / (b.count - 1) / b.count;
+      final double variance = varianceA + varianceB;
+      if (variance == 0) {
+        pValues[row] = Double.NaN;
+        return;
+      }
+      final double t = (a.mean - b.mean) / Math.sqrt(variance);
+      final double degreesOfFreedom = variance * variance / (varianceA * varianceA / (a.count - 1)
+          + varianceB * varianceB / (b.count - 1));
+      pValues[row] = Beta.regularizedBeta(degreesOfFreedom / (degreesOfFreedom + t * t),
+          degreesOfFreedom / 2, 0.5);
+    });
+    return pValues;
+  }
+
+  /**
+   * @return log2 of mean(groupB) / mean(groupA) of each row, NaN if a mean is not positive
+   */
+  @Nonnull
+  public static double[] log2FoldChange(@Nonnull GroupedIntensityMatrix matrix, int groupA,
+      int groupB) {
+    final double[] foldChanges = new double[matrix.getNumberOfRows()];
+    IntStream.range(0, foldChanges.length).parallel().forEach(row -> {
+      final Moments a = moments(matrix, groupA, row);
+      final Moments b = moments(matrix, groupB, row);
+      foldChanges[row] = a.count == 0 || b.count == 0 || a.mean <= 0 || b.mean <= 0 ? Double.NaN
+          : Math.log(b.mean / a.mean) / Math.log(2);
+    });
+    return foldChanges;
+  }
+
+  /**
+   * @return P(X > f) for an F-distributed X
+   */
+  private static double fDistributionUpperTail(double f, double numeratorDegreesOfFreedom,
+      double denominatorDegreesOfFreedom) {
+    return Beta.regularizedBeta(
+        denominatorDegreesOfFreedom / (denominatorDegreesOfFreedom + numeratorDegreesOfFreedom * f),
+        denominatorDegreesOfFreedom / 2, numeratorDegreesOfFreedom / 2);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataanalysis.anova;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+
+/**
+ * Feature heights of all rows, extracted once into one primitive array per sample group. The
+ * samples are grouped by the value of a sample parameter, samples without a value are left out.
+ * Within a group the values are stored row by row, missing features are NaN.
+ */
+public class GroupedIntensityMatrix {
+
+  private final int numRows;
+  private final Object[] groupValues;
+  private final RawDataFile[][] groupFiles;
+  // [group][row * group size + sample]
+  final float[][] values;
+
+  /**
+   * Extracts the heights of the rows in parallel
+   *
+   * @param rows  the rows of the matrix
+   * @param files the samples in the order of the groups and of the samples within the groups
+   * @param group the group value of a sample or null to leave the sample out
+   */
+  public GroupedIntensityMatrix(@Nonnull FeatureListRow[] rows, @Nonnull List<RawDataFile> files,
+      @Nonnull Function<RawDataFile, Object> group) {
+    this.numRows = rows.length;
+
+    // groups in the order of their first sample
+    final Map<Object, List<RawDataFile>> filesByGroup = new HashMap<>();
+    final List<Object> groupOrder = new ArrayList<>();
+    for (RawDataFile file : files) {
+      final Object value = group.apply(file);
+      if (value == null) {
+        continue;
+      }
+      filesByGroup.computeIfAbsent(value, v -> {
+        groupOrder.add(v);
+        return new ArrayList<>();
+      }).add(file);
+    }
+
+    final int numGroups = groupOrder.size();
+    groupValues = groupOrder.toArray();
+    groupFiles = new RawDataFile[numGroups][];
+    values = new float[numGroups][];
+    // group and position of each sample
+    final Map<RawDataFile, int[]> positions = new HashMap<>();
+    for (int g = 0; g < numGroups; g++) {
+      groupFiles[g] = filesByGroup.get(groupValues[g]).toArray(new RawDataFile[0]);
+      for (int k = 0; k < groupFiles[g].length; k++) {
+        positions.put(groupFiles[g][k], new int[] {g, k});
+      }
+      values[g] = new float[Math.multiplyExact(numRows, groupFiles[g].length)];
+      Arrays.fill(values[g], Float.NaN);
+    }
+
+    IntStream.range(0, numRows).parallel().forEach(row -> {
+      for (Feature feature : rows[row].getFeatures()) {
+        final int[] position = positions.get(feature.getRawDataFile());
+        final Float height = feature.getHeight();
+        if (position != null && height != null) {
+          values[position[0]][row * groupFiles[position[0]].length + position[1]] = height;
+        }
+      }
+    });
+  }
+
+  public int getNumberOfRows() {
+    return numRows;
+  }
+
+  public int getNumberOfGroups() {
+    return groupValues.length;
+  }
+
+  /**
+   * @return the sample parameter value of a group
+   */
+  public Object getGroupValue(int group) {
+    return groupValues[group];
+  }
+
+  public int getGroupSize(int group) {
+    return groupFiles[group].length;
+  }
+}
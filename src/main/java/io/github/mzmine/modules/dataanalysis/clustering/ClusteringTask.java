@@ -37,16 +37,15 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FeatureMeasurementType;
+import io.github.mzmine.util.maths.multivariate.MatrixAlgorithm;
+import io.github.mzmine.util.maths.multivariate.PrincipalComponentAnalysis;
+import io.github.mzmine.util.maths.multivariate.SammonsMapping;
 import javafx.application.Platform;
 import javafx.embed.swing.SwingNode;
 import javafx.scene.Scene;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
-import jmprojection.PCA;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
-import jmprojection.Sammons;
 import weka.core.Attribute;
 import weka.core.FastVector;
 import weka.core.Instance;
@@ -73,7 +72,7 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
   private int yAxisDimension = 2;
   private TaskStatus status = TaskStatus.WAITING;
   private String errorMessage;
-  private ProjectionStatus projectionStatus;
+  private volatile MatrixAlgorithm projection;
   private MZmineProcessingStep<ClusteringAlgorithm> clusteringStep;
   private ClusteringDataType typeOfData;
   private Instances dataset;
@@ -190,20 +189,34 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
 
     double[][] rawData;
 
-    // Creating weka dataset using samples or metabolites (variables)
+    // Creating the matrix using samples or metabolites (variables)
+    rawData = createMatrix(typeOfData != ClusteringDataType.VARIABLES);
 
-    if (typeOfData == ClusteringDataType.VARIABLES) {
-      rawData = createMatrix(false);
-      dataset = createVariableWekaDataset(rawData);
-    } else {
-      rawData = createMatrix(true);
-      dataset = createSampleWekaDataset(rawData);
-    }
-
-    // Run the clustering algorithm
+    // Run the clustering algorithm, a weka dataset is only created for the algorithms that do not
+    // work on the matrix
     ClusteringAlgorithm clusteringAlgorithm = clusteringStep.getModule();
     ParameterSet clusteringParameters = clusteringStep.getParameterSet();
-    ClusteringResult result = clusteringAlgorithm.performClustering(dataset, clusteringParameters);
+    ClusteringResult result;
+    if (clusteringAlgorithm instanceof MatrixClusteringAlgorithm) {
+      // the task cancels the running algorithm and shows its progress
+      result = ((MatrixClusteringAlgorithm) clusteringAlgorithm).performClustering(rawData,
+          clusteringParameters, algorithm -> {
+            projection = algorithm;
+            if (isCanceled()) {
+              algorithm.cancel();
+            }
+          });
+    } else {
+      if (typeOfData == ClusteringDataType.VARIABLES) {
+        dataset = createVariableWekaDataset(rawData);
+      } else {
+        dataset = createSampleWekaDataset(rawData);
+      }
+      result = clusteringAlgorithm.performClustering(dataset, clusteringParameters);
+    }
+    if (isCanceled()) {
+      return;
+    }
 
     String cluster = "";
     if (clusteringAlgorithm.getName().toString().equals("Hierarchical clusterer")) {
@@ -321,13 +334,13 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
 
       if (result.getVisualizationType() == VisualizationType.PCA) {
         // Scale data and do PCA
-        Preprocess.scaleToUnityVariance(rawData);
-        PCA pcaProj = new PCA(rawData, numComponents);
-        projectionStatus = pcaProj.getProjectionStatus();
+        MatrixAlgorithm.scaleToUnityVariance(rawData);
+        PrincipalComponentAnalysis pcaProj = new PrincipalComponentAnalysis(numComponents, 1);
+        projection = pcaProj;
 
-        double[][] pcaResult = pcaProj.getState();
+        double[][] pcaResult = pcaProj.project(rawData);
 
-        if (status == TaskStatus.CANCELED) {
+        if (status == TaskStatus.CANCELED || pcaResult == null) {
           return;
         }
 
@@ -335,15 +348,13 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
         component2Coords = pcaResult[yAxisDimension - 1];
       } else if (result.getVisualizationType() == VisualizationType.SAMMONS) {
         // Scale data and do Sammon's mapping
-        Preprocess.scaleToUnityVariance(rawData);
-        Sammons sammonsProj = new Sammons(rawData);
-        projectionStatus = sammonsProj.getProjectionStatus();
+        MatrixAlgorithm.scaleToUnityVariance(rawData);
+        SammonsMapping sammonsProj = new SammonsMapping(numComponents, 100);
+        projection = sammonsProj;
 
-        sammonsProj.iterate(100);
+        double[][] sammonsResult = sammonsProj.project(rawData);
 
-        double[][] sammonsResult = sammonsProj.getState();
-
-        if (status == TaskStatus.CANCELED) {
+        if (status == TaskStatus.CANCELED || sammonsResult == null) {
           return;
         }
 
@@ -490,8 +501,8 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
 
   @Override
   public void cancel() {
-    if (projectionStatus != null) {
-      projectionStatus.cancel();
+    if (projection != null) {
+      projection.cancel();
     }
 
     status = TaskStatus.CANCELED;
@@ -529,11 +540,8 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
 
   @Override
   public double getFinishedPercentage() {
-    if (this.projectionStatus != null) {
-      if (projectionStatus.getFinishedPercentage() > 1.0) {
-        return 1.0;
-      }
-      return projectionStatus.getFinishedPercentage();
+    if (this.projection != null) {
+      return projection.getFinishedPercentage();
     } else {
       if (progress > 100) {
         return 1.0;
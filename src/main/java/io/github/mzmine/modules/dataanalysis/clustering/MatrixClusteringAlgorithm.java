@@ -0,0 +1,40 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataanalysis.clustering;
+
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.util.maths.multivariate.MatrixAlgorithm;
+
+/**
+ * Clustering algorithm that works directly on the data matrix, so no Weka data set is created
+ */
+public interface MatrixClusteringAlgorithm extends ClusteringAlgorithm {
+
+  /**
+   * @param data      one row per clustered item (sample or feature)
+   * @param algorithm receives the running algorithm, so the task can read its progress and cancel
+   *                  it
+   * @return the result, null if the algorithm was canceled
+   */
+  public ClusteringResult performClustering(@Nonnull double[][] data,
+      @Nonnull ParameterSet parameters, @Nonnull Consumer<MatrixAlgorithm> algorithm);
+
+}
@@ -19,22 +19,23 @@
 package io.github.mzmine.modules.dataanalysis.clustering.simplekmeans;
 
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.List;
-import java.util.logging.Level;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import javax.annotation.Nonnull;
 
-import io.github.mzmine.modules.dataanalysis.clustering.ClusteringAlgorithm;
 import io.github.mzmine.modules.dataanalysis.clustering.ClusteringResult;
-import io.github.mzmine.modules.dataanalysis.clustering.em.EMClustererParameters;
+import io.github.mzmine.modules.dataanalysis.clustering.MatrixClusteringAlgorithm;
 import io.github.mzmine.parameters.ParameterSet;
-import weka.clusterers.SimpleKMeans;
-import weka.core.Instance;
+import io.github.mzmine.util.maths.multivariate.KMeans;
+import io.github.mzmine.util.maths.multivariate.MatrixAlgorithm;
 import weka.core.Instances;
 
-public class SimpleKMeansClusterer implements ClusteringAlgorithm {
+/**
+ * Parallel k-means on the data matrix, see {@link KMeans}
+ */
+public class SimpleKMeansClusterer implements MatrixClusteringAlgorithm {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
@@ -47,31 +48,36 @@ public class SimpleKMeansClusterer implements ClusteringAlgorithm {
 
   @Override
   public ClusteringResult performClustering(Instances dataset, ParameterSet parameters) {
+    final double[][] data = new double[dataset.numInstances()][];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = dataset.instance(i).toDoubleArray();
+    }
+    return performClustering(data, parameters, algorithm -> {
+    });
+  }
 
-    List<Integer> clusters = new ArrayList<Integer>();
-    String[] options = new String[2];
-    SimpleKMeans clusterer = new SimpleKMeans();
+  @Override
+  public ClusteringResult performClustering(@Nonnull double[][] data,
+      @Nonnull ParameterSet parameters, @Nonnull Consumer<MatrixAlgorithm> algorithm) {
 
     int numberOfGroups =
         parameters.getParameter(SimpleKMeansClustererParameters.numberOfGroups).getValue();
-    options[0] = "-N";
-    options[1] = String.valueOf(numberOfGroups);
 
-    try {
-      clusterer.setOptions(options);
-      clusterer.buildClusterer(dataset);
-      Enumeration<?> e = dataset.enumerateInstances();
-      while (e.hasMoreElements()) {
-        clusters.add(clusterer.clusterInstance((Instance) e.nextElement()));
-      }
-      ClusteringResult result = new ClusteringResult(clusters, null, clusterer.numberOfClusters(),
-          parameters.getParameter(EMClustererParameters.visualization).getValue());
-      return result;
-
-    } catch (Exception ex) {
-      logger.log(Level.SEVERE, null, ex);
+    // same seed as the Weka implementation that was used before
+    KMeans kMeans = new KMeans(numberOfGroups, 10);
+    algorithm.accept(kMeans);
+    int[] clusters = kMeans.cluster(data);
+    if (clusters == null) {
+      logger.warning("K-means clustering was canceled");
       return null;
     }
+
+    List<Integer> clusterList = new ArrayList<Integer>(clusters.length);
+    for (int cluster : clusters) {
+      clusterList.add(cluster);
+    }
+    return new ClusteringResult(clusterList, null, kMeans.getNumberOfClusters(),
+        parameters.getParameter(SimpleKMeansClustererParameters.visualization).getValue());
   }
 
   @Override
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataanalysis.heatmaps;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Complete linkage hierarchical clustering with Euclidean distances, like R's hclust(dist(x)) used
+ * by heatmap.2. The distances are computed in parallel into a condensed triangle of floats and the
+ * tree is built with the nearest-neighbour chain algorithm in quadratic time.
+ */
+class HeatMapClustering {
+
+  // Number of items per tile when computing the distances.
+  private static final int TILE_SIZE = 64;
+
+  // Minimum number of items to search the nearest neighbours in parallel.
+  private static final int PARALLEL_MIN_ITEMS = 4096;
+
+  /**
+   * Result of a clustering. The nodes of the tree are numbered like the items for the leaves and
+   * numItems + merge index for the merges, which are ordered by height.
+   */
+  static class Dendrogram {
+
+    final int numItems;
+    /**
+     * Items in plotting order, without the items that were removed
+     */
+    final int[] leaves;
+    final int[] left;
+    final int[] right;
+    final double[] heights;
+
+    private Dendrogram(int numItems, int[] leaves, int[] left, int[] right, double[] heights) {
+      this.numItems = numItems;
+      this.leaves = leaves;
+      this.left = left;
+      this.right = right;
+      this.heights = heights;
+    }
+
+    int getNumberOfMerges() {
+      return heights.length;
+    }
+
+    double getMaxHeight() {
+      return heights.length == 0 ? 0 : heights[heights.length - 1];
+    }
+  }
+
+  /**
+   * Clusters the items. Like the R heat map, items without values and items that have no value in
+   * common with a previous item are removed, because their distances are undefined.
+   *
+   * @param items      values of each item, NaN for missing values
+   * @param isCanceled checked before every step of the nearest-neighbour chain
+   * @return the dendrogram of the remaining items, null if canceled
+   */
+  @Nullable
+  static Dendrogram cluster(@Nonnull double[][] items, @Nonnull BooleanSupplier isCanceled) {
+    final int n = items.length;
+    final float[] distances = distances(items);
+    if (isCanceled.getAsBoolean()) {
+      return null;
+    }
+
+    // remove items with undefined distances, only with missing values
+    final boolean missingValues = Arrays.stream(items)
+        .anyMatch(item -> !Arrays.stream(item).allMatch(Double::isFinite));
+    final boolean[] active = new boolean[n];
+    int numActive = 0;
+    for (int i = 0; i < n; i++) {
+      active[i] = Arrays.stream(items[i]).anyMatch(Double::isFinite);
+      int k = i - 1;
+      for (int j = 0; missingValues && j < i && active[i]; j++) {
+        active[i] = !active[j] || !Float.isNaN(distances[k]);
+        k = nextIndex(n, k, j, i);
+      }
+      if (active[i]) {
+        numActive++;
+      }
+    }
+
+    // nearest-neighbour chain, the merged cluster keeps the slot of its second item
+    final int numMerges = Math.max(numActive - 1, 0);
+    final int[] mergeA = new int[numMerges];
+    final int[] mergeB = new int[numMerges];
+    final double[] mergeHeights = new double[numMerges];
+    final int[] chain = new int[Math.max(numActive, 1)];
+    final int numChunks =
+        n >= PARALLEL_MIN_ITEMS ? Runtime.getRuntime().availableProcessors() : 1;
+    int chainLength = 0;
+    int merges = 0;
+    int first = 0;
+    while (merges < numMerges) {
+      if (isCanceled.getAsBoolean()) {
+        return null;
+      }
+      if (chainLength == 0) {
+        while (!active[first]) {
+          first++;
+        }
+        chain[chainLength++] = first;
+      }
+      final int a = chain[chainLength - 1];
+      final int previous = chainLength > 1 ? chain[chainLength - 2] : -1;
+
+      // nearest active neighbour, prefer the previous item of the chain on ties
+      int b = previous;
+      float min = previous < 0 ? Float.POSITIVE_INFINITY : distances[index(n, a, previous)];
+      final int[] candidates = numChunks == 1 ? new int[] {nearest(distances, active, n, a, 0, n)}
+          : IntStream.range(0, numChunks).parallel().map(chunk -> nearest(distances, active, n, a,
+              chunk * n / numChunks, (chunk + 1) * n / numChunks)).toArray();
+      for (int c : candidates) {
+        if (c >= 0 && (b < 0 || distances[index(n, a, c)] < min)) {
+          min = distances[index(n, a, c)];
+          b = c;
+        }
+      }
+
+      if (b != previous) {
+        chain[chainLength++] = b;
+        continue;
+      }
+
+      // reciprocal nearest neighbours: merge a into b
+      chainLength -= 2;
+      mergeA[merges] = a;
+      mergeB[merges] = b;
+      mergeHeights[merges] = min;
+      merges++;
+      active[a] = false;
+      final int merged = b;
+      if (numChunks == 1) {
+        updateDistances(distances, active, n, a, merged, 0, n);
+      } else {
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> updateDistances(distances,
+            active, n, a, merged, chunk * n / numChunks, (chunk + 1) * n / numChunks));
+      }
+    }
+
+    return buildDendrogram(n, active, mergeA, mergeB, mergeHeights);
+  }
+
+  /**
+   * @return the first active item from (inclusive) to (exclusive) with the smallest distance to
+   *         item a, or -1
+   */
+  private static int nearest(float[] distances, boolean[] active, int n, int a, int from, int to) {
+    int nearest = -1;
+    float min = Float.POSITIVE_INFINITY;
+    // the distances to c < a are in the column of a, the distances to c > a in the row of a
+    int k = from == a ? 0 : index(n, a, from);
+    for (int c = from; c < to; c++) {
+      if (c != a && active[c] && (nearest < 0 || distances[k] < min)) {
+        min = distances[k];
+        nearest = c;
+      }
+      k = nextIndex(n, k, c, a);
+    }
+    return nearest;
+  }
+
+  /**
+   * Complete linkage: the distance of the merged cluster b to an item is the maximum distance of a
+   * and b to the item
+   */
+  private static void updateDistances(float[] distances, boolean[] active, int n, int a, int b,
+      int from, int to) {
+    int ka = from == a ? 0 : index(n, a, from);
+    int kb = from == b ? 0 : index(n, b, from);
+    for (int c = from; c < to; c++) {
+      if (c != b && active[c]) {
+        distances[kb] = Math.max(distances[kb], distances[ka]);
+      }
+      ka = nextIndex(n, ka, c, a);
+      kb = nextIndex(n, kb, c, b);
+    }
+  }
+
+  /**
+   * Euclidean distances of all pairs of items. Like R's dist, missing values are left out and the
+   * sum is scaled up by the proportion of the used values.
+   *
+   * @return the condensed upper triangle
+   */
+  static float[] distances(@Nonnull double[][] items) {
+    final int n = items.length;
+    final long size = (long) n * (n - 1) / 2;
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Too many items to cluster: " + n);
+    }
+    final float[] distances = new float[(int) size];
+    final boolean[] complete = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      complete[i] = Arrays.stream(items[i]).allMatch(Double::isFinite);
+    }
+
+    // tiles of items that fit into the cache together
+    final int numTiles = (n + TILE_SIZE - 1) / TILE_SIZE;
+    IntStream.range(0, numTiles).parallel().forEach(tileI -> {
+      final int endI = Math.min((tileI + 1) * TILE_SIZE, n);
+      for (int tileJ = tileI; tileJ < numTiles; tileJ++) {
+        final int endJ = Math.min((tileJ + 1) * TILE_SIZE, n);
+        for (int i = tileI * TILE_SIZE; i < endI; i++) {
+          final int startJ = Math.max(tileJ * TILE_SIZE, i + 1);
+          int k = index(n, i, startJ);
+          for (int j = startJ; j < endJ; j++, k++) {
+            distances[k] = complete[i] && complete[j] ? distance(items[i], items[j])
+                : distanceWithMissingValues(items[i], items[j]);
+          }
+        }
+      }
+    });
+    return distances;
+  }
+
+  private static float distance(double[] x, double[] y) {
+    // independent sums for instruction level parallelism
+    double sum0 = 0;
+    double sum1 = 0;
+    double sum2 = 0;
+    double sum3 = 0;
+    int v = 0;
+    for (; v + 3 < x.length; v += 4) {
+      final double diff0 = x[v] - y[v];
+      final double diff1 = x[v + 1] - y[v + 1];
+      final double diff2 = x[v + 2] - y[v + 2];
+      final double diff3 = x[v + 3] - y[v + 3];
+      sum0 += diff0 * diff0;
+      sum1 += diff1 * diff1;
+      sum2 += diff2 * diff2;
+      sum3 += diff3 * diff3;
+    }
+    for (; v < x.length; v++) {
+      final double diff = x[v] - y[v];
+      sum0 += diff * diff;
+    }
+    return (float) Math.sqrt((sum0 + sum1) + (sum2 + sum3));
+  }
+
+  private static float distanceWithMissingValues(double[] x, double[] y) {
+    double sum = 0;
+    int used = 0;
+    for (int v = 0; v < x.length; v++) {
+      final double diff = x[v] - y[v];
+      if (Double.isFinite(diff)) {
+        sum += diff * diff;
+        used++;
+      }
+    }
+    return used == 0 ? Float.NaN : (float) Math.sqrt(sum * x.length / used);
+  }
+
+  /**
+   * Index of the distance of two different items in the condensed upper triangle
+   */
+  static int index(int n, int i, int j) {
+    if (i > j) {
+      final int swap = i;
+      i = j;
+      j = swap;
+    }
+    return (int) ((long) n * i - (long) i * (i + 1) / 2 + j - i - 1);
+  }
+
+  /**
+   * Index of the distance of item c + 1 to item x, from the index k of the distance of item c to x.
+   * Walks down the column of x in the condensed triangle and continues in the row of x.
+   */
+  private static int nextIndex(int n, int k, int c, int x) {
+    if (c + 1 < x) {
+      return k + n - c - 2;
+    }
+    if (c == x) {
+      return index(n, x, c + 1);
+    }
+    return k + 1;
+  }
+
+  /**
+   * Sorts the merges by height and numbers the clusters
+   */
+  private static Dendrogram buildDendrogram(int n, boolean[] remaining, int[] mergeA,
+      int[] mergeB, double[] mergeHeights) {
+    final int numMerges = mergeHeights.length;
+    final Integer[] order = new Integer[numMerges];
+    for (int m = 0; m < numMerges; m++) {
+      order[m] = m;
+    }
+    // stable, so children of equal height stay before their parents
+    Arrays.sort(order, Comparator.comparingDouble(m -> mergeHeights[m]));
+
+    // union-find over the items, with the current node of each set
+    final int[] parent = new int[n];
+    final int[] node = new int[n];
+    for (int i = 0; i < n; i++) {
+      parent[i] = i;
+      node[i] = i;
+    }
+    final int[] left = new int[numMerges];
+    final int[] right = new int[numMerges];
+    final double[] heights = new double[numMerges];
+    for (int m = 0; m < numMerges; m++) {
+      final int rootA = find(parent, mergeA[order[m]]);
+      final int rootB = find(parent, mergeB[order[m]]);
+      left[m] = node[rootA];
+      right[m] = node[rootB];
+      heights[m] = mergeHeights[order[m]];
+      parent[rootA] = rootB;
+      node[rootB] = n + m;
+    }
+
+    // leaves in plotting order, depth first from the root
+    final int[] leaves = new int[numMerges + 1];
+    int numLeaves = 0;
+    if (numMerges == 0) {
+      for (int i = 0; i < n && numLeaves == 0; i++) {
+        if (remaining[i]) {
+          leaves[numLeaves++] = i;
+        }
+      }
+    } else {
+      final int[] stack = new int[numMerges + 1];
+      int stackSize = 0;
+      stack[stackSize++] = n + numMerges - 1;
+      while (stackSize > 0) {
+        final int current = stack[--stackSize];
+        if (current < n) {
+          leaves[numLeaves++] = current;
+        } else {
+          stack[stackSize++] = right[current - n];
+          stack[stackSize++] = left[current - n];
+        }
+      }
+    }
+    return new Dendrogram(n, Arrays.copyOf(leaves, numLeaves), left, right, heights);
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+}
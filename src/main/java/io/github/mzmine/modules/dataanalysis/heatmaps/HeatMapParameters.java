@@ -93,6 +93,11 @@ public class HeatMapParameters extends SimpleParameterSet {
   public static final IntegerParameter rowMargin =
       new IntegerParameter("Row margin", "Row margin of the heat map", 10);
 
+  public static final BooleanParameter javaImplementation = new BooleanParameter(
+      "Java implementation",
+      "If checked, the heat map is clustered and drawn in Java without R (pdf, svg and png only)",
+      false);
+
   /**
    * R engine type.
    */
@@ -103,7 +108,7 @@ public class HeatMapParameters extends SimpleParameterSet {
   public HeatMapParameters() {
     super(new Parameter[] {featureLists, fileName, fileTypeSelection, selectionData, referenceGroup,
         useIdenfiedRows, useFeatureArea, scale, log, showControlSamples, plegend, star, height, width,
-        columnMargin, rowMargin, RENGINE_TYPE});
+        columnMargin, rowMargin, javaImplementation, RENGINE_TYPE});
   }
 
   @Override
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataanalysis.heatmaps;
+
+import io.github.mzmine.modules.dataanalysis.heatmaps.HeatMapClustering.Dendrogram;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.imageio.ImageIO;
+import org.jfree.pdf.PDFDocument;
+import org.jfree.pdf.Page;
+import org.jfree.svg.SVGGraphics2D;
+import org.jfree.svg.SVGUtils;
+
+/**
+ * Draws a clustered heat map like gplots' heatmap.2: row and column dendrograms, the values in a
+ * blue-white-red color scale with missing values in grey, cell notes, the labels and a color key.
+ * The cells are painted into an image with one pixel per cell, which is scaled into the plot, so
+ * large data sets are drawn fast in all output formats.
+ */
+class HeatMapRenderer {
+
+  // Points per inch, the size of vector formats is given in inches like in R.
+  private static final double POINTS_PER_INCH = 72.0;
+
+  // Relative size of the dendrograms and the key.
+  private static final double DENDROGRAM_FRACTION = 0.2;
+
+  private static final float BASE_FONT_SIZE = 12f;
+  private static final double LINE_HEIGHT = 1.2;
+
+  // Minimum cell size to draw labels and notes.
+  private static final double MIN_LABEL_SIZE = 3.0;
+
+  private static final Color MISSING_COLOR = new Color(190, 190, 190);
+
+  // Data, [column][row] like in HeatMapTask.
+  private final double[][] data;
+  private final String[] rowNames;
+  private final String[] colNames;
+  private final String[][] notes;
+  private final Dendrogram rowTree;
+  private final Dendrogram colTree;
+  private final int columnMargin;
+  private final int rowMargin;
+  private final int noteSize;
+
+  private final double min;
+  private final double max;
+
+  /**
+   * @param data values as [column][row]
+   * @param notes text of each cell as [column][row], or null
+   * @param rowTree clustering of the rows, the removed rows are not drawn
+   * @param colTree clustering of the columns
+   * @param columnMargin space for the column labels, in lines
+   * @param rowMargin space for the row labels, in lines
+   * @param noteSize size of the cell notes relative to the default font
+   */
+  HeatMapRenderer(@Nonnull double[][] data, @Nonnull String[] rowNames,
+      @Nonnull String[] colNames, @Nullable String[][] notes, @Nonnull Dendrogram rowTree,
+      @Nonnull Dendrogram colTree, int columnMargin, int rowMargin, int noteSize) {
+    this.data = data;
+    this.rowNames = rowNames;
+    this.colNames = colNames;
+    this.notes = notes;
+    this.rowTree = rowTree;
+    this.colTree = colTree;
+    this.columnMargin = columnMargin;
+    this.rowMargin = rowMargin;
+    this.noteSize = noteSize;
+
+    double min = 0;
+    double max = 0;
+    for (int col : colTree.leaves) {
+      for (int row : rowTree.leaves) {
+        final double value = data[col][row];
+        if (Double.isFinite(value)) {
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+        }
+      }
+    }
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * Writes the heat map to a file
+   *
+   * @param type png, svg or pdf
+   * @param width width in pixels for png, in inches for the vector formats
+   * @param height height in pixels for png, in inches for the vector formats
+   */
+  void writeToFile(@Nonnull File file, @Nonnull String type, int width, int height)
+      throws IOException {
+    switch (type) {
+      case "png":
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, width, height);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+            RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        draw(g2, width, height);
+        g2.dispose();
+        ImageIO.write(image, "png", file);
+        break;
+      case "svg":
+        final int svgWidth = (int) Math.round(width * POINTS_PER_INCH);
+        final int svgHeight = (int) Math.round(height * POINTS_PER_INCH);
+        final SVGGraphics2D svg = new SVGGraphics2D(svgWidth, svgHeight);
+        draw(svg, svgWidth, svgHeight);
+        SVGUtils.writeToSVG(file, svg.getSVGElement());
+        break;
+      case "pdf":
+        final double pdfWidth = width * POINTS_PER_INCH;
+        final double pdfHeight = height * POINTS_PER_INCH;
+        final PDFDocument pdf = new PDFDocument();
+        final Page page = pdf.createPage(new Rectangle2D.Double(0, 0, pdfWidth, pdfHeight));
+        draw(page.getGraphics2D(), pdfWidth, pdfHeight);
+        pdf.writeToFile(file);
+        break;
+      default:
+        throw new IOException("Unsupported heat map format: " + type);
+    }
+  }
+
+  /**
+   * Draws the heat map into the area (0, 0, width, height)
+   */
+  void draw(@Nonnull Graphics2D g2, double width, double height) {
+    final int numRows = rowTree.leaves.length;
+    final int numCols = colTree.leaves.length;
+
+    // layout: key and column dendrogram on top, row dendrogram on the left, labels around
+    final double lineHeight = BASE_FONT_SIZE * LINE_HEIGHT;
+    final double left = width * DENDROGRAM_FRACTION;
+    final double top = height * DENDROGRAM_FRACTION;
+    final double right = Math.max(left + 1, width - rowMargin * lineHeight);
+    final double bottom = Math.max(top + 1, height - columnMargin * lineHeight);
+    final double cellWidth = (right - left) / numCols;
+    final double cellHeight = (bottom - top) / numRows;
+
+    // cells, one pixel each
+    final int[] pixels = new int[numCols * numRows];
+    for (int x = 0; x < numCols; x++) {
+      final double[] column = data[colTree.leaves[x]];
+      for (int y = 0; y < numRows; y++) {
+        pixels[y * numCols + x] = getColor(column[rowTree.leaves[y]]);
+      }
+    }
+    final BufferedImage cells = new BufferedImage(numCols, numRows, BufferedImage.TYPE_INT_RGB);
+    cells.setRGB(0, 0, numCols, numRows, pixels, 0, numCols);
+    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    final AffineTransform scale = new AffineTransform(cellWidth, 0, 0, cellHeight, left, top);
+    g2.drawImage(cells, scale, null);
+
+    // dendrograms
+    g2.setColor(Color.BLACK);
+    g2.setStroke(new BasicStroke(0.5f));
+    g2.draw(dendrogramPath(rowTree, top, cellHeight, left, -left * 0.95, true));
+    g2.draw(dendrogramPath(colTree, left, cellWidth, top, -top * 0.95, false));
+
+    // cell notes
+    if (notes != null && cellHeight >= MIN_LABEL_SIZE) {
+      final Font font =
+          new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont((float) Math.min(cellHeight,
+              Math.min(cellWidth, BASE_FONT_SIZE * noteSize / 5f)));
+      g2.setFont(font);
+      final FontMetrics metrics = g2.getFontMetrics(font);
+      for (int x = 0; x < numCols; x++) {
+        final String[] column = notes[colTree.leaves[x]];
+        for (int y = 0; y < numRows; y++) {
+          final String note = column[rowTree.leaves[y]];
+          if (note != null && !note.isEmpty()) {
+            g2.drawString(note, (float) (left + (x + 0.5) * cellWidth
+                - metrics.stringWidth(note) / 2.0), (float) (top + (y + 0.5) * cellHeight
+                    + (metrics.getAscent() - metrics.getDescent()) / 2.0));
+          }
+        }
+      }
+    }
+
+    // labels
+    final float rowFontSize = (float) Math.min(BASE_FONT_SIZE, cellHeight);
+    if (cellHeight >= MIN_LABEL_SIZE) {
+      g2.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont(rowFontSize));
+      for (int y = 0; y < numRows; y++) {
+        g2.drawString(rowNames[rowTree.leaves[y]], (float) (right + lineHeight * 0.25),
+            (float) (top + (y + 0.5) * cellHeight + rowFontSize * 0.35));
+      }
+    }
+    final float colFontSize = (float) Math.min(BASE_FONT_SIZE, cellWidth);
+    if (cellWidth >= MIN_LABEL_SIZE) {
+      g2.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont(colFontSize));
+      final AffineTransform transform = g2.getTransform();
+      for (int x = 0; x < numCols; x++) {
+        g2.setTransform(transform);
+        g2.translate(left + (x + 0.5) * cellWidth + colFontSize * 0.35,
+            bottom + lineHeight * 0.25);
+        g2.rotate(Math.PI / 2);
+        g2.drawString(colNames[colTree.leaves[x]], 0f, 0f);
+      }
+      g2.setTransform(transform);
+    }
+
+    drawKey(g2, left * 0.1, top * 0.2, left * 0.8, top * 0.3);
+  }
+
+  /**
+   * Color key with the range of the values
+   */
+  private void drawKey(Graphics2D g2, double x, double y, double width, double height) {
+    final int steps = 256;
+    final BufferedImage key = new BufferedImage(steps, 1, BufferedImage.TYPE_INT_RGB);
+    for (int i = 0; i < steps; i++) {
+      key.setRGB(i, 0, getColor(min + (max - min) * i / (steps - 1)));
+    }
+    g2.drawImage(key, new AffineTransform(width / steps, 0, 0, height, x, y), null);
+    g2.setColor(Color.BLACK);
+    g2.draw(new Rectangle2D.Double(x, y, width, height));
+
+    final float fontSize = (float) Math.min(BASE_FONT_SIZE, height);
+    g2.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont(fontSize));
+    final FontMetrics metrics = g2.getFontMetrics();
+    final String minLabel = String.format("%.2g", min);
+    final String maxLabel = String.format("%.2g", max);
+    final float labelY = (float) (y + height + fontSize * 1.1);
+    g2.drawString(minLabel, (float) x, labelY);
+    g2.drawString(maxLabel, (float) (x + width - metrics.stringWidth(maxLabel)), labelY);
+    g2.drawString("Color key", (float) x, (float) (y - fontSize * 0.4));
+  }
+
+  /**
+   * Dendrogram as one path
+   *
+   * @param start position of the first leaf
+   * @param leafSize distance between two leaves
+   * @param base position of height 0
+   * @param size length of the maximum height, negative to grow to the left or top
+   * @param horizontal leaves from top to bottom and heights along the x axis
+   */
+  private static Path2D dendrogramPath(Dendrogram tree, double start, double leafSize,
+      double base, double size, boolean horizontal) {
+    final Path2D path = new Path2D.Double();
+    final int numMerges = tree.getNumberOfMerges();
+    final double maxHeight = tree.getMaxHeight();
+    if (numMerges == 0 || maxHeight <= 0) {
+      return path;
+    }
+
+    // positions of the leaves and merges
+    final double[] position = new double[tree.numItems + numMerges];
+    final double[] nodeHeight = new double[tree.numItems + numMerges];
+    for (int i = 0; i < tree.leaves.length; i++) {
+      position[tree.leaves[i]] = start + (i + 0.5) * leafSize;
+    }
+    for (int m = 0; m < numMerges; m++) {
+      final int node = tree.numItems + m;
+      final int left = tree.left[m];
+      final int right = tree.right[m];
+      position[node] = (position[left] + position[right]) / 2;
+      nodeHeight[node] = base + size * tree.heights[m] / maxHeight;
+
+      final double h = nodeHeight[node];
+      final double hLeft = left < tree.numItems ? base : nodeHeight[left];
+      final double hRight = right < tree.numItems ? base : nodeHeight[right];
+      if (horizontal) {
+        path.moveTo(hLeft, position[left]);
+        path.lineTo(h, position[left]);
+        path.lineTo(h, position[right]);
+        path.lineTo(hRight, position[right]);
+      } else {
+        path.moveTo(position[left], hLeft);
+        path.lineTo(position[left], h);
+        path.lineTo(position[right], h);
+        path.lineTo(position[right], hRight);
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Blue for negative, white for 0 and red for positive values, scaled to the range of the values
+   */
+  private int getColor(double value) {
+    if (!Double.isFinite(value)) {
+      return MISSING_COLOR.getRGB();
+    }
+    final double fraction;
+    if (value < 0) {
+      fraction = min < 0 ? value / min : 0;
+      final int c = (int) Math.round(255 * (1 - fraction));
+      return 0xff000000 | c << 16 | c << 8 | 0xff;
+    }
+    fraction = max > 0 ? value / max : 0;
+    final int c = (int) Math.round(255 * (1 - fraction));
+    return 0xffff0000 | c << 8 | c;
+  }
+}
@@ -21,10 +21,13 @@ package io.github.mzmine.modules.dataanalysis.heatmaps;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.modules.dataanalysis.heatmaps.HeatMapClustering.Dendrogram;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.math.MathException;
@@ -52,7 +55,7 @@ public class HeatMapTask extends AbstractTask {
   private final MZmineProject project;
   private final REngineType rEngineType;
   private final String outputType;
-  private final boolean log, rcontrol, scale, plegend, area, onlyIdentified;
+  private final boolean log, rcontrol, scale, plegend, area, onlyIdentified, javaImplementation;
   private final int height, width, columnMargin, rowMargin, starSize;
   private final File outputFile;
   private double[][] newFeatureList;
@@ -87,6 +90,7 @@ public class HeatMapTask extends AbstractTask {
     columnMargin = parameters.getParameter(HeatMapParameters.columnMargin).getValue();
     rowMargin = parameters.getParameter(HeatMapParameters.rowMargin).getValue();
     starSize = parameters.getParameter(HeatMapParameters.star).getValue();
+    javaImplementation = parameters.getParameter(HeatMapParameters.javaImplementation).getValue();
 
   }
 
@@ -131,6 +135,11 @@ public class HeatMapTask extends AbstractTask {
       return;
     }
 
+    if (javaImplementation) {
+      writeHeatMap();
+      return;
+    }
+
     try {
 
       // Load gplots library
@@ -298,6 +307,73 @@ public class HeatMapTask extends AbstractTask {
     }
   }
 
+  /**
+   * Clusters and draws the heat map in Java, without R.
+   */
+  private void writeHeatMap() {
+
+    if (outputType.contains("fig")) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("The fig format is only supported by the R heat map.");
+      return;
+    }
+    if (outputType.contains("png") && (height < 500 || width < 500)) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Figure height or width is too small. " + "Minimun height and width is 500.");
+      return;
+    }
+
+    try {
+      // Cluster the rows, infinite values are missing like NA in R
+      final int numColumns = newFeatureList.length;
+      final int numRows = newFeatureList[0].length;
+      final double[][] rows = new double[numRows][numColumns];
+      for (int column = 0; column < numColumns; column++) {
+        for (int row = 0; row < numRows; row++) {
+          final double value = newFeatureList[column][row];
+          rows[row][column] = Double.isFinite(value) ? value : Double.NaN;
+        }
+      }
+      finishedPercentage = 0.2;
+
+      final Dendrogram rowTree = HeatMapClustering.cluster(rows, this::isCanceled);
+      if (rowTree == null) {
+        return;
+      }
+      finishedPercentage = 0.7;
+
+      // Cluster the columns of the rows that were not removed
+      final double[][] columns = new double[numColumns][rowTree.leaves.length];
+      for (int column = 0; column < numColumns; column++) {
+        for (int i = 0; i < rowTree.leaves.length; i++) {
+          columns[column][i] = rows[rowTree.leaves[i]][column];
+        }
+      }
+      final Dendrogram columnTree = HeatMapClustering.cluster(columns, this::isCanceled);
+      if (columnTree == null) {
+        return;
+      }
+      if (rowTree.leaves.length == 0 || columnTree.leaves.length == 0) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage("The data for heat map is empty.");
+        return;
+      }
+      finishedPercentage = 0.8;
+
+      new HeatMapRenderer(newFeatureList, rowNames, colNames, plegend ? pValueMatrix : null,
+          rowTree, columnTree, columnMargin, rowMargin, starSize)
+              .writeToFile(outputFile, outputType, width, height);
+
+      finishedPercentage = 1.0;
+      setStatus(TaskStatus.FINISHED);
+
+    } catch (IOException | IllegalArgumentException e) {
+      logger.log(Level.WARNING, "Error during heatmap generation", e);
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("'Unknown error' during heatmap generation. \n" + e.getMessage());
+    }
+  }
+
   private double[][] modifySimpleDataset(UserParameter<?, ?> selectedParameter,
       String referenceGroup) {
 
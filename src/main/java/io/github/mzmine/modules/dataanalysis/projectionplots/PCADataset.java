@@ -31,9 +31,8 @@ import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FeatureMeasurementType;
-import jmprojection.PCA;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
+import io.github.mzmine.util.maths.multivariate.MatrixAlgorithm;
+import io.github.mzmine.util.maths.multivariate.PrincipalComponentAnalysis;
 
 public class PCADataset extends AbstractXYDataset implements ProjectionPlotDataset {
 
@@ -63,7 +62,7 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
   private TaskStatus status = TaskStatus.WAITING;
   private String errorMessage;
 
-  private ProjectionStatus projectionStatus;
+  private volatile PrincipalComponentAnalysis projection;
 
   public PCADataset(MZmineProject project, ParameterSet parameters) {
 
@@ -244,24 +243,16 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
     if (yAxisPC > numComponents)
       numComponents = yAxisPC;
 
-    // Scale data and do PCA
-    Preprocess.scaleToUnityVariance(rawData);
+    // Scale data (NaN values are replaced with 0.0) and do PCA
+    MatrixAlgorithm.scaleToUnityVariance(rawData);
 
-    // Replace NaN values with 0.0
-    for (int i = 0; i < rawData.length; i++) {
-      for (int j = 0; j < rawData[i].length; j++) {
-        if (Double.isNaN(rawData[i][j]))
-          rawData[i][j] = 0.0;
-      }
-    }
-
-    PCA pcaProj = new PCA(rawData, numComponents);
+    PrincipalComponentAnalysis pcaProj = new PrincipalComponentAnalysis(numComponents, 1);
 
-    projectionStatus = pcaProj.getProjectionStatus();
+    projection = pcaProj;
 
-    double[][] result = pcaProj.getState();
+    double[][] result = pcaProj.project(rawData);
 
-    if (status == TaskStatus.CANCELED)
+    if (status == TaskStatus.CANCELED || result == null)
       return;
 
     component1Coords = result[xAxisPC - 1];
@@ -277,8 +268,8 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
 
   @Override
   public void cancel() {
-    if (projectionStatus != null)
-      projectionStatus.cancel();
+    if (projection != null)
+      projection.cancel();
     status = TaskStatus.CANCELED;
   }
 
@@ -299,9 +290,9 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null)
+    if (projection == null)
       return 0;
-    return projectionStatus.getFinishedPercentage();
+    return projection.getFinishedPercentage();
   }
 
 }
@@ -31,9 +31,8 @@ import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FeatureMeasurementType;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
-import jmprojection.Sammons;
+import io.github.mzmine.util.maths.multivariate.MatrixAlgorithm;
+import io.github.mzmine.util.maths.multivariate.SammonsMapping;
 
 public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotDataset {
 
@@ -63,7 +62,7 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
   private TaskStatus status = TaskStatus.WAITING;
   private String errorMessage;
 
-  private ProjectionStatus projectionStatus;
+  private volatile SammonsMapping projection;
 
   public SammonsDataset(MZmineProject project, ParameterSet parameters) {
 
@@ -242,19 +241,14 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
       numComponents = yAxisDimension;
 
     // Scale data and do Sammon's mapping
-    Preprocess.scaleToUnityVariance(rawData);
-    Sammons sammonsProj = new Sammons(rawData);
+    MatrixAlgorithm.scaleToUnityVariance(rawData);
+    SammonsMapping sammonsProj = new SammonsMapping(numComponents, 100);
 
-    projectionStatus = sammonsProj.getProjectionStatus();
+    projection = sammonsProj;
 
-    sammonsProj.iterate(100);
+    double[][] result = sammonsProj.project(rawData);
 
-    if (status == TaskStatus.CANCELED)
-      return;
-
-    double[][] result = sammonsProj.getState();
-
-    if (status == TaskStatus.CANCELED)
+    if (status == TaskStatus.CANCELED || result == null)
       return;
 
     component1Coords = result[xAxisDimension - 1];
@@ -270,8 +264,8 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
 
   @Override
   public void cancel() {
-    if (projectionStatus != null)
-      projectionStatus.cancel();
+    if (projection != null)
+      projection.cancel();
     setStatus(TaskStatus.CANCELED);
   }
 
@@ -292,9 +286,9 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null)
+    if (projection == null)
       return 0;
-    return projectionStatus.getFinishedPercentage();
+    return projection.getFinishedPercentage();
   }
 
   /**
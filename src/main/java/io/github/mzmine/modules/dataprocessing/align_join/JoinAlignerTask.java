@@ -39,6 +39,7 @@ import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreCal
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.project.impl.MassListCache;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.RangeUtils;
@@ -235,19 +236,20 @@ public class JoinAlignerTask extends AbstractTask {
             // get data points of mass list of the representative
             // scans
             if (msLevel == 1) {
-              rowDPs =
-                  row.getBestFeature().getRepresentativeScan().getMassList(massList).getDataPoints();
-              candidateDPs = candidate.getBestFeature().getRepresentativeScan().getMassList(massList)
-                  .getDataPoints();
+              rowDPs = MassListCache.getInstance()
+                  .getDataPoints(row.getBestFeature().getRepresentativeScan(), massList);
+              candidateDPs = MassListCache.getInstance()
+                  .getDataPoints(candidate.getBestFeature().getRepresentativeScan(), massList);
             }
 
             // get data points of mass list of the best
             // fragmentation scans
             if (msLevel == 2) {
               if (row.getBestFragmentation() != null && candidate.getBestFragmentation() != null) {
-                rowDPs = row.getBestFragmentation().getMassList(massList).getDataPoints();
-                candidateDPs =
-                    candidate.getBestFragmentation().getMassList(massList).getDataPoints();
+                rowDPs = MassListCache.getInstance().getDataPoints(row.getBestFragmentation(),
+                    massList);
+                candidateDPs = MassListCache.getInstance()
+                    .getDataPoints(candidate.getBestFragmentation(), massList);
               } else
                 continue;
             }
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.SortingDirection;
+import io.github.mzmine.util.SortingProperty;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The data points of one m/z slab [lowerMz, upperMz) of a raw data file and the chromatograms
+ * built from them. The slab borders are chosen by {@link ModularADAPChromatogramBuilderTask} such
+ * that no chromatogram range can reach into another slab, so the slabs can be built independently
+ * and give the same chromatograms as building all data points at once.
+ */
+class ADAPChromatogramSlab {
+
+  private final double lowerMz;
+  private final double upperMz;
+
+  private List<ExpandedDataPoint> dataPoints = new ArrayList<ExpandedDataPoint>();
+
+  ADAPChromatogramSlab(double lowerMz, double upperMz) {
+    this.lowerMz = lowerMz;
+    this.upperMz = upperMz;
+  }
+
+  double getLowerMz() {
+    return lowerMz;
+  }
+
+  double getUpperMz() {
+    return upperMz;
+  }
+
+  /**
+   * Data points have to be added in the order of the scans and of the mass lists
+   */
+  void addDataPoint(ExpandedDataPoint dataPoint) {
+    dataPoints.add(dataPoint);
+  }
+
+  int getNumberOfDataPoints() {
+    return dataPoints.size();
+  }
+
+  /**
+   * Connects the data points of this slab in the order of descending intensity and releases them.
+   *
+   * @return the chromatograms by ascending m/z range or null if canceled
+   */
+  List<ADAPChromatogram> buildChromatograms(RawDataFile dataFile, int allScanNumbers[],
+      MZTolerance mzTolerance, double minIntensityForStartChrom, BooleanSupplier isCanceled) {
+
+    RangeSet<Double> rangeSet = TreeRangeSet.create();
+    // After each range is created it does not change so we can map the ranges (which will be
+    // unique) to the chromatograms
+    HashMap<Range<Double>, ADAPChromatogram> rangeToChromMap =
+        new HashMap<Range<Double>, ADAPChromatogram>();
+
+    ExpandedDataPoint[] simpleAllMzVals = dataPoints.toArray(new ExpandedDataPoint[0]);
+    dataPoints = null;
+
+    // sort data points by intensity, the sort is stable so equal data points keep the scan order
+    Arrays.sort(simpleAllMzVals,
+        new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
+
+    for (ExpandedDataPoint mzFeature : simpleAllMzVals) {
+
+      if (isCanceled.getAsBoolean()) {
+        return null;
+      }
+
+      Range<Double> containsPointRange = rangeSet.rangeContaining(mzFeature.getMZ());
+
+      Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
+      if (containsPointRange == null) {
+        // skip it entierly if the intensity is not high enough
+        if (mzFeature.getIntensity() < minIntensityForStartChrom) {
+          continue;
+        }
+        // look +- mz tolerance to see if ther is a range near by.
+        // If there is use the proper boundry of that range for the
+        // new range to insure than NON OF THE RANGES OVERLAP.
+        Range<Double> plusRange = rangeSet.rangeContaining(toleranceRange.upperEndpoint());
+        Range<Double> minusRange = rangeSet.rangeContaining(toleranceRange.lowerEndpoint());
+        Double toBeLowerBound;
+        Double toBeUpperBound;
+
+        // If both of the above ranges are null then we make the new range spaning the full
+        // mz tolerance range.
+        // If one or both are not null we need to properly modify the range of the new
+        // chromatogram so that none of the points are overlapping.
+        if ((plusRange == null) && (minusRange == null)) {
+          toBeLowerBound = toleranceRange.lowerEndpoint();
+          toBeUpperBound = toleranceRange.upperEndpoint();
+        } else if ((plusRange == null) && (minusRange != null)) {
+          // the upper end point of the minus range will be the lower
+          // range of the new one
+          toBeLowerBound = minusRange.upperEndpoint();
+          toBeUpperBound = toleranceRange.upperEndpoint();
+
+        } else if ((minusRange == null) && (plusRange != null)) {
+          toBeLowerBound = toleranceRange.lowerEndpoint();
+          toBeUpperBound = plusRange.lowerEndpoint();
+        } else if ((minusRange != null) && (plusRange != null)) {
+          toBeLowerBound = minusRange.upperEndpoint();
+          toBeUpperBound = plusRange.lowerEndpoint();
+        } else {
+          toBeLowerBound = 0.0;
+          toBeUpperBound = 0.0;
+        }
+
+        if (toBeLowerBound < toBeUpperBound) {
+          Range<Double> newRange = Range.open(toBeLowerBound, toBeUpperBound);
+          ADAPChromatogram newChrom = new ADAPChromatogram(dataFile, allScanNumbers);
+
+          newChrom.addMzFeature(mzFeature.getScanNumber(), mzFeature);
+
+          newChrom.setHighPointMZ(mzFeature.getMZ());
+
+          rangeToChromMap.put(newRange, newChrom);
+          // also need to put it in the set -> this is where the range can be efficiently found.
+
+          rangeSet.add(newRange);
+        } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
+          ADAPChromatogram curChrom = rangeToChromMap.get(plusRange);
+          curChrom.addMzFeature(mzFeature.getScanNumber(), mzFeature);
+        } else {
+          throw new IllegalStateException(String.format("Incorrect range [%f, %f] for m/z %f",
+              toBeLowerBound, toBeUpperBound, mzFeature.getMZ()));
+        }
+
+      } else {
+        // In this case we do not need to update the rangeSet
+
+        ADAPChromatogram curChrom = rangeToChromMap.get(containsPointRange);
+
+        curChrom.addMzFeature(mzFeature.getScanNumber(), mzFeature);
+      }
+    }
+
+    Set<Range<Double>> ranges = rangeSet.asRanges();
+    List<ADAPChromatogram> chromatograms = new ArrayList<ADAPChromatogram>(ranges.size());
+    for (Range<Double> range : ranges) {
+      chromatograms.add(rangeToChromMap.get(range));
+    }
+    return chromatograms;
+  }
+
+}
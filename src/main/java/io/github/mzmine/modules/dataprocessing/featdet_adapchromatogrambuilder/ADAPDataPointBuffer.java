@@ -0,0 +1,151 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Data points (scan number, m/z and intensity) in the order in which they were added. The points
+ * are kept in primitive arrays up to a limit and are written to a temporary file beyond it, so the
+ * mass lists of a raw data file only have to be read once, even if the data points of all scans do
+ * not fit into the memory.
+ */
+class ADAPDataPointBuffer implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final int maxInMemory;
+
+  private int[] scanNumbers = new int[0];
+  private double[] mzValues = new double[0];
+  private double[] intensities = new double[0];
+  private int numInMemory = 0;
+
+  // only once the limit is exceeded
+  private File file;
+  private DataOutputStream out;
+  private long size = 0;
+
+  /**
+   * @param maxInMemory maximum number of data points that are kept in memory, 0 to write all data
+   *                    points to the file
+   */
+  ADAPDataPointBuffer(int maxInMemory) {
+    this.maxInMemory = maxInMemory;
+  }
+
+  void add(int scanNumber, double mz, double intensity) throws IOException {
+    size++;
+    if (out == null && numInMemory < maxInMemory) {
+      if (numInMemory == scanNumbers.length) {
+        final int capacity = (int) Math.min(maxInMemory, Math.max(1024L, 2L * numInMemory));
+        scanNumbers = Arrays.copyOf(scanNumbers, capacity);
+        mzValues = Arrays.copyOf(mzValues, capacity);
+        intensities = Arrays.copyOf(intensities, capacity);
+      }
+      scanNumbers[numInMemory] = scanNumber;
+      mzValues[numInMemory] = mz;
+      intensities[numInMemory] = intensity;
+      numInMemory++;
+      return;
+    }
+
+    if (out == null) {
+      spill();
+    }
+    write(scanNumber, mz, intensity);
+  }
+
+  /**
+   * Moves the data points in memory to a new temporary file
+   */
+  private void spill() throws IOException {
+    file = File.createTempFile("mzmine", ".points");
+    file.deleteOnExit();
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    for (int i = 0; i < numInMemory; i++) {
+      write(scanNumbers[i], mzValues[i], intensities[i]);
+    }
+    scanNumbers = new int[0];
+    mzValues = new double[0];
+    intensities = new double[0];
+    numInMemory = 0;
+  }
+
+  private void write(int scanNumber, double mz, double intensity) throws IOException {
+    out.writeInt(scanNumber);
+    out.writeDouble(mz);
+    out.writeDouble(intensity);
+  }
+
+  long size() {
+    return size;
+  }
+
+  /**
+   * Passes all data points to the consumer in the order in which they were added
+   */
+  void forEach(DataPointConsumer consumer) throws IOException {
+    if (out == null) {
+      for (int i = 0; i < numInMemory; i++) {
+        consumer.accept(scanNumbers[i], mzValues[i], intensities[i]);
+      }
+      return;
+    }
+
+    out.flush();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+      for (long i = 0; i < size; i++) {
+        consumer.accept(in.readInt(), in.readDouble(), in.readDouble());
+      }
+    }
+  }
+
+  /**
+   * Releases the data points and deletes the temporary file
+   */
+  @Override
+  public void close() throws IOException {
+    scanNumbers = new int[0];
+    mzValues = new double[0];
+    intensities = new double[0];
+    numInMemory = 0;
+    if (out != null) {
+      out.close();
+      out = null;
+      file.delete();
+    }
+  }
+
+  @FunctionalInterface
+  interface DataPointConsumer {
+
+    void accept(int scanNumber, double mz, double intensity) throws IOException;
+  }
+}
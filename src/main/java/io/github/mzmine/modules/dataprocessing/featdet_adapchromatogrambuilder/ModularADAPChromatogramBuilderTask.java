@@ -22,16 +22,14 @@ package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
 
 
 import io.github.mzmine.util.FeatureConvertors;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeRangeSet;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MassList;
@@ -46,7 +44,6 @@ import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.DataTypeUtils;
 import io.github.mzmine.util.ADAPChromatogramSorter;
 import io.github.mzmine.util.SortingDirection;
@@ -55,10 +52,12 @@ import io.github.mzmine.util.SortingProperty;
 
 public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
-  RangeSet<Double> rangeSet = TreeRangeSet.create();
-  // After each range is created it does not change so we can map the ranges (which will be uniqe)
-  // to the chromatograms
-  HashMap<Range, ADAPChromatogram> rangeToChromMap = new HashMap<Range, ADAPChromatogram>();
+  // target number of data points per m/z slab and per pass over the mass lists
+  private static final int SLAB_SIZE = 1 << 21;
+  private static final long WAVE_SIZE = 1 << 23;
+  // resolution of the search for gaps between slabs
+  private static final int MAX_BINS = 1 << 22;
+  private static final double MIN_BIN_WIDTH = 1e-5;
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
@@ -134,6 +133,24 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     return dataFile;
   }
 
+  private synchronized void addProgress(double value) {
+    progress += value;
+  }
+
+  private static int toBin(double mz, double mzMin, double binWidth, int numBins) {
+    final int bin = (int) ((mz - mzMin) / binWidth);
+    return Math.max(0, Math.min(numBins - 1, bin));
+  }
+
+  /**
+   * @param upperMzs the exclusive upper m/z of every slab
+   * @return the index of the slab of the m/z value
+   */
+  private static int findSlab(double[] upperMzs, double mz) {
+    final int slab = Arrays.binarySearch(upperMzs, mz);
+    return slab >= 0 ? slab + 1 : -slab - 1;
+  }
+
   /**
    * @see Runnable#run()
    */
@@ -187,16 +204,60 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
               + "Please, set the scan filter parameter to a specific MS level");
     }
 
-    // make a list of all the data points
-    // sort data points by intensity
-    // loop through list
-    // add data point to chromatogrm or make new one
-    // update mz avg and other stuff
-    //
+    // The m/z axis is split into slabs that are built in parallel. Slabs are only cut in m/z gaps
+    // without any data point that can start a chromatogram, so no chromatogram range can reach
+    // into the next slab and the result is the same as building all data points at once. The mass
+    // lists are read once, the data points are built for a few slabs at a time (a wave), which
+    // bounds the memory. The data points of the later waves wait in temporary files.
+    Range<Double> mzRange = null;
+    for (Scan scan : scans) {
+      Range<Double> scanMzRange = scan.getDataPointMZRange();
+      if (scanMzRange == null) {
+        scanMzRange = scan.getScanningMZRange();
+      }
+      mzRange = mzRange == null ? scanMzRange : mzRange.span(scanMzRange);
+    }
 
+    final double mzMin = mzRange.lowerEndpoint();
+    final double span = mzRange.upperEndpoint() - mzMin;
+    final double binWidth = Math.max(MIN_BIN_WIDTH,
+        Math.max(mzTolerance.getMzToleranceForMass(mzMin) / 2, span / MAX_BINS));
+    final int numBins = (int) Math.min(MAX_BINS, span / binWidth + 1);
+
+    final List<ADAPDataPointBuffer> buffers = new ArrayList<ADAPDataPointBuffer>();
+    try {
+      buildChromatograms(mzMin, binWidth, numBins, allScanNumbers, buffers);
+    } catch (IOException e) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Could not write the data points of " + dataFile
+          + " to a temporary file: " + e.getMessage());
+      return;
+    } finally {
+      for (ADAPDataPointBuffer buffer : buffers) {
+        try {
+          buffer.close();
+        } catch (IOException e) {
+          logger.warning("Could not delete a temporary file: " + e.getMessage());
+        }
+      }
+    }
+  }
 
-    // make a list of all the data points
-    List<ExpandedDataPoint> allMzValues = new ArrayList<ExpandedDataPoint>();
+  /**
+   * Reads the data points of all scans once, builds the chromatograms slab by slab and adds the
+   * new feature list to the project
+   *
+   * @param buffers receives the data point buffers, which have to be closed by the caller
+   */
+  private void buildChromatograms(double mzMin, double binWidth, int numBins,
+      int[] allScanNumbers, List<ADAPDataPointBuffer> buffers) throws IOException {
+    // count the data points and the possible chromatogram starts per m/z bin, keep the points in
+    // the order of the scans
+    final int[] pointsPerBin = new int[numBins];
+    final BitSet startBins = new BitSet(numBins);
+    long totalPoints = 0;
+    final ADAPDataPointBuffer points = new ADAPDataPointBuffer((int) WAVE_SIZE);
+    buffers.add(points);
 
     for (Scan scan : scans) {
       if (isCanceled())
@@ -220,162 +281,133 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
       }
 
       for (DataPoint mzFeature : mzValues) {
-        ExpandedDataPoint curDatP = new ExpandedDataPoint(mzFeature, scan.getScanNumber());
-        allMzValues.add(curDatP);
-        // corespondingScanNum.add(scan.getScanNumber());
+        if (Double.isNaN(mzFeature.getMZ()) || Double.isNaN(mzFeature.getIntensity())) {
+          continue;
+        }
+        final int bin = toBin(mzFeature.getMZ(), mzMin, binWidth, numBins);
+        pointsPerBin[bin]++;
+        if (mzFeature.getIntensity() >= minIntensityForStartChrom) {
+          startBins.set(bin);
+        }
+        points.add(scan.getScanNumber(), mzFeature.getMZ(), mzFeature.getIntensity());
+        totalPoints++;
       }
     }
-
-    // Integer[] simpleCorespondingScanNums = new Integer[corespondingScanNum.size()];
-    // corespondingScanNum.toArray(simpleCorespondingScanNums );
-
-    ExpandedDataPoint[] simpleAllMzVals = new ExpandedDataPoint[allMzValues.size()];
-    allMzValues.toArray(simpleAllMzVals);
-
-    // sort data points by intensity
-    Arrays.sort(simpleAllMzVals,
-        new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
-
-    // Set<Chromatogram> buildingChromatograms;
-    // buildingChromatograms = new LinkedHashSet<Chromatogram>();
-
-    double maxIntensity = simpleAllMzVals[0].getIntensity();
-
-    // count starts at 1 since we already have added one with a single point.
-
-    // Stopwatch stopwatch = Stopwatch.createUnstarted();
-    // stopwatch2 = Stopwatch.createUnstarted();
-    // Stopwatch stopwatch3 = Stopwatch.createUnstarted();
-
-
-    progress = 0.0;
-    double progressStep = (simpleAllMzVals.length > 0) ? 0.5 / simpleAllMzVals.length : 0.0;
-
-    for (ExpandedDataPoint mzFeature : simpleAllMzVals) {
-
-      progress += progressStep;
-
-      if (isCanceled()) {
-        return;
-      }
-
-      if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double.isNaN(mzFeature.getIntensity())) {
+    progress = 0.1;
+
+    // cut the slabs, the tolerance range of a chromatogram start reaches at most one tolerance into
+    // the gap, the ranges of its neighbours one more
+    final List<ADAPChromatogramSlab> slabs = new ArrayList<ADAPChromatogramSlab>();
+    final List<Long> slabSizes = new ArrayList<Long>();
+    double lowerMz = Double.NEGATIVE_INFINITY;
+    long slabPoints = 0;
+    for (int bin = 1; bin < numBins; bin++) {
+      slabPoints += pointsPerBin[bin - 1];
+      if (slabPoints < SLAB_SIZE) {
         continue;
       }
+      final double edge = mzMin + bin * binWidth;
+      final double reach = 3 * mzTolerance.getMzToleranceForMass(edge) + binWidth;
+      final int nextStart = startBins.nextSetBit(toBin(edge - reach, mzMin, binWidth, numBins));
+      if (nextStart == -1 || nextStart > toBin(edge + reach, mzMin, binWidth, numBins)) {
+        slabs.add(new ADAPChromatogramSlab(lowerMz, edge));
+        slabSizes.add(slabPoints);
+        lowerMz = edge;
+        slabPoints = 0;
+      }
+    }
+    slabs.add(new ADAPChromatogramSlab(lowerMz, Double.POSITIVE_INFINITY));
+    slabSizes.add(totalPoints - slabSizes.stream().mapToLong(Long::longValue).sum());
+    final double upperMzs[] =
+        slabs.stream().mapToDouble(ADAPChromatogramSlab::getUpperMz).toArray();
+
+    logger.finest(() -> "Building chromatograms of " + dataFile + " in " + slabs.size()
+        + " m/z slabs");
+
+    // combine slabs up to the wave size, larger slabs are built alone
+    final int[] waveOfSlab = new int[slabs.size()];
+    final List<Integer> waveStarts = new ArrayList<Integer>();
+    long wavePoints = 0;
+    for (int slab = 0; slab < slabs.size(); slab++) {
+      if (slab == 0 || wavePoints + slabSizes.get(slab) > WAVE_SIZE) {
+        waveStarts.add(slab);
+        wavePoints = 0;
+      }
+      wavePoints += slabSizes.get(slab);
+      waveOfSlab[slab] = waveStarts.size() - 1;
+    }
+    waveStarts.add(slabs.size());
 
-      //////////////////////////////////////////////////
-
-      Range<Double> containsPointRange = rangeSet.rangeContaining(mzFeature.getMZ());
-
-      Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
-      if (containsPointRange == null) {
-        // skip it entierly if the intensity is not high enough
-        if (mzFeature.getIntensity() < minIntensityForStartChrom) {
-          continue;
-        }
-        // look +- mz tolerance to see if ther is a range near by.
-        // If there is use the proper boundry of that range for the
-        // new range to insure than NON OF THE RANGES OVERLAP.
-        Range<Double> plusRange = rangeSet.rangeContaining(toleranceRange.upperEndpoint());
-        Range<Double> minusRange = rangeSet.rangeContaining(toleranceRange.lowerEndpoint());
-        Double toBeLowerBound;
-        Double toBeUpperBound;
-
-        double cur_max_testing_mz = mzFeature.getMZ();
-
-        // If both of the above ranges are null then we make the new range spaning the full
-        // mz tolerance range.
-        // If one or both are not null we need to properly modify the range of the new
-        // chromatogram so that none of the points are overlapping.
-        if ((plusRange == null) && (minusRange == null)) {
-          toBeLowerBound = toleranceRange.lowerEndpoint();
-          toBeUpperBound = toleranceRange.upperEndpoint();
-        } else if ((plusRange == null) && (minusRange != null)) {
-          // the upper end point of the minus range will be the lower
-          // range of the new one
-          toBeLowerBound = minusRange.upperEndpoint();
-          toBeUpperBound = toleranceRange.upperEndpoint();
-
-        } else if ((minusRange == null) && (plusRange != null)) {
-          toBeLowerBound = toleranceRange.lowerEndpoint();
-          toBeUpperBound = plusRange.lowerEndpoint();
-          // double tmp_this = plusRange.upperEndpoint();
-          // System.out.println("tmp_this");
-        } else if ((minusRange != null) && (plusRange != null)) {
-          toBeLowerBound = minusRange.upperEndpoint();
-          toBeUpperBound = plusRange.lowerEndpoint();
-        } else {
-          toBeLowerBound = 0.0;
-          toBeUpperBound = 0.0;
-        }
-
-        if (toBeLowerBound < toBeUpperBound) {
-          Range<Double> newRange = Range.open(toBeLowerBound, toBeUpperBound);
-          ADAPChromatogram newChrom = new ADAPChromatogram(dataFile, allScanNumbers);
-
-          newChrom.addMzFeature(mzFeature.getScanNumber(), mzFeature);
-
-          newChrom.setHighPointMZ(mzFeature.getMZ());
-
-
-          rangeToChromMap.put(newRange, newChrom);
-          // also need to put it in the set -> this is where the range can be efficiently found.
-
-          rangeSet.add(newRange);
-        } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
-          ADAPChromatogram curChrom = rangeToChromMap.get(plusRange);
-          curChrom.addMzFeature(mzFeature.getScanNumber(), mzFeature);
-        } else
-          throw new IllegalStateException(String.format("Incorrect range [%f, %f] for m/z %f",
-              toBeLowerBound, toBeUpperBound, mzFeature.getMZ()));
-
+    // send the data points to their slabs, the first wave is built from memory
+    final ADAPDataPointBuffer[] waveBuffers = new ADAPDataPointBuffer[waveStarts.size() - 1];
+    for (int wave = 1; wave < waveBuffers.length; wave++) {
+      waveBuffers[wave] = new ADAPDataPointBuffer(0);
+      buffers.add(waveBuffers[wave]);
+    }
+    points.forEach((scanNumber, mz, intensity) -> {
+      final int slab = findSlab(upperMzs, mz);
+      final int wave = waveOfSlab[slab];
+      if (wave == 0) {
+        slabs.get(slab).addDataPoint(new ExpandedDataPoint(mz, intensity, scanNumber));
       } else {
-        // In this case we do not need to update the rangeSet
+        waveBuffers[wave].add(scanNumber, mz, intensity);
+      }
+    });
+    points.close();
 
-        ADAPChromatogram curChrom = rangeToChromMap.get(containsPointRange);
+    List<ADAPChromatogram> buildingChromatograms = new ArrayList<ADAPChromatogram>();
+    final double progressPerPoint = totalPoints > 0 ? 0.9 / totalPoints : 0.0;
 
-        curChrom.addMzFeature(mzFeature.getScanNumber(), mzFeature);
+    for (int wave = 0; wave < waveBuffers.length; wave++) {
+      if (isCanceled())
+        return;
 
-        // update the entry in the map
-        rangeToChromMap.put(containsPointRange, curChrom);
+      final int firstSlab = waveStarts.get(wave);
+      final int lastSlab = waveStarts.get(wave + 1);
+      if (wave > 0) {
+        waveBuffers[wave].forEach((scanNumber, mz, intensity) -> slabs
+            .get(findSlab(upperMzs, mz))
+            .addDataPoint(new ExpandedDataPoint(mz, intensity, scanNumber)));
+        waveBuffers[wave].close();
       }
-    }
-
-    // System.out.println("search chroms (ms): " + stopwatch.elapsed(TimeUnit.MILLISECONDS));
-    // System.out.println("making new chrom (ms): " + stopwatch2.elapsed(TimeUnit.MILLISECONDS));
 
-    // finish chromatograms
-    Set<Range<Double>> ranges = rangeSet.asRanges();
-    Iterator<Range<Double>> RangeIterator = ranges.iterator();
-
-    List<ADAPChromatogram> buildingChromatograms = new ArrayList<ADAPChromatogram>();
+      // build and finish the chromatograms of all slabs in parallel, keep the order of the slabs
+      List<List<ADAPChromatogram>> slabChromatograms = slabs.subList(firstSlab, lastSlab)
+          .parallelStream().map(slab -> {
+            final int slabSize = slab.getNumberOfDataPoints();
+            List<ADAPChromatogram> chromatograms = slab.buildChromatograms(dataFile,
+                allScanNumbers, mzTolerance, minIntensityForStartChrom, this::isCanceled);
+            if (chromatograms == null) {
+              return null;
+            }
+
+            List<ADAPChromatogram> finished = new ArrayList<ADAPChromatogram>();
+            for (ADAPChromatogram chromatogram : chromatograms) {
+              chromatogram.finishChromatogram();
+
+              // And remove chromatograms who dont have a certian number of continous points above
+              // the IntensityThresh2 level.
+              double numberOfContinuousPointsAboveNoise =
+                  chromatogram.findNumberOfContinuousPointsAboveNoise(IntensityThresh2);
+              if (numberOfContinuousPointsAboveNoise >= minimumScanSpan) {
+                finished.add(chromatogram);
+              }
+            }
+            logger.finest(() -> "Built " + finished.size() + " chromatograms of " + slabSize
+                + " data points in m/z slab [" + slab.getLowerMz() + ", " + slab.getUpperMz()
+                + ")");
+            addProgress(slabSize * progressPerPoint);
+            return finished;
+          }).collect(Collectors.toList());
 
-    progressStep = (ranges.size() > 0) ? 0.5 / ranges.size() : 0.0;
-    while (RangeIterator.hasNext()) {
       if (isCanceled()) {
         return;
       }
-
-      progress += progressStep;
-
-      Range<Double> curRangeKey = RangeIterator.next();
-
-      ADAPChromatogram chromatogram = rangeToChromMap.get(curRangeKey);
-
-      chromatogram.finishChromatogram();
-
-      // And remove chromatograms who dont have a certian number of continous points above the
-      // IntensityThresh2 level.
-      double numberOfContinuousPointsAboveNoise =
-          chromatogram.findNumberOfContinuousPointsAboveNoise(IntensityThresh2);
-      if (numberOfContinuousPointsAboveNoise < minimumScanSpan) {
-        // System.out.println("skipping chromatogram because it does not meet the min point scan
-        // requirements");
-        continue;
-      } else {
-        buildingChromatograms.add(chromatogram);
+      slabChromatograms.forEach(buildingChromatograms::addAll);
+      // release the slabs of this wave
+      for (int i = firstSlab; i < lastSlab; i++) {
+        slabs.set(i, null);
       }
-
     }
 
     ADAPChromatogram[] chromatograms = buildingChromatograms.toArray(new ADAPChromatogram[0]);
@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import com.google.common.collect.Range;
 
@@ -67,25 +68,39 @@ public class HighestDataPointConnector {
     // Set of already connected chromatograms in each iteration
     Set<Chromatogram> connectedChromatograms = new LinkedHashSet<Chromatogram>();
 
-    // TODO: these two nested cycles should be optimized for speed
-    for (DataPoint mzPeak : mzValues) {
-
-      // Search for best chromatogram, which has highest last data point
-      Chromatogram bestChromatogram = null;
+    // Index of the building chromatograms by the m/z of their last data point, rebuilt in bulk for
+    // every scan
+    TreeSet<ActiveChromatogram> chromatogramsByMz = new TreeSet<ActiveChromatogram>();
+    int order = 0;
+    for (Chromatogram chrom : buildingChromatograms) {
+      chromatogramsByMz.add(new ActiveChromatogram(chrom, order++));
+    }
 
-      for (Chromatogram testChrom : buildingChromatograms) {
+    for (DataPoint mzPeak : mzValues) {
 
-        DataPoint lastMzPeak = testChrom.getLastMzPeak();
-        Range<Double> toleranceRange = mzTolerance.getToleranceRange(lastMzPeak.getMZ());
-        if (toleranceRange.contains(mzPeak.getMZ())) {
-          if ((bestChromatogram == null) || (testChrom.getLastMzPeak()
-              .getIntensity() > bestChromatogram.getLastMzPeak().getIntensity())) {
-            bestChromatogram = testChrom;
+      // Search for best chromatogram, which has highest last data point. The tolerance of the last
+      // m/z of a chromatogram is almost the tolerance of this m/z, so all candidates are within
+      // twice the tolerance. Ties are resolved by the order of the building chromatograms.
+      final double mz = mzPeak.getMZ();
+      final double searchWidth = 2 * mzTolerance.getMzToleranceForMass(mz);
+      ActiveChromatogram best = null;
+
+      for (ActiveChromatogram test : chromatogramsByMz.subSet(
+          ActiveChromatogram.searchKey(mz - searchWidth, Integer.MIN_VALUE), true,
+          ActiveChromatogram.searchKey(mz + searchWidth, Integer.MAX_VALUE), true)) {
+
+        Range<Double> toleranceRange = mzTolerance.getToleranceRange(test.mz);
+        if (toleranceRange.contains(mz)) {
+          if ((best == null) || (test.intensity > best.intensity)
+              || (test.intensity == best.intensity && test.order < best.order)) {
+            best = test;
           }
         }
 
       }
 
+      Chromatogram bestChromatogram = best == null ? null : best.chromatogram;
+
       // If we found best chromatogram, check if it is already connected.
       // In such case, we may discard this mass and continue. If we
       // haven't found a chromatogram, we may create a new one.
@@ -100,6 +115,13 @@ public class HighestDataPointConnector {
       // Add this mzPeak to the chromatogram
       bestChromatogram.addMzPeak(scanNumber, mzPeak);
 
+      // The last data point changed, move the chromatogram in the index
+      if (best != null) {
+        chromatogramsByMz.remove(best);
+        best.update();
+        chromatogramsByMz.add(best);
+      }
+
       // Move the chromatogram to the set of connected chromatograms
       connectedChromatograms.add(bestChromatogram);
 
@@ -173,4 +195,44 @@ public class HighestDataPointConnector {
     return chromatograms;
   }
 
+  /**
+   * A building chromatogram in the m/z index of {@link #addScan(int, DataPoint[])}, sorted by the
+   * m/z of the last data point and the order of the building chromatograms
+   */
+  private static final class ActiveChromatogram implements Comparable<ActiveChromatogram> {
+
+    private final Chromatogram chromatogram;
+    private final int order;
+    private double mz;
+    private double intensity;
+
+    private ActiveChromatogram(Chromatogram chromatogram, int order) {
+      this.chromatogram = chromatogram;
+      this.order = order;
+      update();
+    }
+
+    private ActiveChromatogram(double mz, int order) {
+      this.chromatogram = null;
+      this.order = order;
+      this.mz = mz;
+    }
+
+    private static ActiveChromatogram searchKey(double mz, int order) {
+      return new ActiveChromatogram(mz, order);
+    }
+
+    private void update() {
+      DataPoint lastMzPeak = chromatogram.getLastMzPeak();
+      mz = lastMzPeak.getMZ();
+      intensity = lastMzPeak.getIntensity();
+    }
+
+    @Override
+    public int compareTo(ActiveChromatogram o) {
+      int result = Double.compare(mz, o.mz);
+      return result != 0 ? result : Integer.compare(order, o.order);
+    }
+  }
+
 }
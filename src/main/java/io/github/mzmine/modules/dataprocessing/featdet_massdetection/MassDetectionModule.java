@@ -25,12 +25,12 @@ import javax.annotation.Nonnull;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.MZmineModuleCategory;
-import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.PerFileProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
 
-public class MassDetectionModule implements MZmineProcessingModule {
+public class MassDetectionModule implements PerFileProcessingModule {
 
   private static final String MODULE_NAME = "Mass detection";
   private static final String MODULE_DESCRIPTION =
@@ -26,6 +26,7 @@ import io.github.mzmine.datamodel.impl.SimpleFeatureIdentity;
 import java.io.File;
 import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -146,24 +147,18 @@ class TargetedPeakDetectionModuleTask extends AbstractTask {
       return;
     }
 
-    // Process each scan
-    for (int scanNumber : scanNumbers) {
+    Scan scans[] = Arrays.stream(scanNumbers).mapToObj(dataFile::getScan).toArray(Scan[]::new);
+
+    // Feed the scans to each gap, the base peaks are read from the m/z index of the file
+    for (Gap gap : gaps) {
 
       // Canceled?
       if (isCanceled()) {
         return;
       }
-
-      // Get the scan
-      Scan scan = dataFile.getScan(scanNumber);
-
-      // Feed this scan to all gaps
-      for (Gap gap : gaps) {
-        gap.offerNextScan(scan);
-      }
-
-      processedScans++;
+      gap.offerScans(scans, msLevel);
     }
+    processedScans += scans.length;
 
     // Finalize gaps
     for (Gap gap : gaps) {
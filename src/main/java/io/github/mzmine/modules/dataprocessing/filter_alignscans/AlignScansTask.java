@@ -19,17 +19,19 @@
 package io.github.mzmine.modules.dataprocessing.filter_alignscans;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Logger;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.RawDataFileWriter;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.DerivedRawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 
@@ -50,6 +52,12 @@ public class AlignScansTask extends AbstractTask {
   private int scanSpan, mzSpan;
   private boolean logScale = false;
   private boolean removeOriginal;
+  // number of scans per shift
+  private AtomicIntegerArray shiftedScans;
+  // best shift of every scan, the derived file reads a scan again after it was evicted from the
+  // cache and the shift only has to be found once
+  private static final int UNKNOWN_SHIFT = Integer.MIN_VALUE;
+  private AtomicIntegerArray scanShifts;
   RawDataFile newRDF = null;
 
   /**
@@ -102,99 +110,25 @@ public class AlignScansTask extends AbstractTask {
 
     scanNumbers = dataFile.getScanNumbers(1);
     totalScans = scanNumbers.length;
+    shiftedScans = new AtomicIntegerArray(mzSpan * 2 + 1);
+    scanShifts = new AtomicIntegerArray(totalScans);
+    for (int i = 0; i < totalScans; i++) {
+      scanShifts.set(i, UNKNOWN_SHIFT);
+    }
 
-    RawDataFileWriter newRDFW = null;
     try {
-      newRDFW = MZmineCore.createNewFile(dataFile.getName() + ' ' + suffix);
+      // the scans are aligned when they are read, the data points are not copied
+      DerivedRawDataFileImpl newRDFW =
+          MZmineCore.createDerivedFile(dataFile.getName() + ' ' + suffix, this::alignScan);
 
-      DataPoint mzValues[][] = null; // [relative scan][j value]
-      int i, j, si, sj, ii, k, shift, ks;
-      int shiftedScans[] = new int[mzSpan * 2 + 1];
-      for (i = 0; i < totalScans; i++) {
+      for (int i = 0; i < totalScans; i++) {
 
         if (isCanceled())
           return;
 
         Scan scan = dataFile.getScan(scanNumbers[i]);
-        si = (int) Math.max(0, i - scanSpan);
-        sj = (int) (si + 2 * scanSpan);
-        if (sj >= totalScans) {
-          si = (int) Math.max(0, si - (sj - totalScans + 1));
-          sj = (int) (si + 2 * scanSpan);
-        }
         if (scan != null) {
-          // Allocate
-          if (mzValues == null || mzValues.length < sj - si + 1)
-            mzValues = new DataPoint[sj - si + 1][];
-          // Load Data Points
-          for (j = si; j <= sj; j++) {
-            Scan xscan = dataFile.getScan(scanNumbers[j]);
-            mzValues[j - si] = xscan.getDataPoints();
-          }
-          // Estimate Correlations
-          ii = i - si;
-          final SimpleScan newScan = new SimpleScan(scan);
-          DataPoint[] newDP = new DataPoint[mzValues[ii].length];
-          int maxShift = 0;
-          double maxCorrelation = 0;
-          int ndp = mzValues[ii].length;
-          // System.out.print("Scan="+i);
-          for (shift = -mzSpan; shift <= mzSpan; shift++) {
-            PearsonCorrelation thisShift = new PearsonCorrelation();
-            for (k = 0; k < ndp; k++) {
-              ks = k + shift;
-              if (ks >= 0 && ks < ndp && mzValues[ii][ks].getIntensity() >= minimumHeight) {
-                DataPoint dp = mzValues[ii][k];
-                double mz = dp.getMZ();
-                int f = 0;
-                for (j = 0; j < mzValues.length; j++) {
-                  // System.out.println(j);
-                  if (j != ii) {
-                    if (mzValues[j].length > k && Math.abs(mzValues[j][k].getMZ() - mz) < 1e-10) {
-                      f = k;
-                    } else {
-                      f = findFirstMass(mz, mzValues[j]);
-                      if (Math.abs(mzValues[j][f].getMZ() - mz) > 1e-10) {
-                        f = -f;
-                      }
-                    }
-                    if (f >= 0) {
-                      if (logScale) {
-                        thisShift.enter(Math.log(mzValues[j][f].getIntensity()),
-                            Math.log(mzValues[ii][ks].getIntensity()));
-                      } else {
-                        thisShift.enter(mzValues[j][f].getIntensity(),
-                            mzValues[ii][ks].getIntensity());
-                      }
-                    }
-                  }
-                }
-              }
-            }
-            // System.out.print(", shift="+shift+",
-            // correlation="+Math.round(thisShift.correlation()*1000)/1000.0);
-            if (thisShift.correlation() > maxCorrelation) {
-              maxShift = shift;
-              maxCorrelation = thisShift.correlation();
-            }
-            // newDP[k] = new SimpleDataPoint(mz, c > 0 ? a/c : 0);
-          }
-          // Copy DataPoints with maxShift as the shift
-          shift = maxShift;
-          // System.out.println("\nScan="+i+", Shift="+maxShift+",
-          // Correlation="+maxCorrelation);
-          shiftedScans[maxShift + mzSpan]++;
-          for (k = 0; k < ndp; k++) {
-            ks = k + shift;
-            if (ks >= 0 && ks < ndp) {
-              newDP[k] =
-                  new SimpleDataPoint(mzValues[ii][k].getMZ(), mzValues[ii][ks].getIntensity());
-            } else {
-              newDP[k] = new SimpleDataPoint(mzValues[ii][k].getMZ(), 0);
-            }
-          }
-          newScan.setDataPoints(newDP);
-          newRDFW.addScan(newScan);
+          newRDFW.addDerivedScan(scan);
         }
 
         processedScans++;
@@ -202,7 +136,7 @@ public class AlignScansTask extends AbstractTask {
 
       if (!isCanceled()) {
 
-        // Finalize writing
+        // Finalize writing, this aligns all scans once
         newRDF = newRDFW.finishWriting();
 
         // Add the newly created file to the project
@@ -210,14 +144,15 @@ public class AlignScansTask extends AbstractTask {
 
         // Remove the original data file if requested
         if (removeOriginal) {
+          newRDFW.materialize();
           project.removeFile(dataFile);
         }
 
         setStatus(TaskStatus.FINISHED);
 
         String shifts = "";
-        for (i = -mzSpan; i <= mzSpan; i++) {
-          shifts = shifts + i + ":" + shiftedScans[i + mzSpan] + " | ";
+        for (int i = -mzSpan; i <= mzSpan; i++) {
+          shifts = shifts + i + ":" + shiftedScans.get(i + mzSpan) + " | ";
         }
         logger.info("Finished Scan Alignment on " + dataFile + ". Scans per shift = " + shifts);
 
@@ -229,6 +164,112 @@ public class AlignScansTask extends AbstractTask {
 
   }
 
+  /**
+   * Shifts the intensities of a scan to the m/z values with the best correlation to the
+   * neighbouring scans. Called by several threads when the scans of the new file are read.
+   */
+  private Scan alignScan(Scan scan) {
+    final int i = Arrays.binarySearch(scanNumbers, scan.getScanNumber());
+    final DataPoint[] dataPoints = scan.getDataPoints();
+    int shift = scanShifts.get(i);
+    if (shift == UNKNOWN_SHIFT) {
+      shift = findBestShift(i, dataPoints);
+      // concurrent reads of the same scan find the same shift, count it once
+      if (scanShifts.compareAndSet(i, UNKNOWN_SHIFT, shift)) {
+        shiftedScans.incrementAndGet(shift + mzSpan);
+      }
+    }
+
+    // Copy DataPoints with the best shift
+    final SimpleScan newScan = new SimpleScan(scan);
+    final int ndp = dataPoints.length;
+    final DataPoint[] newDP = new DataPoint[ndp];
+    for (int k = 0; k < ndp; k++) {
+      final int ks = k + shift;
+      if (ks >= 0 && ks < ndp) {
+        newDP[k] = new SimpleDataPoint(dataPoints[k].getMZ(), dataPoints[ks].getIntensity());
+      } else {
+        newDP[k] = new SimpleDataPoint(dataPoints[k].getMZ(), 0);
+      }
+    }
+    newScan.setDataPoints(newDP);
+    return newScan;
+  }
+
+  /**
+   * @param i          index of the scan
+   * @param dataPoints data points of the scan
+   * @return the shift with the best correlation of the intensities to the neighbouring scans
+   */
+  private int findBestShift(int i, DataPoint[] dataPoints) {
+    int j, si, sj, ii, k, shift, ks;
+    si = (int) Math.max(0, i - scanSpan);
+    sj = (int) (si + 2 * scanSpan);
+    if (sj >= totalScans) {
+      si = (int) Math.max(0, si - (sj - totalScans + 1));
+      sj = (int) (si + 2 * scanSpan);
+    }
+    // Load Data Points
+    ii = i - si;
+    DataPoint mzValues[][] = new DataPoint[sj - si + 1][]; // [relative scan][j value]
+    for (j = si; j <= sj; j++) {
+      if (j == i) {
+        mzValues[j - si] = dataPoints;
+      } else {
+        Scan xscan = dataFile.getScan(scanNumbers[j]);
+        mzValues[j - si] = xscan.getDataPoints();
+      }
+    }
+    // Estimate Correlations
+    int maxShift = 0;
+    double maxCorrelation = 0;
+    int ndp = mzValues[ii].length;
+    // System.out.print("Scan="+i);
+    for (shift = -mzSpan; shift <= mzSpan; shift++) {
+      PearsonCorrelation thisShift = new PearsonCorrelation();
+      for (k = 0; k < ndp; k++) {
+        ks = k + shift;
+        if (ks >= 0 && ks < ndp && mzValues[ii][ks].getIntensity() >= minimumHeight) {
+          DataPoint dp = mzValues[ii][k];
+          double mz = dp.getMZ();
+          int f = 0;
+          for (j = 0; j < mzValues.length; j++) {
+            // System.out.println(j);
+            if (j != ii) {
+              if (mzValues[j].length > k && Math.abs(mzValues[j][k].getMZ() - mz) < 1e-10) {
+                f = k;
+              } else {
+                f = findFirstMass(mz, mzValues[j]);
+                if (Math.abs(mzValues[j][f].getMZ() - mz) > 1e-10) {
+                  f = -f;
+                }
+              }
+              if (f >= 0) {
+                if (logScale) {
+                  thisShift.enter(Math.log(mzValues[j][f].getIntensity()),
+                      Math.log(mzValues[ii][ks].getIntensity()));
+                } else {
+                  thisShift.enter(mzValues[j][f].getIntensity(),
+                      mzValues[ii][ks].getIntensity());
+                }
+              }
+            }
+          }
+        }
+      }
+      // System.out.print(", shift="+shift+",
+      // correlation="+Math.round(thisShift.correlation()*1000)/1000.0);
+      if (thisShift.correlation() > maxCorrelation) {
+        maxShift = shift;
+        maxCorrelation = thisShift.correlation();
+      }
+      // newDP[k] = new SimpleDataPoint(mz, c > 0 ? a/c : 0);
+    }
+    // System.out.println("\nScan="+i+", Shift="+maxShift+",
+    // Correlation="+maxCorrelation);
+    return maxShift;
+  }
+
   int findFirstMass(double mass, DataPoint mzValues[]) {
     int l = 0;
     int r = mzValues.length - 1;
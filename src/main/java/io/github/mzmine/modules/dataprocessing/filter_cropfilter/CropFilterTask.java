@@ -22,15 +22,14 @@ import java.util.logging.Logger;
 
 import com.google.common.collect.Range;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.RawDataFileWriter;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.project.impl.DerivedRawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 
@@ -59,6 +58,16 @@ public class CropFilterTask extends AbstractTask {
     this.removeOriginal = parameters.getParameter(CropFilterParameters.autoRemove).getValue();
   }
 
+  private Scan cropScan(Scan scan) {
+    // Check if we have something to crop
+    if (mzRange.encloses(scan.getDataPointMZRange())) {
+      return scan;
+    }
+    SimpleScan scanCopy = new SimpleScan(scan);
+    scanCopy.setDataPoints(scan.getDataPointsByMass(mzRange));
+    return scanCopy;
+  }
+
   /**
    * @see Runnable#run()
    */
@@ -81,29 +90,24 @@ public class CropFilterTask extends AbstractTask {
 
     try {
 
-      RawDataFileWriter rawDataFileWriter =
-          MZmineCore.createNewFile(dataFile.getName() + " " + suffix);
+      // the scans are cropped when they are read, the data points are not copied
+      final DerivedRawDataFileImpl croppedFile =
+          MZmineCore.createDerivedFile(dataFile.getName() + " " + suffix, this::cropScan);
 
       for (Scan scan : scans) {
-
-        SimpleScan scanCopy = new SimpleScan(scan);
-
-        // Check if we have something to crop
-        if (!mzRange.encloses(scan.getDataPointMZRange())) {
-          DataPoint croppedDataPoints[] = scan.getDataPointsByMass(mzRange);
-          scanCopy.setDataPoints(croppedDataPoints);
+        if (isCanceled()) {
+          return;
         }
-
-        rawDataFileWriter.addScan(scanCopy);
-
+        croppedFile.addDerivedScan(scan);
         processedScans++;
       }
 
-      RawDataFile filteredRawDataFile = rawDataFileWriter.finishWriting();
+      RawDataFile filteredRawDataFile = croppedFile.finishWriting();
       project.addFile(filteredRawDataFile);
 
       // Remove the original file if requested
       if (removeOriginal) {
+        croppedFile.materialize();
         project.removeFile(dataFile);
       }
 
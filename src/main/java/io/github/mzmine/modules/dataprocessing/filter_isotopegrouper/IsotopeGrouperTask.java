@@ -28,9 +28,14 @@ import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.util.FeatureSorter;
 import io.github.mzmine.util.FeatureUtils;
+import io.github.mzmine.util.RTPartitionedMZIndex;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IsotopePattern.IsotopePatternStatus;
 import io.github.mzmine.datamodel.MZmineProject;
@@ -67,7 +72,8 @@ class IsotopeGrouperTask extends AbstractTask {
   private FeatureList featureList, deisotopedFeatureList;
 
   // peaks counter
-  private int processedPeaks, totalPeaks;
+  private final AtomicInteger processedPeaks = new AtomicInteger();
+  private int totalPeaks;
 
   // parameter values
   private String suffix;
@@ -115,7 +121,7 @@ class IsotopeGrouperTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalPeaks == 0)
       return 0.0f;
-    return (double) processedPeaks / (double) totalPeaks;
+    return (double) processedPeaks.get() / (double) totalPeaks;
   }
 
   /**
@@ -138,35 +144,109 @@ class IsotopeGrouperTask extends AbstractTask {
     for (int i = 0; i < maximumCharge; i++)
       charges[i] = i + 1;
 
+    // Collect the peaks of the data file together with their rows
+    List<FeatureListRow> peakRows = new ArrayList<>();
+    List<Feature> peaks = new ArrayList<>();
+    for (FeatureListRow row : featureList.getRows()) {
+      Feature peak = row.getFeature(dataFile);
+      if (peak != null) {
+        peakRows.add(row);
+        peaks.add(peak);
+      }
+    }
+
     // Sort peaks by descending height
-    Feature[] sortedPeaks = featureList.getFeatures(dataFile).toArray(Feature[]::new);
-    Arrays.sort(sortedPeaks, new FeatureSorter(SortingProperty.Height, SortingDirection.Descending));
+    FeatureSorter heightSorter =
+        new FeatureSorter(SortingProperty.Height, SortingDirection.Descending);
+    Integer[] order = IntStream.range(0, peaks.size()).boxed().toArray(Integer[]::new);
+    Arrays.sort(order, (a, b) -> heightSorter.compare(peaks.get(a), peaks.get(b)));
+
+    totalPeaks = order.length;
+    Feature[] sortedPeaks = new Feature[totalPeaks];
+    FeatureListRow[] sortedRows = new FeatureListRow[totalPeaks];
+    double[] mzs = new double[totalPeaks];
+    float[] rts = new float[totalPeaks];
+    for (int ind = 0; ind < totalPeaks; ind++) {
+      sortedPeaks[ind] = peaks.get(order[ind]);
+      sortedRows[ind] = peakRows.get(order[ind]);
+      mzs[ind] = sortedPeaks[ind].getMZ();
+      rts[ind] = sortedPeaks[ind].getRT();
+    }
 
-    // Loop through all peaks
-    totalPeaks = sortedPeaks.length;
+    // Peaks of different RT partitions can never be part of the same isotope pattern, so the
+    // partitions are deisotoped in parallel
+    RTPartitionedMZIndex index = new RTPartitionedMZIndex(mzs, rts, rtTolerance);
+    boolean[] grouped = new boolean[totalPeaks];
+    FeatureListRow[] newRows = new FeatureListRow[totalPeaks];
+    IntStream.range(0, index.getNumberOfPartitions()).parallel().forEach(partition -> groupPartition(
+        partition, index, charges, sortedPeaks, sortedRows, grouped, newRows));
 
-    for (int ind = 0; ind < totalPeaks; ind++) {
+    if (isCanceled())
+      return;
+
+    // Add the rows in order of descending height of their peaks
+    for (FeatureListRow newRow : newRows) {
+      if (newRow != null)
+        deisotopedFeatureList.addRow(newRow);
+    }
+
+    // Add new feature list to the project
+    project.addFeatureList(deisotopedFeatureList);
+
+    // Load previous applied methods
+    for (FeatureListAppliedMethod proc : featureList.getAppliedMethods()) {
+      deisotopedFeatureList.addDescriptionOfAppliedTask(proc);
+    }
+
+    // Add task description to peakList
+    deisotopedFeatureList.addDescriptionOfAppliedTask(
+        new SimpleFeatureListAppliedMethod("Isotopic peaks grouper", parameters));
+
+    // TODO: !
+    // Remove the original peakList if requested
+    //if (removeOriginal)
+    //  project.removePeakList(featureList);
+
+    logger.info("Finished isotopic peak grouper on " + featureList);
+    setStatus(TaskStatus.FINISHED);
+
+  }
+
+  /**
+   * Groups the isotopes of all peaks in one RT partition, starting with the highest peak.
+   *
+   * @param grouped Marks the peaks assigned to an isotope pattern
+   * @param newRows The new row of each peak that represents an isotope pattern or single peak
+   */
+  private void groupPartition(int partition, RTPartitionedMZIndex index, int[] charges,
+      Feature[] sortedPeaks, FeatureListRow[] sortedRows, boolean[] grouped,
+      FeatureListRow[] newRows) {
+
+    RawDataFile dataFile = featureList.getRawDataFile(0);
+
+    // Members are sorted by index, which is by descending height
+    for (int ind : index.getMembers(partition)) {
 
       if (isCanceled())
         return;
 
-      Feature aPeak = sortedPeaks[ind];
-
-      // Check if peak was already deleted
-      if (aPeak == null) {
-        processedPeaks++;
+      // Check if peak was already assigned to an isotope pattern
+      if (grouped[ind]) {
+        processedPeaks.incrementAndGet();
         continue;
       }
 
+      Feature aPeak = sortedPeaks[ind];
+
       // Check which charge state fits best around this peak
       int bestFitCharge = 0;
       int bestFitScore = -1;
-      Vector<Feature> bestFitPeaks = null;
+      List<Integer> bestFitPeaks = null;
       for (int charge : charges) {
 
-        Vector<Feature> fittedPeaks = new Vector<Feature>();
-        fittedPeaks.add(aPeak);
-        fitPattern(fittedPeaks, aPeak, charge, sortedPeaks);
+        List<Integer> fittedPeaks = new ArrayList<>();
+        fittedPeaks.add(ind);
+        fitPattern(fittedPeaks, ind, charge, sortedPeaks, index, grouped);
 
         int score = fittedPeaks.size();
         if ((score > bestFitScore) || ((score == bestFitScore) && (bestFitCharge > charge))) {
@@ -177,20 +257,21 @@ class IsotopeGrouperTask extends AbstractTask {
 
       }
 
-      FeatureListRow oldRow = featureList.getFeatureRow(aPeak);
+      FeatureListRow oldRow = sortedRows[ind];
 
       assert bestFitPeaks != null;
 
       // Verify the number of detected isotopes. If there is only one
       // isotope, we skip this left the original peak in the feature list.
       if (bestFitPeaks.size() == 1) {
-        deisotopedFeatureList.addRow(oldRow);
-        processedPeaks++;
+        newRows[ind] = oldRow;
+        processedPeaks.incrementAndGet();
         continue;
       }
 
       // Convert the peak pattern to array
-      Feature[] originalPeaks = bestFitPeaks.toArray(new Feature[0]);
+      Feature[] originalPeaks = bestFitPeaks.stream().map(i -> sortedPeaks[i])
+          .toArray(Feature[]::new);
 
       // Create a new SimpleIsotopePattern
       DataPoint[] isotopes = new DataPoint[bestFitPeaks.size()];
@@ -218,38 +299,16 @@ class IsotopeGrouperTask extends AbstractTask {
       FeatureListRow newRow = new ModularFeatureListRow((ModularFeatureList) deisotopedFeatureList, oldRow.getID(), newPeak);
       FeatureUtils.copyFeatureListRowProperties(oldRow, newRow);
       newRow.addFeature(dataFile, newPeak);
-      deisotopedFeatureList.addRow(newRow);
+      newRows[ind] = newRow;
 
       // Remove all peaks already assigned to isotope pattern
-      for (int i = 0; i < sortedPeaks.length; i++) {
-        if (bestFitPeaks.contains(sortedPeaks[i]))
-          sortedPeaks[i] = null;
-      }
+      for (int i : bestFitPeaks)
+        grouped[i] = true;
 
       // Update completion rate
-      processedPeaks++;
+      processedPeaks.incrementAndGet();
     }
 
-    // Add new feature list to the project
-    project.addFeatureList(deisotopedFeatureList);
-
-    // Load previous applied methods
-    for (FeatureListAppliedMethod proc : featureList.getAppliedMethods()) {
-      deisotopedFeatureList.addDescriptionOfAppliedTask(proc);
-    }
-
-    // Add task description to peakList
-    deisotopedFeatureList.addDescriptionOfAppliedTask(
-        new SimpleFeatureListAppliedMethod("Isotopic peaks grouper", parameters));
-
-    // TODO: !
-    // Remove the original peakList if requested
-    //if (removeOriginal)
-    //  project.removePeakList(featureList);
-
-    logger.info("Finished isotopic peak grouper on " + featureList);
-    setStatus(TaskStatus.FINISHED);
-
   }
 
   /**
@@ -258,8 +317,8 @@ class IsotopeGrouperTask extends AbstractTask {
    * @param p Pattern is fitted around this peak
    * @param charge Charge state of the fitted pattern
    */
-  private void fitPattern(Vector<Feature> fittedPeaks, Feature p, int charge,
-      Feature[] sortedPeaks) {
+  private void fitPattern(List<Integer> fittedPeaks, int p, int charge, Feature[] sortedPeaks,
+      RTPartitionedMZIndex index, boolean[] grouped) {
 
     if (charge == 0) {
       return;
@@ -267,11 +326,11 @@ class IsotopeGrouperTask extends AbstractTask {
 
     // Search for peaks before the start peak
     if (!monotonicShape) {
-      fitHalfPattern(p, charge, -1, fittedPeaks, sortedPeaks);
+      fitHalfPattern(p, charge, -1, fittedPeaks, sortedPeaks, index, grouped);
     }
 
     // Search for peaks after the start peak
-    fitHalfPattern(p, charge, 1, fittedPeaks, sortedPeaks);
+    fitHalfPattern(p, charge, 1, fittedPeaks, sortedPeaks, index, grouped);
 
   }
 
@@ -284,12 +343,17 @@ class IsotopeGrouperTask extends AbstractTask {
    *        after start M/Z
    * @param fittedPeaks All matching peaks will be added to this set
    */
-  private void fitHalfPattern(Feature p, int charge, int direction, Vector<Feature> fittedPeaks,
-      Feature[] sortedPeaks) {
+  private void fitHalfPattern(int p, int charge, int direction, List<Integer> fittedPeaks,
+      Feature[] sortedPeaks, RTPartitionedMZIndex index, boolean[] grouped) {
 
     // Use M/Z and RT of the strongest peak of the pattern (peak 'p')
-    double mainMZ = p.getMZ();
-    float mainRT = p.getRT();
+    double mainMZ = sortedPeaks[p].getMZ();
+    float mainRT = sortedPeaks[p].getRT();
+    int partition = index.getPartition(p);
+
+    // The tolerance is applied to the m/z of each candidate, twice the tolerance of the main peak
+    // covers all candidates
+    double searchTolerance = 2 * mzTolerance.getMzToleranceForMass(mainMZ);
 
     // Variable n is the number of peak we are currently searching. 1=first
     // peak before/after start peak, 2=peak before/after previous, 3=...
@@ -301,17 +365,21 @@ class IsotopeGrouperTask extends AbstractTask {
       // will end the loop)
       followingPeakFound = false;
 
-      // Loop through all peaks, and collect candidates for the n:th peak
-      // in the pattern
-      Vector<Feature> goodCandidates = new Vector<Feature>();
-      for (int ind = 0; ind < sortedPeaks.length; ind++) {
+      // Look up the peaks around the expected m/z, and collect candidates
+      // for the n:th peak in the pattern in order of descending height
+      double expectedMZ = mainMZ + isotopeDistance * direction * n / charge;
+      int[] nearbyPeaks = index.getIndicesInMZRange(partition,
+          Range.closed(expectedMZ - searchTolerance, expectedMZ + searchTolerance));
+      Arrays.sort(nearbyPeaks);
 
-        Feature candidatePeak = sortedPeaks[ind];
+      List<Integer> goodCandidates = new ArrayList<>();
+      for (int ind : nearbyPeaks) {
 
-        if (candidatePeak == null)
+        if (grouped[ind])
           continue;
 
         // Get properties of the candidate peak
+        Feature candidatePeak = sortedPeaks[ind];
         double candidatePeakMZ = candidatePeak.getMZ();
         float candidatePeakRT = candidatePeak.getRT();
 
@@ -323,8 +391,8 @@ class IsotopeGrouperTask extends AbstractTask {
 
         if (mzTolerance.checkWithinTolerance(isotopeMZ, mainMZ)
             && rtTolerance.checkWithinTolerance(candidatePeakRT, mainRT)
-            && (!fittedPeaks.contains(candidatePeak))) {
-          goodCandidates.add(candidatePeak);
+            && (!fittedPeaks.contains(ind))) {
+          goodCandidates.add(ind);
 
         }
 
@@ -26,11 +26,10 @@ import java.util.logging.Logger;
 import io.github.msdk.MSDKRuntimeException;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.RawDataFileWriter;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.DerivedRawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 
@@ -113,18 +112,16 @@ class RawFileMergeTask extends AbstractTask {
         }
       });
 
-      // create new file
-      RawDataFileWriter rawDataFileWriter =
-          MZmineCore.createNewFile(raw[0].getName() + " " + suffix);
+      // create new file, the scans refer to the data points of the merged files
+      DerivedRawDataFileImpl rawDataFileWriter =
+          MZmineCore.createDerivedFile(raw[0].getName() + " " + suffix, scan -> scan);
 
       int i = 0;
       for (Scan scan : scans) {
         if (isCanceled())
           return;
-        // copy, reset scan number
-        SimpleScan scanCopy = new SimpleScan(scan);
-        scanCopy.setScanNumber(i);
-        rawDataFileWriter.addScan(scanCopy);
+        // reset scan number
+        rawDataFileWriter.addDerivedScan(scan, i);
         i++;
       }
 
@@ -23,12 +23,11 @@ import java.util.logging.Logger;
 
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.RawDataFileWriter;
-import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.project.impl.DerivedRawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 
@@ -107,10 +106,12 @@ class ScanFilteringTask extends AbstractTask {
 
     try {
 
-      // Create new raw data file
-
+      // the scans are filtered when they are read, the data points are not copied
       String newName = dataFile.getName() + " " + suffix;
-      RawDataFileWriter rawDataFileWriter = MZmineCore.createNewFile(newName);
+      DerivedRawDataFileImpl rawDataFileWriter =
+          MZmineCore.createDerivedFile(newName, scan -> select.matches(scan)
+              ? rawDataFilter.getModule().filterScan(scan, rawDataFilter.getParameterSet())
+              : scan);
 
       for (int i = 0; i < totalScans; i++) {
 
@@ -118,16 +119,7 @@ class ScanFilteringTask extends AbstractTask {
           return;
         }
 
-        Scan scan = dataFile.getScan(scanNumbers[i]);
-        Scan newScan = null;
-        if (select.matches(scan))
-          newScan = rawDataFilter.getModule().filterScan(scan, rawDataFilter.getParameterSet());
-        else
-          newScan = scan;
-
-        if (newScan != null) {
-          rawDataFileWriter.addScan(newScan);
-        }
+        rawDataFileWriter.addDerivedScan(dataFile.getScan(scanNumbers[i]));
 
         processedScans++;
       }
@@ -139,6 +131,7 @@ class ScanFilteringTask extends AbstractTask {
 
         // Remove the original file if requested
         if (removeOriginal) {
+          rawDataFileWriter.materialize();
           project.removeFile(dataFile);
         }
       } catch (Exception exception) {
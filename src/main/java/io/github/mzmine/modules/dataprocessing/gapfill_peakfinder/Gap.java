@@ -20,6 +20,7 @@ package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
 
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 import com.google.common.collect.Range;
@@ -30,6 +31,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.scans.ScanUtils;
+import javax.annotation.Nullable;
 
 public class Gap {
 
@@ -62,6 +64,30 @@ public class Gap {
 
   }
 
+  /**
+   * Offers all scans of the data file, like consecutive calls of {@link #offerNextScan(Scan)}. The
+   * base peaks of the scans within the RT range are read from the m/z index of the data file.
+   *
+   * @param scans   all scans of one MS level in the order of their scan numbers
+   * @param msLevel the MS level of the scans
+   */
+  public void offerScans(Scan[] scans, int msLevel) {
+    int[] scanNumbers = Arrays.stream(scans).filter(s -> rtRange.contains(s.getRetentionTime()))
+        .mapToInt(Scan::getScanNumber).toArray();
+    DataPoint[] basePeaks =
+        ScanUtils.findBasePeaks(rawDataFile, msLevel, scanNumbers, mzRange, true);
+
+    int index = 0;
+    for (Scan scan : scans) {
+      if (rtRange.contains(scan.getRetentionTime())) {
+        // always inside the RT range, see offerNextScan
+        addScan(scan, basePeaks[index++]);
+      } else {
+        offerNextScan(scan);
+      }
+    }
+  }
+
   public void offerNextScan(Scan scan) {
 
     double scanRT = scan.getRetentionTime();
@@ -76,6 +102,15 @@ public class Gap {
 
     // Find top m/z peak in our range
     DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+    addScan(scan, basePeak);
+  }
+
+  /**
+   * @param basePeak the top m/z peak of the scan in our range or null
+   */
+  private void addScan(Scan scan, @Nullable DataPoint basePeak) {
+
+    double scanRT = scan.getRetentionTime();
 
     GapDataPoint currentDataPoint;
     if (basePeak != null) {
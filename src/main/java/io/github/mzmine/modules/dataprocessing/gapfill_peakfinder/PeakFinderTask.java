@@ -26,6 +26,7 @@ import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -169,26 +170,19 @@ class PeakFinderTask extends AbstractTask {
         }
 
         // Get all scans of this data file
-        int scanNumbers[] = dataFile.getScanNumbers(1);
+        Scan scans[] = Arrays.stream(dataFile.getScanNumbers(1)).mapToObj(dataFile::getScan)
+            .toArray(Scan[]::new);
 
-        // Process each scan
-        for (int scanNumber : scanNumbers) {
+        // Feed the scans to each gap, the base peaks are read from the m/z index of the file
+        for (Gap gap : gaps) {
           // Canceled?
           if (isCanceled()) {
             // inside stream - only skips this element
             return;
           }
-
-          // Get the scan
-          Scan scan = dataFile.getScan(scanNumber);
-
-          // Feed this scan to all gaps
-          for (Gap gap : gaps) {
-            gap.offerNextScan(scan);
-          }
-
-          processedScans.incrementAndGet();
+          gap.offerScans(scans, 1);
         }
+        processedScans.addAndGet(scans.length);
 
         // Finalize gaps
         for (Gap gap : gaps) {
@@ -305,25 +299,19 @@ class PeakFinderTask extends AbstractTask {
         }
 
         // Get all scans of this data file
-        int scanNumbers[] = datafile1.getScanNumbers(1);
+        Scan scans[] = Arrays.stream(datafile1.getScanNumbers(1)).mapToObj(datafile1::getScan)
+            .toArray(Scan[]::new);
 
-        // Process each scan
-        for (int scanNumber : scanNumbers) {
+        // Feed the scans to each gap, the base peaks are read from the m/z index of the file
+        for (Gap gap : gaps) {
 
           // Canceled?
           if (isCanceled()) {
             return;
           }
-
-          // Get the scan
-          Scan scan = datafile1.getScan(scanNumber);
-
-          // Feed this scan to all gaps
-          for (Gap gap : gaps) {
-            gap.offerNextScan(scan);
-          }
-          processedScans.incrementAndGet();
+          gap.offerScans(scans, 1);
         }
+        processedScans.addAndGet(scans.length);
 
         // Finalize gaps
         for (Gap gap : gaps) {
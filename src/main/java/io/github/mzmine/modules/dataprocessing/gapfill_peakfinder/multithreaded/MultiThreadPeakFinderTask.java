@@ -22,6 +22,7 @@ import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 import com.google.common.collect.Range;
@@ -128,25 +129,18 @@ class MultiThreadPeakFinderTask extends AbstractTask {
       }
 
       // Get all scans of this data file
-      int scanNumbers[] = dataFile.getScanNumbers(1);
+      Scan scans[] = Arrays.stream(dataFile.getScanNumbers(1)).mapToObj(dataFile::getScan)
+          .toArray(Scan[]::new);
 
-      // Process each scan
-      for (int scanNumber : scanNumbers) {
+      // Feed the scans to each gap, the base peaks are read from the m/z index of the file
+      for (Gap gap : gaps) {
         // Canceled?
         if (isCanceled()) {
           return;
         }
-
-        // Get the scan
-        Scan scan = dataFile.getScan(scanNumber);
-
-        // Feed this scan to all gaps
-        for (Gap gap : gaps) {
-          gap.offerNextScan(scan);
-        }
-
-        processedScans++;
+        gap.offerScans(scans, 1);
       }
+      processedScans += scans.length;
 
       // Finalize gaps
       for (Gap gap : gaps) {
@@ -0,0 +1,596 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_camera;
+
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import org.apache.commons.math3.special.Beta;
+
+/**
+ * Java implementation of the CAMERA pseudo-spectrum grouping (groupFWHM, groupCorr, findIsotopes
+ * and findAdducts) on primitive arrays, so that {@link CameraSearchTask} can run without R. The
+ * peak shapes are correlated from the feature chromatograms instead of the EICs of the raw data.
+ */
+class CameraPseudoSpectrumGrouper {
+
+  // Mass difference of 13C and 12C.
+  private static final double ISOTOPE_DISTANCE = 1.0033548378;
+
+  // FWHM of a Gaussian in units of its standard deviation.
+  private static final double FWHM_PER_SIGMA = 2.35482;
+
+  // Maximum intensity of the first isotope relative to the monoisotopic peak, per carbon atom.
+  private static final double ISOTOPE_RATIO_PER_CARBON = 0.011;
+
+  private static final double CARBON_MASS = 12.0;
+
+  // Minimum number of scans to correlate two peak shapes.
+  private static final int MIN_CORRELATION_POINTS = 4;
+
+  private static final AdductRule[] POSITIVE_RULES = {new AdductRule("[M+H]+", 1, 1, 1.007276),
+      new AdductRule("[M+Na]+", 1, 1, 22.989218), new AdductRule("[M+K]+", 1, 1, 38.963158),
+      new AdductRule("[M+NH4]+", 1, 1, 18.033823), new AdductRule("[M+H-H2O]+", 1, 1, -17.003289),
+      new AdductRule("[M+2H]2+", 1, 2, 2.014552), new AdductRule("[2M+H]+", 2, 1, 1.007276),
+      new AdductRule("[2M+Na]+", 2, 1, 22.989218)};
+
+  private static final AdductRule[] NEGATIVE_RULES = {new AdductRule("[M-H]-", 1, 1, -1.007276),
+      new AdductRule("[M+Cl]-", 1, 1, 34.969402), new AdductRule("[M+FA-H]-", 1, 1, 44.998201),
+      new AdductRule("[M-H-H2O]-", 1, 1, -19.01839), new AdductRule("[M-2H]2-", 1, 2, -2.014552),
+      new AdductRule("[2M-H]-", 2, 1, -1.007276)};
+
+  /**
+   * Pseudo-spectrum ids and annotations in the order of the peaks, in the same format as the
+   * results of CAMERA's getPeaklist
+   */
+  static class Result {
+
+    final int[] spectra;
+    final String[] isotopes;
+    final String[] adducts;
+
+    private Result(int[] spectra, String[] isotopes, String[] adducts) {
+      this.spectra = spectra;
+      this.isotopes = isotopes;
+      this.adducts = adducts;
+    }
+  }
+
+  private static class AdductRule {
+
+    private final String name;
+    private final int molecules;
+    private final int charge;
+    private final double massDifference;
+
+    private AdductRule(String name, int molecules, int charge, double massDifference) {
+      this.name = name;
+      this.molecules = molecules;
+      this.charge = charge;
+      this.massDifference = massDifference;
+    }
+
+    private double neutralMass(double mz) {
+      return (mz * charge - massDifference) / molecules;
+    }
+  }
+
+  private final double fwhmSigma;
+  private final double fwhmPercentage;
+  private final int isoMaxCharge;
+  private final int isoMaxCount;
+  private final MZTolerance isoMassTolerance;
+  private final double corrThreshold;
+  private final double corrPValue;
+  private final boolean positive;
+  private final boolean calcIso;
+  private final boolean isotopesFirst;
+  private final NumberFormat massFormat;
+
+  // Peak data.
+  private double[] mz;
+  private double[] rt;
+  private double[] rtMin;
+  private double[] rtMax;
+  private double[] height;
+  private int[][] traceScans;
+  private double[][] traceIntensities;
+
+  // Isotope annotation of each peak, group 0 for peaks without isotopes.
+  private int[] isoGroup;
+  private int[] isoIndex;
+  private int[] isoCharge;
+
+  CameraPseudoSpectrumGrouper(@Nonnull ParameterSet parameters, @Nonnull NumberFormat massFormat) {
+    fwhmSigma = parameters.getParameter(CameraSearchParameters.FWHM_SIGMA).getValue();
+    fwhmPercentage = parameters.getParameter(CameraSearchParameters.FWHM_PERCENTAGE).getValue();
+    isoMaxCharge = parameters.getParameter(CameraSearchParameters.ISOTOPES_MAX_CHARGE).getValue();
+    isoMaxCount = parameters.getParameter(CameraSearchParameters.ISOTOPES_MAXIMUM).getValue();
+    isoMassTolerance =
+        parameters.getParameter(CameraSearchParameters.ISOTOPES_MZ_TOLERANCE).getValue();
+    corrThreshold =
+        parameters.getParameter(CameraSearchParameters.CORRELATION_THRESHOLD).getValue();
+    corrPValue = parameters.getParameter(CameraSearchParameters.CORRELATION_P_VALUE).getValue();
+    positive = "positive"
+        .equals(parameters.getParameter(CameraSearchParameters.POLARITY).getValue().toString());
+    calcIso = parameters.getParameter(CameraSearchParameters.DONT_SPLIT_ISOTOPES).getValue();
+    isotopesFirst = !CameraSearchParameters.GROUP_CORR_FIRST
+        .equals(parameters.getParameter(CameraSearchParameters.ORDER).getValue());
+    this.massFormat = massFormat;
+  }
+
+  /**
+   * @param mz m/z of each peak
+   * @param rt retention time of each peak
+   * @param rtMin start of each peak
+   * @param rtMax end of each peak
+   * @param height height of each peak
+   * @param traceScans scan numbers of each peak's chromatogram
+   * @param traceIntensities intensities of each peak's chromatogram
+   * @return the pseudo-spectra and annotations
+   */
+  @Nonnull
+  Result group(@Nonnull double[] mz, @Nonnull double[] rt, @Nonnull double[] rtMin,
+      @Nonnull double[] rtMax, @Nonnull double[] height, @Nonnull int[][] traceScans,
+      @Nonnull double[][] traceIntensities) {
+
+    this.mz = mz;
+    this.rt = rt;
+    this.rtMin = rtMin;
+    this.rtMax = rtMax;
+    this.height = height;
+    this.traceScans = traceScans;
+    this.traceIntensities = traceIntensities;
+    sortTraces();
+
+    final int numPeaks = mz.length;
+    isoGroup = new int[numPeaks];
+    isoIndex = new int[numPeaks];
+    isoCharge = new int[numPeaks];
+
+    int[][] groups = groupFwhm();
+    if (isotopesFirst) {
+      findIsotopes(groups);
+      groups = groupCorr(groups, calcIso);
+    } else {
+      groups = groupCorr(groups, false);
+      findIsotopes(groups);
+    }
+
+    final int[] spectra = new int[numPeaks];
+    final String[] isotopes = new String[numPeaks];
+    final String[] adducts = new String[numPeaks];
+    Arrays.fill(adducts, "");
+    for (int g = 0; g < groups.length; g++) {
+      for (int peak : groups[g]) {
+        spectra[peak] = g + 1;
+      }
+      findAdducts(groups[g], adducts);
+    }
+    for (int i = 0; i < numPeaks; i++) {
+      isotopes[i] = isoGroup[i] == 0 ? "" : isotopeName(i);
+    }
+    return new Result(spectra, isotopes, adducts);
+  }
+
+  /**
+   * Groups the peaks by RT, starting with the most intense peak, like CAMERA's groupFWHM
+   *
+   * @return the peak indices of each group
+   */
+  private int[][] groupFwhm() {
+    final int numPeaks = mz.length;
+    final Integer[] byRt = sortedIndices(numPeaks, Comparator.comparingDouble(i -> rt[i]));
+    final double[] sortedRt = new double[numPeaks];
+    for (int i = 0; i < numPeaks; i++) {
+      sortedRt[i] = rt[byRt[i]];
+    }
+
+    final boolean[] grouped = new boolean[numPeaks];
+    final List<int[]> groups = new ArrayList<>();
+    final List<Integer> members = new ArrayList<>();
+    for (int peak : sortedIndices(numPeaks, Comparator.comparingDouble(i -> -height[i]))) {
+      if (grouped[peak]) {
+        continue;
+      }
+      double hwhm = (rtMax[peak] - rtMin[peak]) / fwhmSigma * FWHM_PER_SIGMA * fwhmPercentage / 2;
+      if (Double.isNaN(hwhm)) {
+        hwhm = 0;
+      }
+
+      members.clear();
+      members.add(peak);
+      grouped[peak] = true;
+      for (int i = lowerBound(sortedRt, rt[peak] - hwhm); i < numPeaks
+          && sortedRt[i] < rt[peak] + hwhm; i++) {
+        final int other = byRt[i];
+        if (!grouped[other] && sortedRt[i] > rt[peak] - hwhm) {
+          members.add(other);
+          grouped[other] = true;
+        }
+      }
+      groups.add(members.stream().mapToInt(Integer::intValue).toArray());
+    }
+    return groups.toArray(new int[0][]);
+  }
+
+  /**
+   * Splits each group into peaks of correlated shape, like CAMERA's groupCorr. The groups are
+   * processed in parallel.
+   *
+   * @param keepIsotopes do not split the peaks of an isotope pattern
+   * @return the new groups, ordered by their most intense peak
+   */
+  private int[][] groupCorr(int[][] groups, boolean keepIsotopes) {
+    final int[][][] split = new int[groups.length][][];
+    IntStream.range(0, groups.length).parallel()
+        .forEach(g -> split[g] = splitGroup(groups[g], keepIsotopes));
+
+    final List<int[]> result = new ArrayList<>();
+    for (int[][] parts : split) {
+      result.addAll(Arrays.asList(parts));
+    }
+    result.sort(Comparator.comparingDouble(group -> -maxHeight(group)));
+    return result.toArray(new int[0][]);
+  }
+
+  private int[][] splitGroup(int[] group, boolean keepIsotopes) {
+    final int size = group.length;
+    if (size < 2) {
+      return new int[][] {group};
+    }
+
+    // connected components of the correlated peaks
+    final int[] parent = new int[size];
+    for (int i = 0; i < size; i++) {
+      parent[i] = i;
+    }
+    final double[] x = new double[maxTraceLength(group) * 2];
+    final double[] y = new double[x.length];
+    for (int a = 0; a < size; a++) {
+      for (int b = a + 1; b < size; b++) {
+        if (find(parent, a) == find(parent, b)) {
+          continue;
+        }
+        final int peakA = group[a];
+        final int peakB = group[b];
+        if ((keepIsotopes && isoGroup[peakA] != 0 && isoGroup[peakA] == isoGroup[peakB])
+            || isCorrelated(peakA, peakB, x, y)) {
+          parent[find(parent, a)] = find(parent, b);
+        }
+      }
+    }
+
+    final int[][] components = new int[size][];
+    final int[] componentSize = new int[size];
+    for (int i = 0; i < size; i++) {
+      componentSize[find(parent, i)]++;
+    }
+    final List<int[]> result = new ArrayList<>();
+    final int[] filled = new int[size];
+    for (int i = 0; i < size; i++) {
+      final int root = find(parent, i);
+      if (components[root] == null) {
+        components[root] = new int[componentSize[root]];
+        result.add(components[root]);
+      }
+      components[root][filled[root]++] = group[i];
+    }
+    return result.toArray(new int[0][]);
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * Pearson correlation of two chromatograms over the union of their scans, scans without a data
+   * point count as zero intensity
+   *
+   * @param x buffer for the first chromatogram
+   * @param y buffer for the second chromatogram
+   */
+  private boolean isCorrelated(int peakA, int peakB, double[] x, double[] y) {
+    final int[] scansA = traceScans[peakA];
+    final int[] scansB = traceScans[peakB];
+    final double[] intensitiesA = traceIntensities[peakA];
+    final double[] intensitiesB = traceIntensities[peakB];
+
+    int n = 0;
+    int a = 0;
+    int b = 0;
+    while (a < scansA.length || b < scansB.length) {
+      final int scanA = a < scansA.length ? scansA[a] : Integer.MAX_VALUE;
+      final int scanB = b < scansB.length ? scansB[b] : Integer.MAX_VALUE;
+      x[n] = scanA <= scanB ? intensitiesA[a++] : 0;
+      y[n] = scanB <= scanA ? intensitiesB[b++] : 0;
+      n++;
+    }
+    if (n < MIN_CORRELATION_POINTS) {
+      return false;
+    }
+
+    double meanX = 0;
+    double meanY = 0;
+    for (int i = 0; i < n; i++) {
+      meanX += x[i];
+      meanY += y[i];
+    }
+    meanX /= n;
+    meanY /= n;
+    double sxy = 0;
+    double sxx = 0;
+    double syy = 0;
+    for (int i = 0; i < n; i++) {
+      final double dx = x[i] - meanX;
+      final double dy = y[i] - meanY;
+      sxy += dx * dy;
+      sxx += dx * dx;
+      syy += dy * dy;
+    }
+    if (sxx == 0 || syy == 0) {
+      return false;
+    }
+    final double r = sxy / Math.sqrt(sxx * syy);
+    return r >= corrThreshold && pValue(r, n) <= corrPValue;
+  }
+
+  /**
+   * Two-sided p-value of the t-test for a correlation coefficient
+   */
+  private static double pValue(double r, int n) {
+    if (r >= 1) {
+      return 0;
+    }
+    final double df = n - 2;
+    final double t2 = r * r * df / (1 - r * r);
+    return Beta.regularizedBeta(df / (df + t2), df / 2, 0.5);
+  }
+
+  /**
+   * Annotates isotope patterns within each group, like CAMERA's findIsotopes. The isotopes are
+   * looked up by binary search in the m/z sorted peaks of the group.
+   */
+  private void findIsotopes(int[][] groups) {
+    int nextIsoGroup = 1;
+    for (int[] group : groups) {
+      final Integer[] byMz = sortedIndices(group.length,
+          Comparator.comparingDouble(i -> mz[group[i]]));
+      final int[] peaks = new int[group.length];
+      final double[] sortedMz = new double[group.length];
+      for (int i = 0; i < group.length; i++) {
+        peaks[i] = group[byMz[i]];
+        sortedMz[i] = mz[peaks[i]];
+      }
+
+      final int[] chain = new int[Math.max(isoMaxCount, 1)];
+      for (int mono : peaks) {
+        if (isoGroup[mono] != 0) {
+          continue;
+        }
+        for (int charge = isoMaxCharge; charge >= 1; charge--) {
+          final int length = findIsotopeChain(mono, charge, peaks, sortedMz, chain);
+          if (length < 2) {
+            continue;
+          }
+          for (int k = 0; k < length; k++) {
+            isoGroup[chain[k]] = nextIsoGroup;
+            isoIndex[chain[k]] = k;
+            isoCharge[chain[k]] = charge;
+          }
+          nextIsoGroup++;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of peaks of the pattern, including the monoisotopic peak
+   */
+  private int findIsotopeChain(int mono, int charge, int[] peaks, double[] sortedMz,
+      int[] chain) {
+    chain[0] = mono;
+    int length = 1;
+    for (int k = 1; k < isoMaxCount; k++) {
+      final double target = mz[mono] + k * ISOTOPE_DISTANCE / charge;
+      final double tolerance = isoMassTolerance.getMzToleranceForMass(target);
+
+      // the most intense free peak within the tolerance
+      int best = -1;
+      for (int i = lowerBound(sortedMz, target - tolerance); i < peaks.length
+          && sortedMz[i] <= target + tolerance; i++) {
+        final int peak = peaks[i];
+        if (isoGroup[peak] == 0 && peak != mono && (best < 0 || height[peak] > height[best])) {
+          best = peak;
+        }
+      }
+      if (best < 0) {
+        break;
+      }
+      if (k == 1) {
+        final double maxRatio =
+            Math.max(1, mz[mono] * charge / CARBON_MASS) * ISOTOPE_RATIO_PER_CARBON;
+        if (height[best] > height[mono] * maxRatio) {
+          break;
+        }
+      }
+      chain[length++] = best;
+    }
+    return length;
+  }
+
+  /**
+   * Annotates peaks of a group whose neutral masses agree for different adduct rules, like CAMERA's
+   * findAdducts. The hypotheses of all peaks are sorted by neutral mass and scanned once.
+   */
+  private void findAdducts(int[] group, String[] adducts) {
+    final AdductRule[] rules = positive ? POSITIVE_RULES : NEGATIVE_RULES;
+    final int maxHypotheses = group.length * rules.length;
+    final double[] masses = new double[maxHypotheses];
+    final int[] hypothesisPeak = new int[maxHypotheses];
+    final int[] hypothesisRule = new int[maxHypotheses];
+    int count = 0;
+    for (int peak : group) {
+      // only the monoisotopic peak of a pattern can be an adduct
+      if (isoIndex[peak] > 0) {
+        continue;
+      }
+      for (int r = 0; r < rules.length; r++) {
+        if (isoGroup[peak] != 0 && isoCharge[peak] != rules[r].charge) {
+          continue;
+        }
+        masses[count] = rules[r].neutralMass(mz[peak]);
+        hypothesisPeak[count] = peak;
+        hypothesisRule[count] = r;
+        count++;
+      }
+    }
+    if (count < 2) {
+      return;
+    }
+
+    final Integer[] byMass = sortedIndices(count, Comparator.comparingDouble(i -> masses[i]));
+    final boolean[] usedRule = new boolean[rules.length];
+    final List<Integer> clusterPeaks = new ArrayList<>();
+    final List<Integer> clusterRules = new ArrayList<>();
+    int start = 0;
+    while (start < count) {
+      final double first = masses[byMass[start]];
+      final double upper = first + isoMassTolerance.getMzToleranceForMass(first);
+      int end = start + 1;
+      while (end < count && masses[byMass[end]] <= upper) {
+        end++;
+      }
+
+      // one hypothesis per peak and rule
+      clusterPeaks.clear();
+      clusterRules.clear();
+      Arrays.fill(usedRule, false);
+      double sum = 0;
+      for (int i = start; i < end; i++) {
+        final int h = byMass[i];
+        if (!usedRule[hypothesisRule[h]] && !clusterPeaks.contains(hypothesisPeak[h])) {
+          usedRule[hypothesisRule[h]] = true;
+          clusterPeaks.add(hypothesisPeak[h]);
+          clusterRules.add(hypothesisRule[h]);
+          sum += masses[h];
+        }
+      }
+      if (clusterPeaks.size() < 2) {
+        start++;
+        continue;
+      }
+
+      final String mass = massFormat.format(sum / clusterPeaks.size());
+      for (int i = 0; i < clusterPeaks.size(); i++) {
+        final int peak = clusterPeaks.get(i);
+        final String annotation = rules[clusterRules.get(i)].name + " " + mass;
+        adducts[peak] = adducts[peak].isEmpty() ? annotation : adducts[peak] + " " + annotation;
+      }
+      start = end;
+    }
+  }
+
+  private String isotopeName(int peak) {
+    final int k = isoIndex[peak];
+    final int charge = isoCharge[peak];
+    return "[" + isoGroup[peak] + "][M" + (k == 0 ? "" : "+" + k) + "]"
+        + (charge > 1 ? String.valueOf(charge) : "") + (positive ? "+" : "-");
+  }
+
+  /**
+   * Sorts the chromatograms by scan number, if needed
+   */
+  private void sortTraces() {
+    for (int p = 0; p < traceScans.length; p++) {
+      final int[] scans = traceScans[p];
+      final double[] intensities = traceIntensities[p];
+      boolean sorted = true;
+      for (int i = 1; i < scans.length && sorted; i++) {
+        sorted = scans[i - 1] <= scans[i];
+      }
+      if (sorted) {
+        continue;
+      }
+      final Integer[] order =
+          sortedIndices(scans.length, Comparator.comparingInt(i -> scans[i]));
+      final int[] sortedScans = new int[scans.length];
+      final double[] sortedIntensities = new double[scans.length];
+      for (int i = 0; i < scans.length; i++) {
+        sortedScans[i] = scans[order[i]];
+        sortedIntensities[i] = intensities[order[i]];
+      }
+      traceScans[p] = sortedScans;
+      traceIntensities[p] = sortedIntensities;
+    }
+  }
+
+  private int maxTraceLength(int[] group) {
+    int max = 0;
+    for (int peak : group) {
+      max = Math.max(max, traceScans[peak].length);
+    }
+    return max;
+  }
+
+  private double maxHeight(int[] group) {
+    double max = 0;
+    for (int peak : group) {
+      max = Math.max(max, height[peak]);
+    }
+    return max;
+  }
+
+  private static Integer[] sortedIndices(int size, Comparator<Integer> comparator) {
+    final Integer[] indices = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      indices[i] = i;
+    }
+    Arrays.sort(indices, comparator);
+    return indices;
+  }
+
+  /**
+   * @return the index of the first value that is not smaller than the key
+   */
+  private static int lowerBound(double[] sorted, double key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -115,6 +115,12 @@ public class CameraSearchParameters extends SimpleParameterSet {
   public static final StringParameter SUFFIX = new StringParameter("Suffix",
       "This string is added to feature list name as suffix", "CAMERA");
 
+  public static final BooleanParameter JAVA_IMPLEMENTATION = new BooleanParameter(
+      "Java implementation",
+      "If checked, the pseudo-spectra are computed in Java without R. Peak shapes are correlated "
+          + "from the feature chromatograms instead of the raw data EICs",
+      false);
+
   /**
    * R engine type.
    */
@@ -127,6 +133,6 @@ public class CameraSearchParameters extends SimpleParameterSet {
     super(new Parameter[] {PEAK_LISTS, FWHM_SIGMA, FWHM_PERCENTAGE, ISOTOPES_MAX_CHARGE,
         ISOTOPES_MAXIMUM, ISOTOPES_MZ_TOLERANCE, CORRELATION_THRESHOLD, CORRELATION_P_VALUE,
         POLARITY, DONT_SPLIT_ISOTOPES, ORDER, CREATE_NEW_LIST, GROUP_BY, INCLUDE_SINGLETONS, SUFFIX,
-        RENGINE_TYPE});
+        JAVA_IMPLEMENTATION, RENGINE_TYPE});
   }
 }
@@ -28,6 +28,8 @@ import io.github.mzmine.datamodel.FeatureIdentity;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.FeatureTrace;
+import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.SimpleFeatureIdentity;
@@ -91,6 +93,10 @@ public class CameraSearchTask extends AbstractTask {
   // Peak signal to noise ratio.
   private static final double SIGNAL_TO_NOISE = 10.0;
 
+  // Identification method.
+  private static final String R_METHOD = "Bioconductor CAMERA";
+  private static final String JAVA_METHOD = "CAMERA (Java)";
+
   // Data point sorter.
   private static final DataPointSorter ASCENDING_MASS_SORTER =
       new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending);
@@ -121,6 +127,8 @@ public class CameraSearchTask extends AbstractTask {
   private final Boolean calcIso;
   private final String groupBy;
   private final Boolean includeSingletons;
+  private final boolean javaImplementation;
+  private final String methodName;
 
   private REngineType rEngineType;
 
@@ -152,6 +160,9 @@ public class CameraSearchTask extends AbstractTask {
     groupBy = parameters.getParameter(CameraSearchParameters.GROUP_BY).getValue();
     includeSingletons =
         parameters.getParameter(CameraSearchParameters.INCLUDE_SINGLETONS).getValue();
+    javaImplementation =
+        parameters.getParameter(CameraSearchParameters.JAVA_IMPLEMENTATION).getValue();
+    methodName = javaImplementation ? JAVA_METHOD : R_METHOD;
 
     this.userCanceled = false;
   }
@@ -183,7 +194,11 @@ public class CameraSearchTask extends AbstractTask {
       }
 
       // Run the search.
-      cameraSearch(peakList.getRawDataFile(0));
+      if (javaImplementation) {
+        javaCameraSearch(peakList.getRawDataFile(0));
+      } else {
+        cameraSearch(peakList.getRawDataFile(0));
+      }
 
       // Create new list with IsotopePattern information
       FeatureList newPeakList = null;
@@ -495,6 +510,76 @@ public class CameraSearchTask extends AbstractTask {
     }
   }
 
+  /**
+   * Perform the CAMERA search in Java, without R.
+   *
+   * @param rawFile raw data file of feature list to process.
+   */
+  private void javaCameraSearch(final RawDataFile rawFile) {
+
+    // Initialize.
+    final Feature[] peaks = peakList.getFeatures(rawFile).toArray(Feature[]::new);
+    final int peakCount = peaks.length;
+    final double[] mz = new double[peakCount];
+    final double[] rt = new double[peakCount];
+    final double[] rtMin = new double[peakCount];
+    final double[] rtMax = new double[peakCount];
+    final double[] height = new double[peakCount];
+    final int[][] traceScans = new int[peakCount][];
+    final double[][] traceIntensities = new double[peakCount][];
+    progress = 0.0;
+
+    // Copy the peak data and chromatograms.
+    // 50 percents for building peaks list.
+    final double progressInc = 0.5 / Math.max(peakCount, 1);
+    for (int i = 0; i < peakCount && !isCanceled(); i++) {
+
+      final Feature peak = peaks[i];
+      final Range<Float> rtRange = peak.getRawDataPointsRTRange();
+      mz[i] = peak.getMZ();
+      rt[i] = peak.getRT();
+      rtMin[i] = rtRange.lowerEndpoint();
+      rtMax[i] = rtRange.upperEndpoint();
+      height[i] = peak.getHeight();
+
+      if (peak instanceof ModularFeature) {
+        final FeatureTrace trace = ((ModularFeature) peak).getFeatureTrace();
+        final int size = Math.min(trace.getNumberOfScans(), trace.getNumberOfDataPoints());
+        traceScans[i] = new int[size];
+        traceIntensities[i] = new double[size];
+        for (int j = 0; j < size; j++) {
+          traceScans[i][j] = trace.getScanNumber(j);
+          traceIntensities[i][j] = trace.getIntensity(j);
+        }
+      } else {
+        final List<Integer> scanNumbers = peak.getScanNumbers();
+        traceScans[i] = new int[scanNumbers.size()];
+        traceIntensities[i] = new double[scanNumbers.size()];
+        for (int j = 0; j < scanNumbers.size(); j++) {
+          final DataPoint dataPoint = peak.getDataPoint(scanNumbers.get(j));
+          traceScans[i][j] = scanNumbers.get(j);
+          traceIntensities[i][j] = dataPoint == null ? 0.0 : dataPoint.getIntensity();
+        }
+      }
+
+      progress += progressInc;
+    }
+
+    if (isCanceled()) {
+      return;
+    }
+
+    // Group, correlate and annotate the peaks.
+    final CameraPseudoSpectrumGrouper.Result result =
+        new CameraPseudoSpectrumGrouper(parameters, MZmineCore.getConfiguration().getMZFormat())
+            .group(mz, rt, rtMin, rtMax, height, traceScans, traceIntensities);
+    progress = 0.9;
+
+    // Add identities.
+    addPseudoSpectraIdentities(peaks, result.spectra, result.isotopes, result.adducts);
+    progress = 1.0;
+  }
+
   /**
    * Add pseudo-spectra identities.
    *
@@ -512,7 +597,7 @@ public class CameraSearchTask extends AbstractTask {
       // Create pseudo-spectrum identity
       final SimpleFeatureIdentity identity =
           new SimpleFeatureIdentity("Pseudo-spectrum #" + String.format("%03d", spectra[peakIndex]));
-      identity.setPropertyValue(FeatureIdentity.PROPERTY_METHOD, "Bioconductor CAMERA");
+      identity.setPropertyValue(FeatureIdentity.PROPERTY_METHOD, methodName);
 
       // Add isotope info, if any.
       if (isotopes != null) {
@@ -586,7 +671,7 @@ public class CameraSearchTask extends AbstractTask {
 
     // Add task description to feature list.
     combinedPeakList.addDescriptionOfAppliedTask(
-        new SimpleFeatureListAppliedMethod("Bioconductor CAMERA", parameters));
+        new SimpleFeatureListAppliedMethod(methodName, parameters));
 
     // ------------------------------------------------
     // Find unique isotopes belonging to the same group
@@ -747,7 +832,7 @@ public class CameraSearchTask extends AbstractTask {
 
     // Add task description to feature list.
     combinedPeakList.addDescriptionOfAppliedTask(
-        new SimpleFeatureListAppliedMethod("Bioconductor CAMERA", parameters));
+        new SimpleFeatureListAppliedMethod(methodName, parameters));
 
     // --------------------
     // Find unique PCGroups
@@ -0,0 +1,573 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_formulaprediction;
+
+import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.elements.ElementalHeuristicChecker;
+import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.elements.ElementalHeuristicParameters;
+import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.rdbe.RDBERestrictionChecker;
+import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.rdbe.RDBERestrictionParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.util.files.MappedBufferUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.interfaces.IIsotope;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+/**
+ * All molecular formulas of a {@link MolecularFormulaRange} up to a maximum neutral mass that pass
+ * the elemental ratio and RDBE restrictions, sorted by mass. The masses and the element counts are
+ * stored in a memory-mapped file in the temporary directory, so the formulas of a mass window are
+ * found by a binary search instead of running the
+ * {@link org.openscience.cdk.formula.MolecularFormulaGenerator} for every feature.
+ * <p>
+ * Indices are identified by the elements and restrictions. They are kept in memory and on disk, so
+ * the same settings reuse an index across tasks and sessions. The files of the least recently used
+ * indices are deleted once all files exceed {@link #MAX_DISK_BYTES}.
+ */
+public class FormulaMassIndex {
+
+  private static final Logger logger = Logger.getLogger(FormulaMassIndex.class.getName());
+
+  private static final int MAGIC = 0x464d4958;
+  private static final int VERSION = 1;
+
+  // the index is sorted by packed long keys of the mass in micro Da and the formula number
+  private static final int INDEX_BITS = 25;
+  private static final int MAX_FORMULAS = 1 << INDEX_BITS;
+  // skip element spaces that are too large to enumerate, most formulas would be rejected anyway
+  private static final long MAX_CANDIDATES = 8L * MAX_FORMULAS;
+  private static final double MAX_MASS = (1L << (63 - INDEX_BITS)) / 1e6;
+  // the maximum masses of indices are rounded up, so features of similar mass share an index
+  private static final double MASS_STEP = 100d;
+  // the least recently used index files are deleted above this size
+  private static final long MAX_DISK_BYTES = 4L * 1024 * 1024 * 1024;
+  private static final String FILE_PREFIX = "mzmine-formulas-";
+  private static final String FILE_SUFFIX = ".idx";
+
+  private static final Map<String, FormulaMassIndex> indices = new ConcurrentHashMap<>();
+  // index files that are being built, every file is only built once at a time
+  private static final Map<String, CompletableFuture<FormulaMassIndex>> builds =
+      new ConcurrentHashMap<>();
+
+  private final String key;
+  private final double maxMass;
+  private final IIsotope[] isotopes;
+  private final int numFormulas;
+  private final DoubleBuffer masses;
+  private final ShortBuffer counts;
+
+  private FormulaMassIndex(String key, double maxMass, IIsotope[] isotopes, int numFormulas,
+      DoubleBuffer masses, ShortBuffer counts) {
+    this.key = key;
+    this.maxMass = maxMass;
+    this.isotopes = isotopes;
+    this.numFormulas = numFormulas;
+    this.masses = masses;
+    this.counts = counts;
+  }
+
+  /**
+   * Finds or creates the index of all formulas up to the maximum mass
+   *
+   * @param elements         element counts
+   * @param maxMass          maximum neutral mass of the formulas
+   * @param ratiosParameters elemental ratio restrictions or null
+   * @param rdbeParameters   RDBE restrictions or null
+   * @param create           create the index if there is none for these settings yet
+   * @param isCanceled       stops the creation
+   * @return the index or null if it does not exist and create is false, if there are too many
+   *         formulas or if the creation failed or was canceled
+   */
+  @Nullable
+  public static FormulaMassIndex getIndex(@Nonnull MolecularFormulaRange elements, double maxMass,
+      @Nullable ParameterSet ratiosParameters, @Nullable ParameterSet rdbeParameters,
+      boolean create, @Nonnull BooleanSupplier isCanceled) {
+
+    final IIsotope[] isotopes = getIsotopes(elements);
+    if (isotopes == null || maxMass > MAX_MASS) {
+      return null;
+    }
+    final String key = createKey(elements, isotopes, ratiosParameters, rdbeParameters);
+
+    // any index of these settings that covers the mass
+    for (Map.Entry<String, FormulaMassIndex> entry : indices.entrySet()) {
+      FormulaMassIndex index = entry.getValue();
+      if (index.key.equals(key) && index.maxMass >= maxMass) {
+        new File(entry.getKey()).setLastModified(System.currentTimeMillis());
+        return index;
+      }
+    }
+    final File directory = new File(System.getProperty("java.io.tmpdir"));
+    final String filePrefix = FILE_PREFIX + Integer.toHexString(key.hashCode()) + "-";
+    final File[] files = directory.listFiles(
+        (dir, name) -> name.startsWith(filePrefix) && name.endsWith(FILE_SUFFIX));
+    if (files != null) {
+      for (File file : files) {
+        FormulaMassIndex index = load(file, key, isotopes);
+        if (index != null && index.maxMass >= maxMass) {
+          indices.put(file.getAbsolutePath(), index);
+          file.setLastModified(System.currentTimeMillis());
+          return index;
+        }
+      }
+    }
+    if (!create) {
+      return null;
+    }
+
+    final double roundedMaxMass = Math.min(MAX_MASS, Math.ceil(maxMass / MASS_STEP) * MASS_STEP);
+    final File file = new File(directory, filePrefix + (long) roundedMaxMass + FILE_SUFFIX);
+    final CompletableFuture<FormulaMassIndex> build = new CompletableFuture<>();
+    final CompletableFuture<FormulaMassIndex> runningBuild =
+        builds.putIfAbsent(file.getAbsolutePath(), build);
+    if (runningBuild != null) {
+      return awaitBuild(runningBuild, isCanceled);
+    }
+
+    FormulaMassIndex index = null;
+    try {
+      index = buildAndLoad(directory, file, key, elements, isotopes, roundedMaxMass,
+          ratiosParameters, rdbeParameters, isCanceled);
+    } finally {
+      build.complete(index);
+      builds.remove(file.getAbsolutePath(), build);
+    }
+    deleteUnusedFiles(directory);
+    return index;
+  }
+
+  /**
+   * Waits for the build of another task
+   *
+   * @return the index or null if the build failed or if this task was canceled
+   */
+  @Nullable
+  private static FormulaMassIndex awaitBuild(CompletableFuture<FormulaMassIndex> build,
+      BooleanSupplier isCanceled) {
+    while (!isCanceled.getAsBoolean()) {
+      try {
+        return build.get(1, TimeUnit.SECONDS);
+      } catch (TimeoutException e) {
+        // check the cancellation again
+      } catch (InterruptedException | ExecutionException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes the index to a unique temporary file and moves the complete file into place, so other
+   * tasks or MZmine instances never map an incomplete file. If another instance moved its file
+   * first, that file is used.
+   */
+  @Nullable
+  private static FormulaMassIndex buildAndLoad(File directory, File file, String key,
+      MolecularFormulaRange elements, IIsotope[] isotopes, double maxMass,
+      ParameterSet ratiosParameters, ParameterSet rdbeParameters, BooleanSupplier isCanceled) {
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+      if (!build(tempFile, key, elements, isotopes, maxMass, ratiosParameters, rdbeParameters,
+          isCanceled)) {
+        return null;
+      }
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      if (!file.exists()) {
+        logger.warning("Cannot create formula index " + file + ": " + e.getMessage());
+        return null;
+      }
+      logger.fine("Formula index " + file + " was created by another instance");
+    } finally {
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+
+    FormulaMassIndex index = load(file, key, isotopes);
+    if (index != null) {
+      indices.put(file.getAbsolutePath(), index);
+      logger.info("Created formula index of " + index.numFormulas + " formulas up to " + maxMass
+          + " Da in " + file);
+    }
+    return index;
+  }
+
+  /**
+   * Deletes the least recently used index files that exceed {@link #MAX_DISK_BYTES}. The files of
+   * the indices in memory are kept.
+   */
+  private static void deleteUnusedFiles(File directory) {
+    final File[] files = directory
+        .listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+    long bytes = 0;
+    for (File file : files) {
+      if (indices.containsKey(file.getAbsolutePath())
+          || bytes + file.length() <= MAX_DISK_BYTES) {
+        bytes += file.length();
+      } else if (file.delete()) {
+        logger.finest("Removed unused formula index " + file);
+      }
+    }
+  }
+
+  /**
+   * Checks the same restrictions as the formula prediction tasks
+   */
+  public static boolean checkRestrictions(@Nonnull IMolecularFormula cdkFormula,
+      @Nullable ParameterSet ratiosParameters, @Nullable ParameterSet rdbeParameters) {
+
+    // Check elemental ratios
+    if (ratiosParameters != null
+        && !ElementalHeuristicChecker.checkFormula(cdkFormula, ratiosParameters)) {
+      return false;
+    }
+
+    // Check RDBE condition
+    Double rdbeValue = RDBERestrictionChecker.calculateRDBE(cdkFormula);
+    return rdbeParameters == null || rdbeValue == null
+        || RDBERestrictionChecker.checkRDBE(rdbeValue, rdbeParameters);
+  }
+
+  public int getNumberOfFormulas() {
+    return numFormulas;
+  }
+
+  public double getMass(int index) {
+    return masses.get(index);
+  }
+
+  /**
+   * @return the index of the first formula with a mass of at least minMass
+   */
+  public int indexOf(double minMass) {
+    int low = 0;
+    int high = numFormulas;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (masses.get(mid) < minMass) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @Nonnull
+  public IMolecularFormula getFormula(int index, @Nonnull IChemObjectBuilder builder) {
+    IMolecularFormula formula = builder.newInstance(IMolecularFormula.class);
+    for (int e = 0; e < isotopes.length; e++) {
+      final int count = counts.get(index * isotopes.length + e);
+      if (count > 0) {
+        formula.addIsotope(isotopes[e], count);
+      }
+    }
+    return formula;
+  }
+
+  @Nullable
+  private static IIsotope[] getIsotopes(MolecularFormulaRange elements) {
+    List<IIsotope> isotopes = new ArrayList<>();
+    for (IIsotope isotope : elements.isotopes()) {
+      if (isotope.getExactMass() == null || isotope.getExactMass() <= 0
+          || elements.getIsotopeCountMax(isotope) > Short.MAX_VALUE) {
+        return null;
+      }
+      isotopes.add(isotope);
+    }
+    return isotopes.toArray(new IIsotope[0]);
+  }
+
+  private static String createKey(MolecularFormulaRange elements, IIsotope[] isotopes,
+      ParameterSet ratiosParameters, ParameterSet rdbeParameters) {
+    StringBuilder key = new StringBuilder();
+    for (IIsotope isotope : isotopes) {
+      key.append(isotope.getSymbol()).append(isotope.getMassNumber()).append('[')
+          .append(elements.getIsotopeCountMin(isotope)).append('-')
+          .append(elements.getIsotopeCountMax(isotope)).append(']');
+    }
+    if (ratiosParameters != null) {
+      key.append(" ratios ")
+          .append(ratiosParameters.getParameter(ElementalHeuristicParameters.checkHC).getValue())
+          .append(ratiosParameters.getParameter(ElementalHeuristicParameters.checkNOPS).getValue())
+          .append(
+              ratiosParameters.getParameter(ElementalHeuristicParameters.checkMultiple).getValue());
+    }
+    if (rdbeParameters != null) {
+      key.append(" rdbe ")
+          .append(rdbeParameters.getParameter(RDBERestrictionParameters.rdbeRange).getValue())
+          .append(rdbeParameters.getParameter(RDBERestrictionParameters.rdbeWholeNum).getValue());
+    }
+    return key.toString();
+  }
+
+  /**
+   * Enumerates all formulas, sorts them by mass and writes the file
+   *
+   * @return false if there are too many formulas or if canceled
+   */
+  private static boolean build(File file, String key, MolecularFormulaRange elements,
+      IIsotope[] isotopes, double maxMass, ParameterSet ratiosParameters,
+      ParameterSet rdbeParameters, BooleanSupplier isCanceled) throws IOException {
+
+    final int numElements = isotopes.length;
+    final double[] elementMasses = new double[numElements];
+    final int[] minCounts = new int[numElements];
+    final int[] maxCounts = new int[numElements];
+    // minimum mass of the elements from e on
+    final double[] minRemainingMass = new double[numElements + 1];
+    for (int e = numElements - 1; e >= 0; e--) {
+      elementMasses[e] = isotopes[e].getExactMass();
+      minCounts[e] = elements.getIsotopeCountMin(isotopes[e]);
+      maxCounts[e] = elements.getIsotopeCountMax(isotopes[e]);
+      minRemainingMass[e] = minRemainingMass[e + 1] + minCounts[e] * elementMasses[e];
+    }
+
+    if (estimateCandidates(elementMasses, minCounts, maxCounts, maxMass) > MAX_CANDIDATES) {
+      logger.info("Too many formulas for a formula index of " + key);
+      return false;
+    }
+
+    // enumerate in the order of the elements, like an odometer
+    final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+    double[] masses = new double[1024];
+    short[] counts = new short[1024 * numElements];
+    int numFormulas = 0;
+
+    final int[] current = minCounts.clone();
+    final double[] partialMass = new double[numElements + 1];
+    for (int e = 0; e < numElements; e++) {
+      partialMass[e + 1] = partialMass[e] + current[e] * elementMasses[e];
+    }
+    if (numElements == 0 || partialMass[numElements] > maxMass) {
+      return false;
+    }
+
+    while (true) {
+      if (isCanceled.getAsBoolean()) {
+        return false;
+      }
+
+      final double mass = partialMass[numElements];
+      if (mass > 0) {
+        IMolecularFormula formula = builder.newInstance(IMolecularFormula.class);
+        for (int e = 0; e < numElements; e++) {
+          if (current[e] > 0) {
+            formula.addIsotope(isotopes[e], current[e]);
+          }
+        }
+        if (checkRestrictions(formula, ratiosParameters, rdbeParameters)) {
+          if (numFormulas == MAX_FORMULAS) {
+            logger.info("Too many formulas for a formula index of " + key);
+            return false;
+          }
+          if (numFormulas == masses.length) {
+            masses = Arrays.copyOf(masses, masses.length * 2);
+            counts = Arrays.copyOf(counts, counts.length * 2);
+          }
+          masses[numFormulas] = mass;
+          for (int e = 0; e < numElements; e++) {
+            counts[numFormulas * numElements + e] = (short) current[e];
+          }
+          numFormulas++;
+        }
+      }
+
+      // next formula: increment the last element that stays below the maximum mass
+      int e = numElements - 1;
+      while (e >= 0) {
+        if (current[e] < maxCounts[e]
+            && partialMass[e] + (current[e] + 1) * elementMasses[e] + minRemainingMass[e + 1]
+                <= maxMass) {
+          break;
+        }
+        e--;
+      }
+      if (e < 0) {
+        break;
+      }
+      current[e]++;
+      partialMass[e + 1] = partialMass[e] + current[e] * elementMasses[e];
+      for (int next = e + 1; next < numElements; next++) {
+        current[next] = minCounts[next];
+        partialMass[next + 1] = partialMass[next] + current[next] * elementMasses[next];
+      }
+    }
+
+    // sort by mass, the packed keys sort by micro Da, the few swaps below that are done after
+    final long[] order = new long[numFormulas];
+    for (int i = 0; i < numFormulas; i++) {
+      order[i] = (Math.round(masses[i] * 1e6) << INDEX_BITS) | i;
+    }
+    Arrays.parallelSort(order);
+    final double[] sortedMasses = new double[numFormulas];
+    final short[] sortedCounts = new short[numFormulas * numElements];
+    for (int i = 0; i < numFormulas; i++) {
+      final int source = (int) (order[i] & (MAX_FORMULAS - 1));
+      sortedMasses[i] = masses[source];
+      System.arraycopy(counts, source * numElements, sortedCounts, i * numElements, numElements);
+    }
+    for (int i = 1; i < numFormulas; i++) {
+      for (int j = i; j > 0 && sortedMasses[j - 1] > sortedMasses[j]; j--) {
+        final double mass = sortedMasses[j];
+        sortedMasses[j] = sortedMasses[j - 1];
+        sortedMasses[j - 1] = mass;
+        for (int e = 0; e < numElements; e++) {
+          final short count = sortedCounts[j * numElements + e];
+          sortedCounts[j * numElements + e] = sortedCounts[(j - 1) * numElements + e];
+          sortedCounts[(j - 1) * numElements + e] = count;
+        }
+      }
+    }
+
+    // the magic number is written last, incomplete files are not loaded
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeInt(0);
+      raf.writeInt(VERSION);
+      raf.writeUTF(key);
+      raf.writeDouble(maxMass);
+      raf.writeInt(numElements);
+      raf.writeInt(numFormulas);
+      final long dataOffset = (raf.getFilePointer() + 7) / 8 * 8;
+      final long massBytes = (long) numFormulas * Double.BYTES;
+      final long countBytes = (long) numFormulas * numElements * Short.BYTES;
+      raf.setLength(dataOffset + massBytes + countBytes);
+
+      final FileChannel channel = raf.getChannel();
+      final MappedByteBuffer massBuffer = channel.map(MapMode.READ_WRITE, dataOffset, massBytes);
+      massBuffer.asDoubleBuffer().put(sortedMasses);
+      final MappedByteBuffer countBuffer =
+          channel.map(MapMode.READ_WRITE, dataOffset + massBytes, countBytes);
+      countBuffer.asShortBuffer().put(sortedCounts);
+      channel.force(true);
+      // the file is moved afterwards, which fails on Windows while it is mapped
+      MappedBufferUtils.unmap(massBuffer);
+      MappedBufferUtils.unmap(countBuffer);
+      raf.seek(0);
+      raf.writeInt(MAGIC);
+    }
+    return true;
+  }
+
+  /**
+   * Upper bound of the number of element combinations up to the maximum mass, which are enumerated
+   * by {@link #build}. Combinations are counted per nominal mass with the element masses rounded
+   * down, so no combination below the maximum mass is missed.
+   */
+  private static double estimateCandidates(double[] elementMasses, int[] minCounts,
+      int[] maxCounts, double maxMass) {
+    final int maxNominalMass = (int) Math.floor(maxMass);
+    double[] combinations = new double[maxNominalMass + 1];
+    double[] next = new double[maxNominalMass + 1];
+    combinations[0] = 1;
+    for (int e = 0; e < elementMasses.length; e++) {
+      final int nominalMass = (int) Math.floor(elementMasses[e]);
+      final int minCount = minCounts[e];
+      final int maxCount = maxCounts[e];
+      for (int m = 0; m <= maxNominalMass; m++) {
+        if (nominalMass == 0) {
+          next[m] = combinations[m] * (maxCount - minCount + 1);
+          continue;
+        }
+        // sum of the combinations at m - count * nominalMass over all counts, as a sliding window
+        double sum = m >= nominalMass ? next[m - nominalMass] : 0;
+        final long first = m - (long) minCount * nominalMass;
+        final long last = m - (long) (maxCount + 1) * nominalMass;
+        if (first >= 0) {
+          sum += combinations[(int) first];
+        }
+        if (last >= 0) {
+          sum -= combinations[(int) last];
+        }
+        next[m] = sum;
+      }
+      final double[] swap = combinations;
+      combinations = next;
+      next = swap;
+    }
+    double total = 0;
+    for (double c : combinations) {
+      total += c;
+    }
+    return total;
+  }
+
+  @Nullable
+  private static FormulaMassIndex load(File file, String key, IIsotope[] isotopes) {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      if (raf.readInt() != MAGIC || raf.readInt() != VERSION || !raf.readUTF().equals(key)) {
+        return null;
+      }
+      final double maxMass = raf.readDouble();
+      final int numElements = raf.readInt();
+      final int numFormulas = raf.readInt();
+      if (numElements != isotopes.length) {
+        return null;
+      }
+      final long dataOffset = (raf.getFilePointer() + 7) / 8 * 8;
+      final long massBytes = (long) numFormulas * Double.BYTES;
+      final long countBytes = (long) numFormulas * numElements * Short.BYTES;
+      if (raf.length() != dataOffset + massBytes + countBytes || countBytes > Integer.MAX_VALUE) {
+        return null;
+      }
+
+      // the mappings stay valid after the file is closed
+      final FileChannel channel = raf.getChannel();
+      final DoubleBuffer masses =
+          channel.map(MapMode.READ_ONLY, dataOffset, massBytes).asDoubleBuffer();
+      final ShortBuffer counts =
+          channel.map(MapMode.READ_ONLY, dataOffset + massBytes, countBytes).asShortBuffer();
+      return new FormulaMassIndex(key, maxMass, isotopes, numFormulas, masses, counts);
+    } catch (IOException e) {
+      logger.warning("Cannot read formula index " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+}
@@ -155,19 +155,33 @@ public class SingleRowPredictionTask extends AbstractTask {
 
       IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
 
-      generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
-              massRange.upperEndpoint(), elementCounts);
+      // use the formulas of a feature list prediction with the same settings if there are any
+      FormulaMassIndex formulaIndex = FormulaMassIndex.getIndex(elementCounts,
+          massRange.upperEndpoint(), checkRatios ? ratiosParameters : null,
+          checkRDBE ? rdbeParameters : null, false, this::isCanceled);
+      if (formulaIndex != null) {
+        for (int i = formulaIndex.indexOf(massRange.lowerEndpoint()); i < formulaIndex
+            .getNumberOfFormulas() && formulaIndex.getMass(i) <= massRange.upperEndpoint(); i++) {
+          if (isCanceled())
+            return;
 
-      IMolecularFormula cdkFormula;
-      while ((cdkFormula = generator.getNextFormula()) != null) {
+          checkConstraints(formulaIndex.getFormula(i, builder));
+        }
+      } else {
+        generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
+            massRange.upperEndpoint(), elementCounts);
 
-        if (isCanceled())
-          return;
+        IMolecularFormula cdkFormula;
+        while ((cdkFormula = generator.getNextFormula()) != null) {
+
+          if (isCanceled())
+            return;
 
-        // Mass is ok, so test other constraints
-        checkConstraints(cdkFormula);
+          // Mass is ok, so test other constraints
+          checkConstraints(cdkFormula);
 
 
+        }
       }
 
       if (isCanceled())
@@ -21,6 +21,9 @@ import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import org.openscience.cdk.formula.MolecularFormulaGenerator;
 import org.openscience.cdk.formula.MolecularFormulaRange;
@@ -39,6 +42,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.identities.MolecularFormulaIdentity;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.id_formula_sort.FormulaSortParameters;
+import io.github.mzmine.modules.dataprocessing.id_formulaprediction.FormulaMassIndex;
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.elements.ElementalHeuristicChecker;
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.rdbe.RDBERestrictionChecker;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreCalculator;
@@ -56,18 +60,19 @@ import io.github.mzmine.util.FormulaUtils;
 public class FormulaPredictionFeatureListTask extends AbstractTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
-  private Range<Double> massRange;
   private MolecularFormulaRange elementCounts;
-  private MolecularFormulaGenerator generator;
+  // generators of the rows in progress, to be canceled
+  private final Set<MolecularFormulaGenerator> generators = ConcurrentHashMap.newKeySet();
+  private FormulaMassIndex formulaIndex;
   private IonizationType ionType;
-  private double searchedMass;
   private int charge;
   private FeatureList featureList;
   private boolean checkIsotopes, checkMSMS, checkRatios, checkRDBE;
   private ParameterSet isotopeParameters, msmsParameters, ratiosParameters, rdbeParameters;
   private MZTolerance mzTolerance;
   private String message;
-  private int totalRows, finishedRows;
+  private int totalRows;
+  private final AtomicInteger finishedRows = new AtomicInteger();
   private int maxBestFormulasPerFeature;
   private final double minScore;
   private final double minMSMSScore;
@@ -152,7 +157,7 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0.0;
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   /**
@@ -173,77 +178,135 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
     totalRows = featureList.getNumberOfRows();
 
+    // the formulas of all rows are enumerated once and looked up by mass, falls back to the
+    // formula generator per row if there are too many formulas
+    double maxMass = 0d;
     for (FeatureListRow row : featureList.getRows()) {
+      final double searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+      maxMass = Math.max(maxMass, mzTolerance.getToleranceRange(searchedMass).upperEndpoint());
+    }
+    if (totalRows > 0) {
+      message = "Creating formula index up to "
+          + MZmineCore.getConfiguration().getMZFormat().format(maxMass) + " Da";
+      formulaIndex = FormulaMassIndex.getIndex(elementCounts, maxMass,
+          checkRatios ? ratiosParameters : null, checkRDBE ? rdbeParameters : null, true,
+          this::isCanceled);
+    }
+    if (isCanceled())
+      return;
 
-      if (row.getPeakIdentities().size() > 0) {
-        continue;
+    // rows are independent, the predicted isotope patterns are shared by the cache of the
+    // IsotopePatternCalculator
+    featureList.getRows().parallelStream().forEach(row -> {
+      // inside stream - only skips this row
+      if (isCanceled() || getStatus() == TaskStatus.ERROR) {
+        return;
       }
+      if (row.getPeakIdentities().size() == 0) {
+        predictFormulas(row);
+      }
+      finishedRows.incrementAndGet();
+    });
 
-      this.searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+    if (isCanceled() || getStatus() == TaskStatus.ERROR)
+      return;
 
-      message = "Formula prediction for "
-          + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
+    logger.finest("Finished formula search for all the features");
 
-      massRange = mzTolerance.getToleranceRange(searchedMass);
+    setStatus(TaskStatus.FINISHED);
 
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
-      generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
-          massRange.upperEndpoint(), elementCounts);
+  }
 
-      IMolecularFormula cdkFormula;
+  private void predictFormulas(FeatureListRow row) {
 
-      // create a map to store ResultFormula and relative mass deviation
-      // for sorting
-      List<MolecularFormulaIdentity> flist = new ArrayList<>();
-      while ((cdkFormula = generator.getNextFormula()) != null) {
+    final double searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+
+    message = "Formula prediction for "
+        + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
+
+    final Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
+
+    IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    // create a map to store ResultFormula and relative mass deviation
+    // for sorting
+    List<MolecularFormulaIdentity> flist = new ArrayList<>();
+
+    if (formulaIndex != null) {
+      // all formulas of the index already passed the elemental ratio and RDBE restrictions
+      for (int i = formulaIndex.indexOf(massRange.lowerEndpoint()); i < formulaIndex
+          .getNumberOfFormulas() && formulaIndex.getMass(i) <= massRange.upperEndpoint(); i++) {
         if (isCanceled())
           return;
 
-        // Mass is ok, so test other constraints
-        if (checkConstraints(cdkFormula, row)) {
-          Double isotopeScore = calcIsotopePatternScore(cdkFormula, row);
-          Double msmsScore = calcIsotopePatternScore(cdkFormula, row);
-          if (getStatus().equals(TaskStatus.ERROR))
+        if (!scoreFormula(formulaIndex.getFormula(i, builder), row, searchedMass, flist))
+          return;
+      }
+    } else {
+      MolecularFormulaGenerator generator = new MolecularFormulaGenerator(builder,
+          massRange.lowerEndpoint(), massRange.upperEndpoint(), elementCounts);
+      generators.add(generator);
+
+      try {
+        IMolecularFormula cdkFormula;
+        while ((cdkFormula = generator.getNextFormula()) != null) {
+          if (isCanceled())
             return;
 
-          if ((isotopeScore == null || isotopeScore >= minScore)
-              && (msmsScore == null || msmsScore >= minMSMSScore)) {
-            // write to map
-            MolecularFormulaIdentity molf =
-                new MolecularFormulaIdentity(cdkFormula, searchedMass, isotopeScore, msmsScore);
-            flist.add(molf);
+          // Mass is ok, so test other constraints before any isotope or MS/MS work
+          if (!checkConstraints(cdkFormula, row)) {
+            continue;
           }
+
+          if (!scoreFormula(cdkFormula, row, searchedMass, flist))
+            return;
         }
+      } finally {
+        generators.remove(generator);
       }
+    }
 
-      if (isCanceled())
-        return;
+    if (isCanceled())
+      return;
 
-      // sort formulas by ppm difference
-      FormulaUtils.sortFormulaList(flist, sortPPMFactor, sortIsotopeFactor, sortMSMSFactor);
+    // sort formulas by ppm difference
+    FormulaUtils.sortFormulaList(flist, sortPPMFactor, sortIsotopeFactor, sortMSMSFactor);
 
-      // Add the new formula entry top results
-      int ctr = 0;
-      for (MolecularFormulaIdentity f : flist) {
-        if (ctr < maxBestFormulasPerFeature) {
-          f.setPropertyValue(FeatureIdentity.PROPERTY_METHOD, this.getClass().getName());
-          row.addFeatureIdentity(f, false);
-          ctr++;
-        }
+    // Add the new formula entry top results
+    int ctr = 0;
+    for (MolecularFormulaIdentity f : flist) {
+      if (ctr < maxBestFormulasPerFeature) {
+        f.setPropertyValue(FeatureIdentity.PROPERTY_METHOD, this.getClass().getName());
+        row.addFeatureIdentity(f, false);
+        ctr++;
       }
-      if (isCanceled())
-        return;
-      finishedRows++;
-
     }
+  }
 
-    if (isCanceled())
-      return;
+  /**
+   * Adds the formula to the list if the isotope pattern and MS/MS scores are high enough
+   *
+   * @return false if the MS/MS scoring failed
+   */
+  private boolean scoreFormula(IMolecularFormula cdkFormula, FeatureListRow row,
+      double searchedMass, List<MolecularFormulaIdentity> flist) {
 
-    logger.finest("Finished formula search for all the features");
+    Double isotopeScore = calcIsotopePatternScore(cdkFormula, row);
+    if (isotopeScore != null && isotopeScore < minScore) {
+      return true;
+    }
 
-    setStatus(TaskStatus.FINISHED);
+    Double msmsScore = calcMSMSPatternScore(cdkFormula, row);
+    if (getStatus().equals(TaskStatus.ERROR))
+      return false;
 
+    if (msmsScore == null || msmsScore >= minMSMSScore) {
+      // write to map
+      MolecularFormulaIdentity molf =
+          new MolecularFormulaIdentity(cdkFormula, searchedMass, isotopeScore, msmsScore);
+      flist.add(molf);
+    }
+    return true;
   }
 
   private boolean checkConstraints(IMolecularFormula cdkFormula, FeatureListRow featureListRow) {
@@ -325,7 +388,7 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
       final double minPredictedAbundance = isotopeNoiseLevel / detectedPatternHeight;
 
-      predictedIsotopePattern = IsotopePatternCalculator.calculateIsotopePattern(adjustedFormula,
+      predictedIsotopePattern = IsotopePatternCalculator.getCachedIsotopePattern(adjustedFormula,
           minPredictedAbundance, charge, ionType.getPolarity());
 
       isotopeScore = IsotopePatternScoreCalculator.getSimilarityScore(detectedPattern,
@@ -340,7 +403,7 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
     // We need to cancel the formula generator, because searching for next
     // candidate formula may take a looong time
-    if (generator != null) {
+    for (MolecularFormulaGenerator generator : generators) {
       generator.cancel();
     }
 
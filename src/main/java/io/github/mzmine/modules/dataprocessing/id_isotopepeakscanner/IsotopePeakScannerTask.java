@@ -28,15 +28,19 @@ import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.util.FeatureListRowSorter;
 import io.github.mzmine.util.FeatureUtils;
+import io.github.mzmine.util.RTPartitionedMZIndex;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.openscience.cdk.interfaces.IIsotope;
+import com.google.common.collect.Range;
 import io.github.msdk.MSDKRuntimeException;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IsotopePattern;
@@ -87,7 +91,8 @@ public class IsotopePeakScannerTask extends AbstractTask {
   private double minPatternIntensity;
   private double mergeWidth;
   private String message;
-  private int totalRows, finishedRows;
+  private int totalRows;
+  private final AtomicInteger finishedRows = new AtomicInteger();
   private FeatureList resultPeakList;
   private MZmineProject project;
   private FeatureList peakList;
@@ -202,7 +207,7 @@ public class IsotopePeakScannerTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0.0;
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   /**
@@ -244,195 +249,36 @@ public class IsotopePeakScannerTask extends AbstractTask {
     resultPeakList = new ModularFeatureList(peakList.getName() + suffix, peakList.getRawDataFiles());
     PeakListHandler resultMap = new PeakListHandler();
 
+    // index the rows by m/z, in partitions of related retention times if the RT is checked
+    double[] mzs = new double[totalRows];
+    float[] rts = new float[totalRows];
     for (int i = 0; i < totalRows; i++) {
-      // i will represent the index of the row in peakList
-      if (rows[i].getPeakIdentities().size() > 0) {
-        finishedRows++;
-        continue;
-      }
-
-      message = "Row " + i + "/" + totalRows;
-
-      // now get all peaks that lie within RT and maxIsotopeMassRange:
-      // pL[index].mz ->
-      // pL[index].mz+maxMass
-      ArrayList<FeatureListRow> groupedPeaks =
-          groupPeaks(rows, i, diff[maxPatternIndex][diff[maxPatternIndex].length - 1]);
-
-      if (groupedPeaks.size() < 2) {
-        finishedRows++;
-        continue;
-      }
-      // else
-      // logger.info("groupedPeaks.size > 2 in row: " + i + " size: " +
-      // groupedPeaks.size());
-
-      ResultBuffer[][] resultBuffer = new ResultBuffer[diff.length][]; // this
-                                                                       // will
-                                                                       // store
-                                                                       // row
-                                                                       // indexes
-      // TODO: it should be possible to use a single array of result
-      // buffer instead of a 2D array
-      // which should reduce computation time later on. the problem is
-      // that some carbon peaks
-      // might pop up within
-      // the pattern and change indices. for testing purposes ill do it as
-      // it is
-
-      for (int p = 0; p < diff.length; p++) { // resultBuffer[i] index
-                                              // will represent Isotope[i]
-                                              // (if
-        // numAtoms = 0)
-        resultBuffer[p] = new ResultBuffer[diff[p].length];
-
-        for (int k = 0; k < diff[p].length; k++)
-          resultBuffer[p][k] = new ResultBuffer(); // [p][0] will be
-                                                   // the isotope with
-                                                   // lowest mass#
-      }
-
-      // of all features with fitting rt
-      // and mz
-      boolean trueBuffers[] = new boolean[diff.length];
-      Arrays.fill(trueBuffers, false);
-
-      for (int j = 0; j < groupedPeaks.size(); j++) // go through all
-                                                    // possible peaks
-      {
-        for (int p = 0; p < diff.length; p++) {
-
-          for (int k = 0; k < diff[p].length; k++) // check for each
-                                                   // peak if it is a
-                                                   // possible
-                                                   // feature
-          // for
-          // every diff[](isotope)
-          { // this is necessary bc there might be more than one
-            // possible feature
-            // j represents the row index in groupedPeaks
-            // k represents the isotope number the peak will be a
-            // candidate for
-            // p = pattern index for autoCarbon
-            if (mzTolerance.checkWithinTolerance(groupedPeaks.get(0).getAverageMZ() + diff[p][k],
-                groupedPeaks.get(j).getAverageMZ())) {
-              // this will automatically add groupedPeaks[0] to
-              // the list -> isotope with
-              // lowest mass
-              resultBuffer[p][k].addFound(); // +1 result for
-                                             // isotope k
-              resultBuffer[p][k].addRow(j); // row in
-                                            // groupedPeaks[]
-              resultBuffer[p][k].addID(groupedPeaks.get(j).getID());
-            }
-          }
-        }
-      }
-
-      boolean foundOne = false;
-
-      for (int p = 0; p < diff.length; p++)
-        if (checkIfAllTrue(resultBuffer[p])) { // this means that for
-                                               // every isotope we
-                                               // expected to
-                                               // find,
-          foundOne = true; // we found one or more possible features
-          trueBuffers[p] = true;
-          // logger.info("Row: " + i + " filled buffer[" + p +"]");
-        }
-      if (!foundOne) {
-        finishedRows++;
-        continue;
-      }
-
-      Candidates[] candidates = new Candidates[diff.length];
-      for (int p = 0; p < diff.length; p++)
-        candidates[p] = new Candidates(diff[p].length, minHeight, mzTolerance, pattern[p],
-            massListName, plh, ratingType);
-
-      for (int p = 0; p < diff.length; p++) {
-        if (!trueBuffers[p])
-          continue;
-        for (int k = 0; k < resultBuffer[p].length; k++) // reminder:
-                                                         // resultBuffer.length
-                                                         // =
-                                                         // diff.length
-        {
-          for (int l = 0; l < resultBuffer[p][k].getFoundCount(); l++) {
-            // k represents index resultBuffer[k] and thereby the
-            // isotope number
-            // l represents the number of results in resultBuffer[k]
-            candidates[p].checkForBetterRating(k, groupedPeaks.get(0),
-                groupedPeaks.get(resultBuffer[p][k].getRow(l)), minRating, checkIntensity);
-
-          }
-        }
-      }
-
-      foundOne = false;
-      boolean trueCandidates[] = new boolean[diff.length];
-      Arrays.fill(trueCandidates, false);
-
-      for (int p = 0; p < diff.length; p++) {
-        if (trueBuffers[p] && checkIfAllTrue(candidates[p].getCandidates())) {
-          trueCandidates[p] = true;
-          foundOne = true;
-          // logger.info("Row: " + i + " filled candidates[" + p +
-          // "]");
-        }
-      }
-      if (!foundOne) {
-        finishedRows++;
-        // logger.info("Not enough valid candidates for parent feature "
-        // +
-        // groupedPeaks.get(0).getAverageMZ() + "\talthough enough peaks
-        // were found.") ;
-        continue; // jump to next i
-      }
+      mzs[i] = rows[i].getAverageMZ();
+      rts[i] = rows[i].getAverageRT();
+    }
+    RTPartitionedMZIndex index = new RTPartitionedMZIndex(mzs, rts, checkRT ? rtTolerance : null);
 
-      // find best result now, first we have to calc avg ratings if
-      // specified by user
-      int bestPatternIndex = 0;
-      double bestRating = 0.0;
-      for (int p = 0; p < diff.length; p++) {
+    // search the isotope pattern of every row in parallel, the results are added in order of m/z
+    message = "Searching isotope patterns...";
+    Candidates[][] rowCandidates = new Candidates[totalRows][];
+    int[] bestPatternIndices = new int[totalRows];
+    IntStream.range(0, totalRows).parallel().forEach(i -> {
+      if (isCanceled())
+        return;
+      rowCandidates[i] = searchPattern(rows, i, index, diff, plh, bestPatternIndices);
+      finishedRows.incrementAndGet();
+    });
 
-        if (!trueCandidates[p])
-          continue;
+    if (isCanceled())
+      return;
 
-        if (accurateAvgIntensity)
-          candidates[p].calcAvgRatings();
-        // this is a final rating, with averaged intensities in all
-        // mass lists that contain EVERY peak that was selected.
-        // thats why we can only do it after ALL peaks have been
-        // found
-
-        if (accurateAvgIntensity && candidates[p].getAvgAccAvgRating() > bestRating) {
-          bestPatternIndex = p;
-          bestRating = candidates[p].getAvgAccAvgRating();
-        } else if (!accurateAvgIntensity && candidates[p].getSimpleAvgRating() > bestRating) {
-          bestPatternIndex = p;
-          bestRating = candidates[p].getSimpleAvgRating();
-        }
-      }
+    message = "Adding results...";
 
-      if (!checkIfAllTrue(candidates[bestPatternIndex].getCandidates())) {
-        logger.warning(
-            "We were about to add candidates with null pointers.\nThis was no valid result. Continueing.");
+    for (int i = 0; i < totalRows; i++) {
+      Candidates[] candidates = rowCandidates[i];
+      if (candidates == null)
         continue;
-      } // TODO: this shouldnt be needed, fix the bug that causes the
-        // crash later on.
-        // this happens occasionally if the user wants to do accurate
-        // average but does not filter
-        // by RT. then possible isotope peaks are found, although they are
-        // not detected at the same
-        // time. This will result in the candidates return -1.0 which will
-        // sooner or later return a
-        // null pointer Fixing this will be done in a future update, but
-        // needs a rework of the
-        // candidates class.
-        // The results you miss by skipping here would have not been valid
-        // results anyway, so this
-        // is not urgent. Will be nicer though, because of cleaner code.
+      int bestPatternIndex = bestPatternIndices[i];
 
       // PeakListRow parent = copyPeakRow(peakList.getRow(i));
 
@@ -540,8 +386,6 @@ public class IsotopePeakScannerTask extends AbstractTask {
 
       if (isCanceled())
         return;
-
-      finishedRows++;
     }
 
     ArrayList<Integer> keys = resultMap.getAllKeys();
@@ -556,6 +400,201 @@ public class IsotopePeakScannerTask extends AbstractTask {
 
   }
 
+  /**
+   * Searches the isotope pattern that has the row with the given index as the isotope with the
+   * lowest mass.
+   *
+   * @param rows all rows, sorted by m/z
+   * @param i index of the possible parent row
+   * @param index m/z index of the rows
+   * @param bestPatternIndices the index of the best fitting pattern is stored here
+   * @return the candidates of every pattern, or null if no pattern was found
+   */
+  private @Nullable Candidates[] searchPattern(FeatureListRow[] rows, int i,
+      RTPartitionedMZIndex index, double[][] diff, PeakListHandler plh,
+      int[] bestPatternIndices) {
+
+    // i will represent the index of the row in peakList
+    if (rows[i].getPeakIdentities().size() > 0)
+      return null;
+
+    // now check for peaks that lie within RT and maxIsotopeMassRange:
+    // pL[index].mz ->
+    // pL[index].mz+maxMass
+    double maxDiff = diff[maxPatternIndex][diff[maxPatternIndex].length - 1];
+    if (!hasGroupedPeak(rows, i, index, maxDiff))
+      return null;
+    // else
+    // logger.info("groupedPeaks.size > 2 in row: " + i + " size: " +
+    // groupedPeaks.size());
+
+    ResultBuffer[][] resultBuffer = new ResultBuffer[diff.length][]; // this
+                                                                     // will
+                                                                     // store
+                                                                     // row
+                                                                     // indexes
+    // TODO: it should be possible to use a single array of result
+    // buffer instead of a 2D array
+    // which should reduce computation time later on. the problem is
+    // that some carbon peaks
+    // might pop up within
+    // the pattern and change indices. for testing purposes ill do it as
+    // it is
+
+    for (int p = 0; p < diff.length; p++) { // resultBuffer[i] index
+                                            // will represent Isotope[i]
+                                            // (if
+      // numAtoms = 0)
+      resultBuffer[p] = new ResultBuffer[diff[p].length];
+
+      for (int k = 0; k < diff[p].length; k++)
+        resultBuffer[p][k] = new ResultBuffer(); // [p][0] will be
+                                                 // the isotope with
+                                                 // lowest mass#
+    }
+
+    // of all features with fitting rt
+    // and mz
+    boolean trueBuffers[] = new boolean[diff.length];
+    Arrays.fill(trueBuffers, false);
+
+    FeatureListRow parent = rows[i];
+    int partition = index.getPartition(i);
+    for (int p = 0; p < diff.length; p++) {
+
+      for (int k = 0; k < diff[p].length; k++) // check for each
+                                               // expected isotope
+                                               // which peaks are
+                                               // possible features
+      {
+        // k represents the isotope number the peak will be a
+        // candidate for
+        // p = pattern index for autoCarbon
+        // the parent itself is the isotope with lowest mass
+        Range<Double> mzRange = mzTolerance.getToleranceRange(parent.getAverageMZ() + diff[p][k]);
+        if (mzRange.contains(parent.getAverageMZ())) {
+          resultBuffer[p][k].addFound();
+          resultBuffer[p][k].addRow(i);
+          resultBuffer[p][k].addID(parent.getID());
+        }
+        // the row indices are in order of m/z
+        for (int j : index.getIndicesInMZRange(partition, mzRange)) {
+          if (!isGroupedPeak(rows, i, j, maxDiff))
+            continue;
+          resultBuffer[p][k].addFound(); // +1 result for
+                                         // isotope k
+          resultBuffer[p][k].addRow(j); // row index in rows[]
+          resultBuffer[p][k].addID(rows[j].getID());
+        }
+      }
+    }
+
+    boolean foundOne = false;
+
+    for (int p = 0; p < diff.length; p++)
+      if (checkIfAllTrue(resultBuffer[p])) { // this means that for
+                                             // every isotope we
+                                             // expected to
+                                             // find,
+        foundOne = true; // we found one or more possible features
+        trueBuffers[p] = true;
+        // logger.info("Row: " + i + " filled buffer[" + p +"]");
+      }
+    if (!foundOne)
+      return null;
+
+    Candidates[] candidates = new Candidates[diff.length];
+    for (int p = 0; p < diff.length; p++)
+      candidates[p] = new Candidates(diff[p].length, minHeight, mzTolerance, pattern[p],
+          massListName, plh, ratingType);
+
+    for (int p = 0; p < diff.length; p++) {
+      if (!trueBuffers[p])
+        continue;
+      for (int k = 0; k < resultBuffer[p].length; k++) // reminder:
+                                                       // resultBuffer.length
+                                                       // =
+                                                       // diff.length
+      {
+        for (int l = 0; l < resultBuffer[p][k].getFoundCount(); l++) {
+          // k represents index resultBuffer[k] and thereby the
+          // isotope number
+          // l represents the number of results in resultBuffer[k]
+          candidates[p].checkForBetterRating(k, parent, rows[resultBuffer[p][k].getRow(l)],
+              minRating, checkIntensity);
+
+        }
+      }
+    }
+
+    foundOne = false;
+    boolean trueCandidates[] = new boolean[diff.length];
+    Arrays.fill(trueCandidates, false);
+
+    for (int p = 0; p < diff.length; p++) {
+      if (trueBuffers[p] && checkIfAllTrue(candidates[p].getCandidates())) {
+        trueCandidates[p] = true;
+        foundOne = true;
+        // logger.info("Row: " + i + " filled candidates[" + p +
+        // "]");
+      }
+    }
+    if (!foundOne) {
+      // logger.info("Not enough valid candidates for parent feature "
+      // +
+      // groupedPeaks.get(0).getAverageMZ() + "\talthough enough peaks
+      // were found.") ;
+      return null; // jump to next i
+    }
+
+    // find best result now, first we have to calc avg ratings if
+    // specified by user
+    int bestPatternIndex = 0;
+    double bestRating = 0.0;
+    for (int p = 0; p < diff.length; p++) {
+
+      if (!trueCandidates[p])
+        continue;
+
+      if (accurateAvgIntensity)
+        candidates[p].calcAvgRatings();
+      // this is a final rating, with averaged intensities in all
+      // mass lists that contain EVERY peak that was selected.
+      // thats why we can only do it after ALL peaks have been
+      // found
+
+      if (accurateAvgIntensity && candidates[p].getAvgAccAvgRating() > bestRating) {
+        bestPatternIndex = p;
+        bestRating = candidates[p].getAvgAccAvgRating();
+      } else if (!accurateAvgIntensity && candidates[p].getSimpleAvgRating() > bestRating) {
+        bestPatternIndex = p;
+        bestRating = candidates[p].getSimpleAvgRating();
+      }
+    }
+
+    if (!checkIfAllTrue(candidates[bestPatternIndex].getCandidates())) {
+      logger.warning(
+          "We were about to add candidates with null pointers.\nThis was no valid result. Continueing.");
+      return null;
+    } // TODO: this shouldnt be needed, fix the bug that causes the
+      // crash later on.
+      // this happens occasionally if the user wants to do accurate
+      // average but does not filter
+      // by RT. then possible isotope peaks are found, although they are
+      // not detected at the same
+      // time. This will result in the candidates return -1.0 which will
+      // sooner or later return a
+      // null pointer Fixing this will be done in a future update, but
+      // needs a rework of the
+      // candidates class.
+      // The results you miss by skipping here would have not been valid
+      // results anyway, so this
+      // is not urgent. Will be nicer though, because of cleaner code.
+
+    bestPatternIndices[i] = bestPatternIndex;
+    return candidates;
+  }
+
   /**
    *
    * @param b
@@ -707,48 +746,49 @@ public class IsotopePeakScannerTask extends AbstractTask {
 
   /**
    *
-   * @param pL
+   * @param pL rows sorted by m/z
    * @param parentIndex index of possible parent peak
-   * @param maxMass
-   * @return will return ArrayList<PeakListRow> of all peaks within the range of pL[parentIndex].mz
-   *         -> pL[parentIndex].mz+maxMass
+   * @param index m/z index of pL
+   * @param maxDiff
+   * @return true if there is a peak within the range of pL[parentIndex].mz ->
+   *         pL[parentIndex].mz+maxMass+m/z tolerance that passes {@link #isGroupedPeak}
    */
-  private ArrayList<FeatureListRow> groupPeaks(FeatureListRow[] pL, int parentIndex, double maxDiff) {
-
-    ArrayList<FeatureListRow> buf = new ArrayList<FeatureListRow>();
-
-    buf.add(pL[parentIndex]); // this means the result will contain
-                              // row(parentIndex) itself
-
+  private boolean hasGroupedPeak(FeatureListRow[] pL, int parentIndex, RTPartitionedMZIndex index,
+      double maxDiff) {
     double mz = pL[parentIndex].getAverageMZ();
-    float rt = pL[parentIndex].getAverageRT();
-
-    for (int i = parentIndex + 1; i < pL.length; i++) // will not add the
-                                                      // parent peak itself
-    {
-      FeatureListRow r = pL[i];
-      // check for rt
-
-      if (r.getAverageHeight() < minHeight)
-        continue;
+    for (int i : index.getIndicesInMZRange(index.getPartition(parentIndex),
+        Range.openClosed(mz, mz + maxDiff + mzTolerance.getMzTolerance()))) {
+      if (isGroupedPeak(pL, parentIndex, i, maxDiff))
+        return true;
+    }
+    return false;
+  }
 
-      if (!(pL[i].getAverageMZ() > mz
-          && pL[i].getAverageMZ() <= (mz + maxDiff + mzTolerance.getMzTolerance()))) {
+  /**
+   *
+   * @param pL rows sorted by m/z
+   * @param parentIndex index of possible parent peak
+   * @param i index of the peak to check
+   * @param maxDiff
+   * @return true if pL[i] lies within the range of pL[parentIndex].mz ->
+   *         pL[parentIndex].mz+maxMass+m/z tolerance, has the minimum height and, if specified, fits the RT
+   */
+  private boolean isGroupedPeak(FeatureListRow[] pL, int parentIndex, int i, double maxDiff) {
+    if (i == parentIndex)
+      return false;
 
-        if (pL[i].getAverageMZ() > (mz + maxDiff)) // since pL is sorted
-                                                   // by ascending mass,
-                                                   // we can
-          // stop now
-          return buf;
-        continue;
-      }
+    FeatureListRow r = pL[i];
+    if (r.getAverageHeight() < minHeight)
+      return false;
 
-      if (checkRT && !rtTolerance.checkWithinTolerance(rt, r.getAverageRT()))
-        continue;
+    double mz = pL[parentIndex].getAverageMZ();
+    if (!(r.getAverageMZ() > mz
+        && r.getAverageMZ() <= (mz + maxDiff + mzTolerance.getMzTolerance())))
+      return false;
 
-      buf.add(pL[i]);
-    }
-    return buf;
+    // check for rt
+    return !checkRT
+        || rtTolerance.checkWithinTolerance(pL[parentIndex].getAverageRT(), r.getAverageRT());
   }
 
   /**
@@ -27,7 +27,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.logging.Logger;
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IonizationType;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.Scan;
@@ -38,6 +37,7 @@ import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.lip
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidIdentity;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.MassListCache;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import javafx.collections.ObservableList;
@@ -239,9 +239,9 @@ public class LipidSearchTask extends AbstractTask {
       ObservableList<Scan> msmsScans = row.getAllMS2Fragmentations();
       for (Scan msmsScan : msmsScans) {
 
-        DataPoint[] massList = null;
         // check if MS/MS scan already has a mass list
-        massList = msmsScan.getMassList(massListName).getDataPoints();
+        final double[] massList = MassListCache.getInstance()
+            .getValues(msmsScan.getMassList(massListName)).getMzValues();
         MSMSLipidTools msmsLipidTools = new MSMSLipidTools();
 
         // check for negative polarity
@@ -252,7 +252,7 @@ public class LipidSearchTask extends AbstractTask {
           if (fragments.length > 0) {
             ArrayList<String> listOfAnnotatedNegativeFragments = new ArrayList<String>();
             for (int i = 0; i < massList.length; i++) {
-              Range<Double> mzTolRangeMSMS = mzToleranceMS2.getToleranceRange(massList[i].getMZ());
+              Range<Double> mzTolRangeMSMS = mzToleranceMS2.getToleranceRange(massList[i]);
               String annotatedNegativeFragment =
                   msmsLipidTools.checkForNegativeClassSpecificFragment(mzTolRangeMSMS,
                       row.getPreferredFeatureIdentity(), lipidIonMass, fragments);
@@ -313,7 +313,7 @@ public class LipidSearchTask extends AbstractTask {
           if (fragments.length > 0) {
             ArrayList<String> listOfAnnotatedPositiveFragments = new ArrayList<String>();
             for (int i = 0; i < massList.length; i++) {
-              Range<Double> mzTolRangeMSMS = mzToleranceMS2.getToleranceRange(massList[i].getMZ());
+              Range<Double> mzTolRangeMSMS = mzToleranceMS2.getToleranceRange(massList[i]);
               String annotatedPositiveFragment =
                   msmsLipidTools.checkForPositiveClassSpecificFragment(mzTolRangeMSMS,
                       row.getPreferredFeatureIdentity(), lipidIonMass, fragments);
@@ -29,8 +29,10 @@ import java.util.logging.Logger;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassList;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.MassListCache;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 
@@ -231,13 +233,10 @@ class Ms2SearchTask extends AbstractTask {
       return null;
     }
 
-    DataPoint[] ionsA = null;
-    DataPoint[] ionsB = null;
+    final MassListCache.Values ionsA = MassListCache.getInstance().getValues(massListA);
+    final MassListCache.Values ionsB = MassListCache.getInstance().getValues(massListB);
 
-    ionsA = massListA.getDataPoints();
-    ionsB = massListB.getDataPoints();
-
-    if (ionsA == null || ionsB == null || ionsA.length == 0 || ionsB.length == 0) {
+    if (ionsA.getNumberOfDataPoints() == 0 || ionsB.getNumberOfDataPoints() == 0) {
       // Fall back to profile data?
       // Profile / raw data.
       // ionsA = scanMS2A.getDataPointsOverIntensity(intensityThreshold);
@@ -247,10 +246,12 @@ class Ms2SearchTask extends AbstractTask {
 
     // Compare every ion peak in MS2 scan A, to every ion peak in MS2 scan
     // B.
-    double ionsBMaxMZ = ionsB[ionsB.length - 1].getMZ();
-    for (int i = 0; i < ionsA.length; i++) {
+    final double[] mzA = ionsA.getMzValues(), intensityA = ionsA.getIntensityValues();
+    final double[] mzB = ionsB.getMzValues(), intensityB = ionsB.getIntensityValues();
+    double ionsBMaxMZ = mzB[mzB.length - 1];
+    for (int i = 0; i < mzA.length; i++) {
 
-      double iMZ = ionsA[i].getMZ();
+      double iMZ = mzA[i];
       double mzRangeAbsolute = iMZ * 1e-6 * mzRangePPM;
 
       if (iMZ - mzRangeAbsolute > ionsBMaxMZ)
@@ -258,9 +259,9 @@ class Ms2SearchTask extends AbstractTask {
                // the max of j, no more
                // matches are possible.
 
-      for (int j = 0; j < ionsB.length; j++) {
+      for (int j = 0; j < mzB.length; j++) {
 
-        double jMZ = ionsB[j].getMZ();
+        double jMZ = mzB[j];
 
         if (iMZ < jMZ - mzRangeAbsolute)
           break; // Potential speedup heuristic. iMZ smaller than jMZ.
@@ -268,8 +269,8 @@ class Ms2SearchTask extends AbstractTask {
                  // they can only increase.
 
         if (Math.abs(iMZ - jMZ) < mzRangeAbsolute) {
-          runningScoreTotal += ionsA[i].getIntensity() * ionsB[j].getIntensity();
-          matchedIons.add(ionsA[i]);
+          runningScoreTotal += intensityA[i] * intensityB[j];
+          matchedIons.add(new SimpleDataPoint(mzA[i], intensityA[i]));
         }
 
       }
@@ -40,6 +40,7 @@ import io.github.mzmine.modules.visualization.spectra.simplespectra.spectraident
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.project.impl.MassListCache;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.exceptions.MissingMassListException;
@@ -322,7 +323,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
     }
 
     MassList masses = scan.getMassList(massListName);
-    DataPoint[] dps = masses.getDataPoints();
+    DataPoint[] dps = MassListCache.getInstance().getDataPoints(masses);
     return noiseFilter ? ScanUtils.getFiltered(dps, noiseLevel) : dps;
   }
 
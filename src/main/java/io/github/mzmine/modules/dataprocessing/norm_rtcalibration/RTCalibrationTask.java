@@ -26,9 +26,16 @@ import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.util.FeatureListRowRTIndex;
 import io.github.mzmine.util.FeatureUtils;
-import java.util.Vector;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.FeatureIdentity;
@@ -47,7 +54,8 @@ class RTCalibrationTask extends AbstractTask {
   private FeatureList originalFeatureLists[], normalizedFeatureLists[];
 
   // Processed rows counter
-  private int processedRows, totalRows;
+  private final AtomicInteger processedRows = new AtomicInteger();
+  private int totalRows;
 
   private String suffix;
   private MZTolerance mzTolerance;
@@ -75,7 +83,7 @@ class RTCalibrationTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0f;
-    return (double) processedRows / (double) totalRows;
+    return (double) processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -104,62 +112,23 @@ class RTCalibrationTask extends AbstractTask {
 
     }
 
-    // goodStandards Vector contains identified standard rows, represented
+    // Index the rows of the remaining feature lists by RT once
+    FeatureListRowRTIndex rowIndices[] = new FeatureListRowRTIndex[originalFeatureLists.length];
+    for (int i = 1; i < originalFeatureLists.length; i++) {
+      rowIndices[i] = new FeatureListRowRTIndex(
+          originalFeatureLists[i].getRows().toArray(new FeatureListRow[0]));
+    }
+
+    // goodStandards list contains identified standard rows, represented
     // by arrays. Each array has same length as originalFeatureLists array.
     // Array items represent particular standard feature in each feature list
-    Vector<FeatureListRow[]> goodStandards = new Vector<FeatureListRow[]>();
-
-    // Iterate the first feature list
-    standardIteration: for (FeatureListRow candidate : originalFeatureLists[0].getRows()) {
-
-      // Cancel?
-      if (isCanceled()) {
-        return;
-      }
-
-      processedRows++;
-
-      // Check that all features of this row have proper height
-      for (Feature p : candidate.getFeatures()) {
-        if (p.getHeight() < minHeight)
-          continue standardIteration;
-      }
-
-      FeatureListRow goodStandardCandidate[] = new FeatureListRow[originalFeatureLists.length];
-      goodStandardCandidate[0] = candidate;
-
-      double candidateMZ = candidate.getAverageMZ();
-      float candidateRT = candidate.getAverageRT();
-
-      // Find matching rows in remaining feature lists
-      for (int i = 1; i < originalFeatureLists.length; i++) {
-        Range<Float> rtRange = rtTolerance.getToleranceRange(candidateRT);
-        Range<Double> mzRange = mzTolerance.getToleranceRange(candidateMZ);
-        FeatureListRow matchingRows[] =
-            originalFeatureLists[i].getRowsInsideScanAndMZRange(rtRange, mzRange)
-                .toArray(new FeatureListRow[0]);
-
-        // If we have not found exactly 1 matching feature, move to next
-        // standard candidate
-        if (matchingRows.length != 1)
-          continue standardIteration;
-
-        // Check that all features of this row have proper height
-        for (Feature p : matchingRows[0].getFeatures()) {
-          if (p.getHeight() < minHeight)
-            continue standardIteration;
-        }
-
-        // Save reference to matching peak in this feature list
-        goodStandardCandidate[i] = matchingRows[0];
-
-      }
-
-      // If we found a match of same peak in all peaklists, mark it as a
-      // good standard
-      goodStandards.add(goodStandardCandidate);
-      logger.finest("Found a good standard for RT normalization: " + candidate);
+    List<FeatureListRow[]> goodStandards = originalFeatureLists[0].getRows().parallelStream()
+        .map(candidate -> findStandard(candidate, rowIndices)).filter(Objects::nonNull)
+        .collect(Collectors.toList());
 
+    // Cancel?
+    if (isCanceled()) {
+      return;
     }
 
     // Check if we have any standards
@@ -224,6 +193,70 @@ class RTCalibrationTask extends AbstractTask {
 
   }
 
+  /**
+   * Finds the rows that match a standard candidate of the first feature list in all other feature
+   * lists
+   *
+   * @param candidate Row of the first feature list
+   * @param rowIndices Rows of the other feature lists, indexed by RT
+   * @return the matching row in each feature list, or null if the candidate is not a good standard
+   */
+  private FeatureListRow[] findStandard(FeatureListRow candidate,
+      FeatureListRowRTIndex rowIndices[]) {
+
+    // Cancel?
+    if (isCanceled()) {
+      return null;
+    }
+
+    processedRows.incrementAndGet();
+
+    // Check that all features of this row have proper height
+    if (!hasMinHeight(candidate)) {
+      return null;
+    }
+
+    FeatureListRow goodStandardCandidate[] = new FeatureListRow[originalFeatureLists.length];
+    goodStandardCandidate[0] = candidate;
+
+    double candidateMZ = candidate.getAverageMZ();
+    float candidateRT = candidate.getAverageRT();
+    Range<Float> rtRange = rtTolerance.getToleranceRange(candidateRT);
+    Range<Double> mzRange = mzTolerance.getToleranceRange(candidateMZ);
+
+    // Find matching rows in remaining feature lists
+    for (int i = 1; i < originalFeatureLists.length; i++) {
+      List<FeatureListRow> matchingRows =
+          rowIndices[i].getRowsInsideScanAndMZRange(rtRange, mzRange);
+
+      // If we have not found exactly 1 matching feature, move to next
+      // standard candidate
+      if (matchingRows.size() != 1)
+        return null;
+
+      // Check that all features of this row have proper height
+      if (!hasMinHeight(matchingRows.get(0)))
+        return null;
+
+      // Save reference to matching peak in this feature list
+      goodStandardCandidate[i] = matchingRows.get(0);
+
+    }
+
+    // If we found a match of same peak in all peaklists, mark it as a
+    // good standard
+    logger.finest("Found a good standard for RT normalization: " + candidate);
+    return goodStandardCandidate;
+  }
+
+  private boolean hasMinHeight(FeatureListRow row) {
+    for (Feature p : row.getFeatures()) {
+      if (p.getHeight() < minHeight)
+        return false;
+    }
+    return true;
+  }
+
   /**
    * Normalize retention time of all rows in given feature list and save normalized rows into new
    * feature list.
@@ -238,16 +271,24 @@ class RTCalibrationTask extends AbstractTask {
 
     FeatureListRow originalRows[] = originalFeatureList.getRows().toArray(FeatureListRow[]::new);
 
-    // Iterate feature list rows
-    for (FeatureListRow originalRow : originalRows) {
+    // Standards sorted by RT
+    FeatureListRowRTIndex standardIndex = new FeatureListRowRTIndex(standards);
+    Map<FeatureListRow, Integer> standardPositions = new IdentityHashMap<>();
+    for (int i = 0; i < standards.length; i++) {
+      standardPositions.put(standards[i], i);
+    }
+
+    // Normalize all rows in parallel
+    FeatureListRow normalizedRows[] = Arrays.stream(originalRows).parallel().map(originalRow -> {
 
       // Cancel?
       if (isCanceled()) {
-        return;
+        return null;
       }
 
       // Normalize one row
-      FeatureListRow normalizedRow = normalizeRow(originalRow, standards, normalizedStdRTs);
+      FeatureListRow normalizedRow =
+          normalizeRow(originalRow, standardIndex, standardPositions, normalizedStdRTs);
 
       // Copy comment and identification
       normalizedRow.setComment(originalRow.getComment());
@@ -255,11 +296,19 @@ class RTCalibrationTask extends AbstractTask {
         normalizedRow.addFeatureIdentity(ident, false);
       normalizedRow.setPreferredFeatureIdentity(originalRow.getPreferredFeatureIdentity());
 
-      // Add the new row to normalized feature list
-      normalizedFeatureList.addRow(normalizedRow);
+      processedRows.incrementAndGet();
+      return normalizedRow;
+
+    }).toArray(FeatureListRow[]::new);
 
-      processedRows++;
+    // Cancel?
+    if (isCanceled()) {
+      return;
+    }
 
+    // Add the new rows to normalized feature list
+    for (FeatureListRow normalizedRow : normalizedRows) {
+      normalizedFeatureList.addRow(normalizedRow);
     }
 
   }
@@ -268,56 +317,37 @@ class RTCalibrationTask extends AbstractTask {
    * Normalize retention time of given row using selected standards
    *
    * @param originalRow Feature list row to be normalized
-   * @param standards Standard rows in same feature list
+   * @param standardIndex Standard rows in same feature list, sorted by RT
+   * @param standardPositions Index of each standard row in normalizedStdRTs
    * @param normalizedStdRTs Normalized retention times of standard rows
    * @return New feature list row with normalized retention time
    */
-  private FeatureListRow normalizeRow(FeatureListRow originalRow, FeatureListRow standards[],
+  private FeatureListRow normalizeRow(FeatureListRow originalRow,
+      FeatureListRowRTIndex standardIndex, Map<FeatureListRow, Integer> standardPositions,
       double normalizedStdRTs[]) {
 
     FeatureListRow normalizedRow = new ModularFeatureListRow(
         (ModularFeatureList) originalRow.getFeatureList(), originalRow.getID());
 
-    // Standard rows preceding and following this row
-    int prevStdIndex = -1, nextStdIndex = -1;
-
-    for (int stdIndex = 0; stdIndex < standards.length; stdIndex++) {
-
-      // If this standard feature is actually originalRow
-      if (standards[stdIndex] == originalRow) {
-        prevStdIndex = stdIndex;
-        nextStdIndex = stdIndex;
-        break;
-      }
-
-      // If this standard feature is before our originalRow
-      if (standards[stdIndex].getAverageRT() < originalRow.getAverageRT()) {
-        if ((prevStdIndex == -1)
-            || (standards[stdIndex].getAverageRT() > standards[prevStdIndex].getAverageRT()))
-          prevStdIndex = stdIndex;
-      }
-
-      // If this standard feature is after our originalRow
-      if (standards[stdIndex].getAverageRT() > originalRow.getAverageRT()) {
-        if ((nextStdIndex == -1)
-            || (standards[stdIndex].getAverageRT() < standards[nextStdIndex].getAverageRT()))
-          nextStdIndex = stdIndex;
-      }
-
-    }
-
     // Calculate normalized retention time of this row
     double normalizedRT = -1;
+    float rt = originalRow.getAverageRT();
 
-    if ((prevStdIndex == -1) || (nextStdIndex == -1)) {
-      normalizedRT = originalRow.getAverageRT();
-    } else
+    // Standard rows preceding and following this row
+    int prev = standardIndex.firstPositionAtOrAbove(rt) - 1;
+    int next = standardIndex.firstPositionAbove(rt);
 
-    if (prevStdIndex == nextStdIndex) {
-      normalizedRT = normalizedStdRTs[prevStdIndex];
+    Integer stdIndex = standardPositions.get(originalRow);
+    if (stdIndex != null) {
+      // If this standard feature is actually originalRow
+      normalizedRT = normalizedStdRTs[stdIndex];
+    } else if ((prev < 0) || (next >= standardIndex.size())) {
+      normalizedRT = rt;
     } else {
-      double weight = (originalRow.getAverageRT() - standards[prevStdIndex].getAverageRT())
-          / (standards[nextStdIndex].getAverageRT() - standards[prevStdIndex].getAverageRT());
+      int prevStdIndex = standardIndex.getInputIndex(prev);
+      int nextStdIndex = standardIndex.getInputIndex(next);
+      double weight = (rt - standardIndex.getRT(prev))
+          / (standardIndex.getRT(next) - standardIndex.getRT(prev));
       normalizedRT = normalizedStdRTs[prevStdIndex]
           + (weight * (normalizedStdRTs[nextStdIndex] - normalizedStdRTs[prevStdIndex]));
     }
@@ -26,8 +26,14 @@ import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.util.FeatureListRowRTIndex;
 import io.github.mzmine.util.FeatureUtils;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -44,7 +50,8 @@ public class StandardCompoundNormalizerTask extends AbstractTask {
   private final MZmineProject project;
   private FeatureList originalFeatureList, normalizedFeatureList;
 
-  private int processedRows, totalRows;
+  private final AtomicInteger processedRows = new AtomicInteger();
+  private int totalRows;
 
   private String suffix;
   private StandardUsageType normalizationType;
@@ -59,6 +66,7 @@ public class StandardCompoundNormalizerTask extends AbstractTask {
 
     this.project = project;
     this.originalFeatureList = featureList;
+    this.parameters = parameters;
 
     suffix = parameters.getParameter(LinearNormalizerParameters.suffix).getValue();
     normalizationType =
@@ -77,7 +85,7 @@ public class StandardCompoundNormalizerTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0;
-    return (double) processedRows / (double) totalRows;
+    return (double) processedRows.get() / (double) totalRows;
   }
 
   public String getTaskDescription() {
@@ -106,155 +114,43 @@ public class StandardCompoundNormalizerTask extends AbstractTask {
     // result
     totalRows = originalFeatureList.getNumberOfRows();
 
-    // Loop through all rows
-    rowIteration: for (FeatureListRow row : originalFeatureList.getRows()) {
-
-      // Cancel ?
-      if (isCanceled()) {
-        return;
-      }
-
-      // Do not add the standard rows to the new peaklist
-      for (int i = 0; i < standardRows.length; i++) {
-        if (row == standardRows[i]) {
-          processedRows++;
-          continue rowIteration;
-        }
+    final RawDataFile[] files = originalFeatureList.getRawDataFiles().toArray(new RawDataFile[0]);
+    final FeatureListRow[] rows = originalFeatureList.getRows().toArray(new FeatureListRow[0]);
+
+    // Standards sorted by RT and their heights or areas in all files, NaN if not available
+    final FeatureListRowRTIndex standardIndex = new FeatureListRowRTIndex(standardRows);
+    final double[][] standardValues = new double[standardRows.length][files.length];
+    final Set<FeatureListRow> standards = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int s = 0; s < standardRows.length; s++) {
+      standards.add(standardRows[s]);
+      for (int f = 0; f < files.length; f++) {
+        Feature standardFeature = standardRows[s].getFeature(files[f]);
+        standardValues[s][f] = standardFeature == null ? Double.NaN : getValue(standardFeature);
       }
+    }
 
-      // Copy comment and identification
-      ModularFeatureListRow normalizedRow = new ModularFeatureListRow(
-          (ModularFeatureList) row.getFeatureList(), row.getID());
-      FeatureUtils.copyFeatureListRowProperties(row, normalizedRow);
-
-      // Get m/z and RT of the current row
-      double mz = row.getAverageMZ();
-      double rt = row.getAverageRT();
-
-      // Loop through all raw data files
-      for (RawDataFile file : originalFeatureList.getRawDataFiles()) {
-
-        double normalizationFactors[] = null;
-        double normalizationFactorWeights[] = null;
-
-        if (normalizationType == StandardUsageType.Nearest) {
-
-          // Search for nearest standard
-          FeatureListRow nearestStandardRow = null;
-          double nearestStandardRowDistance = Double.MAX_VALUE;
-
-          for (int standardRowIndex =
-              0; standardRowIndex < standardRows.length; standardRowIndex++) {
-            FeatureListRow standardRow = standardRows[standardRowIndex];
-
-            double stdMZ = standardRow.getAverageMZ();
-            double stdRT = standardRow.getAverageRT();
-            double distance = MZvsRTBalance * Math.abs(mz - stdMZ) + Math.abs(rt - stdRT);
-            if (distance <= nearestStandardRowDistance) {
-              nearestStandardRow = standardRow;
-              nearestStandardRowDistance = distance;
-            }
-
-          }
-
-          assert nearestStandardRow != null;
-
-          // Calc and store a single normalization factor
-          normalizationFactors = new double[1];
-          normalizationFactorWeights = new double[1];
-          Feature standardFeature = nearestStandardRow.getFeature(file);
-          if (standardFeature == null) {
-            // What to do if standard feature is not available?
-            normalizationFactors[0] = 1.0;
-          } else {
-            if (featureMeasurementType == FeatureMeasurementType.HEIGHT) {
-              normalizationFactors[0] = standardFeature.getHeight();
-            } else {
-              normalizationFactors[0] = standardFeature.getArea();
-            }
-          }
-          logger.finest("Normalizing row #" + row.getID() + " using standard feature " + standardFeature
-              + ", factor " + normalizationFactors[0]);
-          normalizationFactorWeights[0] = 1.0f;
-
-        }
-
-        if (normalizationType == StandardUsageType.Weighted) {
-
-          // Add all standards as factors, and use distance as weight
-          normalizationFactors = new double[standardRows.length];
-          normalizationFactorWeights = new double[standardRows.length];
-
-          for (int standardRowIndex =
-              0; standardRowIndex < standardRows.length; standardRowIndex++) {
-            FeatureListRow standardRow = standardRows[standardRowIndex];
-
-            double stdMZ = standardRow.getAverageMZ();
-            double stdRT = standardRow.getAverageRT();
-            double distance = MZvsRTBalance * Math.abs(mz - stdMZ) + Math.abs(rt - stdRT);
-
-            Feature standardFeature = standardRow.getFeature(file);
-            if (standardFeature == null) {
-              // What to do if standard feature is not available?
-              normalizationFactors[standardRowIndex] = 1.0;
-              normalizationFactorWeights[standardRowIndex] = 0.0;
-            } else {
-              if (featureMeasurementType == FeatureMeasurementType.HEIGHT) {
-                normalizationFactors[standardRowIndex] = standardFeature.getHeight();
-              } else {
-                normalizationFactors[standardRowIndex] = standardFeature.getArea();
-              }
-              normalizationFactorWeights[standardRowIndex] = 1 / distance;
-            }
+    // Normalize all rows in parallel, the standard rows are not added to the new feature list
+    final FeatureListRow[] normalizedRows = IntStream.range(0, rows.length).parallel()
+        .mapToObj(i -> {
+          if (isCanceled()) {
+            return null;
           }
+          FeatureListRow row = rows[i];
+          FeatureListRow normalizedRow = standards.contains(row) ? null
+              : normalizeRow(row, files, standardIndex, standardValues);
+          processedRows.incrementAndGet();
+          return normalizedRow;
+        }).toArray(FeatureListRow[]::new);
+
+    // Cancel ?
+    if (isCanceled()) {
+      return;
+    }
 
-        }
-
-        assert normalizationFactors != null;
-        assert normalizationFactorWeights != null;
-
-        // Calculate a single normalization factor as weighted average
-        // of all factors
-        double weightedSum = 0.0f;
-        double sumOfWeights = 0.0f;
-        for (int factorIndex = 0; factorIndex < normalizationFactors.length; factorIndex++) {
-          weightedSum +=
-              normalizationFactors[factorIndex] * normalizationFactorWeights[factorIndex];
-          sumOfWeights += normalizationFactorWeights[factorIndex];
-        }
-        double normalizationFactor = weightedSum / sumOfWeights;
-
-        // For simple scaling of the normalized values
-        normalizationFactor = normalizationFactor / 100.0f;
-
-        logger.finest("Normalizing row #" + row.getID() + "[" + file + "] using factor "
-            + normalizationFactor);
-
-        // How to handle zero normalization factor?
-        if (normalizationFactor == 0.0)
-          normalizationFactor = Double.MIN_VALUE;
-
-        // Normalize feature
-        Feature originalFeature = row.getFeature(file);
-        if (originalFeature != null) {
-
-          ModularFeature normalizedFeature = new ModularFeature(originalFeature);
-
-          FeatureUtils.copyFeatureProperties(originalFeature, normalizedFeature);
-
-          float normalizedHeight = (float) (originalFeature.getHeight() / normalizationFactor);
-          float normalizedArea = (float) (originalFeature.getArea() / normalizationFactor);
-          normalizedFeature.setHeight(normalizedHeight);
-          normalizedFeature.setArea(normalizedArea);
-
-          normalizedRow.addFeature(file, normalizedFeature);
-        }
-
+    for (FeatureListRow normalizedRow : normalizedRows) {
+      if (normalizedRow != null) {
+        normalizedFeatureList.addRow(normalizedRow);
       }
-
-      normalizedFeatureList.addRow(normalizedRow);
-      processedRows++;
-
     }
 
     // Add new feature list to the project
@@ -278,4 +174,94 @@ public class StandardCompoundNormalizerTask extends AbstractTask {
 
   }
 
+  /**
+   * @return a copy of the row, with the heights and areas of all features divided by the
+   *         normalization factor of their file
+   */
+  private FeatureListRow normalizeRow(FeatureListRow row, RawDataFile[] files,
+      FeatureListRowRTIndex standardIndex, double[][] standardValues) {
+
+    // Copy comment and identification
+    ModularFeatureListRow normalizedRow =
+        new ModularFeatureListRow((ModularFeatureList) row.getFeatureList(), row.getID());
+    FeatureUtils.copyFeatureListRowProperties(row, normalizedRow);
+
+    // Get m/z and RT of the current row
+    double mz = row.getAverageMZ();
+    float rt = row.getAverageRT();
+
+    // The standards and their weights do not depend on the file
+    int nearestStandard = -1;
+    double[] weights = null;
+    if (normalizationType == StandardUsageType.Nearest) {
+      nearestStandard =
+          standardIndex.getInputIndex(standardIndex.nearest(mz, rt, MZvsRTBalance));
+    } else {
+      // Use all standards, with the inverse distance as weight
+      weights = new double[standardValues.length];
+      for (int s = 0; s < standardRows.length; s++) {
+        double stdMZ = standardRows[s].getAverageMZ();
+        double stdRT = standardRows[s].getAverageRT();
+        weights[s] = 1 / (MZvsRTBalance * Math.abs(mz - stdMZ) + Math.abs(rt - stdRT));
+      }
+    }
+
+    // Loop through all raw data files
+    for (int f = 0; f < files.length; f++) {
+
+      // Normalize feature
+      Feature originalFeature = row.getFeature(files[f]);
+      if (originalFeature == null) {
+        continue;
+      }
+
+      double normalizationFactor;
+      if (normalizationType == StandardUsageType.Nearest) {
+        // What to do if standard feature is not available?
+        double standardValue = standardValues[nearestStandard][f];
+        normalizationFactor = Double.isNaN(standardValue) ? 1.0 : standardValue;
+      } else {
+        // Calculate a single normalization factor as weighted average
+        // of all factors, standards that are not available have no weight
+        double weightedSum = 0.0;
+        double sumOfWeights = 0.0;
+        for (int s = 0; s < weights.length; s++) {
+          if (!Double.isNaN(standardValues[s][f])) {
+            weightedSum += standardValues[s][f] * weights[s];
+            sumOfWeights += weights[s];
+          }
+        }
+        normalizationFactor = weightedSum / sumOfWeights;
+      }
+
+      // For simple scaling of the normalized values
+      normalizationFactor = normalizationFactor / 100.0f;
+
+      // How to handle zero normalization factor?
+      if (normalizationFactor == 0.0)
+        normalizationFactor = Double.MIN_VALUE;
+
+      ModularFeature normalizedFeature = new ModularFeature(originalFeature);
+
+      FeatureUtils.copyFeatureProperties(originalFeature, normalizedFeature);
+
+      float normalizedHeight = (float) (originalFeature.getHeight() / normalizationFactor);
+      float normalizedArea = (float) (originalFeature.getArea() / normalizationFactor);
+      normalizedFeature.setHeight(normalizedHeight);
+      normalizedFeature.setArea(normalizedArea);
+
+      normalizedRow.addFeature(files[f], normalizedFeature);
+    }
+
+    return normalizedRow;
+  }
+
+  private double getValue(Feature feature) {
+    if (featureMeasurementType == FeatureMeasurementType.HEIGHT) {
+      return feature.getHeight();
+    } else {
+      return feature.getArea();
+    }
+  }
+
 }
@@ -186,6 +186,8 @@ public class GnpsFbmnExportTask extends AbstractTask {
           bestFeature = copyRow.getBestFeature();
           msmsScanNumber = bestFeature.getMostIntenseFragmentScanNumber();
         }
+        // the copy is only used to find the feature
+        ((ModularFeatureListRow) copyRow).releaseColumns();
       }
       if (msmsScanNumber >= 1) {
         // MS/MS scan must exist, because msmsScanNumber was > 0
@@ -267,6 +269,9 @@ public class GnpsFbmnExportTask extends AbstractTask {
       final Feature newFeature = new ModularFeature(feature);
       FeatureUtils.copyFeatureProperties(feature, newFeature);
       newRow.addFeature(feature.getRawDataFile(), newFeature);
+      // the values were copied to the feature that the row already had for this file
+      if (newRow.getFeature(feature.getRawDataFile()) != newFeature)
+        ((ModularFeature) newFeature).releaseColumns();
 
     }
 
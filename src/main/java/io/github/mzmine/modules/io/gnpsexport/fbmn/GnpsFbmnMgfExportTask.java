@@ -39,10 +39,14 @@ import io.github.mzmine.util.FeatureUtils;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -59,6 +63,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.io.OrderedBlockWriter;
 
 /**
  * Exports all files needed for GNPS
@@ -74,15 +79,21 @@ public class GnpsFbmnMgfExportTask extends AbstractTask {
   private final FeatureList[] featureLists;
   private final File fileName;
   private final String plNamePattern = "{}";
+  // rows that are merged and written to memory by one parallel task
+  private static final int ROWS_PER_BLOCK = 32;
   private int currentIndex = 0;
   private final String massListName;
   private final MsMsSpectraMergeParameters mergeParameters;
 
   // by robin
-  private NumberFormat mzForm = MZmineCore.getConfiguration().getMZFormat();
-  private NumberFormat intensityForm = MZmineCore.getConfiguration().getIntensityFormat();
+  // number formats are not thread-safe, the rows are exported in parallel
+  private final ThreadLocal<NumberFormat> mzForm = ThreadLocal
+      .withInitial(() -> (NumberFormat) MZmineCore.getConfiguration().getMZFormat().clone());
+  private final ThreadLocal<NumberFormat> intensityForm = ThreadLocal
+      .withInitial(() -> (NumberFormat) MZmineCore.getConfiguration().getIntensityFormat().clone());
   // seconds
-  private NumberFormat rtsForm = new DecimalFormat("0.###");
+  private final ThreadLocal<NumberFormat> rtsForm =
+      ThreadLocal.withInitial(() -> new DecimalFormat("0.###"));
   // correlation
   private NumberFormat corrForm = new DecimalFormat("0.0000");
 
@@ -178,122 +189,137 @@ public class GnpsFbmnMgfExportTask extends AbstractTask {
   }
 
   private int export(FeatureList featureList, FileWriter writer, File curFile) throws IOException {
+    // count exported
+    final AtomicInteger count = new AtomicInteger();
+    final AtomicInteger countMissingMassList = new AtomicInteger();
+
+    // merge the spectra of blocks of rows in parallel, the blocks are written in the row order
+    final List<FeatureListRow> rows = new ArrayList<>(featureList.getRows());
+    OrderedBlockWriter.write(rows, ROWS_PER_BLOCK, (block, blockWriter) -> {
+      for (FeatureListRow row : block) {
+        exportRow(row, blockWriter, count, countMissingMassList);
+      }
+    }, writer, () -> getStatus() == TaskStatus.CANCELED, null);
+
+    if (count.get() == 0)
+      logger.log(Level.WARNING, "No MS/MS scans exported.");
+    else
+      logger.info(
+          MessageFormat.format("Total of {0} feature rows (MS/MS mass lists) were exported ({1})",
+              count.get(), featureList.getName()));
+
+    if (countMissingMassList.get() > 0)
+      logger.warning(MessageFormat.format(
+          "WARNING: Total of {0} feature rows have an MS/MS scan but NO mass list (this shouldn't be a problem if a scan filter was applied in the mass detection step) ({1})",
+          countMissingMassList.get(), featureList.getName()));
+
+    return count.get();
+  }
+
+  /**
+   * Writes the MS/MS spectrum of a row, called in parallel for different rows
+   */
+  private void exportRow(FeatureListRow row, Writer writer, AtomicInteger count,
+      AtomicInteger countMissingMassList) throws IOException {
     final String newLine = System.lineSeparator();
 
-    // count exported
-    int count = 0;
-    int countMissingMassList = 0;
-    for (FeatureListRow row : featureList.getRows()) {
-      // do not export if no MSMS
-      if (!filter.filter(row))
-        continue;
-
-      String rowID = Integer.toString(row.getID());
-      double retTimeInSeconds = ((row.getAverageRT() * 60 * 100.0) / 100.);
-
-      // Get the MS/MS scan number
-      Feature bestFeature = row.getBestFeature();
-      if (bestFeature == null)
-        continue;
-      int msmsScanNumber = bestFeature.getMostIntenseFragmentScanNumber();
-      if (rowID != null) {
-        FeatureListRow copyRow = copyFeatureRow(row);
-        // Best feature always exists, because feature list row has at
-        // least one feature
-        bestFeature = copyRow.getBestFeature();
+    // do not export if no MSMS
+    if (!filter.filter(row))
+      return;
+
+    String rowID = Integer.toString(row.getID());
+    double retTimeInSeconds = ((row.getAverageRT() * 60 * 100.0) / 100.);
+
+    // Get the MS/MS scan number
+    Feature bestFeature = row.getBestFeature();
+    if (bestFeature == null)
+      return;
+    int msmsScanNumber = bestFeature.getMostIntenseFragmentScanNumber();
+    if (rowID != null) {
+      FeatureListRow copyRow = copyFeatureRow(row);
+      // Best feature always exists, because feature list row has at
+      // least one feature
+      bestFeature = copyRow.getBestFeature();
+
+      // Get the heighest feature with a MS/MS scan number (with mass
+      // list)
+      boolean missingMassList = false;
+      msmsScanNumber = bestFeature.getMostIntenseFragmentScanNumber();
+      while (msmsScanNumber < 1
+          || getScan(bestFeature, msmsScanNumber).getMassList(massListName) == null) {
+        // missing masslist
+        if (msmsScanNumber > 0)
+          missingMassList = true;
+
+        copyRow.removeFeature(bestFeature.getRawDataFile());
+        if (copyRow.getFeatures().size() == 0)
+          break;
 
-        // Get the heighest feature with a MS/MS scan number (with mass
-        // list)
-        boolean missingMassList = false;
+        bestFeature = copyRow.getBestFeature();
         msmsScanNumber = bestFeature.getMostIntenseFragmentScanNumber();
-        while (msmsScanNumber < 1
-            || getScan(bestFeature, msmsScanNumber).getMassList(massListName) == null) {
-          // missing masslist
-          if (msmsScanNumber > 0)
-            missingMassList = true;
-
-          copyRow.removeFeature(bestFeature.getRawDataFile());
-          if (copyRow.getFeatures().size() == 0)
-            break;
-
-          bestFeature = copyRow.getBestFeature();
-          msmsScanNumber = bestFeature.getMostIntenseFragmentScanNumber();
-        }
-        if (missingMassList)
-          countMissingMassList++;
       }
-      if (msmsScanNumber >= 1) {
-        // MS/MS scan must exist, because msmsScanNumber was > 0
-        Scan msmsScan = bestFeature.getRawDataFile().getScan(msmsScanNumber);
+      if (missingMassList)
+        countMissingMassList.incrementAndGet();
+      // the copy is only used to find the feature
+      ((ModularFeatureListRow) copyRow).releaseColumns();
+    }
+    if (msmsScanNumber >= 1) {
+      // MS/MS scan must exist, because msmsScanNumber was > 0
+      Scan msmsScan = bestFeature.getRawDataFile().getScan(msmsScanNumber);
 
-        MassList massList = msmsScan.getMassList(massListName);
+      MassList massList = msmsScan.getMassList(massListName);
 
-        if (massList == null) {
-          continue;
-        }
+      if (massList == null) {
+        return;
+      }
 
-        writer.write("BEGIN IONS" + newLine);
+      writer.write("BEGIN IONS" + newLine);
 
-        if (rowID != null)
-          writer.write("FEATURE_ID=" + rowID + newLine);
+      if (rowID != null)
+        writer.write("FEATURE_ID=" + rowID + newLine);
 
-        String mass = mzForm.format(row.getAverageMZ());
-        if (mass != null)
-          writer.write("PEPMASS=" + mass + newLine);
+      String mass = mzForm.get().format(row.getAverageMZ());
+      if (mass != null)
+        writer.write("PEPMASS=" + mass + newLine);
 
-        if (rowID != null) {
-          writer.write("SCANS=" + rowID + newLine);
-          writer.write("RTINSECONDS=" + rtsForm.format(retTimeInSeconds) + newLine);
-        }
+      if (rowID != null) {
+        writer.write("SCANS=" + rowID + newLine);
+        writer.write("RTINSECONDS=" + rtsForm.get().format(retTimeInSeconds) + newLine);
+      }
 
-        int msmsCharge = msmsScan.getPrecursorCharge();
-        String msmsPolarity = msmsScan.getPolarity().asSingleChar();
-        if (msmsPolarity.equals("0"))
-          msmsPolarity = "";
-        if (msmsCharge == 0) {
-          msmsCharge = 1;
-          msmsPolarity = "";
-        }
-        writer.write("CHARGE=" + msmsCharge + msmsPolarity + newLine);
-
-        writer.write("MSLEVEL=2" + newLine);
-
-        DataPoint[] dataPoints = massList.getDataPoints();
-        if (mergeParameters != null) {
-          MsMsSpectraMergeModule merger =
-              MZmineCore.getModuleInstance(MsMsSpectraMergeModule.class);
-          MergedSpectrum spectrum =
-              merger.getBestMergedSpectrum(mergeParameters, row, massListName);
-          if (spectrum != null) {
-            dataPoints = spectrum.data;
-            writer.write("MERGED_STATS=");
-            writer.write(spectrum.getMergeStatsDescription());
-            writer.write(newLine);
-          }
-        }
-        for (DataPoint feature : dataPoints) {
-          writer.write(mzForm.format(feature.getMZ()) + " " + intensityForm.format(feature.getIntensity())
-              + newLine);
+      int msmsCharge = msmsScan.getPrecursorCharge();
+      String msmsPolarity = msmsScan.getPolarity().asSingleChar();
+      if (msmsPolarity.equals("0"))
+        msmsPolarity = "";
+      if (msmsCharge == 0) {
+        msmsCharge = 1;
+        msmsPolarity = "";
+      }
+      writer.write("CHARGE=" + msmsCharge + msmsPolarity + newLine);
+
+      writer.write("MSLEVEL=2" + newLine);
+
+      DataPoint[] dataPoints = massList.getDataPoints();
+      if (mergeParameters != null) {
+        MsMsSpectraMergeModule merger =
+            MZmineCore.getModuleInstance(MsMsSpectraMergeModule.class);
+        MergedSpectrum spectrum =
+            merger.getBestMergedSpectrum(mergeParameters, row, massListName);
+        if (spectrum != null) {
+          dataPoints = spectrum.data;
+          writer.write("MERGED_STATS=");
+          writer.write(spectrum.getMergeStatsDescription());
+          writer.write(newLine);
         }
-        writer.write("END IONS" + newLine);
-        writer.write(newLine);
-        count++;
       }
+      for (DataPoint feature : dataPoints) {
+        writer.write(mzForm.get().format(feature.getMZ()) + " "
+            + intensityForm.get().format(feature.getIntensity()) + newLine);
+      }
+      writer.write("END IONS" + newLine);
+      writer.write(newLine);
+      count.incrementAndGet();
     }
-
-    if (count == 0)
-      logger.log(Level.WARNING, "No MS/MS scans exported.");
-    else
-      logger.info(
-          MessageFormat.format("Total of {0} feature rows (MS/MS mass lists) were exported ({1})",
-              count, featureList.getName()));
-
-    if (countMissingMassList > 0)
-      logger.warning(MessageFormat.format(
-          "WARNING: Total of {0} feature rows have an MS/MS scan but NO mass list (this shouldn't be a problem if a scan filter was applied in the mass detection step) ({1})",
-          countMissingMassList, featureList.getName()));
-
-    return count;
   }
 
   public Scan getScan(Feature f, int msmsscan) {
@@ -320,6 +346,9 @@ public class GnpsFbmnMgfExportTask extends AbstractTask {
       final Feature newFeature = new ModularFeature(feature);
       FeatureUtils.copyFeatureProperties(feature, newFeature);
       newRow.addFeature(feature.getRawDataFile(), newFeature);
+      // the values were copied to the feature that the row already had for this file
+      if (newRow.getFeature(feature.getRawDataFile()) != newFeature)
+        ((ModularFeature) newFeature).releaseColumns();
 
     }
 
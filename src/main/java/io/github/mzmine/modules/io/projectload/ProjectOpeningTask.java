@@ -18,12 +18,16 @@
 
 package io.github.mzmine.modules.io.projectload;
 
+import io.github.mzmine.modules.io.projectload.version_3_0.PeakListBinaryOpenHandler;
 import io.github.mzmine.modules.io.projectload.version_3_0.PeakListOpenHandler_3_0;
 import io.github.mzmine.modules.io.projectload.version_3_0.RawDataFileOpenHandler_3_0;
 import io.github.mzmine.modules.io.projectload.version_3_0.UserParameterOpenHandler_3_0;
+import io.github.mzmine.project.impl.ChromatogramIndex;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
 import io.github.mzmine.datamodel.features.FeatureList;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -31,6 +35,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,6 +49,7 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.version_2_5.PeakListOpenHandler_2_5;
 import io.github.mzmine.modules.io.projectload.version_2_5.RawDataFileOpenHandler_2_5;
 import io.github.mzmine.modules.io.projectload.version_2_5.UserParameterOpenHandler_2_5;
+import io.github.mzmine.modules.io.projectsave.PeakListSaveHandler;
 import io.github.mzmine.modules.io.projectsave.ProjectSavingTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.ProjectManager;
@@ -54,6 +60,7 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.GUIUtils;
 import io.github.mzmine.util.StreamCopy;
+import io.github.mzmine.util.files.ZipEntryLocation;
 import javafx.scene.control.ButtonType;
 
 public class ProjectOpeningTask extends AbstractTask {
@@ -65,6 +72,7 @@ public class ProjectOpeningTask extends AbstractTask {
 
   private RawDataFileOpenHandler rawDataFileOpenHandler;
   private PeakListOpenHandler peakListOpenHandler;
+  private PeakListOpenHandler binaryPeakListOpenHandler;
   private UserParameterOpenHandler userParameterOpenHandler;
   private StreamCopy copyMachine;
 
@@ -75,6 +83,10 @@ public class ProjectOpeningTask extends AbstractTask {
   // This hashtable maps stored IDs to raw data file objects
   private final Hashtable<String, RawDataFile> dataFilesIDMap = new Hashtable<>();
   private final Hashtable<String, File> scanFilesIDMap = new Hashtable<>();
+  // uncompressed scan data that is mapped from the project file: data offset and length
+  private final Hashtable<String, long[]> storedScansIDMap = new Hashtable<>();
+  private Map<String, ZipEntryLocation> storedEntryLocations;
+  private final Hashtable<String, ChromatogramIndex> chromatogramIndexIDMap = new Hashtable<>();
 
   public ProjectOpeningTask(ParameterSet parameters) {
     this.openFile = parameters.getParameter(ProjectLoaderParameters.projectFile).getValue();
@@ -174,7 +186,13 @@ public class ProjectOpeningTask extends AbstractTask {
       final Pattern imsScansFilePattern = Pattern
           .compile(IMSRawDataFileImpl.SAVE_IDENTIFIER + " #([\\d]+) (.*)\\.scans$");
 
+      final Pattern chromatogramIndexPattern = Pattern.compile("(?:"
+          + Pattern.quote(RawDataFileImpl.SAVE_IDENTIFIER) + "|"
+          + Pattern.quote(IMSRawDataFileImpl.SAVE_IDENTIFIER) + ") #([\\d]+) (.*)\\.chromindex$");
+
       final Pattern peakListPattern = Pattern.compile("Peak list #([\\d]+) (.*)\\.xml$");
+      final Pattern binaryPeakListPattern = Pattern.compile("Peak list #([\\d]+) (.*)"
+          + Pattern.quote(PeakListSaveHandler.FEATURE_LIST_EXTENSION) + "$");
 
       boolean versionInformationLoaded = false;
 
@@ -229,20 +247,33 @@ public class ProjectOpeningTask extends AbstractTask {
         if (scansFileMatcher.matches()) {
           final String fileID = scansFileMatcher.group(1);
           final String fileName = scansFileMatcher.group(2);
-          loadScansFile(cis, fileID, fileName);
+          loadScansFile(cis, entry, fileID, fileName);
         }
         final Matcher imsScansFileMatcher = imsScansFilePattern.matcher(entryName);
         if (imsScansFileMatcher.matches()) {
           final String fileID = imsScansFileMatcher.group(1);
           final String fileName = imsScansFileMatcher.group(2);
-          loadScansFile(cis, fileID, fileName);
+          loadScansFile(cis, entry, fileID, fileName);
+        }
+
+        // Load the chromatogram index of a raw data file
+        final Matcher chromatogramIndexMatcher = chromatogramIndexPattern.matcher(entryName);
+        if (chromatogramIndexMatcher.matches()) {
+          final String fileID = chromatogramIndexMatcher.group(1);
+          final String fileName = chromatogramIndexMatcher.group(2);
+          loadChromatogramIndex(cis, fileID, fileName);
         }
 
         // Load a feature list
         final Matcher peakListMatcher = peakListPattern.matcher(entryName);
         if (peakListMatcher.matches()) {
           final String peakListName = peakListMatcher.group(2);
-          loadFeatureList(cis, peakListName);
+          loadFeatureList(cis, peakListName, peakListOpenHandler);
+        }
+        final Matcher binaryPeakListMatcher = binaryPeakListPattern.matcher(entryName);
+        if (binaryPeakListMatcher.matches()) {
+          final String peakListName = binaryPeakListMatcher.group(2);
+          loadFeatureList(cis, peakListName, binaryPeakListOpenHandler);
         }
 
         // Close the ZIP entry
@@ -308,6 +339,10 @@ public class ProjectOpeningTask extends AbstractTask {
       peakListOpenHandler.cancel();
     }
 
+    if (binaryPeakListOpenHandler != null) {
+      binaryPeakListOpenHandler.cancel();
+    }
+
     if (userParameterOpenHandler != null) {
       userParameterOpenHandler.cancel();
     }
@@ -377,6 +412,7 @@ public class ProjectOpeningTask extends AbstractTask {
     // Default opening handler for MZmine 3 and higher
     rawDataFileOpenHandler = new RawDataFileOpenHandler_3_0();
     peakListOpenHandler = new PeakListOpenHandler_3_0(dataFilesIDMap);
+    binaryPeakListOpenHandler = new PeakListBinaryOpenHandler(dataFilesIDMap);
     userParameterOpenHandler = new UserParameterOpenHandler_3_0(newProject, dataFilesIDMap);
 
   }
@@ -414,23 +450,56 @@ public class ProjectOpeningTask extends AbstractTask {
 
     currentLoadedObjectName = fileName;
 
-    File scansFile = scanFilesIDMap.get(fileID);
-    if (scansFile == null) {
-      throw new IOException("Missing scans data for file ID " + fileID);
+    final RawDataFile newFile;
+    final long[] storedScans = storedScansIDMap.get(fileID);
+    if (storedScans != null) {
+      newFile = ((RawDataFileOpenHandler_3_0) rawDataFileOpenHandler).readRawDataFile(is, openFile,
+          storedScans[0], storedScans[1], isIMSRawDataFile, chromatogramIndexIDMap.get(fileID));
+    } else {
+      File scansFile = scanFilesIDMap.get(fileID);
+      if (scansFile == null) {
+        throw new IOException("Missing scans data for file ID " + fileID);
+      }
+      newFile = rawDataFileOpenHandler.readRawDataFile(is, scansFile, isIMSRawDataFile,
+          chromatogramIndexIDMap.get(fileID));
     }
 
-    RawDataFile newFile = rawDataFileOpenHandler.readRawDataFile(is, scansFile, isIMSRawDataFile);
+    // the scan data of the current format can be copied when the project is saved again
+    if (rawDataFileOpenHandler instanceof RawDataFileOpenHandler_3_0
+        && newFile instanceof RawDataFileImpl) {
+      final String identifier = isIMSRawDataFile ? IMSRawDataFileImpl.SAVE_IDENTIFIER
+          : RawDataFileImpl.SAVE_IDENTIFIER;
+      final RawDataFileImpl newFileImpl = (RawDataFileImpl) newFile;
+      newFileImpl.setSavedDataPointsEntry(identifier + " #" + fileID + " " + fileName + ".scans",
+          newFileImpl.getDataPointsModCount());
+    }
     newProject.addFile(newFile);
     dataFilesIDMap.put(fileID, newFile);
 
   }
 
-  private void loadScansFile(InputStream is, String fileID, String fileName) throws IOException {
+  private void loadScansFile(InputStream is, ZipEntry entry, String fileID, String fileName)
+      throws IOException {
 
     logger.info("Loading scans data #" + fileID + ": " + fileName);
 
     currentLoadedObjectName = fileName + " scan data";
 
+    // uncompressed scan data in the current format is mapped in place, it is only copied when the
+    // raw data file is modified
+    if (entry.getMethod() == ZipEntry.STORED
+        && rawDataFileOpenHandler instanceof RawDataFileOpenHandler_3_0) {
+      if (storedEntryLocations == null) {
+        storedEntryLocations = ZipEntryLocation.readAll(openFile);
+      }
+      final ZipEntryLocation location = storedEntryLocations.get(entry.getName());
+      if (location != null && location.getMethod() == ZipEntry.STORED) {
+        logger.info("Mapping scans data of #" + fileID + " from " + openFile);
+        storedScansIDMap.put(fileID, new long[] {location.getDataOffset(), location.getSize()});
+        return;
+      }
+    }
+
     final File tempFile = RawDataFileImpl.createNewDataPointsFile();
     logger.info("Saving scans data of #" + fileID + " to " + tempFile);
 
@@ -447,13 +516,30 @@ public class ProjectOpeningTask extends AbstractTask {
 
   }
 
-  private void loadFeatureList(InputStream is, String featureListName) throws IOException,
-      ParserConfigurationException, SAXException, InstantiationException, IllegalAccessException {
+  private void loadChromatogramIndex(InputStream is, String fileID, String fileName) {
+
+    logger.info("Loading chromatogram index #" + fileID + ": " + fileName);
+
+    currentLoadedObjectName = fileName + " chromatogram index";
+
+    // the index can be recalculated, so a corrupt index is not an error
+    try {
+      chromatogramIndexIDMap.put(fileID,
+          ChromatogramIndex.readFrom(new DataInputStream(new BufferedInputStream(is))));
+    } catch (IOException e) {
+      logger.warning("Could not load the chromatogram index of " + fileName
+          + ", it will be recalculated: " + ExceptionUtils.exceptionToString(e));
+    }
+  }
+
+  private void loadFeatureList(InputStream is, String featureListName,
+      PeakListOpenHandler handler) throws IOException, ParserConfigurationException,
+      SAXException, InstantiationException, IllegalAccessException {
     logger.info("Loading feature list " + featureListName);
 
     currentLoadedObjectName = featureListName;
 
-    FeatureList newFeatureList = peakListOpenHandler.readPeakList(is);
+    FeatureList newFeatureList = handler.readPeakList(is);
 
     newProject.addFeatureList(newFeatureList);
   }
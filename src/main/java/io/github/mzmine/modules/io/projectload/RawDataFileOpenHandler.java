@@ -21,18 +21,30 @@ package io.github.mzmine.modules.io.projectload;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import javax.annotation.Nullable;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.xml.sax.SAXException;
 
 import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.project.impl.ChromatogramIndex;
 
 public interface RawDataFileOpenHandler {
 
   RawDataFile readRawDataFile(InputStream is, File scansFile, boolean isIMSRawDataFile)
       throws IOException, ParserConfigurationException, SAXException;
 
+  /**
+   * Reads the raw data file and reuses a chromatogram index that was stored in the project, so it
+   * does not have to be recalculated.
+   */
+  default RawDataFile readRawDataFile(InputStream is, File scansFile, boolean isIMSRawDataFile,
+      @Nullable ChromatogramIndex chromatogramIndex)
+      throws IOException, ParserConfigurationException, SAXException {
+    return readRawDataFile(is, scansFile, isIMSRawDataFile);
+  }
+
   void cancel();
 
 }
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.IsotopePattern.IsotopePatternStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.datamodel.features.types.DetectionType;
+import io.github.mzmine.datamodel.features.types.RawFileType;
+import io.github.mzmine.datamodel.features.types.numbers.AsymmetryFactorType;
+import io.github.mzmine.datamodel.features.types.numbers.BestScanNumberType;
+import io.github.mzmine.datamodel.features.types.numbers.FwhmType;
+import io.github.mzmine.datamodel.features.types.numbers.IntensityRangeType;
+import io.github.mzmine.datamodel.features.types.numbers.MZRangeType;
+import io.github.mzmine.datamodel.features.types.numbers.RTRangeType;
+import io.github.mzmine.datamodel.features.types.numbers.TailingFactorType;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.datamodel.impl.SimpleFeatureIdentity;
+import io.github.mzmine.datamodel.impl.SimpleFeatureInformation;
+import io.github.mzmine.datamodel.impl.SimpleIsotopePattern;
+import io.github.mzmine.modules.io.projectload.PeakListOpenHandler;
+import io.github.mzmine.modules.io.projectsave.FeatureListColumn;
+import io.github.mzmine.modules.io.projectsave.PeakListSaveHandler;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.google.common.collect.Range;
+
+/**
+ * Loads the binary feature lists written by {@link PeakListSaveHandler}. All rows and features are
+ * created from the value columns first, then the trace chunks are read in batches and decoded in
+ * parallel.
+ */
+public class PeakListBinaryOpenHandler implements PeakListOpenHandler {
+
+  private Logger logger = Logger.getLogger(this.getClass().getName());
+
+  private final Hashtable<String, RawDataFile> dataFilesIDMap;
+
+  private int totalRows, loadedRows;
+
+  private boolean canceled = false;
+
+  public PeakListBinaryOpenHandler(Hashtable<String, RawDataFile> dataFilesIDMap) {
+    this.dataFilesIDMap = dataFilesIDMap;
+  }
+
+  @Override
+  public FeatureList readPeakList(InputStream peakListStream) throws IOException {
+
+    totalRows = 0;
+    loadedRows = 0;
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(peakListStream, 1 << 16));
+    if (in.readInt() != PeakListSaveHandler.MAGIC) {
+      throw new IOException("Invalid feature list file");
+    }
+    final int version = in.readInt();
+    if (version > PeakListSaveHandler.FORMAT_VERSION) {
+      throw new IOException("The feature list was saved in a newer format (version " + version
+          + "), please update MZmine to open it");
+    }
+
+    final String name = readString(in);
+    logger.info("Loading feature list: " + name);
+    final String dateCreated = readString(in);
+
+    final RawDataFile[] dataFiles = new RawDataFile[in.readInt()];
+    for (int i = 0; i < dataFiles.length; i++) {
+      final String rawDataFileID = readString(in);
+      dataFiles[i] = dataFilesIDMap.get(rawDataFileID);
+      if (dataFiles[i] == null) {
+        throw new IOException(
+            "Cannot open feature list, because raw data file " + rawDataFileID + " is missing.");
+      }
+    }
+
+    final ModularFeatureList flist = new ModularFeatureList(name, dataFiles);
+    final int numMethods = in.readInt();
+    for (int i = 0; i < numMethods; i++) {
+      final String methodName = readString(in);
+      final String methodParams = readString(in);
+      flist.addDescriptionOfAppliedTask(
+          new SimpleFeatureListAppliedMethod(methodName, methodParams));
+    }
+    flist.setDateCreated(dateCreated);
+
+    totalRows = in.readInt();
+    final int chunkRows = in.readInt();
+    final int numChunks = chunkRows <= 0 ? 0 : (totalRows + chunkRows - 1) / chunkRows;
+
+    // create all rows before any trace is read
+    final List<List<ModularFeature>> chunkFeatures = new ArrayList<>(numChunks);
+    for (int c = 0; c < numChunks; c++) {
+      checkCanceled();
+      final Map<FeatureListColumn, ByteBuffer> columns = inflate(readChunk(in));
+      final int numRows = Math.min(chunkRows, totalRows - c * chunkRows);
+      final List<ModularFeature> features = new ArrayList<>();
+      for (int r = 0; r < numRows; r++) {
+        flist.addRow(readRow(flist, dataFiles, columns, features));
+      }
+      chunkFeatures.add(features);
+    }
+
+    // decode the traces of a few chunks at once in parallel
+    final int batchSize = Math.max(1, Runtime.getRuntime().availableProcessors());
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    for (int first = 0; first < numChunks; first += batchSize) {
+      checkCanceled();
+      final List<Map<FeatureListColumn, Block>> batch = new ArrayList<>(batchSize);
+      for (int c = first; c < Math.min(first + batchSize, numChunks); c++) {
+        batch.add(readChunk(in));
+      }
+      final int batchStart = first;
+      IntStream.range(0, batch.size()).parallel().forEach(i -> {
+        try {
+          readTraces(chunkFeatures.get(batchStart + i), inflate(batch.get(i)));
+        } catch (Exception e) {
+          errors.add(e);
+        }
+      });
+      if (!errors.isEmpty()) {
+        throw new IOException("Cannot read the feature traces of " + name, errors.get(0));
+      }
+      loadedRows = Math.min(totalRows, (first + batch.size()) * chunkRows);
+    }
+
+    return flist;
+  }
+
+  private ModularFeatureListRow readRow(ModularFeatureList flist, RawDataFile[] dataFiles,
+      Map<FeatureListColumn, ByteBuffer> columns, List<ModularFeature> features)
+      throws IOException {
+
+    final ModularFeatureListRow row =
+        new ModularFeatureListRow(flist, column(columns, FeatureListColumn.ROW_ID).getInt());
+    row.setComment(readString(column(columns, FeatureListColumn.ROW_COMMENT)));
+
+    final ByteBuffer identityColumn = column(columns, FeatureListColumn.ROW_IDENTITIES);
+    final int numIdentities = identityColumn.getInt();
+    for (int i = 0; i < numIdentities; i++) {
+      final boolean preferred = identityColumn.getInt() != 0;
+      final Hashtable<String, String> identityProperties = new Hashtable<>();
+      readProperties(identityColumn, identityColumn.getInt(), identityProperties);
+      row.addFeatureIdentity(new SimpleFeatureIdentity(identityProperties), preferred);
+    }
+
+    final ByteBuffer informationColumn = column(columns, FeatureListColumn.ROW_INFORMATION);
+    final int numInformationProperties = informationColumn.getInt();
+    if (numInformationProperties >= 0) {
+      final Map<String, String> informationProperties = new HashMap<>();
+      readProperties(informationColumn, numInformationProperties, informationProperties);
+      row.setFeatureInformation(new SimpleFeatureInformation(informationProperties));
+    }
+
+    final int numFeatures = column(columns, FeatureListColumn.ROW_NUMBER_OF_FEATURES).getInt();
+    for (int i = 0; i < numFeatures; i++) {
+      final ModularFeature feature = readFeature(flist, dataFiles, columns);
+      row.addFeature(feature.getRawDataFile(), feature);
+      features.add(feature);
+    }
+    return row;
+  }
+
+  private ModularFeature readFeature(ModularFeatureList flist, RawDataFile[] dataFiles,
+      Map<FeatureListColumn, ByteBuffer> columns) throws IOException {
+
+    final ModularFeature feature = new ModularFeature(flist);
+    feature.set(RawFileType.class,
+        dataFiles[column(columns, FeatureListColumn.FEATURE_RAW_FILE).getInt()]);
+    feature.set(DetectionType.class, FeatureStatus
+        .valueOf(readString(column(columns, FeatureListColumn.FEATURE_STATUS))));
+    feature.setMZ(column(columns, FeatureListColumn.FEATURE_MZ).getDouble());
+    feature.setRT(column(columns, FeatureListColumn.FEATURE_RT).getFloat());
+    feature.setHeight(column(columns, FeatureListColumn.FEATURE_HEIGHT).getFloat());
+    feature.setArea(column(columns, FeatureListColumn.FEATURE_AREA).getFloat());
+    feature.setCharge(column(columns, FeatureListColumn.FEATURE_CHARGE).getInt());
+
+    final int representativeScan =
+        column(columns, FeatureListColumn.FEATURE_REPRESENTATIVE_SCAN).getInt();
+    feature.set(BestScanNumberType.class, representativeScan);
+    feature.setRepresentativeScanNumber(representativeScan);
+    final int fragmentScan = column(columns, FeatureListColumn.FEATURE_FRAGMENT_SCAN).getInt();
+    feature.setFragmentScanNumber(fragmentScan);
+
+    final ByteBuffer ms2Column = column(columns, FeatureListColumn.FEATURE_ALL_MS2_SCANS);
+    final int numMS2Scans = ms2Column.getInt();
+    if (numMS2Scans >= 0) {
+      final ObservableList<Integer> ms2Scans = FXCollections.observableArrayList();
+      for (int i = 0; i < numMS2Scans; i++) {
+        ms2Scans.add(ms2Column.getInt());
+      }
+      feature.setAllMS2FragmentScanNumbers(ms2Scans);
+    }
+
+    // the intensity range is needed to add the feature to its row
+    final ByteBuffer mzRangeColumn = column(columns, FeatureListColumn.FEATURE_MZ_RANGE);
+    final double lowerMz = mzRangeColumn.getDouble();
+    final double upperMz = mzRangeColumn.getDouble();
+    if (!Double.isNaN(lowerMz)) {
+      feature.set(MZRangeType.class, Range.closed(lowerMz, upperMz));
+    }
+    final Range<Float> rtRange = readRange(column(columns, FeatureListColumn.FEATURE_RT_RANGE));
+    if (rtRange != null) {
+      feature.set(RTRangeType.class, rtRange);
+    }
+    final Range<Float> intensityRange =
+        readRange(column(columns, FeatureListColumn.FEATURE_INTENSITY_RANGE));
+    if (intensityRange != null) {
+      feature.set(IntensityRangeType.class, intensityRange);
+    }
+
+    final float fwhm = column(columns, FeatureListColumn.FEATURE_FWHM).getFloat();
+    if (!Float.isNaN(fwhm)) {
+      feature.set(FwhmType.class, fwhm);
+    }
+    final float tf = column(columns, FeatureListColumn.FEATURE_TAILING_FACTOR).getFloat();
+    if (!Float.isNaN(tf)) {
+      feature.set(TailingFactorType.class, tf);
+    }
+    final float af = column(columns, FeatureListColumn.FEATURE_ASYMMETRY_FACTOR).getFloat();
+    if (!Float.isNaN(af)) {
+      feature.set(AsymmetryFactorType.class, af);
+    }
+
+    final ByteBuffer isotopeColumn = column(columns, FeatureListColumn.FEATURE_ISOTOPE_PATTERN);
+    final int numIsotopes = isotopeColumn.getInt();
+    if (numIsotopes >= 0) {
+      final String status = readString(isotopeColumn);
+      final String description = readString(isotopeColumn);
+      final DataPoint[] isotopes = new DataPoint[numIsotopes];
+      for (int i = 0; i < numIsotopes; i++) {
+        isotopes[i] = new SimpleDataPoint(isotopeColumn.getDouble(), isotopeColumn.getDouble());
+      }
+      feature.setIsotopePattern(new SimpleIsotopePattern(isotopes,
+          status == null ? null : IsotopePatternStatus.valueOf(status), description));
+    }
+    return feature;
+  }
+
+  private void readTraces(List<ModularFeature> features,
+      Map<FeatureListColumn, ByteBuffer> columns) throws IOException {
+    final IntBuffer sizes = column(columns, FeatureListColumn.TRACE_SIZES).asIntBuffer();
+    final IntBuffer scans = column(columns, FeatureListColumn.TRACE_SCANS).asIntBuffer();
+    final FloatBuffer mzValues = column(columns, FeatureListColumn.TRACE_MZ).asFloatBuffer();
+    final FloatBuffer intensityValues =
+        column(columns, FeatureListColumn.TRACE_INTENSITY).asFloatBuffer();
+
+    for (ModularFeature feature : features) {
+      final int[] scanNumbers = new int[sizes.get()];
+      final int numPoints = sizes.get();
+      // scan numbers are stored as differences to the previous scan
+      scans.get(scanNumbers);
+      for (int i = 1; i < scanNumbers.length; i++) {
+        scanNumbers[i] += scanNumbers[i - 1];
+      }
+      final double[] mz = new double[numPoints];
+      final double[] intensities = new double[numPoints];
+      for (int i = 0; i < numPoints; i++) {
+        mz[i] = mzValues.get();
+        intensities[i] = intensityValues.get();
+      }
+      feature.setFeatureTrace(scanNumbers, mz, intensities);
+    }
+  }
+
+  /**
+   * Reads the compressed blocks of one chunk, blocks of unknown columns are skipped
+   */
+  private Map<FeatureListColumn, Block> readChunk(DataInputStream in) throws IOException {
+    final Map<FeatureListColumn, Block> blocks = new EnumMap<>(FeatureListColumn.class);
+    final int numBlocks = in.readInt();
+    for (int i = 0; i < numBlocks; i++) {
+      final FeatureListColumn column = FeatureListColumn.forId(in.readInt());
+      final int length = in.readInt();
+      final byte[] compressed = new byte[in.readInt()];
+      in.readFully(compressed);
+      if (column != null) {
+        blocks.put(column, new Block(length, compressed));
+      }
+    }
+    return blocks;
+  }
+
+  private Map<FeatureListColumn, ByteBuffer> inflate(Map<FeatureListColumn, Block> blocks)
+      throws IOException {
+    final Map<FeatureListColumn, ByteBuffer> columns = new EnumMap<>(FeatureListColumn.class);
+    final Inflater inflater = new Inflater();
+    try {
+      for (Map.Entry<FeatureListColumn, Block> block : blocks.entrySet()) {
+        final byte[] data = new byte[block.getValue().length];
+        inflater.reset();
+        inflater.setInput(block.getValue().compressed);
+        int length = 0;
+        while (length < data.length && !inflater.finished()) {
+          final int inflated = inflater.inflate(data, length, data.length - length);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          length += inflated;
+        }
+        if (length != data.length) {
+          throw new IOException("Corrupt feature list column " + block.getKey());
+        }
+        columns.put(block.getKey(), ByteBuffer.wrap(data));
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt feature list column", e);
+    } finally {
+      inflater.end();
+    }
+    return columns;
+  }
+
+  private static ByteBuffer column(Map<FeatureListColumn, ByteBuffer> columns,
+      FeatureListColumn column) throws IOException {
+    final ByteBuffer buffer = columns.get(column);
+    if (buffer == null) {
+      throw new IOException("Missing feature list column " + column);
+    }
+    return buffer;
+  }
+
+  @Nullable
+  private static Range<Float> readRange(ByteBuffer buffer) {
+    final float lower = buffer.getFloat();
+    final float upper = buffer.getFloat();
+    return Float.isNaN(lower) ? null : Range.closed(lower, upper);
+  }
+
+  private static void readProperties(ByteBuffer buffer, int numProperties,
+      @Nonnull Map<String, String> properties) {
+    for (int i = 0; i < numProperties; i++) {
+      final String key = readString(buffer);
+      final String value = readString(buffer);
+      properties.put(key, value);
+    }
+  }
+
+  @Nullable
+  private static String readString(ByteBuffer buffer) {
+    final int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    final String value =
+        new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  @Nullable
+  private static String readString(DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void checkCanceled() throws IOException {
+    if (canceled) {
+      throw new IOException("Loading canceled");
+    }
+  }
+
+  /**
+   * @return the progress of these functions loading the feature list from the zip file.
+   */
+  public double getProgress() {
+    if (totalRows == 0)
+      return 0;
+    return (double) loadedRows / totalRows;
+  }
+
+  @Override
+  public void cancel() {
+    canceled = true;
+  }
+
+  /**
+   * Compressed column data of one chunk
+   */
+  private static class Block {
+
+    private final int length;
+    private final byte[] compressed;
+
+    private Block(int length, byte[] compressed) {
+      this.length = length;
+      this.compressed = compressed;
+    }
+  }
+}
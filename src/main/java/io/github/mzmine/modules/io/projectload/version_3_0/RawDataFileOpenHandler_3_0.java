@@ -25,6 +25,7 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.RawDataFileOpenHandler;
+import io.github.mzmine.project.impl.ChromatogramIndex;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
 import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.project.impl.StorableFrame;
@@ -40,6 +41,7 @@ import java.util.TreeMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javafx.scene.paint.Color;
+import javax.annotation.Nullable;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -96,7 +98,41 @@ public class RawDataFileOpenHandler_3_0 extends DefaultHandler implements RawDat
    */
   public RawDataFile readRawDataFile(InputStream is, File scansFile, boolean isIMSRawDataFile)
       throws IOException, ParserConfigurationException, SAXException {
+    return readRawDataFile(is, scansFile, isIMSRawDataFile, null);
+  }
+
+  /**
+   * Same as {@link #readRawDataFile(InputStream, File, boolean)}, but the chromatogram index stored
+   * in the project is set before the file is finished, so the index is not recalculated.
+   */
+  @Override
+  public RawDataFile readRawDataFile(InputStream is, File scansFile, boolean isIMSRawDataFile,
+      @Nullable ChromatogramIndex chromatogramIndex)
+      throws IOException, ParserConfigurationException, SAXException {
+
+    createRawDataFile(isIMSRawDataFile);
+    newRawDataFile.openDataPointsFile(scansFile);
+    return readDescription(is, chromatogramIndex);
+  }
+
+  /**
+   * Same as {@link #readRawDataFile(InputStream, File, boolean, ChromatogramIndex)}, but the scan
+   * data is memory-mapped from an uncompressed entry of the project file instead of a copy.
+   *
+   * @param projectFile the project file
+   * @param scansOffset position of the scan data in the project file
+   * @param scansLength length of the scan data in bytes
+   */
+  public RawDataFile readRawDataFile(InputStream is, File projectFile, long scansOffset,
+      long scansLength, boolean isIMSRawDataFile, @Nullable ChromatogramIndex chromatogramIndex)
+      throws IOException, ParserConfigurationException, SAXException {
+
+    createRawDataFile(isIMSRawDataFile);
+    newRawDataFile.openMappedDataPointsFile(projectFile, scansOffset, scansLength);
+    return readDescription(is, chromatogramIndex);
+  }
 
+  private void createRawDataFile(boolean isIMSRawDataFile) throws IOException {
     charBuffer = new StringBuffer();
     massLists = new ArrayList<StorableMassList>();
 
@@ -105,7 +141,10 @@ public class RawDataFileOpenHandler_3_0 extends DefaultHandler implements RawDat
     } else {
       newRawDataFile = (RawDataFileImpl) MZmineCore.createNewFile(null);
     }
-    newRawDataFile.openDataPointsFile(scansFile);
+  }
+
+  private RawDataFile readDescription(InputStream is, @Nullable ChromatogramIndex chromatogramIndex)
+      throws IOException, ParserConfigurationException, SAXException {
 
     dataPointsOffsets = newRawDataFile.getDataPointsOffsets();
     dataPointsLengths = newRawDataFile.getDataPointsLengths();
@@ -116,6 +155,7 @@ public class RawDataFileOpenHandler_3_0 extends DefaultHandler implements RawDat
     saxParser.parse(is, this);
 
     // Adds the raw data file to MZmine
+    newRawDataFile.setChromatogramIndex(chromatogramIndex);
     RawDataFile rawDataFile = newRawDataFile.finishWriting();
     return rawDataFile;
 
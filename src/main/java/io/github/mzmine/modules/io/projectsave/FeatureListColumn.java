@@ -0,0 +1,106 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import javax.annotation.Nullable;
+
+/**
+ * Columns of the binary feature list format written by {@link PeakListSaveHandler}. Each column
+ * holds the values of one data type for all rows or features of a chunk. The ids are stored in the
+ * project files and must not be changed, new columns need new ids. Columns with unknown ids are
+ * skipped when a feature list is loaded.
+ */
+public enum FeatureListColumn {
+
+  // row values, one per row
+  ROW_ID(1), //
+  ROW_COMMENT(2), //
+  /**
+   * Number of identities, each as preferred flag and the properties
+   */
+  ROW_IDENTITIES(3), //
+  /**
+   * Number of properties or -1 if the row has no feature information
+   */
+  ROW_INFORMATION(4), //
+  ROW_NUMBER_OF_FEATURES(5), //
+
+  // feature values, one per feature in the order of the rows
+  /**
+   * Index of the raw data file in the raw data files of the feature list
+   */
+  FEATURE_RAW_FILE(20), //
+  FEATURE_MZ(21), //
+  FEATURE_RT(22), //
+  FEATURE_HEIGHT(23), //
+  FEATURE_AREA(24), //
+  FEATURE_STATUS(25), //
+  FEATURE_CHARGE(26), //
+  FEATURE_REPRESENTATIVE_SCAN(27), //
+  FEATURE_FRAGMENT_SCAN(28), //
+  /**
+   * Number of scans or -1 if not set, followed by the scan numbers
+   */
+  FEATURE_ALL_MS2_SCANS(29), //
+  FEATURE_MZ_RANGE(30), //
+  FEATURE_RT_RANGE(31), //
+  FEATURE_INTENSITY_RANGE(32), //
+  FEATURE_FWHM(33), //
+  FEATURE_TAILING_FACTOR(34), //
+  FEATURE_ASYMMETRY_FACTOR(35), //
+  /**
+   * Number of data points or -1 if not set, followed by status, description and data points
+   */
+  FEATURE_ISOTOPE_PATTERN(36), //
+
+  // feature traces, stored after the values of all rows
+  /**
+   * Number of scans and number of data points of each feature
+   */
+  TRACE_SIZES(50), //
+  /**
+   * Scan numbers as differences to the previous scan number of the same feature
+   */
+  TRACE_SCANS(51), //
+  TRACE_MZ(52), //
+  TRACE_INTENSITY(53);
+
+  private final int id;
+
+  FeatureListColumn(int id) {
+    this.id = id;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * @return the column or null if the id is unknown, e.g., written by a newer version
+   */
+  @Nullable
+  public static FeatureListColumn forId(int id) {
+    for (FeatureListColumn column : values()) {
+      if (column.id == id) {
+        return column;
+      }
+    }
+    return null;
+  }
+}
@@ -18,39 +18,63 @@
 
 package io.github.mzmine.modules.io.projectsave;
 
+import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.FeatureIdentity;
 import io.github.mzmine.datamodel.FeatureInformation;
+import io.github.mzmine.datamodel.IsotopePattern;
+import io.github.mzmine.datamodel.IsotopePattern.IsotopePatternStatus;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.FeatureListRow;
-import java.io.ByteArrayOutputStream;
+import io.github.mzmine.datamodel.features.FeatureTrace;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import javafx.collections.ObservableList;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.AttributesImpl;
-import com.Ostermiller.util.Base64;
-import io.github.mzmine.datamodel.DataPoint;
-import io.github.mzmine.datamodel.IsotopePattern;
-import io.github.mzmine.datamodel.RawDataFile;
-
+import java.util.zip.Deflater;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.google.common.collect.Range;
+
+/**
+ * Saves a feature list in a binary column format. The rows are written in chunks of
+ * {@link #CHUNK_ROWS} rows, each chunk holds one block of every {@link FeatureListColumn}, and each
+ * block is compressed on its own. The row and feature values of all chunks are written before the
+ * feature traces, so a reader can create all rows before the traces are read.
+ *
+ * <pre>
+ * header: magic, version, name, date, raw data file IDs, applied methods, number of rows,
+ *         rows per chunk
+ * chunks: the value chunks of all rows, then the trace chunks of all rows
+ * chunk:  number of blocks, each with column id, length, compressed length and deflated data
+ * </pre>
+ *
+ * Strings are written as length in bytes (-1 for null) and UTF-8 bytes, all values are big-endian.
+ */
 public class PeakListSaveHandler {
 
+  public static final String FEATURE_LIST_EXTENSION = ".features";
+  // "MZFL"
+  public static final int MAGIC = 0x4d5a464c;
+  public static final int FORMAT_VERSION = 1;
+  public static final int CHUNK_ROWS = 1024;
+
   public static DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
 
   private Hashtable<RawDataFile, String> dataFilesIDMap;
@@ -67,380 +91,323 @@ public class PeakListSaveHandler {
   }
 
   /**
-   * Create an XML document with the feature list information an save it into the project zip file
+   * Writes the feature list to the stream, the stream is flushed but not closed
    *
    * @param featureList
-   * @param peakListSavedName name of the feature list
    * @throws java.io.IOException
    */
-  public void savePeakList(FeatureList featureList)
-      throws IOException, TransformerConfigurationException, SAXException {
+  public void savePeakList(FeatureList featureList) throws IOException {
 
     numberOfRows = featureList.getNumberOfRows();
     finishedRows = 0;
 
-    StreamResult streamResult = new StreamResult(finalStream);
-    SAXTransformerFactory tf = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-
-    TransformerHandler hd = tf.newTransformerHandler();
-
-    Transformer serializer = hd.getTransformer();
-    serializer.setOutputProperty(OutputKeys.INDENT, "yes");
-    serializer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-
-    hd.setResult(streamResult);
-    hd.startDocument();
-    AttributesImpl atts = new AttributesImpl();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(finalStream, 1 << 16));
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    writeString(out, featureList.getName());
 
-    hd.startElement("", "", PeakListElementName.PEAKLIST.getElementName(), atts);
-    atts.clear();
-
-    // <NAME>
-    hd.startElement("", "", PeakListElementName.PEAKLIST_NAME.getElementName(), atts);
-    hd.characters(featureList.getName().toCharArray(), 0, featureList.getName().length());
-    hd.endElement("", "", PeakListElementName.PEAKLIST_NAME.getElementName());
-
-    // <PEAKLIST_DATE>
-    String dateText = "";
-    if (featureList.getDateCreated() != null) {
-      dateText = featureList.getDateCreated();
-    } else {
-      Date date = new Date();
-      dateText = dateFormat.format(date);
+    String dateText = featureList.getDateCreated();
+    if (dateText == null) {
+      // feature lists may be saved in parallel, the format is not thread-safe
+      synchronized (dateFormat) {
+        dateText = dateFormat.format(new Date());
+      }
     }
-    hd.startElement("", "", PeakListElementName.PEAKLIST_DATE.getElementName(), atts);
-    hd.characters(dateText.toCharArray(), 0, dateText.length());
-    hd.endElement("", "", PeakListElementName.PEAKLIST_DATE.getElementName());
+    writeString(out, dateText);
 
-    // <QUANTITY>
-    hd.startElement("", "", PeakListElementName.QUANTITY.getElementName(), atts);
-    hd.characters(String.valueOf(numberOfRows).toCharArray(), 0,
-        String.valueOf(numberOfRows).length());
-    hd.endElement("", "", PeakListElementName.QUANTITY.getElementName());
+    RawDataFile[] dataFiles = featureList.getRawDataFiles().toArray(RawDataFile[]::new);
+    Map<RawDataFile, Integer> dataFileIndices = new HashMap<>();
+    out.writeInt(dataFiles.length);
+    for (int i = 0; i < dataFiles.length; i++) {
+      writeString(out, dataFilesIDMap.get(dataFiles[i]));
+      dataFileIndices.put(dataFiles[i], i);
+    }
 
-    // <PROCESS>
     List<FeatureListAppliedMethod> processes = featureList.getAppliedMethods();
+    out.writeInt(processes.size());
     for (FeatureListAppliedMethod proc : processes) {
-
-      hd.startElement("", "", PeakListElementName.METHOD.getElementName(), atts);
-
-      hd.startElement("", "", PeakListElementName.METHOD_NAME.getElementName(), atts);
-      String methodName = proc.getDescription();
-      hd.characters(methodName.toCharArray(), 0, methodName.length());
-      hd.endElement("", "", PeakListElementName.METHOD_NAME.getElementName());
-
-      hd.startElement("", "", PeakListElementName.METHOD_PARAMETERS.getElementName(), atts);
-      String methodParameters = proc.getParameters();
-      hd.characters(methodParameters.toCharArray(), 0, methodParameters.length());
-      hd.endElement("", "", PeakListElementName.METHOD_PARAMETERS.getElementName());
-
-      hd.endElement("", "", PeakListElementName.METHOD.getElementName());
-
+      writeString(out, proc.getDescription());
+      writeString(out, proc.getParameters());
     }
-    atts.clear();
-
-    // <RAWFILE>
-    RawDataFile[] dataFiles = featureList.getRawDataFiles().toArray(RawDataFile[]::new);
 
-    for (int i = 0; i < dataFiles.length; i++) {
-
-      String ID = dataFilesIDMap.get(dataFiles[i]);
-
-      hd.startElement("", "", PeakListElementName.RAWFILE.getElementName(), atts);
-      char idChars[] = ID.toCharArray();
-      hd.characters(idChars, 0, idChars.length);
-
-      hd.endElement("", "", PeakListElementName.RAWFILE.getElementName());
+    out.writeInt(numberOfRows);
+    out.writeInt(CHUNK_ROWS);
+
+    final List<FeatureListRow> rows = featureList.getRows();
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      for (int start = 0; start < numberOfRows; start += CHUNK_ROWS) {
+        if (canceled) {
+          return;
+        }
+        final List<FeatureListRow> chunk =
+            rows.subList(start, Math.min(start + CHUNK_ROWS, numberOfRows));
+        writeChunk(out, createValueColumns(chunk, dataFileIndices), deflater);
+      }
+      for (int start = 0; start < numberOfRows; start += CHUNK_ROWS) {
+        if (canceled) {
+          return;
+        }
+        final List<FeatureListRow> chunk =
+            rows.subList(start, Math.min(start + CHUNK_ROWS, numberOfRows));
+        writeChunk(out, createTraceColumns(chunk), deflater);
+        finishedRows += chunk.size();
+      }
+    } finally {
+      deflater.end();
     }
+    out.flush();
+  }
 
-    // <ROW>
-    FeatureListRow row;
-    for (int i = 0; i < numberOfRows; i++) {
+  private Map<FeatureListColumn, ColumnBuffer> createValueColumns(List<FeatureListRow> rows,
+      Map<RawDataFile, Integer> dataFileIndices) {
 
-      if (canceled)
-        return;
+    final Map<FeatureListColumn, ColumnBuffer> columns = new EnumMap<>(FeatureListColumn.class);
+    for (FeatureListColumn column : EnumSet.range(FeatureListColumn.ROW_ID,
+        FeatureListColumn.FEATURE_ISOTOPE_PATTERN)) {
+      columns.put(column, new ColumnBuffer());
+    }
 
-      atts.clear();
-      row = featureList.getRow(i);
-      atts.addAttribute("", "", PeakListElementName.ID.getElementName(), "CDATA",
-          String.valueOf(row.getID()));
-      if (row.getComment() != null) {
-        atts.addAttribute("", "", PeakListElementName.COMMENT.getElementName(), "CDATA",
-            row.getComment());
+    for (FeatureListRow row : rows) {
+      columns.get(FeatureListColumn.ROW_ID).putInt(row.getID());
+      columns.get(FeatureListColumn.ROW_COMMENT).putString(row.getComment());
+
+      final ColumnBuffer identityColumn = columns.get(FeatureListColumn.ROW_IDENTITIES);
+      final FeatureIdentity preferredIdentity = row.getPreferredFeatureIdentity();
+      final List<FeatureIdentity> identities = row.getPeakIdentities();
+      identityColumn.putInt(identities.size());
+      for (FeatureIdentity identity : identities) {
+        identityColumn.putInt(identity == preferredIdentity ? 1 : 0);
+        identityColumn.putProperties(identity.getAllProperties());
       }
 
-      hd.startElement("", "", PeakListElementName.ROW.getElementName(), atts);
-      fillRowElement(row, hd);
-      hd.endElement("", "", PeakListElementName.ROW.getElementName());
+      final FeatureInformation information = row.getFeatureInformation();
+      final ColumnBuffer informationColumn = columns.get(FeatureListColumn.ROW_INFORMATION);
+      if (information == null) {
+        informationColumn.putInt(-1);
+      } else {
+        informationColumn.putProperties(information.getAllProperties());
+      }
 
-      finishedRows++;
+      final List<Feature> features = row.getFeatures();
+      columns.get(FeatureListColumn.ROW_NUMBER_OF_FEATURES).putInt(features.size());
+      for (Feature feature : features) {
+        columns.get(FeatureListColumn.FEATURE_RAW_FILE)
+            .putInt(dataFileIndices.get(feature.getRawDataFile()));
+        columns.get(FeatureListColumn.FEATURE_MZ).putDouble(feature.getMZ());
+        columns.get(FeatureListColumn.FEATURE_RT).putFloat(feature.getRT());
+        columns.get(FeatureListColumn.FEATURE_HEIGHT).putFloat(feature.getHeight());
+        columns.get(FeatureListColumn.FEATURE_AREA).putFloat(feature.getArea());
+        columns.get(FeatureListColumn.FEATURE_STATUS)
+            .putString(feature.getFeatureStatus().toString());
+        columns.get(FeatureListColumn.FEATURE_CHARGE).putInt(feature.getCharge());
+        columns.get(FeatureListColumn.FEATURE_REPRESENTATIVE_SCAN)
+            .putInt(feature.getRepresentativeScanNumber());
+        columns.get(FeatureListColumn.FEATURE_FRAGMENT_SCAN)
+            .putInt(feature.getMostIntenseFragmentScanNumber());
+
+        final List<Integer> ms2Scans = feature.getAllMS2FragmentScanNumbers();
+        final ColumnBuffer ms2Column = columns.get(FeatureListColumn.FEATURE_ALL_MS2_SCANS);
+        ms2Column.putInt(ms2Scans == null ? -1 : ms2Scans.size());
+        if (ms2Scans != null) {
+          for (int scan : ms2Scans) {
+            ms2Column.putInt(scan);
+          }
+        }
+
+        // ranges are null before they were calculated
+        final Range<Double> mzRange = feature.getRawDataPointsMZRange();
+        final Range<Float> rtRange = feature.getRawDataPointsRTRange();
+        final Range<Float> intensityRange = feature.getRawDataPointsIntensityRange();
+        final ColumnBuffer mzRangeColumn = columns.get(FeatureListColumn.FEATURE_MZ_RANGE);
+        mzRangeColumn.putDouble(mzRange == null ? Double.NaN : mzRange.lowerEndpoint());
+        mzRangeColumn.putDouble(mzRange == null ? Double.NaN : mzRange.upperEndpoint());
+        final ColumnBuffer rtRangeColumn = columns.get(FeatureListColumn.FEATURE_RT_RANGE);
+        rtRangeColumn.putFloat(rtRange == null ? Float.NaN : rtRange.lowerEndpoint());
+        rtRangeColumn.putFloat(rtRange == null ? Float.NaN : rtRange.upperEndpoint());
+        final ColumnBuffer intensityRangeColumn =
+            columns.get(FeatureListColumn.FEATURE_INTENSITY_RANGE);
+        intensityRangeColumn
+            .putFloat(intensityRange == null ? Float.NaN : intensityRange.lowerEndpoint());
+        intensityRangeColumn
+            .putFloat(intensityRange == null ? Float.NaN : intensityRange.upperEndpoint());
+
+        columns.get(FeatureListColumn.FEATURE_FWHM).putFloat(feature.getFWHM());
+        columns.get(FeatureListColumn.FEATURE_TAILING_FACTOR).putFloat(feature.getTailingFactor());
+        columns.get(FeatureListColumn.FEATURE_ASYMMETRY_FACTOR)
+            .putFloat(feature.getAsymmetryFactor());
+
+        final IsotopePattern isotopePattern = feature.getIsotopePattern();
+        final ColumnBuffer isotopeColumn = columns.get(FeatureListColumn.FEATURE_ISOTOPE_PATTERN);
+        if (isotopePattern == null) {
+          isotopeColumn.putInt(-1);
+        } else {
+          final DataPoint[] isotopes = isotopePattern.getDataPoints();
+          isotopeColumn.putInt(isotopes.length);
+          final IsotopePatternStatus status = isotopePattern.getStatus();
+          isotopeColumn.putString(status == null ? null : status.name());
+          isotopeColumn.putString(isotopePattern.getDescription());
+          for (DataPoint isotope : isotopes) {
+            isotopeColumn.putDouble(isotope.getMZ());
+            isotopeColumn.putDouble(isotope.getIntensity());
+          }
+        }
+      }
     }
-
-    hd.endElement("", "", PeakListElementName.PEAKLIST.getElementName());
-    hd.endDocument();
+    return columns;
   }
 
-  /**
-   * Add the row information into the XML document
-   *
-   * @param row
-   * @param element
-   * @throws IOException
-   */
-  private void fillRowElement(FeatureListRow row, TransformerHandler hd)
-      throws SAXException, IOException {
-
-    // <PEAK_IDENTITY>
-    FeatureIdentity preferredIdentity = row.getPreferredFeatureIdentity();
-    ObservableList<FeatureIdentity> identities = row.getPeakIdentities();
-    AttributesImpl atts = new AttributesImpl();
+  private Map<FeatureListColumn, ColumnBuffer> createTraceColumns(List<FeatureListRow> rows) {
+    final ColumnBuffer sizes = new ColumnBuffer();
+    final ColumnBuffer scans = new ColumnBuffer();
+    final ColumnBuffer mzValues = new ColumnBuffer();
+    final ColumnBuffer intensities = new ColumnBuffer();
+
+    for (FeatureListRow row : rows) {
+      for (Feature feature : row.getFeatures()) {
+        if (feature instanceof ModularFeature) {
+          // write the compact chromatogram without creating boxed values or data points
+          final FeatureTrace trace = ((ModularFeature) feature).getFeatureTrace();
+          final int numScans = trace.getNumberOfScans();
+          final int numPoints = trace.getNumberOfDataPoints();
+          sizes.putInt(numScans);
+          sizes.putInt(numPoints);
+          int lastScan = 0;
+          for (int i = 0; i < numScans; i++) {
+            final int scan = trace.getScanNumber(i);
+            scans.putInt(scan - lastScan);
+            lastScan = scan;
+          }
+          for (int i = 0; i < numPoints; i++) {
+            mzValues.putFloat((float) trace.getMZ(i));
+            intensities.putFloat((float) trace.getIntensity(i));
+          }
+        } else {
+          final List<Integer> scanNumbers = feature.getScanNumbers();
+          sizes.putInt(scanNumbers.size());
+          sizes.putInt(scanNumbers.size());
+          int lastScan = 0;
+          for (int scan : scanNumbers) {
+            scans.putInt(scan - lastScan);
+            lastScan = scan;
+            // scans without data point are written with m/z and intensity 0
+            final DataPoint dp = feature.getDataPoint(scan);
+            mzValues.putFloat(dp == null ? 0f : (float) dp.getMZ());
+            intensities.putFloat(dp == null ? 0f : (float) dp.getIntensity());
+          }
+        }
+      }
+    }
 
-    for (int i = 0; i < identities.size(); i++) {
+    final Map<FeatureListColumn, ColumnBuffer> columns = new EnumMap<>(FeatureListColumn.class);
+    columns.put(FeatureListColumn.TRACE_SIZES, sizes);
+    columns.put(FeatureListColumn.TRACE_SCANS, scans);
+    columns.put(FeatureListColumn.TRACE_MZ, mzValues);
+    columns.put(FeatureListColumn.TRACE_INTENSITY, intensities);
+    return columns;
+  }
 
-      if (canceled)
-        return;
+  private void writeChunk(DataOutputStream out, Map<FeatureListColumn, ColumnBuffer> columns,
+      Deflater deflater) throws IOException {
+    out.writeInt(columns.size());
+    byte[] compressed = new byte[1 << 16];
+    for (Entry<FeatureListColumn, ColumnBuffer> column : columns.entrySet()) {
+      final ByteBuffer data = column.getValue().buffer;
+      final int length = data.position();
+
+      deflater.reset();
+      deflater.setInput(data.array(), 0, length);
+      deflater.finish();
+      int compressedLength = 0;
+      while (!deflater.finished()) {
+        if (compressedLength == compressed.length) {
+          compressed = Arrays.copyOf(compressed, compressed.length * 2);
+        }
+        compressedLength +=
+            deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+      }
 
-      atts.addAttribute("", "", PeakListElementName.ID.getElementName(), "CDATA",
-          String.valueOf(i));
-      atts.addAttribute("", "", PeakListElementName.PREFERRED.getElementName(), "CDATA",
-          String.valueOf(identities.get(i) == preferredIdentity));
-      hd.startElement("", "", PeakListElementName.PEAK_IDENTITY.getElementName(), atts);
-      fillIdentityElement(identities.get(i), hd);
-      hd.endElement("", "", PeakListElementName.PEAK_IDENTITY.getElementName());
+      out.writeInt(column.getKey().getId());
+      out.writeInt(length);
+      out.writeInt(compressedLength);
+      out.write(compressed, 0, compressedLength);
     }
+  }
 
-    // <PEAK_INFORMATION>
-
-    // atts.clear();
-
-    if (canceled)
+  private static void writeString(DataOutputStream out, @Nullable String value)
+      throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
       return;
-
-    // atts.addAttribute("", "", PeakListElementName.ID.getElementName(),
-    // "CDATA", "INFORMATION");
-    hd.startElement("", "", PeakListElementName.PEAK_INFORMATION.getElementName(), atts);
-    fillInformationElement(row.getFeatureInformation(), hd);
-    hd.endElement("", "", PeakListElementName.PEAK_INFORMATION.getElementName());
-
-    // <PEAK>
-    for (Feature feature : row.getFeatures()) {
-      if (canceled)
-        return;
-
-      atts.clear();
-      String dataFileID = dataFilesIDMap.get(feature.getRawDataFile());
-      atts.addAttribute("", "", PeakListElementName.COLUMN.getElementName(), "CDATA", dataFileID);
-      atts.addAttribute("", "", PeakListElementName.MZ.getElementName(), "CDATA",
-          String.valueOf(feature.getMZ()));
-      // In the project file, retention time is represented in seconds,
-      // for historical reasons
-      double rt = feature.getRT() * 60d;
-      atts.addAttribute("", "", PeakListElementName.RT.getElementName(), "CDATA",
-          String.valueOf(rt));
-      atts.addAttribute("", "", PeakListElementName.HEIGHT.getElementName(), "CDATA",
-          String.valueOf(feature.getHeight()));
-      atts.addAttribute("", "", PeakListElementName.AREA.getElementName(), "CDATA",
-          String.valueOf(feature.getArea()));
-      atts.addAttribute("", "", PeakListElementName.STATUS.getElementName(), "CDATA",
-          feature.getFeatureStatus().toString());
-      atts.addAttribute("", "", PeakListElementName.CHARGE.getElementName(), "CDATA",
-          String.valueOf(feature.getCharge()));
-      atts.addAttribute("", "", PeakListElementName.PARENT_CHROMATOGRAM_ROW_ID.getElementName(),
-          "CDATA",
-          feature.getParentChromatogramRowID() != null ? String.valueOf(feature.getParentChromatogramRowID())
-              : "");
-      hd.startElement("", "", PeakListElementName.PEAK.getElementName(), atts);
-
-      fillPeakElement(feature, hd);
-      hd.endElement("", "", PeakListElementName.PEAK.getElementName());
     }
-
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
   }
 
   /**
-   * Add the peak identity information into the XML document
-   *
-   * @param identity
-   * @param element
+   * @return the progress of these functions saving the feature list to the zip file.
    */
-  private void fillIdentityElement(FeatureIdentity identity, TransformerHandler hd)
-      throws SAXException {
-
-    AttributesImpl atts = new AttributesImpl();
-
-    Map<String, String> idProperties = identity.getAllProperties();
-
-    for (Entry<String, String> property : idProperties.entrySet()) {
-      String propertyValue = property.getValue();
-      atts.clear();
-      atts.addAttribute("", "", PeakListElementName.NAME.getElementName(), "CDATA",
-          property.getKey());
-
-      hd.startElement("", "", PeakListElementName.IDPROPERTY.getElementName(), atts);
-      hd.characters(propertyValue.toCharArray(), 0, propertyValue.length());
-      hd.endElement("", "", PeakListElementName.IDPROPERTY.getElementName());
-    }
-
+  public double getProgress() {
+    if (numberOfRows == 0)
+      return 0;
+    return (double) finishedRows / numberOfRows;
   }
 
-  private void fillInformationElement(FeatureInformation information, TransformerHandler hd)
-      throws SAXException {
-    if (information == null)
-      return;
-
-    AttributesImpl atts = new AttributesImpl();
-
-    for (Entry<String, String> property : information.getAllProperties().entrySet()) {
-      String value = property.getValue();
-
-      atts.clear();
-      atts.addAttribute("", "", PeakListElementName.NAME.getElementName(), "CDATA",
-          property.getKey());
-
-      hd.startElement("", "", PeakListElementName.INFO_PROPERTY.getElementName(), atts);
-      hd.characters(property.getValue().toCharArray(), 0, value.length());
-      hd.endElement("", "", PeakListElementName.INFO_PROPERTY.getElementName());
-    }
+  public void cancel() {
+    canceled = true;
   }
 
   /**
-   * Add the peaks information into the XML document
-   *
-   * @param feature
-   * @param element
-   * @param dataFileID
-   * @throws IOException
+   * Growing buffer for the values of one column
    */
-  private void fillPeakElement(Feature feature, TransformerHandler hd)
-      throws SAXException, IOException {
-    AttributesImpl atts = new AttributesImpl();
-
-    // <REPRESENTATIVE_SCAN>
-    hd.startElement("", "", PeakListElementName.REPRESENTATIVE_SCAN.getElementName(), atts);
-    hd.characters(String.valueOf(feature.getRepresentativeScanNumber()).toCharArray(), 0,
-        String.valueOf(feature.getRepresentativeScanNumber()).length());
-    hd.endElement("", "", PeakListElementName.REPRESENTATIVE_SCAN.getElementName());
-
-    // <FRAGMENT_SCAN>
-    hd.startElement("", "", PeakListElementName.FRAGMENT_SCAN.getElementName(), atts);
-    hd.characters(String.valueOf(feature.getMostIntenseFragmentScanNumber()).toCharArray(), 0,
-        String.valueOf(feature.getMostIntenseFragmentScanNumber()).length());
-    hd.endElement("", "", PeakListElementName.FRAGMENT_SCAN.getElementName());
-
-    // <ALL_MS2_FRAGMENT_SCANS>
-    fillAllMS2FragmentScanNumbers(feature.getAllMS2FragmentScanNumbers(), hd);
+  private static class ColumnBuffer {
 
-    List<Integer> scanNumbers = feature.getScanNumbers();
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
 
-    // <ISOTOPE_PATTERN>
-    IsotopePattern isotopePattern = feature.getIsotopePattern();
-    if (isotopePattern != null) {
-      atts.addAttribute("", "", PeakListElementName.STATUS.getElementName(), "CDATA",
-          String.valueOf(isotopePattern.getStatus()));
-      atts.addAttribute("", "", PeakListElementName.DESCRIPTION.getElementName(), "CDATA",
-          isotopePattern.getDescription());
-      hd.startElement("", "", PeakListElementName.ISOTOPE_PATTERN.getElementName(), atts);
-      atts.clear();
-
-      fillIsotopePatternElement(isotopePattern, hd);
-
-      hd.endElement("", "", PeakListElementName.ISOTOPE_PATTERN.getElementName());
-
-    }
-
-    // <MZPEAK>
-    atts.addAttribute("", "", PeakListElementName.QUANTITY.getElementName(), "CDATA",
-        String.valueOf(scanNumbers.size()));
-    hd.startElement("", "", PeakListElementName.MZPEAKS.getElementName(), atts);
-    atts.clear();
-
-    // <SCAN_ID> <MASS> <HEIGHT>
-    ByteArrayOutputStream byteScanStream = new ByteArrayOutputStream();
-    DataOutputStream dataScanStream = new DataOutputStream(byteScanStream);
-
-    ByteArrayOutputStream byteMassStream = new ByteArrayOutputStream();
-    DataOutputStream dataMassStream = new DataOutputStream(byteMassStream);
-
-    ByteArrayOutputStream byteHeightStream = new ByteArrayOutputStream();
-    DataOutputStream dataHeightStream = new DataOutputStream(byteHeightStream);
-
-    float mass, height;
-    for (int scan : scanNumbers) {
-      dataScanStream.writeInt(scan);
-      dataScanStream.flush();
-      DataPoint mzPeak = feature.getDataPoint(scan);
-      if (mzPeak != null) {
-        mass = (float) mzPeak.getMZ();
-        height = (float) mzPeak.getIntensity();
-      } else {
-        mass = 0f;
-        height = 0f;
+    private void ensureRemaining(int bytes) {
+      if (buffer.remaining() < bytes) {
+        final int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+        final ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
       }
-      dataMassStream.writeFloat(mass);
-      dataMassStream.flush();
-      dataHeightStream.writeFloat(height);
-      dataHeightStream.flush();
     }
 
-    byte[] bytes = Base64.encode(byteScanStream.toByteArray());
-    hd.startElement("", "", PeakListElementName.SCAN_ID.getElementName(), atts);
-    String sbytes = new String(bytes);
-    hd.characters(sbytes.toCharArray(), 0, sbytes.length());
-    hd.endElement("", "", PeakListElementName.SCAN_ID.getElementName());
-
-    bytes = Base64.encode(byteMassStream.toByteArray());
-    hd.startElement("", "", PeakListElementName.MZ.getElementName(), atts);
-    sbytes = new String(bytes);
-    hd.characters(sbytes.toCharArray(), 0, sbytes.length());
-    hd.endElement("", "", PeakListElementName.MZ.getElementName());
-
-    bytes = Base64.encode(byteHeightStream.toByteArray());
-    hd.startElement("", "", PeakListElementName.HEIGHT.getElementName(), atts);
-    sbytes = new String(bytes);
-    hd.characters(sbytes.toCharArray(), 0, sbytes.length());
-    hd.endElement("", "", PeakListElementName.HEIGHT.getElementName());
-
-    hd.endElement("", "", PeakListElementName.MZPEAKS.getElementName());
-  }
-
-  private void fillIsotopePatternElement(IsotopePattern isotopePattern, TransformerHandler hd)
-      throws SAXException, IOException {
-
-    AttributesImpl atts = new AttributesImpl();
+    void putInt(int value) {
+      ensureRemaining(Integer.BYTES);
+      buffer.putInt(value);
+    }
 
-    DataPoint isotopes[] = isotopePattern.getDataPoints();
+    void putFloat(float value) {
+      ensureRemaining(Float.BYTES);
+      buffer.putFloat(value);
+    }
 
-    for (DataPoint isotope : isotopes) {
-      hd.startElement("", "", PeakListElementName.ISOTOPE.getElementName(), atts);
-      String isotopeString = isotope.getMZ() + ":" + isotope.getIntensity();
-      hd.characters(isotopeString.toCharArray(), 0, isotopeString.length());
-      hd.endElement("", "", PeakListElementName.ISOTOPE.getElementName());
+    void putDouble(double value) {
+      ensureRemaining(Double.BYTES);
+      buffer.putDouble(value);
     }
-  }
 
-  private void fillAllMS2FragmentScanNumbers(List<Integer> scanNumbers, TransformerHandler hd)
-      throws SAXException, IOException {
-    AttributesImpl atts = new AttributesImpl();
-    if (scanNumbers != null) {
-      for (int scan : scanNumbers) {
-        hd.startElement("", "", PeakListElementName.ALL_MS2_FRAGMENT_SCANS.getElementName(), atts);
-        hd.characters(String.valueOf(scan).toCharArray(), 0, String.valueOf(scan).length());
-        hd.endElement("", "", PeakListElementName.ALL_MS2_FRAGMENT_SCANS.getElementName());
+    void putString(@Nullable String value) {
+      if (value == null) {
+        putInt(-1);
+        return;
       }
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      putInt(bytes.length);
+      ensureRemaining(bytes.length);
+      buffer.put(bytes);
     }
-  }
 
-  /**
-   * @return the progress of these functions saving the feature list to the zip file.
-   */
-  public double getProgress() {
-    if (numberOfRows == 0)
-      return 0;
-    return (double) finishedRows / numberOfRows;
-  }
-
-  public void cancel() {
-    canceled = true;
+    void putProperties(@Nonnull Map<String, String> properties) {
+      putInt(properties.size());
+      for (Entry<String, String> property : properties.entrySet()) {
+        putString(property.getKey());
+        putString(property.getValue());
+      }
+    }
   }
 
 }
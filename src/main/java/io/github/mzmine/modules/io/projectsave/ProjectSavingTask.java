@@ -19,12 +19,26 @@
 package io.github.mzmine.modules.io.projectsave;
 
 import io.github.mzmine.datamodel.features.FeatureList;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -34,15 +48,19 @@ import org.xml.sax.SAXException;
 
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.gui.preferences.MZminePreferences;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.ProjectLoaderParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.DerivedRawDataFileImpl;
 import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.StreamCopy;
+import io.github.mzmine.util.files.RawZipWriter;
+import io.github.mzmine.util.files.ZipEntryLocation;
 
 public class ProjectSavingTask extends AbstractTask {
 
@@ -66,6 +84,11 @@ public class ProjectSavingTask extends AbstractTask {
   // This hashtable maps raw data files to their ID within the saved project
   private Hashtable<RawDataFile, String> dataFilesIDMap;
 
+  // parallel save: the parts are saved to separate temporary ZIP files and assembled afterwards
+  private int totalParts;
+  private final AtomicInteger finishedParts = new AtomicInteger();
+  private final List<Runnable> partCancelers = Collections.synchronizedList(new ArrayList<>());
+
   public ProjectSavingTask(MZmineProject project, ParameterSet parameters) {
     this.savedProject = (MZmineProjectImpl) project;
     this.saveFile = parameters.getParameter(ProjectLoaderParameters.projectFile).getValue();
@@ -89,6 +112,9 @@ public class ProjectSavingTask extends AbstractTask {
   @Override
   public double getFinishedPercentage() {
 
+    if (totalParts > 0)
+      return (double) finishedParts.get() / totalParts;
+
     if (totalSaveItems == 0)
       return 0.0;
 
@@ -134,6 +160,10 @@ public class ProjectSavingTask extends AbstractTask {
     if (userParameterSaveHandler != null)
       userParameterSaveHandler.cancel();
 
+    synchronized (partCancelers) {
+      partCancelers.forEach(Runnable::run);
+    }
+
   }
 
   /**
@@ -151,52 +181,27 @@ public class ProjectSavingTask extends AbstractTask {
       File tempFile = File.createTempFile(saveFile.getName(), ".tmp", saveFile.getParentFile());
       tempFile.deleteOnExit();
 
-      // Create a ZIP stream writing to the temporary file
-      FileOutputStream tempStream = new FileOutputStream(tempFile);
-      ZipOutputStream zipStream = new ZipOutputStream(tempStream);
-
-      // Stage 1 - save version and configuration
-      currentStage++;
-      saveVersion(zipStream);
-      saveConfiguration(zipStream);
-      if (isCanceled()) {
-        zipStream.close();
-        tempFile.delete();
-        return;
+      final boolean incrementalSave = MZmineCore.getConfiguration().getPreferences()
+          .getParameter(MZminePreferences.incrementalProjectSave).getValue();
+      final RawDataFile rawDataFiles[] = savedProject.getDataFiles();
+      // derived files do not store their data points until they are materialized
+      for (RawDataFile dataFile : rawDataFiles) {
+        if (dataFile instanceof DerivedRawDataFileImpl) {
+          ((DerivedRawDataFileImpl) dataFile).materialize();
+        }
       }
-
-      // Stage 2 - save RawDataFile objects
-      currentStage++;
-      saveRawDataFiles(zipStream);
-      if (isCanceled()) {
-        zipStream.close();
-        tempFile.delete();
-        return;
-      }
-
-      // Stage 3 - save PeakList objects
-      currentStage++;
-      savePeakLists(zipStream);
-      if (isCanceled()) {
-        zipStream.close();
-        tempFile.delete();
-        return;
+      // the state of the data points that are saved
+      final int dataPointsModCounts[] = new int[rawDataFiles.length];
+      for (int i = 0; i < rawDataFiles.length; i++) {
+        dataPointsModCounts[i] = ((RawDataFileImpl) rawDataFiles[i]).getDataPointsModCount();
       }
 
-      // Stage 4 - save user parameters
-      currentStage++;
-      saveUserParameters(zipStream);
-      if (isCanceled()) {
-        zipStream.close();
-        tempFile.delete();
-        return;
+      if (incrementalSave) {
+        saveInParallel(tempFile);
+      } else {
+        saveSequentially(tempFile);
       }
 
-      // Stage 5 - finish and close the temporary ZIP file
-      currentStage++;
-      currentSavedObjectName = null;
-      zipStream.close();
-
       // Final check for cancel
       if (isCanceled()) {
         tempFile.delete();
@@ -204,19 +209,31 @@ public class ProjectSavingTask extends AbstractTask {
       }
 
       // Move the temporary ZIP file to the final location
-      if (saveFile.exists() && !saveFile.delete()) {
-        throw new IOException("Could not delete old file " + saveFile);
-      }
-
-      boolean renameOK = tempFile.renameTo(saveFile);
-      if (!renameOK) {
-        throw new IOException(
-            "Could not move the temporary file " + tempFile + " to the final location " + saveFile);
+      try {
+        Files.move(tempFile.toPath(), saveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        // some file systems do not replace files that are memory-mapped, raw data files may still
+        // read their scans from the old project file. Copying the data points unmaps the file.
+        for (RawDataFile dataFile : savedProject.getDataFiles()) {
+          if (dataFile instanceof RawDataFileImpl
+              && ((RawDataFileImpl) dataFile).isMappedFrom(saveFile)) {
+            ((RawDataFileImpl) dataFile).copyMappedDataPoints();
+          }
+        }
+        Files.move(tempFile.toPath(), saveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
       }
 
       // Update the location of the project
       savedProject.setProjectFile(saveFile);
 
+      // Unchanged data points can be copied from the new project file the next time
+      for (int i = 0; i < rawDataFiles.length; i++) {
+        ((RawDataFileImpl) rawDataFiles[i]).setSavedDataPointsEntry(
+            RawDataFileSaveHandler.getSavedName((RawDataFileImpl) rawDataFiles[i], i + 1)
+                + ".scans",
+            dataPointsModCounts[i]);
+      }
+
       // Update the window title to reflect the new name of the project
       // if (MZmineCore.getDesktop() instanceof MainWindow) {
       // MainWindow mainWindow = (MainWindow) MZmineCore.getDesktop();
@@ -245,6 +262,186 @@ public class ProjectSavingTask extends AbstractTask {
     }
   }
 
+  /**
+   * Saves all entries one after another to the temporary ZIP file
+   */
+  private void saveSequentially(File tempFile)
+      throws IOException, TransformerConfigurationException, SAXException {
+
+    // Create a ZIP stream writing to the temporary file
+    FileOutputStream tempStream = new FileOutputStream(tempFile);
+    ZipOutputStream zipStream = new ZipOutputStream(tempStream);
+
+    // Stage 1 - save version and configuration
+    currentStage++;
+    saveVersion(zipStream);
+    saveConfiguration(zipStream);
+    if (isCanceled()) {
+      zipStream.close();
+      return;
+    }
+
+    // Stage 2 - save RawDataFile objects
+    currentStage++;
+    saveRawDataFiles(zipStream);
+    if (isCanceled()) {
+      zipStream.close();
+      return;
+    }
+
+    // Stage 3 - save PeakList objects
+    currentStage++;
+    savePeakLists(zipStream);
+    if (isCanceled()) {
+      zipStream.close();
+      return;
+    }
+
+    // Stage 4 - save user parameters
+    currentStage++;
+    saveUserParameters(zipStream);
+    if (isCanceled()) {
+      zipStream.close();
+      return;
+    }
+
+    // Stage 5 - finish and close the temporary ZIP file
+    currentStage++;
+    currentSavedObjectName = null;
+    zipStream.close();
+  }
+
+  /**
+   * Saves the version and configuration, every raw data file, every feature list and the user
+   * parameters to separate temporary ZIP files in parallel and assembles them to the temporary
+   * project file. The compressed entries are copied without compressing them again. The data
+   * points of raw data files that did not change since the project was last saved or opened are
+   * copied from the previous project file.
+   */
+  private void saveInParallel(File tempFile) throws Exception {
+
+    final boolean storeScansUncompressed = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.uncompressedProjectScans).getValue();
+    final RawDataFile rawDataFiles[] = savedProject.getDataFiles();
+    final FeatureList featureLists[] = savedProject.getFeatureLists().toArray(new FeatureList[0]);
+
+    // feature lists and user parameters refer to the raw data files by their ID
+    for (int i = 0; i < rawDataFiles.length; i++) {
+      dataFilesIDMap.put(rawDataFiles[i], String.valueOf(i + 1));
+    }
+
+    // data points to copy from the previous project file, the compression has to match
+    final File previousFile = savedProject.getProjectFile();
+    Map<String, ZipEntryLocation> previousEntries = Map.of();
+    if (previousFile != null && previousFile.exists()) {
+      try {
+        previousEntries = ZipEntryLocation.readAll(previousFile);
+      } catch (IOException e) {
+        logger.warning("Cannot copy data from the previous project file " + previousFile + ": "
+            + ExceptionUtils.exceptionToString(e));
+      }
+    }
+    final ZipEntryLocation copiedScans[] = new ZipEntryLocation[rawDataFiles.length];
+    for (int i = 0; i < rawDataFiles.length; i++) {
+      final String entryName = ((RawDataFileImpl) rawDataFiles[i]).getSavedDataPointsEntry();
+      final ZipEntryLocation entry = entryName == null ? null : previousEntries.get(entryName);
+      if (entry != null && (entry.getMethod() == ZipEntry.STORED) == storeScansUncompressed) {
+        logger.info("Copying unchanged data points of " + rawDataFiles[i].getName()
+            + " from the previous project file");
+        copiedScans[i] = entry;
+      }
+    }
+
+    // parts in the order of the project file: version and configuration, raw data files, feature
+    // lists, user parameters
+    final List<ZipPartWriter> parts = new ArrayList<>();
+    parts.add(zipStream -> {
+      saveVersion(zipStream);
+      saveConfiguration(zipStream);
+    });
+    for (int i = 0; i < rawDataFiles.length; i++) {
+      final RawDataFileImpl rawDataFile = (RawDataFileImpl) rawDataFiles[i];
+      final int number = i + 1;
+      final boolean writeScans = copiedScans[i] == null;
+      parts.add(zipStream -> {
+        final RawDataFileSaveHandler handler =
+            new RawDataFileSaveHandler(zipStream, storeScansUncompressed);
+        partCancelers.add(handler::cancel);
+        handler.writeRawDataFile(rawDataFile, number, writeScans);
+      });
+    }
+    for (int i = 0; i < featureLists.length; i++) {
+      final FeatureList featureList = featureLists[i];
+      final String peakListSavedName = "Peak list #" + (i + 1) + " " + featureList.getName();
+      parts.add(zipStream -> {
+        logger.info("Saving feature list: " + featureList.getName());
+        savePeakList(zipStream, featureList, peakListSavedName,
+            handler -> partCancelers.add(handler::cancel));
+      });
+    }
+    parts.add(this::saveUserParameters);
+
+    // one more step to assemble the project file
+    totalParts = parts.size() + 1;
+    final File partFiles[] = new File[parts.size()];
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    try {
+      IntStream.range(0, parts.size()).parallel().forEach(p -> {
+        if (isCanceled() || !errors.isEmpty()) {
+          return;
+        }
+        try {
+          partFiles[p] = File.createTempFile("mzmine", ".part", saveFile.getParentFile());
+          partFiles[p].deleteOnExit();
+          try (FileOutputStream partStream = new FileOutputStream(partFiles[p]);
+              ZipOutputStream zipStream = new ZipOutputStream(partStream)) {
+            parts.get(p).write(zipStream);
+          }
+          finishedParts.incrementAndGet();
+        } catch (Throwable e) {
+          errors.add(e);
+        }
+      });
+      if (!errors.isEmpty()) {
+        throw new IOException("Failed saving a part of the project", errors.get(0));
+      }
+      if (isCanceled()) {
+        return;
+      }
+
+      // copy all compressed entries to the project file in order
+      currentSavedObjectName = null;
+      try (RawZipWriter writer = new RawZipWriter(tempFile);
+          FileInputStream previousStream =
+              previousEntries.isEmpty() ? null : new FileInputStream(previousFile)) {
+        for (int p = 0; p < partFiles.length; p++) {
+          // the data points are stored before the description of a raw data file
+          final int rawIndex = p - 1;
+          if (rawIndex >= 0 && rawIndex < rawDataFiles.length && copiedScans[rawIndex] != null) {
+            final String scansName =
+                RawDataFileSaveHandler.getSavedName((RawDataFileImpl) rawDataFiles[rawIndex],
+                    rawIndex + 1) + ".scans";
+            writer.copyEntry(scansName, copiedScans[rawIndex], previousStream.getChannel());
+          }
+          try (FileInputStream partStream = new FileInputStream(partFiles[p])) {
+            final FileChannel partChannel = partStream.getChannel();
+            for (ZipEntryLocation entry : ZipEntryLocation.readAll(partFiles[p]).values()) {
+              writer.copyEntry(entry.getName(), entry, partChannel);
+            }
+          }
+          partFiles[p].delete();
+        }
+      }
+      finishedParts.incrementAndGet();
+    } finally {
+      for (File partFile : partFiles) {
+        if (partFile != null) {
+          partFile.delete();
+        }
+      }
+    }
+  }
+
   /**
    * Save the version info
    * 
@@ -299,7 +496,9 @@ public class ProjectSavingTask extends AbstractTask {
   private void saveRawDataFiles(ZipOutputStream zipStream)
       throws IOException, TransformerConfigurationException, SAXException {
 
-    rawDataFileSaveHandler = new RawDataFileSaveHandler(zipStream);
+    final boolean storeScansUncompressed = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.uncompressedProjectScans).getValue();
+    rawDataFileSaveHandler = new RawDataFileSaveHandler(zipStream, storeScansUncompressed);
 
     RawDataFile rawDataFiles[] = savedProject.getDataFiles();
 
@@ -335,16 +534,48 @@ public class ProjectSavingTask extends AbstractTask {
 
       String peakListSavedName = "Peak list #" + (i + 1) + " " + peakLists[i].getName();
 
-      zipStream.putNextEntry(new ZipEntry(peakListSavedName + ".xml"));
-
-      peakListSaveHandler = new PeakListSaveHandler(zipStream, dataFilesIDMap);
-
       currentSavedObjectName = peakLists[i].getName();
-      peakListSaveHandler.savePeakList(peakLists[i]);
+      savePeakList(zipStream, peakLists[i], peakListSavedName,
+          handler -> peakListSaveHandler = handler);
       finishedSaveItems++;
     }
   }
 
+  /**
+   * Saves a feature list into its own ZIP entry. The feature list format compresses its blocks
+   * already, so the entry is stored without compression. Stored entries need the size and checksum
+   * before the data, so the feature list is written to a temporary file first.
+   *
+   * @param handlerCreated receives the handler before the feature list is saved, e.g., to cancel it
+   */
+  private void savePeakList(ZipOutputStream zipStream, FeatureList featureList,
+      String peakListSavedName, Consumer<PeakListSaveHandler> handlerCreated) throws IOException {
+    final File featureListFile =
+        File.createTempFile("mzmine", PeakListSaveHandler.FEATURE_LIST_EXTENSION);
+    featureListFile.deleteOnExit();
+    try {
+      final CRC32 crc = new CRC32();
+      try (OutputStream out = new CheckedOutputStream(
+          new BufferedOutputStream(new FileOutputStream(featureListFile), 1 << 16), crc)) {
+        final PeakListSaveHandler handler = new PeakListSaveHandler(out, dataFilesIDMap);
+        handlerCreated.accept(handler);
+        handler.savePeakList(featureList);
+      }
+
+      final ZipEntry entry =
+          new ZipEntry(peakListSavedName + PeakListSaveHandler.FEATURE_LIST_EXTENSION);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(featureListFile.length());
+      entry.setCompressedSize(featureListFile.length());
+      entry.setCrc(crc.getValue());
+      zipStream.putNextEntry(entry);
+      Files.copy(featureListFile.toPath(), zipStream);
+      zipStream.closeEntry();
+    } finally {
+      featureListFile.delete();
+    }
+  }
+
   /**
    * Save the feature lists
    * 
@@ -369,4 +600,13 @@ public class ProjectSavingTask extends AbstractTask {
 
   }
 
+  /**
+   * Writes a part of the project to its own ZIP stream
+   */
+  @FunctionalInterface
+  private interface ZipPartWriter {
+
+    void write(ZipOutputStream zipStream) throws Exception;
+  }
+
 }
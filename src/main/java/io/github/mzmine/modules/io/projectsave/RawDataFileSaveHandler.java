@@ -21,15 +21,18 @@ package io.github.mzmine.modules.io.projectsave;
 import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.project.impl.ChromatogramIndex;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
 import io.github.mzmine.project.impl.StorableFrame;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import javax.xml.transform.OutputKeys;
@@ -57,9 +60,12 @@ class RawDataFileSaveHandler {
   private Map<Integer, Long> consolidatedDataPointsOffsets;
   private Map<Integer, Integer> dataPointsLengths;
   private double progress = 0;
+  // uncompressed scan data can be memory-mapped when the project is opened
+  private final boolean storeScansUncompressed;
 
-  RawDataFileSaveHandler(ZipOutputStream zipOutputStream) {
+  RawDataFileSaveHandler(ZipOutputStream zipOutputStream, boolean storeScansUncompressed) {
     this.zipOutputStream = zipOutputStream;
+    this.storeScansUncompressed = storeScansUncompressed;
   }
 
   /**
@@ -75,6 +81,17 @@ class RawDataFileSaveHandler {
    */
   void writeRawDataFile(RawDataFileImpl rawDataFile, int number)
       throws IOException, TransformerConfigurationException, SAXException {
+    writeRawDataFile(rawDataFile, number, true);
+  }
+
+  /**
+   * Like {@link #writeRawDataFile(RawDataFileImpl, int)}, but optionally without the data points
+   * file, e.g., if it is copied from the previous project file
+   *
+   * @param writeScans false to skip the data points file and only write the description
+   */
+  void writeRawDataFile(RawDataFileImpl rawDataFile, int number, boolean writeScans)
+      throws IOException, TransformerConfigurationException, SAXException {
 
     numOfScans = rawDataFile.getNumOfScans();
 
@@ -83,51 +100,38 @@ class RawDataFileSaveHandler {
     dataPointsLengths = rawDataFile.getDataPointsLengths();
     consolidatedDataPointsOffsets = new TreeMap<Integer, Long>();
 
-    // step 1 - save data file
-    logger.info("Saving data points of: " + rawDataFile.getName());
+    final String rawDataSavedName = getSavedName(rawDataFile, number);
 
-    String rawDataSavedName;
-    if (rawDataFile instanceof IMSRawDataFile) {
-      rawDataSavedName =
-          IMSRawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
+    // step 1 - save data file
+    if (writeScans) {
+      logger.info("Saving data points of: " + rawDataFile.getName());
+      writeScans(rawDataFile, rawDataSavedName);
     } else {
-      rawDataSavedName =
-          RawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
-    }
-
-    zipOutputStream.putNextEntry(new ZipEntry(rawDataSavedName + ".scans"));
-
-    // We save only those data points that still have a reference in the
-    // dataPointsOffset table. Some deleted mass lists may still be present
-    // in the data points file, we don't want to copy those.
-    long newOffset = 0;
-    byte buffer[] = new byte[1 << 20];
-    RandomAccessFile dataPointsFile = rawDataFile.getDataPointsFile();
-    for (Integer storageID : dataPointsOffsets.keySet()) {
-
-      if (canceled) {
-        return;
+      // the copied data points file has the same consolidated offsets
+      long newOffset = 0;
+      for (Integer storageID : dataPointsOffsets.keySet()) {
+        consolidatedDataPointsOffsets.put(storageID, newOffset);
+        newOffset += dataPointsLengths.get(storageID) * 2 * 8;
       }
-
-      final long offset = dataPointsOffsets.get(storageID);
-      dataPointsFile.seek(offset);
-
-      final int bytes = dataPointsLengths.get(storageID) * 4 * 2;
-      consolidatedDataPointsOffsets.put(storageID, newOffset);
-      if (buffer.length < bytes) {
-        buffer = new byte[bytes * 2];
-      }
-      dataPointsFile.read(buffer, 0, bytes);
-      zipOutputStream.write(buffer, 0, bytes);
-      newOffset += bytes;
-      progress = 0.9 * ((double) offset / dataPointsFile.length());
+      progress = 0.8;
     }
 
     if (canceled) {
       return;
     }
 
-    // step 2 - save raw data description
+    // step 2 - save chromatogram index, it is stored before the description so it is available
+    // when the raw data file is loaded
+    final ChromatogramIndex chromatogramIndex = rawDataFile.getChromatogramIndex();
+    if (chromatogramIndex != null) {
+      zipOutputStream.putNextEntry(new ZipEntry(rawDataSavedName + ".chromindex"));
+      // do not close the stream, that would close the zip file
+      DataOutputStream indexStream =
+          new DataOutputStream(new BufferedOutputStream(zipOutputStream));
+      chromatogramIndex.writeTo(indexStream);
+    }
+
+    // step 3 - save raw data description
     logger.info("Saving raw data description of: " + rawDataFile.getName());
 
     zipOutputStream.putNextEntry(new ZipEntry(rawDataSavedName + ".xml"));
@@ -147,6 +151,71 @@ class RawDataFileSaveHandler {
     hd.endDocument();
   }
 
+  /**
+   * The name of the raw data file entries in the project file, without the extension
+   */
+  static String getSavedName(RawDataFileImpl rawDataFile, int number) {
+    if (rawDataFile instanceof IMSRawDataFile) {
+      return IMSRawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
+    }
+    return RawDataFileImpl.SAVE_IDENTIFIER + " #" + number + " " + rawDataFile.getName();
+  }
+
+  private void writeScans(RawDataFileImpl rawDataFile, String rawDataSavedName)
+      throws IOException {
+    // We save only those data points that still have a reference in the
+    // dataPointsOffset table. Some deleted mass lists may still be present
+    // in the data points file, we don't want to copy those.
+    final ZipEntry scansEntry = new ZipEntry(rawDataSavedName + ".scans");
+    byte buffer[] = new byte[1 << 20];
+    if (storeScansUncompressed) {
+      // uncompressed entries need the size and checksum before the data
+      final CRC32 crc = new CRC32();
+      long size = 0;
+      int checkedIDs = 0;
+      for (Integer storageID : dataPointsOffsets.keySet()) {
+        if (canceled) {
+          return;
+        }
+        buffer = ensureCapacity(buffer, dataPointsLengths.get(storageID));
+        final int bytes = rawDataFile.readDataPointsBytes(storageID, buffer);
+        crc.update(buffer, 0, bytes);
+        size += bytes;
+        checkedIDs++;
+        progress = 0.4 * ((double) checkedIDs / dataPointsOffsets.size());
+      }
+      scansEntry.setMethod(ZipEntry.STORED);
+      scansEntry.setSize(size);
+      scansEntry.setCompressedSize(size);
+      scansEntry.setCrc(crc.getValue());
+    }
+    zipOutputStream.putNextEntry(scansEntry);
+
+    final double progressStart = storeScansUncompressed ? 0.4 : 0;
+    final double progressRange = 0.8 - progressStart;
+    long newOffset = 0;
+    int completedIDs = 0;
+    for (Integer storageID : dataPointsOffsets.keySet()) {
+
+      if (canceled) {
+        return;
+      }
+
+      consolidatedDataPointsOffsets.put(storageID, newOffset);
+      buffer = ensureCapacity(buffer, dataPointsLengths.get(storageID));
+      final int bytes = rawDataFile.readDataPointsBytes(storageID, buffer);
+      zipOutputStream.write(buffer, 0, bytes);
+      newOffset += bytes;
+      completedIDs++;
+      progress = progressStart + progressRange * ((double) completedIDs / dataPointsOffsets.size());
+    }
+  }
+
+  private static byte[] ensureCapacity(byte[] buffer, int numOfDataPoints) {
+    final int bytes = numOfDataPoints * 2 * 8;
+    return buffer.length < bytes ? new byte[bytes * 2] : buffer;
+  }
+
   /**
    * Function which creates an XML file with the descripcion of the raw data
    *
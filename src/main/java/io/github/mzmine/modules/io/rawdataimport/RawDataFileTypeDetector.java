@@ -18,11 +18,14 @@
 
 package io.github.mzmine.modules.io.rawdataimport;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
+import javax.annotation.Nonnull;
 
 /**
  * Detector of raw data file format
@@ -65,6 +68,9 @@ public class RawDataFileTypeDetector {
   private static final String TDF_BIN_SUFFIX = ".tdf_bin";
   private static final String BRUKER_FOLDER_SUFFIX = ".d";
 
+  // number of characters that are read to detect the file type
+  private static final int HEADER_LENGTH = 1024;
+
   /**
    * @return Detected file type or null if the file is not of any supported type
    */
@@ -100,63 +106,85 @@ public class RawDataFileTypeDetector {
         // Read the first 1kB of the file into a String
         InputStreamReader reader =
             new InputStreamReader(new FileInputStream(fileName), StandardCharsets.ISO_8859_1);
-        char buffer[] = new char[1024];
+        char buffer[] = new char[HEADER_LENGTH];
         reader.read(buffer);
         reader.close();
         String fileHeader = new String(buffer);
 
-        if (fileName.getName().toLowerCase().endsWith(".csv")) {
-          if (fileHeader.contains(":") && fileHeader.contains("\\")
-              && !fileHeader.contains("file name")) {
-            logger.fine("ICP raw file detected");
-            return RawDataFileType.ICPMSMS_CSV;
-          }
-          logger.fine("Agilent raw detected");
-          return RawDataFileType.AGILENT_CSV;
-        }
+        return detectDataFileType(fileName.getName(), fileHeader);
 
-        if (fileHeader.startsWith(THERMO_HEADER)) {
-          return RawDataFileType.THERMO_RAW;
-        }
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
 
-        if (fileHeader.startsWith(GZIP_HEADER)) {
-          return RawDataFileType.GZIP;
-        }
+    return null;
 
-        if (fileHeader.startsWith(ZIP_HEADER)) {
-          return RawDataFileType.ZIP;
-        }
+  }
 
-        /*
-         * Remove specials (Unicode block) from header if any
-         * https://en.wikipedia.org/wiki/Specials_(Unicode_block)
-         */
-        fileHeader = fileHeader.replaceAll("[^\\x00-\\x7F]", "");
+  /**
+   * Detects the type of a data file from the beginning of a stream, e.g., of a decompressed file.
+   * The stream is reset to its beginning afterwards.
+   *
+   * @param fileName name of the file, only used to detect CSV files
+   * @return Detected file type or null if the file is not of any supported type
+   */
+  public static RawDataFileType detectDataFileType(@Nonnull String fileName,
+      @Nonnull BufferedInputStream inputStream) throws IOException {
+    inputStream.mark(HEADER_LENGTH);
+    byte header[] = inputStream.readNBytes(HEADER_LENGTH);
+    inputStream.reset();
+    return detectDataFileType(fileName, new String(header, StandardCharsets.ISO_8859_1));
+  }
 
-        if (fileHeader.startsWith(CDF_HEADER) || fileHeader.startsWith(HDF_HEADER)) {
+  private static RawDataFileType detectDataFileType(String fileName, String fileHeader) {
 
-          return RawDataFileType.NETCDF;
-        }
+    if (fileName.toLowerCase().endsWith(".csv")) {
+      if (fileHeader.contains(":") && fileHeader.contains("\\")
+          && !fileHeader.contains("file name")) {
+        logger.fine("ICP raw file detected");
+        return RawDataFileType.ICPMSMS_CSV;
+      }
+      logger.fine("Agilent raw detected");
+      return RawDataFileType.AGILENT_CSV;
+    }
 
-        if (fileHeader.contains(MZML_HEADER)) {
-          return RawDataFileType.MZML;
-        }
+    if (fileHeader.startsWith(THERMO_HEADER)) {
+      return RawDataFileType.THERMO_RAW;
+    }
 
-        if (fileHeader.contains(MZDATA_HEADER)) {
-          return RawDataFileType.MZDATA;
-        }
+    if (fileHeader.startsWith(GZIP_HEADER)) {
+      return RawDataFileType.GZIP;
+    }
 
-        if (fileHeader.contains(MZXML_HEADER)) {
-          return RawDataFileType.MZXML;
-        }
+    if (fileHeader.startsWith(ZIP_HEADER)) {
+      return RawDataFileType.ZIP;
+    }
 
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
+    /*
+     * Remove specials (Unicode block) from header if any
+     * https://en.wikipedia.org/wiki/Specials_(Unicode_block)
+     */
+    fileHeader = fileHeader.replaceAll("[^\\x00-\\x7F]", "");
+
+    if (fileHeader.startsWith(CDF_HEADER) || fileHeader.startsWith(HDF_HEADER)) {
+
+      return RawDataFileType.NETCDF;
     }
 
-    return null;
+    if (fileHeader.contains(MZML_HEADER)) {
+      return RawDataFileType.MZML;
+    }
 
+    if (fileHeader.contains(MZDATA_HEADER)) {
+      return RawDataFileType.MZDATA;
+    }
+
+    if (fileHeader.contains(MZXML_HEADER)) {
+      return RawDataFileType.MZXML;
+    }
+
+    return null;
   }
 
 }
@@ -21,7 +21,9 @@ package io.github.mzmine.modules.io.rawdataimport;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.tdfimport.TDFReaderTask;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,6 +33,8 @@ import javax.annotation.Nonnull;
 import com.google.common.base.Strings;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFileWriter;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.gui.preferences.NumOfThreadsParameter;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModuleCategory;
 import io.github.mzmine.modules.MZmineProcessingModule;
@@ -41,6 +45,7 @@ import io.github.mzmine.modules.io.rawdataimport.fileformats.MzMLReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.MzXMLReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.NativeFileReadTask;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.NetCDFReadTask;
+import io.github.mzmine.modules.io.rawdataimport.RawDataImportTask.ImportJob;
 import io.github.mzmine.modules.io.rawdataimport.fileformats.ZipReadTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
@@ -156,15 +161,18 @@ public class RawDataImportModule implements MZmineProcessingModule {
       }
     }
 
+    ExitCode exitCode = ExitCode.OK;
+    final List<ImportJob> jobs = new ArrayList<>();
     for (int i = 0; i < fileNames.length; i++) {
       if (fileNames[i] == null) {
-        return ExitCode.OK;
+        break;
       }
 
       if ((!fileNames[i].exists()) || (!fileNames[i].canRead())) {
         MZmineCore.getDesktop().displayErrorMessage("Cannot read file " + fileNames[i]);
         logger.warning("Cannot read file " + fileNames[i]);
-        return ExitCode.ERROR;
+        exitCode = ExitCode.ERROR;
+        break;
       }
 
       // Set the new name by removing the common prefix
@@ -189,7 +197,8 @@ public class RawDataImportModule implements MZmineProcessingModule {
       } catch (IOException e) {
         MZmineCore.getDesktop().displayErrorMessage("Could not create a new temporary file " + e);
         logger.log(Level.SEVERE, "Could not create a new temporary file ", e);
-        return ExitCode.ERROR;
+        exitCode = ExitCode.ERROR;
+        break;
       }
 
       if (fileType == null) {
@@ -202,14 +211,30 @@ public class RawDataImportModule implements MZmineProcessingModule {
 
       if (newTask == null) {
         logger.warning("File type " + fileType + " of file " + fileNames[i] + " is not supported.");
-        return ExitCode.ERROR;
+        exitCode = ExitCode.ERROR;
+        break;
       }
 
-      tasks.add(newTask);
+      jobs.add(new ImportJob(fileNames[i], fileType, newMZmineFile, newTask));
+
+    }
 
+    // the files before an error are still imported
+    if (jobs.size() == 1) {
+      tasks.add(jobs.get(0).getTask());
+    } else if (!jobs.isEmpty()) {
+      // one task limits the parallel imports per storage device and processor
+      final MZminePreferences preferences = MZmineCore.getConfiguration().getPreferences();
+      final NumOfThreadsParameter threads = preferences.getParameter(MZminePreferences.numOfThreads);
+      final int maxThreads = threads.isAutomatic() || threads.getValue() == null
+          ? Runtime.getRuntime().availableProcessors() : threads.getValue();
+      tasks.add(new RawDataImportTask(jobs,
+          preferences.getParameter(MZminePreferences.importReadsPerDevice).getValue(),
+          preferences.getParameter(MZminePreferences.importConvertedFiles).getValue(),
+          maxThreads));
     }
 
-    return ExitCode.OK;
+    return exitCode;
   }
 
   @Override
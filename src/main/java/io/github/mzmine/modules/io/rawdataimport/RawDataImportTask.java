@@ -0,0 +1,322 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.rawdataimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.RawDataFileWriter;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Runs the opening tasks of several raw data files. Files that are mainly read (mzML, mzXML,
+ * netCDF, ...) are limited per storage device, so parallel reads do not slow down a disk or
+ * network share. Files that are mainly converted (vendor formats, Bruker TDF and compressed files)
+ * are limited by the number of processors. All imports together are limited by the number of
+ * threads of the preferences. The largest files are started first, so a large file does not remain
+ * as the last running import. Every file is added to the project as soon as it is imported.
+ */
+class RawDataImportTask extends AbstractTask {
+
+  private static final Logger logger = Logger.getLogger(RawDataImportTask.class.getName());
+
+  private static final double MB = 1024 * 1024;
+
+  /**
+   * The opening task of one file
+   */
+  static class ImportJob {
+
+    private final File file;
+    private final RawDataFileType fileType;
+    private final RawDataFileWriter writer;
+    private final Task task;
+    private long size;
+    private Object device;
+
+    ImportJob(@Nonnull File file, @Nonnull RawDataFileType fileType,
+        @Nonnull RawDataFileWriter writer, @Nonnull Task task) {
+      this.file = file;
+      this.fileType = fileType;
+      this.writer = writer;
+      this.task = task;
+    }
+
+    Task getTask() {
+      return task;
+    }
+
+    private boolean isCpuBound() {
+      switch (fileType) {
+        case THERMO_RAW:
+        case WATERS_RAW:
+        case BRUKER_TDF:
+        case ZIP:
+        case GZIP:
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
+
+  private final List<ImportJob> pending;
+  private final List<ImportJob> running = new ArrayList<>();
+  private final int readsPerDevice, cpuBoundImports, maxThreads;
+  private final Map<Object, Integer> readsByDevice = new HashMap<>();
+  private int cpuBoundRunning;
+
+  private final int totalFiles;
+  private long totalBytes, finishedBytes;
+  private int finishedFiles, finishedScans;
+  private long startTime;
+  private final List<String> errors = new ArrayList<>();
+
+  /**
+   * @param jobs            the opening tasks of all files
+   * @param readsPerDevice  maximum number of files that are read at once from one storage device
+   * @param cpuBoundImports maximum number of files that are converted at once
+   * @param maxThreads      maximum number of files that are imported at once
+   */
+  RawDataImportTask(@Nonnull List<ImportJob> jobs, int readsPerDevice, int cpuBoundImports,
+      int maxThreads) {
+    this.pending = new LinkedList<>(jobs);
+    this.readsPerDevice = Math.max(1, readsPerDevice);
+    this.cpuBoundImports = Math.max(1, cpuBoundImports);
+    this.maxThreads = Math.max(1, maxThreads);
+    this.totalFiles = jobs.size();
+  }
+
+  @Override
+  public void run() {
+    setStatus(TaskStatus.PROCESSING);
+    logger.info("Started importing " + totalFiles + " raw data files");
+    startTime = System.nanoTime();
+
+    for (ImportJob job : pending) {
+      job.size = getSize(job.file);
+      job.device = getDevice(job.file);
+    }
+    synchronized (this) {
+      for (ImportJob job : pending) {
+        totalBytes += job.size;
+      }
+      // largest files first
+      pending.sort(Comparator.comparingLong((ImportJob job) -> job.size).reversed());
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
+    try {
+      synchronized (this) {
+        while (!pending.isEmpty() || !running.isEmpty()) {
+          if (isCanceled()) {
+            for (ImportJob job : running) {
+              job.task.cancel();
+            }
+            // delete the temporary files of the files that were not started
+            for (ImportJob job : pending) {
+              discard(job);
+            }
+            pending.clear();
+          }
+          startJobs(executor);
+          try {
+            // woken up when an import finished
+            wait(1000);
+          } catch (InterruptedException e) {
+            // check the state again
+          }
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    if (isCanceled()) {
+      return;
+    }
+
+    logger.info("Finished importing " + finishedFiles + " raw data files, " + getThroughput());
+
+    if (!errors.isEmpty()) {
+      setErrorMessage(String.join("\n", errors));
+      setStatus(TaskStatus.ERROR);
+      return;
+    }
+    setStatus(TaskStatus.FINISHED);
+  }
+
+  /**
+   * Starts the pending jobs that do not exceed the limits of their device or the processors
+   */
+  private synchronized void startJobs(ExecutorService executor) {
+    final Iterator<ImportJob> it = pending.iterator();
+    while (running.size() < maxThreads && it.hasNext()) {
+      final ImportJob job = it.next();
+      if (job.isCpuBound()) {
+        if (cpuBoundRunning >= cpuBoundImports) {
+          continue;
+        }
+        cpuBoundRunning++;
+      } else {
+        final int reads = readsByDevice.getOrDefault(job.device, 0);
+        if (reads >= readsPerDevice) {
+          continue;
+        }
+        readsByDevice.put(job.device, reads + 1);
+      }
+      it.remove();
+      running.add(job);
+      executor.execute(() -> runJob(job));
+    }
+  }
+
+  private void runJob(ImportJob job) {
+    Throwable exception = null;
+    try {
+      job.task.run();
+    } catch (Throwable e) {
+      logger.log(Level.SEVERE, "Could not import file " + job.file, e);
+      exception = e;
+    }
+    // canceled files are not added to the project
+    if (job.task.getStatus() == TaskStatus.CANCELED) {
+      discard(job);
+    }
+
+    synchronized (this) {
+      running.remove(job);
+      if (job.isCpuBound()) {
+        cpuBoundRunning--;
+      } else {
+        readsByDevice.merge(job.device, -1, Integer::sum);
+      }
+
+      finishedFiles++;
+      finishedBytes += job.size;
+      if (job.task.getStatus() == TaskStatus.FINISHED && job.writer instanceof RawDataFile) {
+        finishedScans += ((RawDataFile) job.writer).getNumOfScans();
+      } else if (exception != null) {
+        errors.add(job.file.getName() + ": " + exception);
+      } else if (job.task.getStatus() == TaskStatus.ERROR) {
+        errors.add(job.file.getName() + ": " + job.task.getErrorMessage());
+      }
+      notifyAll();
+    }
+  }
+
+  /**
+   * Deletes the temporary data of a file that is not imported
+   */
+  private static void discard(ImportJob job) {
+    if (job.writer instanceof RawDataFile) {
+      ((RawDataFile) job.writer).close();
+    }
+  }
+
+  /**
+   * @return the size of the file, or of all files in the folder (Waters and Bruker data)
+   */
+  private static long getSize(File file) {
+    if (!file.isDirectory()) {
+      return file.length();
+    }
+    try (Stream<Path> paths = Files.walk(file.toPath())) {
+      return paths.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+    } catch (IOException | UncheckedIOException e) {
+      logger.finest("Could not determine the size of " + file + ": " + e);
+      return 0;
+    }
+  }
+
+  /**
+   * @return the file store of the file, or its root folder if it cannot be determined
+   */
+  private static Object getDevice(File file) {
+    try {
+      return Files.getFileStore(file.toPath());
+    } catch (IOException e) {
+      logger.finest("Could not determine the storage device of " + file + ": " + e);
+      return file.getAbsoluteFile().toPath().getRoot();
+    }
+  }
+
+  private synchronized String getThroughput() {
+    final double seconds = Math.max((System.nanoTime() - startTime) / 1e9, 1e-3);
+    final NumberFormat format = new DecimalFormat("0.0");
+    return format.format(getProcessedBytes() / MB / seconds) + " MB/s, "
+        + format.format(finishedScans / seconds) + " scans/s";
+  }
+
+  /**
+   * @return the bytes of the finished files and the estimated bytes of the running files
+   */
+  private synchronized double getProcessedBytes() {
+    double bytes = finishedBytes;
+    for (ImportJob job : running) {
+      bytes += job.size * Math.min(1d, Math.max(0d, job.task.getFinishedPercentage()));
+    }
+    return bytes;
+  }
+
+  @Override
+  public synchronized String getTaskDescription() {
+    if (startTime == 0) {
+      return "Importing " + totalFiles + " raw data files";
+    }
+    return "Importing raw data files (" + finishedFiles + "/" + totalFiles + " finished, "
+        + running.size() + " running, " + getThroughput() + ")";
+  }
+
+  @Override
+  public synchronized double getFinishedPercentage() {
+    if (totalBytes == 0) {
+      return totalFiles == 0 ? 0 : (double) finishedFiles / totalFiles;
+    }
+    return getProcessedBytes() / totalBytes;
+  }
+
+  @Override
+  public void cancel() {
+    super.cancel();
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+}
@@ -20,6 +20,7 @@ package io.github.mzmine.modules.io.rawdataimport.fileformats;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Base64;
@@ -35,7 +36,6 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
-import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.RawDataFileWriter;
@@ -44,7 +44,6 @@ import io.github.mzmine.datamodel.impl.SimpleScan;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
-import io.github.mzmine.util.scans.ScanUtils;
 
 /**
  * This class read 1.04 and 1.05 MZDATA files.
@@ -54,6 +53,7 @@ public class MzDataReadTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private File file;
+  private InputStream inputStream;
   private MZmineProject project;
   private RawDataFileWriter newMZmineFile;
   private RawDataFile finalRawDataFile;
@@ -76,10 +76,11 @@ public class MzDataReadTask extends AbstractTask {
 
   /*
    * The information of "m/z" & "int" is content in two arrays because the mzData standard manages
-   * this information in two different tags.
+   * this information in two different tags. The arrays are decoded in parallel when the scan is
+   * complete.
    */
-  private double[] mzDataPoints;
-  private double[] intensityDataPoints;
+  private EncodedArray mzArray;
+  private EncodedArray intensityArray;
 
   /*
    * This variable hold the current scan or fragment, it is send to the stack when another
@@ -99,6 +100,9 @@ public class MzDataReadTask extends AbstractTask {
    */
   private LinkedList<SimpleScan> parentStack;
 
+  // decodes the peaks of the scans in parallel
+  private PipelinedScanDecoder decoder;
+
   public MzDataReadTask(MZmineProject project, File fileToOpen, RawDataFileWriter newMZmineFile) {
     // 256 kilo-chars buffer
     charBuffer = new StringBuilder(1 << 18);
@@ -108,6 +112,17 @@ public class MzDataReadTask extends AbstractTask {
     this.newMZmineFile = newMZmineFile;
   }
 
+  /**
+   * Parses the data from a stream, e.g., of a compressed file that is decompressed in parallel
+   *
+   * @param fileName the name of the file in messages
+   */
+  public MzDataReadTask(MZmineProject project, InputStream inputStream, String fileName,
+      RawDataFileWriter newMZmineFile) {
+    this(project, new File(fileName), newMZmineFile);
+    this.inputStream = inputStream;
+  }
+
   /**
    * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
    */
@@ -128,8 +143,15 @@ public class MzDataReadTask extends AbstractTask {
 
     try {
 
+      decoder = new PipelinedScanDecoder(newMZmineFile);
+
       SAXParser saxParser = factory.newSAXParser();
-      saxParser.parse(file, handler);
+      if (inputStream != null) {
+        saxParser.parse(inputStream, handler);
+      } else {
+        saxParser.parse(file, handler);
+      }
+      decoder.finish();
 
       // Close file
       finalRawDataFile = newMZmineFile.finishWriting();
@@ -137,6 +159,9 @@ public class MzDataReadTask extends AbstractTask {
 
     } catch (Throwable e) {
       e.printStackTrace();
+      if (decoder != null) {
+        decoder.cancel();
+      }
       /* we may already have set the status to CANCELED */
       if (getStatus() == TaskStatus.PROCESSING) {
         setStatus(TaskStatus.ERROR);
@@ -161,6 +186,67 @@ public class MzDataReadTask extends AbstractTask {
     return "Opening file " + file;
   }
 
+  /**
+   * Base64 encoded binary array of m/z or intensity values
+   */
+  private static class EncodedArray {
+
+    private final String base64;
+    private final String endian, precision;
+    private final int length;
+
+    private EncodedArray(String base64, String endian, String precision, int length) {
+      this.base64 = base64;
+      this.endian = endian;
+      this.precision = precision;
+      this.length = length;
+    }
+
+    private double[] decode() {
+      double values[] = new double[length];
+
+      byte[] peakBytes = Base64.getDecoder().decode(base64);
+
+      ByteBuffer currentBytes = ByteBuffer.wrap(peakBytes);
+
+      if (endian.equals("big")) {
+        currentBytes = currentBytes.order(ByteOrder.BIG_ENDIAN);
+      } else {
+        currentBytes = currentBytes.order(ByteOrder.LITTLE_ENDIAN);
+      }
+
+      for (int i = 0; i < values.length; i++) {
+        if (precision == null || precision.equals("32")) {
+          values[i] = (double) currentBytes.getFloat();
+        } else {
+          values[i] = currentBytes.getDouble();
+        }
+      }
+      return values;
+    }
+  }
+
+  private static DataPoint[] decodeDataPoints(EncodedArray mzArray, EncodedArray intensityArray,
+      int peaksCount) throws IOException {
+    if (peaksCount == 0) {
+      return new DataPoint[0];
+    }
+    if (mzArray == null || intensityArray == null) {
+      throw new IOException("Missing m/z or intensity array");
+    }
+    final double mzDataPoints[] = mzArray.decode();
+    final double intensityDataPoints[] = intensityArray.decode();
+
+    DataPoint dataPoints[] = new DataPoint[peaksCount];
+
+    // Copy m/z and intensity data
+    for (int i = 0; i < dataPoints.length; i++) {
+      dataPoints[i] =
+          new SimpleDataPoint((double) mzDataPoints[i], (double) intensityDataPoints[i]);
+    }
+    return dataPoints;
+  }
+
   private class MzDataHandler extends DefaultHandler {
 
     public void startElement(String namespaceURI, String lName, // local
@@ -301,20 +387,15 @@ public class MzDataReadTask extends AbstractTask {
       // <spectrum>
       if (qName.equalsIgnoreCase("spectrum")) {
 
-        DataPoint dataPoints[] = new DataPoint[peaksCount];
         spectrumInstrumentFlag = false;
 
-        // Copy m/z and intensity data
-        for (int i = 0; i < dataPoints.length; i++) {
-          dataPoints[i] =
-              new SimpleDataPoint((double) mzDataPoints[i], (double) intensityDataPoints[i]);
-        }
-
-        // Auto-detect whether this scan is centroided
-        MassSpectrumType spectrumType = ScanUtils.detectSpectrumType(dataPoints);
-
+        // the data points and spectrum type are set when the arrays are decoded
         buildingScan = new SimpleScan(null, scanNumber, msLevel, retentionTime, precursorMz,
-            precursorCharge, null, dataPoints, spectrumType, polarity, "", null);
+            precursorCharge, null, new DataPoint[0], null, polarity, "", null);
+        final EncodedArray mzValues = mzArray;
+        final EncodedArray intensityValues = intensityArray;
+        final int numPeaks = peaksCount;
+        decoder.decode(buildingScan, () -> decodeDataPoints(mzValues, intensityValues, numPeaks));
 
         /*
          * Update of fragmentScanNumbers of each Scan in the parentStack
@@ -333,7 +414,7 @@ public class MzDataReadTask extends AbstractTask {
         if (parentStack.size() > 10) {
           SimpleScan scan = parentStack.removeLast();
           try {
-            newMZmineFile.addScan(scan);
+            decoder.addScan(scan);
           } catch (IOException e) {
             setStatus(TaskStatus.ERROR);
             setErrorMessage("IO error: " + e);
@@ -349,52 +430,15 @@ public class MzDataReadTask extends AbstractTask {
 
       // <mzArrayBinary>
       if (qName.equalsIgnoreCase("mzArrayBinary")) {
-
         mzArrayBinaryFlag = false;
-        mzDataPoints = new double[peaksCount];
-
-        byte[] peakBytes = Base64.getDecoder().decode(charBuffer.toString().trim());
-
-        ByteBuffer currentMzBytes = ByteBuffer.wrap(peakBytes);
-
-        if (endian.equals("big")) {
-          currentMzBytes = currentMzBytes.order(ByteOrder.BIG_ENDIAN);
-        } else {
-          currentMzBytes = currentMzBytes.order(ByteOrder.LITTLE_ENDIAN);
-        }
-
-        for (int i = 0; i < mzDataPoints.length; i++) {
-          if (precision == null || precision.equals("32")) {
-            mzDataPoints[i] = (double) currentMzBytes.getFloat();
-          } else {
-            mzDataPoints[i] = currentMzBytes.getDouble();
-          }
-        }
+        mzArray = new EncodedArray(charBuffer.toString().trim(), endian, precision, peaksCount);
       }
 
       // <intenArrayBinary>
       if (qName.equalsIgnoreCase("intenArrayBinary")) {
-
         intenArrayBinaryFlag = false;
-        intensityDataPoints = new double[peaksCount];
-
-        byte[] peakBytes = Base64.getDecoder().decode(charBuffer.toString().trim());
-
-        ByteBuffer currentIntensityBytes = ByteBuffer.wrap(peakBytes);
-
-        if (endian.equals("big")) {
-          currentIntensityBytes = currentIntensityBytes.order(ByteOrder.BIG_ENDIAN);
-        } else {
-          currentIntensityBytes = currentIntensityBytes.order(ByteOrder.LITTLE_ENDIAN);
-        }
-
-        for (int i = 0; i < intensityDataPoints.length; i++) {
-          if (precision == null || precision.equals("32")) {
-            intensityDataPoints[i] = (double) currentIntensityBytes.getFloat();
-          } else {
-            intensityDataPoints[i] = currentIntensityBytes.getDouble();
-          }
-        }
+        intensityArray =
+            new EncodedArray(charBuffer.toString().trim(), endian, precision, peaksCount);
       }
     }
 
@@ -411,7 +455,7 @@ public class MzDataReadTask extends AbstractTask {
       while (!parentStack.isEmpty()) {
         SimpleScan scan = parentStack.removeLast();
         try {
-          newMZmineFile.addScan(scan);
+          decoder.addScan(scan);
         } catch (IOException e) {
           setStatus(TaskStatus.ERROR);
           setErrorMessage("IO error: " + e);
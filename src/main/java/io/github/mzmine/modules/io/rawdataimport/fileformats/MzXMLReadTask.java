@@ -22,6 +22,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Base64;
 import java.util.Date;
 import java.util.LinkedList;
@@ -42,7 +43,6 @@ import com.google.common.base.Strings;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MZmineProject;
-import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.RawDataFileWriter;
@@ -52,7 +52,6 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.CompressionUtils;
 import io.github.mzmine.util.ExceptionUtils;
-import io.github.mzmine.util.scans.ScanUtils;
 
 /**
  *
@@ -62,6 +61,7 @@ public class MzXMLReadTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private File file;
+  private InputStream inputStream;
   private MZmineProject project;
   private RawDataFileWriter newMZmineFile;
   private RawDataFile finalRawDataFile;
@@ -94,6 +94,9 @@ public class MzXMLReadTask extends AbstractTask {
    */
   private SimpleScan buildingScan;
 
+  // decodes the peaks of the scans in parallel
+  private PipelinedScanDecoder decoder;
+
   public MzXMLReadTask(MZmineProject project, File fileToOpen, RawDataFileWriter newMZmineFile) {
     // 256 kilo-chars buffer
     charBuffer = new StringBuilder(1 << 18);
@@ -103,6 +106,17 @@ public class MzXMLReadTask extends AbstractTask {
     this.newMZmineFile = newMZmineFile;
   }
 
+  /**
+   * Parses the data from a stream, e.g., of a compressed file that is decompressed in parallel
+   *
+   * @param fileName the name of the file in messages
+   */
+  public MzXMLReadTask(MZmineProject project, InputStream inputStream, String fileName,
+      RawDataFileWriter newMZmineFile) {
+    this(project, new File(fileName), newMZmineFile);
+    this.inputStream = inputStream;
+  }
+
   /**
    * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
    */
@@ -125,8 +139,15 @@ public class MzXMLReadTask extends AbstractTask {
 
       dataTypeFactory = DatatypeFactory.newInstance();
 
+      decoder = new PipelinedScanDecoder(newMZmineFile);
+
       SAXParser saxParser = factory.newSAXParser();
-      saxParser.parse(file, handler);
+      if (inputStream != null) {
+        saxParser.parse(inputStream, handler);
+      } else {
+        saxParser.parse(file, handler);
+      }
+      decoder.finish();
 
       // Close file
       finalRawDataFile = newMZmineFile.finishWriting();
@@ -134,6 +155,9 @@ public class MzXMLReadTask extends AbstractTask {
 
     } catch (Throwable e) {
       e.printStackTrace();
+      if (decoder != null) {
+        decoder.cancel();
+      }
       /* we may already have set the status to CANCELED */
       if (getStatus() == TaskStatus.PROCESSING) {
         setStatus(TaskStatus.ERROR);
@@ -161,6 +185,49 @@ public class MzXMLReadTask extends AbstractTask {
     return "Opening file " + file;
   }
 
+  private static DataPoint[] decodePeaks(String encodedPeaks, boolean compressed,
+      String precision, int peaksCount) throws IOException {
+
+    byte[] peakBytes = Base64.getDecoder().decode(encodedPeaks);
+
+    if (compressed) {
+      try {
+        peakBytes = CompressionUtils.decompress(peakBytes);
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupt compressed peak: " + e.toString(), e);
+      }
+    }
+
+    // make a data input stream
+    DataInputStream peakStream = new DataInputStream(new ByteArrayInputStream(peakBytes));
+
+    DataPoint dataPoints[] = new DataPoint[peaksCount];
+
+    try {
+      for (int i = 0; i < dataPoints.length; i++) {
+
+        // Always respect this order pairOrder="m/z-int"
+        double massOverCharge;
+        double intensity;
+        if ("64".equals(precision)) {
+          massOverCharge = peakStream.readDouble();
+          intensity = peakStream.readDouble();
+        } else {
+          massOverCharge = (double) peakStream.readFloat();
+          intensity = (double) peakStream.readFloat();
+        }
+
+        // Copy m/z and intensity data
+        dataPoints[i] = new SimpleDataPoint(massOverCharge, intensity);
+
+      }
+    } catch (IOException eof) {
+      throw new IOException("Corrupt mzXML file", eof);
+    }
+
+    return dataPoints;
+  }
+
   private class MzXMLHandler extends DefaultHandler {
 
     public void startElement(String namespaceURI, String lName, // local
@@ -307,7 +374,7 @@ public class MzXMLReadTask extends AbstractTask {
           while (!parentStack.isEmpty()) {
             SimpleScan currentScan = parentStack.removeLast();
             try {
-              newMZmineFile.addScan(currentScan);
+              decoder.addScan(currentScan);
             } catch (IOException e) {
               e.printStackTrace();
               setStatus(TaskStatus.ERROR);
@@ -341,57 +408,13 @@ public class MzXMLReadTask extends AbstractTask {
 
       // <peaks>
       if (qName.equalsIgnoreCase("peaks")) {
-
-        byte[] peakBytes = Base64.getDecoder().decode(charBuffer.toString());
-
-        if (compressFlag) {
-          try {
-            peakBytes = CompressionUtils.decompress(peakBytes);
-          } catch (DataFormatException e) {
-            setStatus(TaskStatus.ERROR);
-            setErrorMessage("Corrupt compressed peak: " + e.toString());
-            throw new SAXException("Parsing Cancelled");
-          }
-        }
-
-        // make a data input stream
-        DataInputStream peakStream = new DataInputStream(new ByteArrayInputStream(peakBytes));
-
-        DataPoint dataPoints[] = new DataPoint[peaksCount];
-
-        try {
-          for (int i = 0; i < dataPoints.length; i++) {
-
-            // Always respect this order pairOrder="m/z-int"
-            double massOverCharge;
-            double intensity;
-            if ("64".equals(precision)) {
-              massOverCharge = peakStream.readDouble();
-              intensity = peakStream.readDouble();
-            } else {
-              massOverCharge = (double) peakStream.readFloat();
-              intensity = (double) peakStream.readFloat();
-            }
-
-            // Copy m/z and intensity data
-            dataPoints[i] = new SimpleDataPoint(massOverCharge, intensity);
-
-          }
-        } catch (IOException eof) {
-          setStatus(TaskStatus.ERROR);
-          setErrorMessage("Corrupt mzXML file");
-          throw new SAXException("Parsing Cancelled");
-        }
-
-        // Auto-detect whether this scan is centroided
-        MassSpectrumType spectrumType = ScanUtils.detectSpectrumType(dataPoints);
-
-        // Set the centroided tag
-        buildingScan.setSpectrumType(spectrumType);
-
-        // Set the final data points to the scan
-        buildingScan.setDataPoints(dataPoints);
-
+        // decoded in parallel, the scan is written when the peaks are ready
+        final String encodedPeaks = charBuffer.toString();
+        final boolean compressed = compressFlag;
+        final String peaksPrecision = precision;
+        final int numPeaks = peaksCount;
+        decoder.decode(buildingScan,
+            () -> decodePeaks(encodedPeaks, compressed, peaksPrecision, numPeaks));
         return;
       }
     }
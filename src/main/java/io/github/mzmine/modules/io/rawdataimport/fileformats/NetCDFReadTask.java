@@ -21,6 +21,8 @@ package io.github.mzmine.modules.io.rawdataimport.fileformats;
 import java.io.File;
 import java.io.IOException;
 import java.util.Hashtable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,7 +40,6 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.scans.ScanUtils;
 import ucar.ma2.Array;
-import ucar.ma2.Index;
 import ucar.ma2.IndexIterator;
 import ucar.nc2.Attribute;
 import ucar.nc2.NetcdfFile;
@@ -70,6 +71,30 @@ public class NetCDFReadTask extends AbstractTask {
   private double massValueScaleFactor = 1;
   private double intensityValueScaleFactor = 1;
 
+  // maximum number of values of consecutive scans that are read at once
+  private static final int CHUNK_VALUES = 1 << 20;
+
+  // the current chunk and the following chunk, which is read while the scans are stored
+  private ScanChunk chunk;
+  private CompletableFuture<ScanChunk> nextChunk;
+
+  /**
+   * Mass and intensity values of consecutive scans
+   */
+  private static class ScanChunk {
+
+    private final int lastScan, startPosition;
+    private final double massValues[], intensityValues[];
+
+    private ScanChunk(int lastScan, int startPosition, double[] massValues,
+        double[] intensityValues) {
+      this.lastScan = lastScan;
+      this.startPosition = startPosition;
+      this.massValues = massValues;
+      this.intensityValues = intensityValues;
+    }
+  }
+
   public NetCDFReadTask(MZmineProject project, File fileToOpen, RawDataFileWriter newMZmineFile) {
     this.project = project;
     this.file = fileToOpen;
@@ -103,6 +128,7 @@ public class NetCDFReadTask extends AbstractTask {
 
         // Check if cancel is requested
         if (isCanceled()) {
+          this.finishReading();
           return;
         }
         // buildingFile.addScan(scan);
@@ -358,9 +384,92 @@ public class NetCDFReadTask extends AbstractTask {
    * @see io.github.mzmine.io.RawDataFileReader#finishReading()
    */
   public void finishReading() throws IOException {
+    // do not close the file while the next chunk is read
+    if (nextChunk != null) {
+      try {
+        nextChunk.join();
+      } catch (CompletionException e) {
+        // reading was not finished
+      }
+      nextChunk = null;
+    }
     inputFile.close();
   }
 
+  /**
+   * Reads the values of consecutive scans, starting with the given scan, with one read per variable
+   *
+   * @return the chunk of values, which ends before lastScan
+   */
+  private ScanChunk readChunk(int firstScan) throws IOException {
+    final int startPosition = scansIndex.get(firstScan)[0];
+    int endPosition = startPosition + scansIndex.get(firstScan)[1];
+    int lastScan = firstScan + 1;
+    for (; lastScan < totalScans; lastScan++) {
+      Integer[] startAndLength = scansIndex.get(lastScan);
+      int scanEnd = startAndLength[0] + startAndLength[1];
+      if (startAndLength[0] < startPosition || scanEnd - startPosition > CHUNK_VALUES) {
+        break;
+      }
+      endPosition = Math.max(endPosition, scanEnd);
+    }
+
+    if (endPosition == startPosition) {
+      return new ScanChunk(lastScan, startPosition, new double[0], new double[0]);
+    }
+
+    int[] origin = {startPosition};
+    int[] shape = {endPosition - startPosition};
+    try {
+      // bulk conversion to primitive arrays
+      double massValues[] =
+          (double[]) massValueVariable.read(origin, shape).get1DJavaArray(double.class);
+      double intensityValues[] =
+          (double[]) intensityValueVariable.read(origin, shape).get1DJavaArray(double.class);
+      return new ScanChunk(lastScan, startPosition, massValues, intensityValues);
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "Could not read from variables mass_values and/or intensity_values.",
+          e);
+      throw (new IOException("Could not read from variables mass_values and/or intensity_values."));
+    }
+  }
+
+  /**
+   * Returns the chunk of the current scan and starts reading the following chunk
+   */
+  private ScanChunk getChunk() throws IOException {
+    if (chunk == null || scanNum >= chunk.lastScan) {
+      // empty scans do not request a chunk, so the following chunk may end before the current scan
+      while (chunk == null || scanNum >= chunk.lastScan) {
+        if (nextChunk != null) {
+          try {
+            chunk = nextChunk.join();
+          } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+              throw (IOException) e.getCause();
+            }
+            throw e;
+          } finally {
+            nextChunk = null;
+          }
+        } else {
+          chunk = readChunk(scanNum);
+        }
+      }
+
+      // read the following scans while the scans of this chunk are stored
+      final int nextScan = chunk.lastScan;
+      nextChunk = nextScan >= totalScans ? null : CompletableFuture.supplyAsync(() -> {
+        try {
+          return readChunk(nextScan);
+        } catch (IOException e) {
+          throw new CompletionException(e);
+        }
+      });
+    }
+    return chunk;
+  }
+
   /**
    * Reads one scan from the file. Requires that general information has already been read.
    */
@@ -400,33 +509,16 @@ public class NetCDFReadTask extends AbstractTask {
     // Is there any way how to extract scan definition from netcdf?
     String scanDefinition = "";
 
-    // Read mass and intensity values
-    Array massValueArray;
-    Array intensityValueArray;
-    try {
-      massValueArray = massValueVariable.read(scanStartPosition, scanLength);
-      intensityValueArray = intensityValueVariable.read(scanStartPosition, scanLength);
-    } catch (Exception e) {
-      logger.log(Level.SEVERE, "Could not read from variables mass_values and/or intensity_values.",
-          e);
-      throw (new IOException("Could not read from variables mass_values and/or intensity_values."));
-    }
-
-    Index massValuesIndex = massValueArray.getIndex();
-    Index intensityValuesIndex = intensityValueArray.getIndex();
-
-    int arrayLength = massValueArray.getShape()[0];
+    // Slice mass and intensity values from the chunk
+    ScanChunk values = getChunk();
+    int offset = scanStartPosition[0] - values.startPosition;
 
-    DataPoint dataPoints[] = new DataPoint[arrayLength];
+    DataPoint dataPoints[] = new DataPoint[scanLength[0]];
 
-    for (int j = 0; j < arrayLength; j++) {
-      Index massIndex0 = massValuesIndex.set0(j);
-      Index intensityIndex0 = intensityValuesIndex.set0(j);
-
-      double mz = massValueArray.getDouble(massIndex0) * massValueScaleFactor;
-      double intensity = intensityValueArray.getDouble(intensityIndex0) * intensityValueScaleFactor;
+    for (int j = 0; j < dataPoints.length; j++) {
+      double mz = values.massValues[offset + j] * massValueScaleFactor;
+      double intensity = values.intensityValues[offset + j] * intensityValueScaleFactor;
       dataPoints[j] = new SimpleDataPoint(mz, intensity);
-
     }
 
     scanNum++;
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.io.rawdataimport.fileformats;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.annotation.Nonnull;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.RawDataFileWriter;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.util.scans.ScanUtils;
+
+/**
+ * Decodes the data points of scans in parallel while an XML file is parsed. The parser only keeps
+ * the encoded peaks (base64, compression, byte order) of each scan, the data points are decoded by
+ * parallel tasks and the scans are added to the raw data file in the order of the parser. Only a
+ * limited number of scans is decoded ahead of the writer to limit the memory.
+ *
+ * All methods are called by the parser thread.
+ */
+class PipelinedScanDecoder {
+
+  /**
+   * Decodes the peaks of one scan, called by several threads at once
+   */
+  @FunctionalInterface
+  interface PeakDecoder {
+
+    @Nonnull
+    DataPoint[] decode() throws IOException;
+  }
+
+  private static class DecodedPeaks {
+
+    private final DataPoint[] dataPoints;
+    private final MassSpectrumType spectrumType;
+
+    private DecodedPeaks(DataPoint[] dataPoints) {
+      this.dataPoints = dataPoints;
+      // Auto-detect whether this scan is centroided
+      this.spectrumType = ScanUtils.detectSpectrumType(dataPoints);
+    }
+  }
+
+  private static class PendingScan {
+
+    private final SimpleScan scan;
+    private final CompletableFuture<DecodedPeaks> peaks;
+
+    private PendingScan(SimpleScan scan, CompletableFuture<DecodedPeaks> peaks) {
+      this.scan = scan;
+      this.peaks = peaks;
+    }
+  }
+
+  private final RawDataFileWriter writer;
+  private final int maxPending;
+
+  // scans with peaks that were not added yet
+  private final Map<SimpleScan, CompletableFuture<DecodedPeaks>> decoding =
+      new IdentityHashMap<>();
+  // added scans in the order of the raw data file
+  private final ArrayDeque<PendingScan> pending = new ArrayDeque<>();
+
+  PipelinedScanDecoder(@Nonnull RawDataFileWriter writer) {
+    this.writer = writer;
+    // a few scans per thread while the parser continues
+    this.maxPending = Math.max(4, 4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Starts decoding the peaks of a scan, the data points and spectrum type are set when the scan is
+   * written
+   */
+  void decode(@Nonnull SimpleScan scan, @Nonnull PeakDecoder decoder) {
+    decoding.put(scan, CompletableFuture.supplyAsync(() -> {
+      try {
+        return new DecodedPeaks(decoder.decode());
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }));
+  }
+
+  /**
+   * Adds the scan to the raw data file as soon as its peaks are decoded and all previous scans
+   * were added
+   */
+  void addScan(@Nonnull SimpleScan scan) throws IOException {
+    pending.add(new PendingScan(scan, decoding.remove(scan)));
+    while (!pending.isEmpty()
+        && (pending.size() > maxPending || pending.peek().peaks == null
+            || pending.peek().peaks.isDone())) {
+      writeNext();
+    }
+  }
+
+  /**
+   * Waits for all added scans and writes them to the raw data file
+   */
+  void finish() throws IOException {
+    while (!pending.isEmpty()) {
+      writeNext();
+    }
+  }
+
+  /**
+   * Stops decoding after an error or when the import was canceled
+   */
+  void cancel() {
+    for (PendingScan p : pending) {
+      if (p.peaks != null) {
+        p.peaks.cancel(false);
+      }
+    }
+    for (CompletableFuture<DecodedPeaks> peaks : decoding.values()) {
+      peaks.cancel(false);
+    }
+    pending.clear();
+    decoding.clear();
+  }
+
+  private void writeNext() throws IOException {
+    final PendingScan next = pending.poll();
+    if (next.peaks != null) {
+      final DecodedPeaks peaks;
+      try {
+        peaks = next.peaks.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw e;
+      }
+      next.scan.setDataPoints(peaks.dataPoints);
+      next.scan.setSpectrumType(peaks.spectrumType);
+    }
+    writer.addScan(next.scan);
+  }
+}
@@ -18,9 +18,11 @@
 
 package io.github.mzmine.modules.io.rawdataimport.fileformats;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,6 +47,7 @@ import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.StreamCopy;
+import io.github.mzmine.util.io.BackgroundInputStream;
 
 public class ZipReadTask extends AbstractTask {
 
@@ -54,7 +57,12 @@ public class ZipReadTask extends AbstractTask {
   private final @Nonnull MZmineProject project;
   private final RawDataFileType fileType;
 
+  // decompressed blocks that are read ahead of the parser
+  private static final int BLOCK_SIZE = 1 << 20;
+  private static final int NUM_BLOCKS = 8;
+
   private File tmpDir, tmpFile;
+  private BufferedInputStream decompressedStream;
   private StreamCopy copy = null;
   private Task decompressedOpeningTask = null;
 
@@ -111,27 +119,15 @@ public class ZipReadTask extends AbstractTask {
           return;
       }
 
-      tmpDir = Files.createTempDir();
-      tmpFile = new File(tmpDir, newName);
-      logger.finest("Decompressing to file " + tmpFile);
-      tmpFile.deleteOnExit();
-      tmpDir.deleteOnExit();
-      FileOutputStream ous = new FileOutputStream(tmpFile);
-
-      // Decompress the contents
-      copy = new StreamCopy();
-      copy.copy(is, ous, decompressedSize);
-
-      // Close the streams
-      is.close();
-      ous.close();
-
-      if (isCanceled())
-        return;
+      // Decompress on a separate thread while the data is parsed
+      decompressedStream = new BufferedInputStream(
+          new BackgroundInputStream(is, BLOCK_SIZE, NUM_BLOCKS, "Decompressing " + newName),
+          BLOCK_SIZE);
 
       // Find the type of the decompressed file
-      RawDataFileType fileType = RawDataFileTypeDetector.detectDataFileType(tmpFile);
-      logger.finest("File " + tmpFile + " type detected as " + fileType);
+      RawDataFileType fileType =
+          RawDataFileTypeDetector.detectDataFileType(newName, decompressedStream);
+      logger.finest("File " + newName + " type detected as " + fileType);
 
       if (fileType == null) {
         setErrorMessage("Could not determine the file type of file " + newName);
@@ -139,10 +135,26 @@ public class ZipReadTask extends AbstractTask {
         return;
       }
 
-      // Run the import module on the decompressed file
       RawDataFileWriter newMZmineFile = MZmineCore.createNewFile(newName);
-      decompressedOpeningTask =
-          RawDataImportModule.createOpeningTask(fileType, project, tmpFile, newMZmineFile);
+      switch (fileType) {
+        case MZXML:
+          decompressedOpeningTask =
+              new MzXMLReadTask(project, decompressedStream, newName, newMZmineFile);
+          break;
+        case MZDATA:
+          decompressedOpeningTask =
+              new MzDataReadTask(project, decompressedStream, newName, newMZmineFile);
+          break;
+        default:
+          // the other readers need random access to the file
+          decompressToTempFile(newName, decompressedSize);
+          if (isCanceled())
+            return;
+
+          // Run the import module on the decompressed file
+          decompressedOpeningTask =
+              RawDataImportModule.createOpeningTask(fileType, project, tmpFile, newMZmineFile);
+      }
 
       if (decompressedOpeningTask == null) {
         setErrorMessage("File type " + fileType + " of file " + newName + " is not supported.");
@@ -153,10 +165,6 @@ public class ZipReadTask extends AbstractTask {
       // Run the underlying task
       decompressedOpeningTask.run();
 
-      // Delete the temporary folder
-      tmpFile.delete();
-      tmpDir.delete();
-
       if (isCanceled())
         return;
 
@@ -166,6 +174,13 @@ public class ZipReadTask extends AbstractTask {
       setErrorMessage(ExceptionUtils.exceptionToString(e));
       setStatus(TaskStatus.ERROR);
       return;
+    } finally {
+      // stops the decompression and deletes the temporary folder
+      closeDecompressedStream();
+      if (tmpFile != null) {
+        tmpFile.delete();
+        tmpDir.delete();
+      }
     }
 
     logger.info("Finished opening compressed file " + file);
@@ -175,6 +190,30 @@ public class ZipReadTask extends AbstractTask {
 
   }
 
+  private void decompressToTempFile(String newName, long decompressedSize) throws IOException {
+    tmpDir = Files.createTempDir();
+    tmpFile = new File(tmpDir, newName);
+    logger.finest("Decompressing to file " + tmpFile);
+    tmpFile.deleteOnExit();
+    tmpDir.deleteOnExit();
+
+    // Decompress the contents
+    try (FileOutputStream ous = new FileOutputStream(tmpFile)) {
+      copy = new StreamCopy();
+      copy.copy(decompressedStream, ous, decompressedSize);
+    }
+  }
+
+  private void closeDecompressedStream() {
+    if (decompressedStream != null) {
+      try {
+        decompressedStream.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Could not close file " + file, e);
+      }
+    }
+  }
+
   public String getTaskDescription() {
     if (decompressedOpeningTask != null)
       return decompressedOpeningTask.getTaskDescription();
@@ -186,6 +225,9 @@ public class ZipReadTask extends AbstractTask {
    * @see io.github.mzmine.taskcontrol.Task#getFinishedPercentage()
    */
   public double getFinishedPercentage() {
+    // without a temporary file, the data is decompressed while it is parsed
+    if (decompressedOpeningTask != null && tmpFile == null)
+      return decompressedOpeningTask.getFinishedPercentage();
     if (decompressedOpeningTask != null)
       return (decompressedOpeningTask.getFinishedPercentage() / 2.0) + 0.5; // Reports 50% to 100%
     if (copy != null) {
@@ -41,12 +41,15 @@ import io.github.mzmine.modules.tools.msmsspectramerge.MsMsSpectraMergeParameter
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.io.OrderedBlockWriter;
 
 public class SiriusExportTask extends AbstractTask {
 
   private boolean DEBUG_MODE;
 
   private final static String plNamePattern = "{}";
+  // rows that are merged and written to memory by one parallel task
+  private static final int ROWS_PER_BLOCK = 32;
   protected static final Comparator<DataPoint> CompareDataPointsByMz = new Comparator<DataPoint>() {
     @Override
     public int compare(DataPoint o1, DataPoint o2) {
@@ -68,7 +71,9 @@ public class SiriusExportTask extends AbstractTask {
   private final boolean mergeEnabled;
   private final MsMsSpectraMergeParameters mergeParameters;
 
-  private NumberFormat intensityForm = MZmineCore.getConfiguration().getIntensityFormat();
+  // number formats are not thread-safe, the rows are exported in parallel
+  private final ThreadLocal<NumberFormat> intensityForm = ThreadLocal
+      .withInitial(() -> (NumberFormat) MZmineCore.getConfiguration().getIntensityFormat().clone());
 
   @Override
   public double getFinishedPercentage() {
@@ -167,11 +172,14 @@ public class SiriusExportTask extends AbstractTask {
   }
 
   private void exportFeatureList(FeatureList featureList, BufferedWriter writer) throws IOException {
-    for (FeatureListRow row : featureList.getRows()) {
-      if (!isSkipRow(row))
-        exportFeatureListRow(row, writer);
-      finishedRows++;
-    }
+    // merge the spectra of blocks of rows in parallel, the blocks are written in the row order
+    final List<FeatureListRow> rows = new ArrayList<>(featureList.getRows());
+    OrderedBlockWriter.write(rows, ROWS_PER_BLOCK, (block, blockWriter) -> {
+      for (FeatureListRow row : block) {
+        if (!isSkipRow(row))
+          exportFeatureListRow(row, blockWriter);
+      }
+    }, writer, () -> getStatus() == TaskStatus.CANCELED, exported -> finishedRows += exported);
   }
 
   private void exportFeatureListRow(FeatureListRow row, BufferedWriter writer) throws IOException {
@@ -376,7 +384,7 @@ public class SiriusExportTask extends AbstractTask {
     for (DataPoint dp : dps) {
       writer.write(String.valueOf(dp.getMZ()));
       writer.write(' ');
-      writer.write(intensityForm.format(dp.getIntensity()));
+      writer.write(intensityForm.get().format(dp.getIntensity()));
       writer.newLine();
 
     }
@@ -18,8 +18,12 @@
 
 package io.github.mzmine.modules.tools.isotopeprediction;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.awt.Window;
 import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import javax.annotation.Nonnull;
 
 import org.openscience.cdk.formula.IsotopeContainer;
@@ -51,11 +55,70 @@ public class IsotopePatternCalculator implements MZmineModule {
 
   private static final String MODULE_NAME = "Isotope pattern prediction.";
 
+  // predicted patterns shared by all tasks, the same candidate formulas are scored for many rows
+  private static final Cache<PatternKey, IsotopePattern> patternCache =
+      CacheBuilder.newBuilder().maximumSize(100_000).build();
+
   @Override
   public @Nonnull String getName() {
     return MODULE_NAME;
   }
 
+  /**
+   * Same as {@link #calculateIsotopePattern(String, double, int, PolarityType)}, but the pattern is
+   * kept in a bounded cache shared by all callers. The minimum abundance usually depends on the
+   * detected pattern, so the cached pattern is calculated down to the next lower power of ten and
+   * the isotopes below minAbundance are removed for every call. The returned pattern must not be
+   * modified.
+   */
+  public static IsotopePattern getCachedIsotopePattern(String molecularFormula,
+      double minAbundance, int charge, PolarityType polarity) {
+    final double cachedAbundance =
+        minAbundance > 0 ? Math.pow(10, Math.floor(Math.log10(minAbundance))) : minAbundance;
+    final PatternKey key = new PatternKey(molecularFormula, cachedAbundance, charge, polarity);
+    final IsotopePattern pattern;
+    try {
+      pattern = patternCache.get(key,
+          () -> calculateIsotopePattern(molecularFormula, cachedAbundance, charge, polarity));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Cannot calculate isotope pattern of " + molecularFormula,
+          e.getCause());
+    }
+    return pruneIsotopePattern(pattern, minAbundance);
+  }
+
+  /**
+   * @param minAbundance minimum intensity relative to the highest isotope
+   * @return the pattern without the isotopes below minAbundance, or the pattern itself if all
+   *         isotopes are kept
+   */
+  private static IsotopePattern pruneIsotopePattern(IsotopePattern pattern, double minAbundance) {
+    final DataPoint dataPoints[] = pattern.getDataPoints();
+    if (dataPoints.length == 0) {
+      return pattern;
+    }
+    final double minIntensity = minAbundance * pattern.getHighestDataPoint().getIntensity();
+    int kept = 0;
+    for (DataPoint dp : dataPoints) {
+      if (dp.getIntensity() >= minIntensity) {
+        kept++;
+      }
+    }
+    if (kept == dataPoints.length) {
+      return pattern;
+    }
+
+    final DataPoint prunedDataPoints[] = new DataPoint[kept];
+    int i = 0;
+    for (DataPoint dp : dataPoints) {
+      if (dp.getIntensity() >= minIntensity) {
+        prunedDataPoints[i++] = dp;
+      }
+    }
+    return new SimpleIsotopePattern(prunedDataPoints, pattern.getStatus(),
+        pattern.getDescription());
+  }
+
   public static IsotopePattern calculateIsotopePattern(String molecularFormula, double minAbundance,
       int charge, PolarityType polarity) {
     return calculateIsotopePattern(molecularFormula, minAbundance, charge, polarity, false);
@@ -300,4 +363,37 @@ public class IsotopePatternCalculator implements MZmineModule {
 
     return cdkString.substring(startIndex + 3, endIndex);
   }
+
+  private static final class PatternKey {
+
+    private final String formula;
+    private final double minAbundance;
+    private final int charge;
+    private final PolarityType polarity;
+
+    private PatternKey(String formula, double minAbundance, int charge, PolarityType polarity) {
+      this.formula = formula;
+      this.minAbundance = minAbundance;
+      this.charge = charge;
+      this.polarity = polarity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PatternKey)) {
+        return false;
+      }
+      PatternKey that = (PatternKey) o;
+      return Double.compare(that.minAbundance, minAbundance) == 0 && charge == that.charge
+          && formula.equals(that.formula) && polarity == that.polarity;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(formula, minAbundance, charge, polarity);
+    }
+  }
 }
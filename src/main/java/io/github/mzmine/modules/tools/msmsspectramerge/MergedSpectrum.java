@@ -31,6 +31,7 @@ import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.project.impl.MassListCache;
 
 /**
  * A spectrum of merged peaks with meta information
@@ -115,7 +116,8 @@ public class MergedSpectrum {
    * @param massList the name of the mass list that should be used for extracting peak information
    */
   public MergedSpectrum(Scan single, String massList) {
-    DataPoint[] dataPoints = single.getMassList(massList).getDataPoints();
+    DataPoint[] dataPoints =
+        MassListCache.getInstance().getDataPoints(single.getMassList(massList));
     this.data = new MergedDataPoint[dataPoints.length];
     for (int k = 0; k < dataPoints.length; ++k) {
       this.data[k] =
@@ -25,10 +25,9 @@ package io.github.mzmine.modules.tools.msmsspectramerge;
 
 import com.google.common.collect.Range;
 
-import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.project.impl.MassListCache;
 import io.github.mzmine.util.scans.ScanUtils;
 
-import java.util.Arrays;
 
 /**
  * Calculates some quality score given a MS/MS and its surrounding MS1
@@ -68,11 +67,11 @@ public interface Ms2QualityScoreModel {
           fragmentScan.feature.getMZ() < 75 ? Range.closed(50d, fragmentScan.feature.getMZ())
               : Range.closed(0d, fragmentScan.feature.getMZ());
       for (int i = 0; i < scores.length; ++i) {
-        DataPoint[] spectrum = fragmentScan.origin.getScan(fragmentScan.ms2ScanNumbers[i])
-            .getMassList(fragmentScan.massList).getDataPoints();
-        Arrays.sort(spectrum, (u, v) -> Double.compare(v.getIntensity(), u.getIntensity()));
-        for (int j = 0; j < spectrum.length; ++j)
-          scores[i] += spectrum[j].getIntensity();
+        final double[] intensities = MassListCache.getInstance().getValues(
+            fragmentScan.origin.getScan(fragmentScan.ms2ScanNumbers[i])
+                .getMassList(fragmentScan.massList)).getIntensityValues();
+        for (int j = 0; j < intensities.length; ++j)
+          scores[i] += intensities[j];
       }
       return scores;
     }
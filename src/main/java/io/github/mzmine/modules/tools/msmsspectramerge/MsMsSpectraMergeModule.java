@@ -49,6 +49,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.MassListCache;
 import io.github.mzmine.util.scans.ScanUtils;
 
 /**
@@ -351,7 +352,7 @@ public class MsMsSpectraMergeModule implements MZmineModule {
     if (firstML == null)
       throw new RuntimeException("Scan " + firstScan.getDataFile().getName() + "#"
           + firstScan.getScanNumber() + " does not have a mass list " + massList);
-    if (firstML.getDataPoints().length <= 1)
+    if (MassListCache.getInstance().getValues(firstML).getNumberOfDataPoints() <= 1)
       return MergedSpectrum.empty(totalNumberOfScans);
     /*
      * remove scans which are considerably worse than the best scan
@@ -412,7 +413,8 @@ public class MsMsSpectraMergeModule implements MZmineModule {
             + " cannot be merged: it seems to belong to a different feature.");
         continue;
       }
-      DataPoint[] dataPoints = scan.getMassList(massList).getDataPoints();
+      DataPoint[] dataPoints =
+          MassListCache.getInstance().getDataPoints(scan.getMassList(massList));
       final DataPoint[] mostIntense =
           ScanUtils.extractMostIntenseFeaturesAcrossMassRange(dataPoints, cosineRange, 6);
       final double norm = ScanUtils.probabilityProductUnnormalized(mostIntense, mostIntense,
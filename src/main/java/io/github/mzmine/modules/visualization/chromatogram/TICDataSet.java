@@ -18,6 +18,8 @@
 
 package io.github.mzmine.modules.visualization.chromatogram;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.github.mzmine.datamodel.features.Feature;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,6 +36,8 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.project.impl.ChromatogramIndex;
+import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
@@ -62,11 +66,24 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
   // Last time the data set was redrawn.
   private static long lastRedrawTime = System.currentTimeMillis();
 
+  /**
+   * Maximum size of the refined values of all data sets
+   */
+  private static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+
+  // values refined from the scan data, reused when the same m/z range of the same scans is shown
+  // again instead of reading all scans once more. Evicted by size
+  private static final Cache<RefinedKey, RefinedValues> refinedCache = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_CACHE_BYTES)
+      .weigher((RefinedKey key, RefinedValues values) -> values.getSizeInBytes()).build();
+
   private final RawDataFile dataFile;
 
   private final Scan scans[];
   private final int totalScans;
   private int processedScans;
+  // number of scans with a value, all scans once the preview of the chromatogram index is shown
+  private int itemCount;
 
   private final double[] basePeakValues;
   private final double[] intensityValues;
@@ -116,6 +133,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     intensityValues = new double[totalScans];
     rtValues = new double[totalScans];
     processedScans = 0;
+    itemCount = 0;
     intensityMin = 0.0;
     intensityMax = 0.0;
 
@@ -151,6 +169,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     intensityValues = new double[totalScans];
     rtValues = new double[totalScans];
     processedScans = 0;
+    itemCount = 0;
     intensityMin = 0.0;
     intensityMax = 0.0;
 
@@ -228,7 +247,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
   @Override
   public int getItemCount(final int series) {
 
-    return processedScans;
+    return itemCount;
   }
 
   @Override
@@ -253,7 +272,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
   public int getIndex(final double retentionTime, final double intensity) {
 
     int index = -1;
-    for (int i = 0; index < 0 && i < processedScans; i++) {
+    for (int i = 0; index < 0 && i < itemCount; i++) {
 
       if (Math.abs(retentionTime - rtValues[i]) < EPSILON
           && Math.abs(intensity - intensityValues[i]) < EPSILON) {
@@ -284,7 +303,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
   public boolean isLocalMaximum(final int item) {
 
     final boolean isLocalMaximum;
-    if (item <= 0 || item >= processedScans - 1) {
+    if (item <= 0 || item >= itemCount - 1) {
 
       isLocalMaximum = false;
 
@@ -311,7 +330,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
       final double yMax) {
 
     // Save data set size.
-    final int currentSize = processedScans;
+    final int currentSize = itemCount;
     final double[] rtCopy;
 
     // If the RT values array is not filled yet, create a smaller copy.
@@ -360,6 +379,27 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     // Determine plot type (now done from constructor).
     final TICPlotType plotType = this.plotType;
 
+    final RefinedKey key = new RefinedKey(dataFile, scans, mzRange, plotType);
+    final RefinedValues refined = refinedCache.getIfPresent(key);
+    if (refined != null) {
+      System.arraycopy(refined.basePeakValues, 0, basePeakValues, 0, totalScans);
+      for (int index = 0; index < totalScans; index++) {
+        setValue(index, scans[index].getRetentionTime(), refined.intensityValues[index]);
+      }
+      processedScans = totalScans;
+      itemCount = totalScans;
+      return;
+    }
+
+    // The chromatogram index of the file gives a preview of partial m/z ranges without reading the
+    // scans. The preview is refined from the scan data afterwards.
+    final ChromatogramIndex chromatogramIndex =
+        (dataFile instanceof RawDataFileImpl) ? ((RawDataFileImpl) dataFile).getChromatogramIndex()
+            : null;
+    if (chromatogramIndex != null && !chromatogramIndex.encloses(mzRange)) {
+      calculatePreviewValues(chromatogramIndex, plotType);
+    }
+
     // Process each scan.
     for (int index = 0; status != TaskStatus.CANCELED && index < totalScans; index++) {
 
@@ -389,22 +429,10 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
         intensity = basePeak.getIntensity();
       }
 
-      intensityValues[index] = intensity;
-      rtValues[index] = scan.getRetentionTime();
-
-      // Update min and max.
-      if (index == 0) {
-
-        intensityMin = intensity;
-        intensityMax = intensity;
-
-      } else {
-
-        intensityMin = Math.min(intensity, intensityMin);
-        intensityMax = Math.max(intensity, intensityMax);
-      }
+      setValue(index, scan.getRetentionTime(), intensity);
 
-      processedScans++;
+      processedScans = index + 1;
+      itemCount = Math.max(itemCount, processedScans);
 
       // Refresh every REDRAW_INTERVAL ms.
       synchronized (TICDataSet.class) {
@@ -416,6 +444,55 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
         }
       }
     }
+
+    if (status != TaskStatus.CANCELED) {
+      refinedCache.put(key, new RefinedValues(basePeakValues.clone(), intensityValues.clone()));
+    }
+  }
+
+  /**
+   * Fills all values with the estimates of the chromatogram index and redraws the data set.
+   *
+   * @param index    the chromatogram index of the data file.
+   * @param plotType the plot type.
+   */
+  private void calculatePreviewValues(final ChromatogramIndex index, final TICPlotType plotType) {
+
+    for (int i = 0; i < totalScans; i++) {
+
+      final int scanIndex = index.indexOf(scans[i].getScanNumber());
+      double intensity = 0.0;
+      if (scanIndex >= 0) {
+        intensity = (plotType == TICPlotType.TIC) ? index.estimateTIC(scanIndex, mzRange)
+            : index.estimateBasePeakIntensity(scanIndex, mzRange);
+        if (mzRange.contains(index.getBasePeakMz(scanIndex))) {
+          basePeakValues[i] = index.getBasePeakMz(scanIndex);
+        }
+      }
+      setValue(i, scans[i].getRetentionTime(), intensity);
+    }
+
+    itemCount = totalScans;
+    refresh();
+    lastRedrawTime = System.currentTimeMillis();
+  }
+
+  private void setValue(final int index, final double rt, final double intensity) {
+
+    intensityValues[index] = intensity;
+    rtValues[index] = rt;
+
+    // Update min and max.
+    if (index == 0) {
+
+      intensityMin = intensity;
+      intensityMax = intensity;
+
+    } else {
+
+      intensityMin = Math.min(intensity, intensityMin);
+      intensityMax = Math.max(intensity, intensityMax);
+    }
   }
 
   /**
@@ -435,6 +512,61 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     return TaskPriority.NORMAL;
   }
 
+  /**
+   * The scans, m/z range and plot type of refined values
+   */
+  private static final class RefinedKey {
+
+    private final RawDataFile dataFile;
+    private final int[] scanNumbers;
+    private final Range<Double> mzRange;
+    private final TICPlotType plotType;
+
+    private RefinedKey(RawDataFile dataFile, Scan[] scans, Range<Double> mzRange,
+        TICPlotType plotType) {
+      this.dataFile = dataFile;
+      this.scanNumbers = Arrays.stream(scans).mapToInt(Scan::getScanNumber).toArray();
+      this.mzRange = mzRange;
+      this.plotType = plotType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof RefinedKey)) {
+        return false;
+      }
+      RefinedKey that = (RefinedKey) o;
+      return dataFile == that.dataFile && plotType == that.plotType
+          && mzRange.equals(that.mzRange) && Arrays.equals(scanNumbers, that.scanNumbers);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = Objects.hash(System.identityHashCode(dataFile), mzRange, plotType);
+      result = 31 * result + Arrays.hashCode(scanNumbers);
+      return result;
+    }
+  }
+
+  private static final class RefinedValues {
+
+    private final double[] basePeakValues;
+    private final double[] intensityValues;
+
+    private RefinedValues(double[] basePeakValues, double[] intensityValues) {
+      this.basePeakValues = basePeakValues;
+      this.intensityValues = intensityValues;
+    }
+
+    private int getSizeInBytes() {
+      // two arrays, the scan numbers of the key and the entry
+      return (2 * Double.BYTES + Integer.BYTES) * intensityValues.length + 64;
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
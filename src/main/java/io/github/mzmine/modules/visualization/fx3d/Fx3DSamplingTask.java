@@ -18,23 +18,24 @@
 
 package io.github.mzmine.modules.visualization.fx3d;
 
+import java.util.Arrays;
 import java.util.Random;
 import java.util.logging.Logger;
 
 import com.google.common.collect.Range;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.gui.Desktop;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.visualization.intensitytiles.IntensityRaster;
+import io.github.mzmine.modules.visualization.intensitytiles.IntensityTileCache;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.scans.ScanUtils;
-import io.github.mzmine.util.scans.ScanUtils.BinningType;
 import javafx.application.Platform;
 import javafx.scene.paint.Color;
 
@@ -113,58 +114,44 @@ class Fx3DSamplingTask extends AbstractTask {
       float[][] intensityValues = new float[1][mzResolution * rtResolution];
       boolean rtDataSet[] = new boolean[rtResolution];
 
-      // load scans
-      for (int scanIndex = 0; scanIndex < scans.length; scanIndex++) {
+      final Desktop desktop = MZmineCore.getDesktop();
 
-        if (isCanceled())
-          return;
-
-        Scan scan = scans[scanIndex];
-        final Desktop desktop = MZmineCore.getDesktop();
-
-        // Check scan numbers.
-        if (scans.length == 0) {
-          desktop.displayErrorMessage("No scans found");
-          return;
-        }
-
-        DataPoint dataPoints[] = scan.getDataPoints();
-        double[] scanMZValues = new double[dataPoints.length];
-        double[] scanIntensityValues = new double[dataPoints.length];
-        for (int dp = 0; dp < dataPoints.length; dp++) {
-          scanMZValues[dp] = dataPoints[dp].getMZ();
-          scanIntensityValues[dp] = dataPoints[dp].getIntensity();
-        }
-
-        double[] binnedIntensities = ScanUtils.binValues(scanMZValues, scanIntensityValues, mzRange,
-            mzResolution, scan.getSpectrumType() != MassSpectrumType.CENTROIDED, BinningType.MAX);
-
-        int scanBinIndex;
+      // Check scan numbers.
+      if (scans.length == 0) {
+        desktop.displayErrorMessage("No scans found");
+        return;
+      }
 
-        double rt = scan.getRetentionTime();
-        scanBinIndex = (int) ((rt - rtRange.lowerEndpoint()) / rtStep);
+      // sample the binned maximum intensities from the tile cache, which is shared with the 2D
+      // visualizer
+      final IntensityRaster raster = IntensityTileCache.getInstance()
+          .getRaster(new IntensityTileCache.Source(dataFile, scans), rtRange, mzRange,
+              rtResolution, mzResolution);
+      if (isCanceled())
+        return;
+
+      // interpolate profile data between data points
+      if (Arrays.stream(scans)
+          .anyMatch(scan -> scan.getSpectrumType() != MassSpectrumType.CENTROIDED)) {
+        raster.fillMZGaps();
+      }
 
-        // last scan falls into last bin
-        if (scanBinIndex == rtResolution) {
-          scanBinIndex--;
-        }
+      for (int scanBinIndex = 0; scanBinIndex < rtResolution; scanBinIndex++) {
 
         for (int mzIndex = 0; mzIndex < mzResolution; mzIndex++) {
 
           int intensityValuesIndex = (rtResolution * mzIndex) + scanBinIndex;
-          if (binnedIntensities[mzIndex] > intensityValues[0][intensityValuesIndex]) {
-            intensityValues[0][intensityValuesIndex] = (float) binnedIntensities[mzIndex];
-          }
-          if (intensityValues[0][intensityValuesIndex] > maxBinnedIntensity)
-            maxBinnedIntensity = (double) binnedIntensities[mzIndex];
+          double binnedIntensity = raster.getIntensity(scanBinIndex, mzIndex);
+          intensityValues[0][intensityValuesIndex] = (float) binnedIntensity;
+          if (binnedIntensity > maxBinnedIntensity)
+            maxBinnedIntensity = binnedIntensity;
         }
 
-        rtDataSet[scanBinIndex] = true;
-
-        retrievedScans++;
-
+        rtDataSet[scanBinIndex] = raster.hasScanInColumn(scanBinIndex);
       }
 
+      retrievedScans = scans.length;
+
       // Interpolate missing values on the RT-axis
       for (int rtIndex = 1; rtIndex < rtResolution - 1; rtIndex++) {
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.visualization.intensitytiles;
+
+import java.util.Arrays;
+
+/**
+ * Maximum intensities of a RT x m/z area sampled to a fixed number of pixels, as returned by
+ * {@link IntensityTileCache#getRaster}. Pixels without any data point have an intensity of 0, but
+ * can be filled from their neighbours by {@link #fillRTGaps()} and {@link #fillMZGaps()}.
+ */
+public class IntensityRaster {
+
+  private final int rtPixels, mzPixels;
+  // [rtPixel * mzPixels + mzPixel]
+  private final float[] values;
+  private final boolean[] scanInColumn;
+
+  IntensityRaster(int rtPixels, int mzPixels) {
+    this.rtPixels = rtPixels;
+    this.mzPixels = mzPixels;
+    values = new float[rtPixels * mzPixels];
+    Arrays.fill(values, IntensityTile.EMPTY);
+    scanInColumn = new boolean[rtPixels];
+  }
+
+  void add(int rtPixel, int mzPixel, float intensity) {
+    final int index = rtPixel * mzPixels + mzPixel;
+    if (intensity > values[index]) {
+      values[index] = intensity;
+    }
+  }
+
+  void setScanInColumn(int rtPixel) {
+    scanInColumn[rtPixel] = true;
+  }
+
+  public int getRTPixels() {
+    return rtPixels;
+  }
+
+  public int getMZPixels() {
+    return mzPixels;
+  }
+
+  /**
+   * @return the maximum intensity of the pixel or 0 if the pixel contains no data
+   */
+  public double getIntensity(int rtPixel, int mzPixel) {
+    return Math.max(0f, values[rtPixel * mzPixels + mzPixel]);
+  }
+
+  /**
+   * @return true if at least one scan falls into this RT column
+   */
+  public boolean hasScanInColumn(int rtPixel) {
+    return scanInColumn[rtPixel];
+  }
+
+  public double getMaxIntensity() {
+    float max = 0f;
+    for (float value : values) {
+      max = Math.max(max, value);
+    }
+    return max;
+  }
+
+  /**
+   * RT columns without a scan take the values of the closest column with a scan. Columns before the
+   * first and after the last scan stay empty.
+   */
+  public void fillRTGaps() {
+    int prev = -1;
+    for (int rt = 0; rt < rtPixels; rt++) {
+      if (scanInColumn[rt]) {
+        prev = rt;
+        continue;
+      }
+      if (prev < 0) {
+        continue;
+      }
+      int next = rt + 1;
+      while (next < rtPixels && !scanInColumn[next]) {
+        next++;
+      }
+      if (next >= rtPixels) {
+        return;
+      }
+      final int source = (rt - prev < next - rt) ? prev : next;
+      System.arraycopy(values, source * mzPixels, values, rt * mzPixels, mzPixels);
+    }
+  }
+
+  /**
+   * Empty m/z pixels between two pixels with data take the value of the closer one. This is used
+   * for continuous (profile) data, where the distance of data points can exceed the pixel size.
+   */
+  public void fillMZGaps() {
+    for (int rt = 0; rt < rtPixels; rt++) {
+      final int offset = rt * mzPixels;
+      int prev = -1;
+      for (int mz = 0; mz < mzPixels; mz++) {
+        if (values[offset + mz] != IntensityTile.EMPTY) {
+          prev = mz;
+          continue;
+        }
+        if (prev < 0) {
+          continue;
+        }
+        int next = mz + 1;
+        while (next < mzPixels && values[offset + next] == IntensityTile.EMPTY) {
+          next++;
+        }
+        if (next >= mzPixels) {
+          break;
+        }
+        for (int gap = mz; gap < next; gap++) {
+          final boolean closerToPrev = gap - prev < next - gap;
+          values[offset + gap] = closerToPrev ? values[offset + prev] : values[offset + next];
+        }
+        mz = next - 1;
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.visualization.intensitytiles;
+
+import java.util.Arrays;
+
+/**
+ * A square block of {@link IntensityTileCache#TILE_SIZE}^2 pixels in the RT x m/z plane. Every
+ * pixel holds the maximum intensity of all data points that fall into it or {@link #EMPTY} if there
+ * is no data point. Every RT column knows if any scan falls into it.
+ */
+class IntensityTile {
+
+  static final float EMPTY = -1f;
+
+  private static final int SIZE = IntensityTileCache.TILE_SIZE;
+
+  // [rtPixel * SIZE + mzPixel]
+  private final float[] values;
+  private final boolean[] scanInColumn;
+
+  IntensityTile() {
+    values = new float[SIZE * SIZE];
+    Arrays.fill(values, EMPTY);
+    scanInColumn = new boolean[SIZE];
+  }
+
+  /**
+   * Creates a tile from the tiles of a finer level by max pooling. The finer level halves the tile
+   * width on one or both axes, so there are 2 x 2, 2 x 1 or 1 x 2 children.
+   *
+   * @param children the children ordered [rt][mz]
+   */
+  static IntensityTile fromChildren(IntensityTile[][] children) {
+    final IntensityTile tile = new IntensityTile();
+    final int childrenRt = children.length;
+    final int childrenMz = children[0].length;
+    for (int crt = 0; crt < childrenRt; crt++) {
+      for (int cmz = 0; cmz < childrenMz; cmz++) {
+        final IntensityTile child = children[crt][cmz];
+        for (int rt = 0; rt < SIZE; rt++) {
+          final int targetRt = (crt * SIZE + rt) / childrenRt;
+          if (child.scanInColumn[rt]) {
+            tile.scanInColumn[targetRt] = true;
+          }
+          for (int mz = 0; mz < SIZE; mz++) {
+            tile.add(targetRt, (cmz * SIZE + mz) / childrenMz, child.get(rt, mz));
+          }
+        }
+      }
+    }
+    return tile;
+  }
+
+  void add(int rtPixel, int mzPixel, float intensity) {
+    final int index = rtPixel * SIZE + mzPixel;
+    if (intensity > values[index]) {
+      values[index] = intensity;
+    }
+  }
+
+  float get(int rtPixel, int mzPixel) {
+    return values[rtPixel * SIZE + mzPixel];
+  }
+
+  void setScanInColumn(int rtPixel) {
+    scanInColumn[rtPixel] = true;
+  }
+
+  boolean hasScanInColumn(int rtPixel) {
+    return scanInColumn[rtPixel];
+  }
+
+  long getSizeInBytes() {
+    return values.length * 4L + scanInColumn.length;
+  }
+}
@@ -0,0 +1,689 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.modules.visualization.intensitytiles;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Level-of-detail cache of RT x m/z maximum intensities, organized like the tile pyramid of a map.
+ * On level (0, 0) one tile covers all scans of a {@link Source}, every following level halves the
+ * RT or m/z width of a tile. The levels of both axes are independent, so narrow m/z windows over
+ * wide RT ranges do not need a huge number of tiles.
+ * <p>
+ * Missing tiles are calculated one RT column of tiles at a time, so every scan is only read once
+ * per column. Tiles are derived from a finer level without reading any scan if all their children
+ * are cached, whether the children are finer on both axes or on one axis only. Views that must not
+ * block, like the 2D plot, get the cached tiles of the finest available level and the missing
+ * columns are calculated by tasks of the task controller. The cache is shared by the 2D and the 3D
+ * visualizer and limited to {@link #MAX_CACHE_BYTES}; the least recently used tiles are evicted
+ * first.
+ */
+public class IntensityTileCache {
+
+  /**
+   * Number of pixels per tile on both axes
+   */
+  public static final int TILE_SIZE = 128;
+
+  private static final int MAX_LEVEL = 16;
+
+  private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+
+  // levels of children that can be pooled to a tile, finer on both axes or on one axis
+  private static final int[][] CHILD_SPLITS = {{1, 1}, {1, 0}, {0, 1}};
+
+  private static final IntensityTileCache instance = new IntensityTileCache();
+
+  private final Logger logger = Logger.getLogger(this.getClass().getName());
+
+  // access ordered, the eldest entry is the least recently used tile
+  private final LinkedHashMap<TileKey, IntensityTile> tiles =
+      new LinkedHashMap<>(256, 0.75f, true);
+  private long cachedBytes = 0;
+
+  // columns that are calculated by a task and the listeners that wait for them
+  private final Map<ColumnKey, PendingColumn> pendingColumns = new HashMap<>();
+
+  public static IntensityTileCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Samples the maximum intensities within the given ranges to rtPixels x mzPixels pixels. Missing
+   * tiles are calculated by the calling thread, so only call this method from a task.
+   *
+   * @param source    the scans
+   * @param rtRange   the visible RT range
+   * @param mzRange   the visible m/z range
+   * @param rtPixels  number of pixels on the RT axis
+   * @param mzPixels  number of pixels on the m/z axis
+   * @return the sampled intensities
+   */
+  @Nonnull
+  public IntensityRaster getRaster(@Nonnull Source source, @Nonnull Range<Float> rtRange,
+      @Nonnull Range<Double> mzRange, int rtPixels, int mzPixels) {
+
+    final IntensityRaster raster =
+        new IntensityRaster(Math.max(rtPixels, 0), Math.max(mzPixels, 0));
+    if (source.scans.length == 0 || rtPixels <= 0 || mzPixels <= 0) {
+      return raster;
+    }
+
+    final View view = new View(source, rtRange, mzRange, rtPixels, mzPixels);
+    final IntensityTile[][] viewTiles = new IntensityTile[view.lastRtTile - view.firstRtTile + 1][];
+    for (int rtTile = view.firstRtTile; rtTile <= view.lastRtTile; rtTile++) {
+      final IntensityTile[] column = getCachedColumn(view, rtTile);
+      if (Arrays.asList(column).contains(null)) {
+        calculateTiles(source, view.levelRt, view.levelMz, rtTile, view.firstMzTile, column);
+      }
+      viewTiles[rtTile - view.firstRtTile] = column;
+    }
+    sample(view, viewTiles, raster);
+    return raster;
+  }
+
+  /**
+   * Samples the maximum intensities within the given ranges to rtPixels x mzPixels pixels without
+   * blocking. If tiles of the required level are missing, they are calculated by tasks and
+   * onCalculated is called once all of them are cached. Until then, the raster is sampled from the
+   * finest coarser level that is cached.
+   *
+   * @param source       the scans
+   * @param rtRange      the visible RT range
+   * @param mzRange      the visible m/z range
+   * @param rtPixels     number of pixels on the RT axis
+   * @param mzPixels     number of pixels on the m/z axis
+   * @param onCalculated called by a task thread after the missing tiles were calculated, e.g., to
+   *                     repaint the view
+   * @return the sampled intensities or null if no level of the view is cached yet
+   */
+  @Nullable
+  public IntensityRaster getCachedRaster(@Nonnull Source source, @Nonnull Range<Float> rtRange,
+      @Nonnull Range<Double> mzRange, int rtPixels, int mzPixels,
+      @Nonnull Runnable onCalculated) {
+
+    final IntensityRaster raster =
+        new IntensityRaster(Math.max(rtPixels, 0), Math.max(mzPixels, 0));
+    if (source.scans.length == 0 || rtPixels <= 0 || mzPixels <= 0) {
+      return raster;
+    }
+
+    final View view = new View(source, rtRange, mzRange, rtPixels, mzPixels);
+    final IntensityTile[][] viewTiles = getCachedTiles(view);
+    if (viewTiles != null) {
+      sample(view, viewTiles, raster);
+      return raster;
+    }
+    requestTiles(view, onCalculated);
+
+    // preview of the coarser levels
+    for (int coarser = 1; view.levelRt - coarser >= 0 || view.levelMz - coarser >= 0; coarser++) {
+      final View preview = new View(view, Math.max(view.levelRt - coarser, 0),
+          Math.max(view.levelMz - coarser, 0));
+      final IntensityTile[][] previewTiles = getCachedTiles(preview);
+      if (previewTiles != null) {
+        sample(preview, previewTiles, raster);
+        return raster;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes all tiles of a raw data file, e.g., when the file is removed from the project.
+   */
+  public synchronized void invalidate(@Nonnull RawDataFile dataFile) {
+    final Iterator<Map.Entry<TileKey, IntensityTile>> it = tiles.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<TileKey, IntensityTile> entry = it.next();
+      if (entry.getKey().source.dataFile == dataFile) {
+        cachedBytes -= entry.getValue().getSizeInBytes();
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Samples the tile pixels into the raster, every pixel goes to the raster pixel of its center
+   */
+  private static void sample(View view, IntensityTile[][] viewTiles, IntensityRaster raster) {
+    final Source source = view.source;
+    final int rtPixels = raster.getRTPixels();
+    final int mzPixels = raster.getMZPixels();
+    final double tilePixelRt = view.tileRtWidth / TILE_SIZE;
+    final double tilePixelMz = view.tileMzWidth / TILE_SIZE;
+    final double rasterStepRt = view.viewRtWidth / rtPixels;
+    final double rasterStepMz = view.viewMzWidth / mzPixels;
+    for (int rtTile = view.firstRtTile; rtTile <= view.lastRtTile; rtTile++) {
+      final IntensityTile[] column = viewTiles[rtTile - view.firstRtTile];
+      for (int rtPixel = 0; rtPixel < TILE_SIZE; rtPixel++) {
+        final double rt = source.rtMin + ((long) rtTile * TILE_SIZE + rtPixel + 0.5) * tilePixelRt;
+        final int rasterRt = toRasterPixel(rt, view.viewRtMin, rasterStepRt, rtPixels);
+        if (rasterRt < 0) {
+          continue;
+        }
+        boolean scanInColumn = false;
+        for (int mzTile = view.firstMzTile; mzTile <= view.lastMzTile; mzTile++) {
+          final IntensityTile tile = column[mzTile - view.firstMzTile];
+          scanInColumn |= tile.hasScanInColumn(rtPixel);
+          for (int mzPixel = 0; mzPixel < TILE_SIZE; mzPixel++) {
+            final float intensity = tile.get(rtPixel, mzPixel);
+            if (intensity == IntensityTile.EMPTY) {
+              continue;
+            }
+            final double mz =
+                source.mzMin + ((long) mzTile * TILE_SIZE + mzPixel + 0.5) * tilePixelMz;
+            final int rasterMz = toRasterPixel(mz, view.viewMzMin, rasterStepMz, mzPixels);
+            if (rasterMz >= 0) {
+              raster.add(rasterRt, rasterMz, intensity);
+            }
+          }
+        }
+        if (scanInColumn) {
+          raster.setScanInColumn(rasterRt);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the coarsest level that gives at least one tile pixel per view pixel
+   */
+  private static int selectLevel(double worldWidth, double viewWidth, int viewPixels) {
+    if (viewWidth <= 0) {
+      return MAX_LEVEL;
+    }
+    final double requiredPixels = worldWidth / viewWidth * viewPixels;
+    final int level = (int) Math.ceil(Math.log(requiredPixels / TILE_SIZE) / Math.log(2));
+    return clamp(level, 0, MAX_LEVEL);
+  }
+
+  private static int toRasterPixel(double value, double viewMin, double step, int pixels) {
+    if (step <= 0) {
+      return 0;
+    }
+    final double pixel = (value - viewMin) / step;
+    if (pixel < 0 || pixel >= pixels) {
+      return -1;
+    }
+    return (int) pixel;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  /**
+   * @return all tiles of the view or null if any tile is missing
+   */
+  @Nullable
+  private IntensityTile[][] getCachedTiles(View view) {
+    final IntensityTile[][] viewTiles = new IntensityTile[view.lastRtTile - view.firstRtTile + 1][];
+    for (int rtTile = view.firstRtTile; rtTile <= view.lastRtTile; rtTile++) {
+      final IntensityTile[] column = getCachedColumn(view, rtTile);
+      if (Arrays.asList(column).contains(null)) {
+        return null;
+      }
+      viewTiles[rtTile - view.firstRtTile] = column;
+    }
+    return viewTiles;
+  }
+
+  /**
+   * Returns the tiles firstMzTile..lastMzTile of a column, missing tiles are null.
+   */
+  private IntensityTile[] getCachedColumn(View view, int rtTile) {
+    final IntensityTile[] column = new IntensityTile[view.lastMzTile - view.firstMzTile + 1];
+    for (int mzTile = view.firstMzTile; mzTile <= view.lastMzTile; mzTile++) {
+      final TileKey key = new TileKey(view.source, view.levelRt, view.levelMz, rtTile, mzTile);
+      IntensityTile tile = getCached(key);
+      if (tile == null) {
+        tile = fromCachedChildren(key);
+        if (tile != null) {
+          putCached(key, tile);
+        }
+      }
+      column[mzTile - view.firstMzTile] = tile;
+    }
+    return column;
+  }
+
+  /**
+   * Starts a task for every column of the view with missing tiles, unless a task for the column is
+   * already running. onCalculated is called after the last of these columns was calculated.
+   */
+  private void requestTiles(View view, Runnable onCalculated) {
+    final List<ColumnKey> missingColumns = new ArrayList<>();
+    for (int rtTile = view.firstRtTile; rtTile <= view.lastRtTile; rtTile++) {
+      if (Arrays.asList(getCachedColumn(view, rtTile)).contains(null)) {
+        missingColumns.add(new ColumnKey(view, rtTile));
+      }
+    }
+
+    final AtomicInteger remainingColumns = new AtomicInteger(missingColumns.size());
+    final Runnable listener = () -> {
+      if (remainingColumns.decrementAndGet() == 0) {
+        onCalculated.run();
+      }
+    };
+    for (ColumnKey key : missingColumns) {
+      synchronized (this) {
+        PendingColumn pending = pendingColumns.get(key);
+        // canceled tasks might never run
+        if (pending == null || pending.task.isCanceled()) {
+          pending = new PendingColumn(key);
+          pendingColumns.put(key, pending);
+          MZmineCore.getTaskController().addTask(pending.task, TaskPriority.HIGH);
+        }
+        pending.listeners.add(listener);
+      }
+    }
+  }
+
+  /**
+   * A column of tiles that is calculated by a task
+   */
+  private final class PendingColumn {
+
+    private final List<Runnable> listeners = new ArrayList<>();
+    private final AbstractTask task;
+
+    private PendingColumn(ColumnKey key) {
+      task = new AbstractTask() {
+        @Override
+        public void run() {
+          setStatus(TaskStatus.PROCESSING);
+          boolean calculated = false;
+          try {
+            final IntensityTile[] column = getCachedColumn(key.view, key.rtTile);
+            if (Arrays.asList(column).contains(null)) {
+              calculateTiles(key.view.source, key.view.levelRt, key.view.levelMz, key.rtTile,
+                  key.view.firstMzTile, column);
+            }
+            calculated = true;
+          } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Cannot calculate intensity tiles of "
+                + key.view.source.dataFile, e);
+            setErrorMessage("Cannot calculate intensity tiles of " + key.view.source.dataFile
+                + ": " + e.getMessage());
+            setStatus(TaskStatus.ERROR);
+          } finally {
+            // the next request starts a new task if this one failed
+            final List<Runnable> waiting;
+            synchronized (IntensityTileCache.this) {
+              pendingColumns.remove(key, PendingColumn.this);
+              waiting = new ArrayList<>(listeners);
+            }
+            if (calculated) {
+              waiting.forEach(Runnable::run);
+              setStatus(TaskStatus.FINISHED);
+            }
+          }
+        }
+
+        @Override
+        public String getTaskDescription() {
+          return "Calculating intensity tiles of " + key.view.source.dataFile;
+        }
+
+        @Override
+        public double getFinishedPercentage() {
+          return 0;
+        }
+      };
+    }
+  }
+
+  /**
+   * Reads all scans of the RT column once and fills all null tiles of the column.
+   */
+  private void calculateTiles(Source source, int levelRt, int levelMz, int rtTile,
+      int firstMzTile, IntensityTile[] column) {
+
+    final boolean[] calculate = new boolean[column.length];
+    for (int i = 0; i < column.length; i++) {
+      if (column[i] == null) {
+        column[i] = new IntensityTile();
+        calculate[i] = true;
+      }
+    }
+
+    final int tilesRt = 1 << levelRt;
+    final int tilesMz = 1 << levelMz;
+    final double tileRtWidth = source.rtWidth / tilesRt;
+    final double mzPixels = (double) tilesMz * TILE_SIZE;
+
+    // first scan of this column
+    int scanIndex = Arrays.binarySearch(source.retentionTimes,
+        (float) (source.rtMin + rtTile * tileRtWidth));
+    scanIndex = scanIndex < 0 ? -scanIndex - 1 : scanIndex;
+    while (scanIndex > 0
+        && columnOf(source, source.retentionTimes[scanIndex - 1], tileRtWidth, tilesRt) >= rtTile) {
+      scanIndex--;
+    }
+
+    for (; scanIndex < source.scans.length; scanIndex++) {
+      final double rt = source.retentionTimes[scanIndex];
+      final int scanColumn = columnOf(source, rt, tileRtWidth, tilesRt);
+      if (scanColumn < rtTile) {
+        continue;
+      }
+      if (scanColumn > rtTile) {
+        break;
+      }
+
+      final int rtPixel = clamp(
+          (int) ((rt - source.rtMin - rtTile * tileRtWidth) / tileRtWidth * TILE_SIZE), 0,
+          TILE_SIZE - 1);
+      for (int i = 0; i < column.length; i++) {
+        if (calculate[i]) {
+          column[i].setScanInColumn(rtPixel);
+        }
+      }
+
+      for (DataPoint dp : source.scans[scanIndex].getDataPoints()) {
+        final long mzPixel = (long) ((dp.getMZ() - source.mzMin) / source.mzWidth * mzPixels);
+        final int mzTile = clamp((int) (mzPixel / TILE_SIZE), 0, tilesMz - 1);
+        final int i = mzTile - firstMzTile;
+        if (i < 0 || i >= column.length || !calculate[i]) {
+          continue;
+        }
+        column[i].add(rtPixel, clamp((int) (mzPixel - (long) mzTile * TILE_SIZE), 0,
+            TILE_SIZE - 1), (float) dp.getIntensity());
+      }
+    }
+
+    logger.finest(() -> "Calculated tiles of RT column " + rtTile + " on level " + levelRt + "/"
+        + levelMz + " of " + source.dataFile);
+
+    for (int i = 0; i < column.length; i++) {
+      if (calculate[i]) {
+        putCached(new TileKey(source, levelRt, levelMz, rtTile, firstMzTile + i), column[i]);
+      }
+    }
+  }
+
+  private static int columnOf(Source source, double rt, double tileRtWidth, int tilesRt) {
+    return clamp((int) Math.floor((rt - source.rtMin) / tileRtWidth), 0, tilesRt - 1);
+  }
+
+  /**
+   * @return the tile pooled from its cached children of a finer level or null if no finer level
+   * is complete. Children can be finer on both axes (2 x 2 tiles) or on one axis only (2 x 1 or
+   * 1 x 2 tiles), so tiles of views that were zoomed on one axis are reused as well.
+   */
+  private IntensityTile fromCachedChildren(TileKey key) {
+    for (int[] split : CHILD_SPLITS) {
+      final IntensityTile[][] children = getCachedChildren(key, split[0], split[1]);
+      if (children != null) {
+        return IntensityTile.fromChildren(children);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param splitRt 1 if the children are one level finer on the RT axis, otherwise 0
+   * @param splitMz 1 if the children are one level finer on the m/z axis, otherwise 0
+   * @return the children ordered [rt][mz] or null if any child is missing
+   */
+  @Nullable
+  private IntensityTile[][] getCachedChildren(TileKey key, int splitRt, int splitMz) {
+    if (key.levelRt + splitRt > MAX_LEVEL || key.levelMz + splitMz > MAX_LEVEL) {
+      return null;
+    }
+    final IntensityTile[][] children = new IntensityTile[1 << splitRt][1 << splitMz];
+    for (int rt = 0; rt < children.length; rt++) {
+      for (int mz = 0; mz < children[rt].length; mz++) {
+        children[rt][mz] = getCached(new TileKey(key.source, key.levelRt + splitRt,
+            key.levelMz + splitMz, (key.rtTile << splitRt) + rt, (key.mzTile << splitMz) + mz));
+        if (children[rt][mz] == null) {
+          return null;
+        }
+      }
+    }
+    return children;
+  }
+
+  private synchronized IntensityTile getCached(TileKey key) {
+    return tiles.get(key);
+  }
+
+  private synchronized void putCached(TileKey key, IntensityTile tile) {
+    final IntensityTile previous = tiles.put(key, tile);
+    if (previous != null) {
+      cachedBytes -= previous.getSizeInBytes();
+    }
+    cachedBytes += tile.getSizeInBytes();
+
+    final Iterator<IntensityTile> it = tiles.values().iterator();
+    while (cachedBytes > MAX_CACHE_BYTES && it.hasNext()) {
+      cachedBytes -= it.next().getSizeInBytes();
+      it.remove();
+    }
+  }
+
+  /**
+   * The scans of one raw data file, e.g., all MS1 scans. Sources of the same scans are equal, so
+   * all visualizers of the same scans share their tiles.
+   */
+  public static final class Source {
+
+    private final RawDataFile dataFile;
+    // sorted by retention time
+    private final Scan[] scans;
+    private final float[] retentionTimes;
+    private final int[] sortedScanNumbers;
+    private final double rtMin, rtWidth, mzMin, mzWidth;
+    private final int hashCode;
+
+    public Source(@Nonnull RawDataFile dataFile, @Nonnull Scan[] scans) {
+      this.dataFile = dataFile;
+      this.scans = scans.clone();
+      Arrays.sort(this.scans, Comparator.comparingDouble(Scan::getRetentionTime));
+
+      retentionTimes = new float[this.scans.length];
+      Range<Double> mzRange = null;
+      for (int i = 0; i < this.scans.length; i++) {
+        retentionTimes[i] = this.scans[i].getRetentionTime();
+        final Range<Double> scanMzRange = this.scans[i].getDataPointMZRange();
+        if (scanMzRange != null) {
+          mzRange = (mzRange == null) ? scanMzRange : mzRange.span(scanMzRange);
+        }
+      }
+
+      sortedScanNumbers = Arrays.stream(scans).mapToInt(Scan::getScanNumber).sorted().toArray();
+
+      rtMin = retentionTimes.length > 0 ? retentionTimes[0] : 0d;
+      final double rtMax = retentionTimes.length > 0 ? retentionTimes[retentionTimes.length - 1]
+          : 0d;
+      // avoid tiles of zero width for single scans or single data points
+      rtWidth = Math.max(rtMax - rtMin, 1E-6);
+      mzMin = mzRange != null ? mzRange.lowerEndpoint() : 0d;
+      mzWidth = mzRange != null ? Math.max(mzRange.upperEndpoint() - mzMin, 1E-6) : 1d;
+
+      hashCode = 31 * Objects.hashCode(dataFile) + Arrays.hashCode(sortedScanNumbers);
+    }
+
+    @Nonnull
+    public RawDataFile getDataFile() {
+      return dataFile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Source)) {
+        return false;
+      }
+      Source that = (Source) o;
+      return dataFile == that.dataFile && Arrays.equals(sortedScanNumbers, that.sortedScanNumbers);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * The visible ranges of a source and the tiles that cover them on one level
+   */
+  private static final class View {
+
+    private final Source source;
+    private final double viewRtMin, viewRtWidth, viewMzMin, viewMzWidth;
+    private final int levelRt, levelMz;
+    private final double tileRtWidth, tileMzWidth;
+    private final int firstRtTile, lastRtTile, firstMzTile, lastMzTile;
+
+    private View(Source source, Range<Float> rtRange, Range<Double> mzRange, int rtPixels,
+        int mzPixels) {
+      this(source, rtRange.lowerEndpoint(), rtRange.upperEndpoint() - rtRange.lowerEndpoint(),
+          mzRange.lowerEndpoint(), mzRange.upperEndpoint() - mzRange.lowerEndpoint(),
+          selectLevel(source.rtWidth, rtRange.upperEndpoint() - rtRange.lowerEndpoint(),
+              rtPixels),
+          selectLevel(source.mzWidth, mzRange.upperEndpoint() - mzRange.lowerEndpoint(),
+              mzPixels));
+    }
+
+    /**
+     * The same ranges on another level
+     */
+    private View(View view, int levelRt, int levelMz) {
+      this(view.source, view.viewRtMin, view.viewRtWidth, view.viewMzMin, view.viewMzWidth,
+          levelRt, levelMz);
+    }
+
+    private View(Source source, double viewRtMin, double viewRtWidth, double viewMzMin,
+        double viewMzWidth, int levelRt, int levelMz) {
+      this.source = source;
+      this.viewRtMin = viewRtMin;
+      this.viewRtWidth = viewRtWidth;
+      this.viewMzMin = viewMzMin;
+      this.viewMzWidth = viewMzWidth;
+      this.levelRt = levelRt;
+      this.levelMz = levelMz;
+
+      final int tilesRt = 1 << levelRt;
+      final int tilesMz = 1 << levelMz;
+      tileRtWidth = source.rtWidth / tilesRt;
+      tileMzWidth = source.mzWidth / tilesMz;
+      firstRtTile = clamp((int) Math.floor((viewRtMin - source.rtMin) / tileRtWidth), 0,
+          tilesRt - 1);
+      lastRtTile = clamp(
+          (int) Math.floor((viewRtMin + viewRtWidth - source.rtMin) / tileRtWidth), 0,
+          tilesRt - 1);
+      firstMzTile = clamp((int) Math.floor((viewMzMin - source.mzMin) / tileMzWidth), 0,
+          tilesMz - 1);
+      lastMzTile = clamp(
+          (int) Math.floor((viewMzMin + viewMzWidth - source.mzMin) / tileMzWidth), 0,
+          tilesMz - 1);
+    }
+  }
+
+  /**
+   * The tiles firstMzTile..lastMzTile of one RT column of a view
+   */
+  private static final class ColumnKey {
+
+    private final View view;
+    private final int rtTile;
+
+    private ColumnKey(View view, int rtTile) {
+      this.view = view;
+      this.rtTile = rtTile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ColumnKey)) {
+        return false;
+      }
+      ColumnKey that = (ColumnKey) o;
+      return view.levelRt == that.view.levelRt && view.levelMz == that.view.levelMz
+          && rtTile == that.rtTile && view.firstMzTile == that.view.firstMzTile
+          && view.lastMzTile == that.view.lastMzTile && view.source.equals(that.view.source);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(view.source, view.levelRt, view.levelMz, rtTile, view.firstMzTile,
+          view.lastMzTile);
+    }
+  }
+
+  private static final class TileKey {
+
+    private final Source source;
+    private final int levelRt, levelMz, rtTile, mzTile;
+
+    private TileKey(Source source, int levelRt, int levelMz, int rtTile, int mzTile) {
+      this.source = source;
+      this.levelRt = levelRt;
+      this.levelMz = levelMz;
+      this.rtTile = rtTile;
+      this.mzTile = mzTile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof TileKey)) {
+        return false;
+      }
+      TileKey that = (TileKey) o;
+      return levelRt == that.levelRt && levelMz == that.levelMz && rtTile == that.rtTile
+          && mzTile == that.mzTile && source.equals(that.source);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(source, levelRt, levelMz, rtTile, mzTile);
+    }
+  }
+}
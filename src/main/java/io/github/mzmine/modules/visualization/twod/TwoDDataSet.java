@@ -28,6 +28,8 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.visualization.intensitytiles.IntensityRaster;
+import io.github.mzmine.modules.visualization.intensitytiles.IntensityTileCache;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
@@ -35,21 +37,25 @@ import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.SortingDirection;
 import io.github.mzmine.util.SortingProperty;
 import javafx.application.Platform;
+import javax.annotation.Nullable;
 
 class TwoDDataSet extends AbstractXYDataset implements Task {
 
   private static final long serialVersionUID = 1L;
 
+  // Resolution of the tiles that are calculated before the plot is shown
+  private static final int PREFETCH_PIXELS = 1024;
+
   private RawDataFile rawDataFile;
 
   private float retentionTimes[];
-  private double basePeaks[];
   private SoftReference<DataPoint[]> dataPointMatrix[];
 
   private final Range<Double> totalMZRange;
   private final Range<Float> totalRTRange;
   private int totalScans, processedScans;
   private final Scan scans[];
+  private final IntensityTileCache.Source tileSource;
 
   private TaskStatus status = TaskStatus.WAITING;
 
@@ -71,7 +77,7 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
     dataPointMatrix = new SoftReference[totalScans];
     retentionTimes = new float[totalScans];
-    basePeaks = new double[totalScans];
+    tileSource = new IntensityTileCache.Source(rawDataFile, scans);
 
     MZmineCore.getTaskController().addTask(this, TaskPriority.HIGH);
 
@@ -89,14 +95,14 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
         return;
 
       Scan scan = scans[index];
-      DataPoint scanBasePeak = scan.getHighestDataPoint();
       retentionTimes[index] = scan.getRetentionTime();
-      basePeaks[index] = (scanBasePeak == null ? 0 : scanBasePeak.getIntensity());
-      DataPoint scanDataPoints[] = scan.getDataPoints();
-      dataPointMatrix[index] = new SoftReference<DataPoint[]>(scanDataPoints);
       processedScans++;
     }
 
+    // Data points are loaded lazily, only the tiles of the zoomed out plot are prepared here
+    IntensityTileCache.getInstance().getRaster(tileSource, totalRTRange, totalMZRange,
+        PREFETCH_PIXELS, PREFETCH_PIXELS);
+
     Platform.runLater(() -> fireDatasetChanged());
 
     status = TaskStatus.FINISHED;
@@ -149,58 +155,20 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
       return totalMZRange.upperEndpoint();
   }
 
-  double upperEndpointIntensity(Range<Float> rtRange, Range<Double> mzRange, PlotMode plotMode) {
-
-    double maxIntensity = 0;
-
-    float searchRetentionTimes[] = retentionTimes;
-    if (processedScans < totalScans) {
-      searchRetentionTimes = new float[processedScans];
-      System.arraycopy(retentionTimes, 0, searchRetentionTimes, 0, searchRetentionTimes.length);
-    }
-
-    int startScanIndex = Arrays.binarySearch(searchRetentionTimes, rtRange.lowerEndpoint());
-
-    if (startScanIndex < 0)
-      startScanIndex = (startScanIndex * -1) - 1;
-
-    if (startScanIndex >= searchRetentionTimes.length) {
-      return 0;
-    }
-
-    if (searchRetentionTimes[startScanIndex] > rtRange.upperEndpoint()) {
-      if (startScanIndex == 0)
-        return 0;
-
-      if (startScanIndex == searchRetentionTimes.length - 1)
-        return upperEndpointIntensity(startScanIndex - 1, mzRange, plotMode);
-
-      // find which scan point is closer
-      double diffNext = searchRetentionTimes[startScanIndex] - rtRange.upperEndpoint();
-      double diffPrev = rtRange.lowerEndpoint() - searchRetentionTimes[startScanIndex - 1];
-
-      if (diffPrev < diffNext)
-        return upperEndpointIntensity(startScanIndex - 1, mzRange, plotMode);
-      else
-        return upperEndpointIntensity(startScanIndex, mzRange, plotMode);
-    }
-
-    for (int scanIndex = startScanIndex; ((scanIndex < searchRetentionTimes.length)
-        && (searchRetentionTimes[scanIndex] <= rtRange.upperEndpoint())); scanIndex++) {
-
-      // ignore scans where all peaks are smaller than current max
-      if (basePeaks[scanIndex] < maxIntensity)
-        continue;
-
-      double scanMax = upperEndpointIntensity(scanIndex, mzRange, plotMode);
-
-      if (scanMax > maxIntensity)
-        maxIntensity = scanMax;
-
-    }
-
-    return maxIntensity;
-
+  /**
+   * Samples the maximum intensities of the given ranges from the shared tile cache without
+   * blocking. Missing tiles are calculated by tasks, until then a coarser level is sampled.
+   *
+   * @param rtPixels     number of pixels on the RT axis
+   * @param mzPixels     number of pixels on the m/z axis
+   * @param onCalculated called by a task thread once the missing tiles are available
+   * @return the intensities or null if no tiles of these ranges are cached yet
+   */
+  @Nullable
+  IntensityRaster getIntensityRaster(Range<Float> rtRange, Range<Double> mzRange, int rtPixels,
+      int mzPixels, Runnable onCalculated) {
+    return IntensityTileCache.getInstance().getCachedRaster(tileSource, rtRange, mzRange,
+        rtPixels, mzPixels, onCalculated);
   }
 
   public ArrayList getrtValuesInUserRange() {
@@ -242,7 +210,7 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
     for (int scanIndex = startScanIndex; ((scanIndex < searchRetentionTimes.length)
         && (searchRetentionTimes[scanIndex] <= rtRange.upperEndpoint())); scanIndex++) {
       // get the list of data points
-      DataPoint dataPoints[] = dataPointMatrix[scanIndex].get();
+      DataPoint dataPoints[] = getDataPoints(scanIndex);
       // Binary search for the mz values in the range you want
 
       DataPoint searchMZ = new SimpleDataPoint(mzRange.lowerEndpoint(), 0);
@@ -280,60 +248,15 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
     return dataPointsInRanges;
   }
 
-  private double upperEndpointIntensity(int dataPointMatrixIndex, Range<Double> mzRange,
-      PlotMode plotMode) {
-    DataPoint dataPoints[] = dataPointMatrix[dataPointMatrixIndex].get();
+  private DataPoint[] getDataPoints(int dataPointMatrixIndex) {
+    SoftReference<DataPoint[]> reference = dataPointMatrix[dataPointMatrixIndex];
+    DataPoint dataPoints[] = (reference == null) ? null : reference.get();
     if (dataPoints == null) {
       Scan scan = scans[dataPointMatrixIndex];
       dataPoints = scan.getDataPoints();
       dataPointMatrix[dataPointMatrixIndex] = new SoftReference<DataPoint[]>(dataPoints);
     }
-    return upperEndpointIntensity(dataPoints, mzRange, plotMode);
-  }
-
-  private double upperEndpointIntensity(DataPoint dataPoints[], Range<Double> mzRange,
-      PlotMode plotMode) {
-
-    double maxIntensity = 0;
-
-    DataPoint searchMZ = new SimpleDataPoint(mzRange.lowerEndpoint(), 0);
-    int startMZIndex = Arrays.binarySearch(dataPoints, searchMZ,
-        new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
-    if (startMZIndex < 0)
-      startMZIndex = (startMZIndex * -1) - 1;
-
-    if (startMZIndex >= dataPoints.length)
-      return 0;
-
-    if (dataPoints[startMZIndex].getMZ() > mzRange.upperEndpoint()) {
-      if (plotMode != PlotMode.CENTROID) {
-        if (startMZIndex == 0)
-          return 0;
-        if (startMZIndex == dataPoints.length - 1)
-          return dataPoints[startMZIndex - 1].getIntensity();
-
-        // find which data point is closer
-        double diffNext = dataPoints[startMZIndex].getMZ() - mzRange.upperEndpoint();
-        double diffPrev = mzRange.lowerEndpoint() - dataPoints[startMZIndex - 1].getMZ();
-
-        if (diffPrev < diffNext)
-          return dataPoints[startMZIndex - 1].getIntensity();
-        else
-          return dataPoints[startMZIndex].getIntensity();
-      } else {
-        return 0;
-      }
-
-    }
-
-    for (int mzIndex = startMZIndex; ((mzIndex < dataPoints.length)
-        && (dataPoints[mzIndex].getMZ() <= mzRange.upperEndpoint())); mzIndex++) {
-      if (dataPoints[mzIndex].getIntensity() > maxIntensity)
-        maxIntensity = dataPoints[mzIndex].getIntensity();
-    }
-
-    return maxIntensity;
-
+    return dataPoints;
   }
 
   @Override
@@ -18,12 +18,14 @@
 
 package io.github.mzmine.modules.visualization.twod;
 
+import io.github.mzmine.modules.visualization.intensitytiles.IntensityRaster;
 import io.github.mzmine.util.RangeUtils;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.Date;
+import javafx.application.Platform;
 
 import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.plot.CrosshairState;
@@ -82,20 +84,30 @@ class TwoDXYPlot extends BaseXYPlot {
     // Save current time
     Date renderStartTime = new Date();
 
-    // prepare a double array of summed intensities
+    // sample the maximum intensities from the tile cache, pixels without a scan or a data point
+    // take the values of their neighbours. Missing tiles are calculated by tasks, the plot is
+    // repainted once they are available
+    final IntensityRaster raster = dataset.getIntensityRaster(
+        RangeUtils.toFloatRange(Range.closed(imageRTMin, imageRTMax)),
+        Range.closed(imageMZMin, imageMZMax), width, height, () -> Platform.runLater(() -> {
+          datasetChanged = true;
+          fireChangeEvent();
+        }));
+    if (raster == null)
+      return false;
+    raster.fillRTGaps();
+    if (plotMode != PlotMode.CENTROID) {
+      raster.fillMZGaps();
+    }
+
+    // prepare a double array of intensities
     double values[][] = new double[width][height];
     maxValue = 0; // now this is an instance variable
 
     for (int i = 0; i < width; i++)
       for (int j = 0; j < height; j++) {
 
-        double pointRTMin = imageRTMin + (i * imageRTStep);
-        double pointRTMax = pointRTMin + imageRTStep;
-        double pointMZMin = imageMZMin + (j * imageMZStep);
-        double pointMZMax = pointMZMin + imageMZStep;
-
-        double lv = dataset.upperEndpointIntensity(RangeUtils.toFloatRange(Range.closed(pointRTMin, pointRTMax)),
-            Range.closed(pointMZMin, pointMZMax), plotMode);
+        double lv = raster.getIntensity(i, j);
 
         if (logScale) {
           lv = Math.log10(lv);
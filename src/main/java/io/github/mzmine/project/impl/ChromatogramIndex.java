@@ -0,0 +1,390 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.Scan;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+/**
+ * Summary of the chromatographic dimension of a raw data file. The index holds the TIC and the base
+ * peak of every scan and a pyramid of m/z-binned intensities (one level per resolution), so TIC and
+ * XIC plots can be drawn without reading the scan data from disk. The binned levels only give an
+ * estimate for m/z ranges that do not align to bin edges, exact values still have to be calculated
+ * from the scans.
+ * <p>
+ * The index is created by {@link RawDataFileImpl#finishWriting()} and stored in the project file.
+ */
+public class ChromatogramIndex {
+
+  /**
+   * Format version of {@link #writeTo(DataOutputStream)}
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Number of m/z bins per level, from coarse to fine. Levels are capped by MAX_CELLS.
+   */
+  private static final int[] LEVEL_BINS = {16, 128, 1024};
+
+  /**
+   * Upper limit of scans x bins of all levels together. Every cell holds the sum and the maximum as
+   * floats, so the levels of one file take at most 16 MB.
+   */
+  private static final long MAX_CELLS = 1 << 21;
+
+  private final int[] scanNumbers;
+  private final double[] tic;
+  private final double[] basePeakMz;
+  private final double[] basePeakIntensity;
+
+  private final double mzMin, mzMax;
+  private final int[] levelBins;
+  // [level][scanIndex * bins + bin]
+  private final float[][] levelSum;
+  private final float[][] levelMax;
+
+  private ChromatogramIndex(int[] scanNumbers, double[] tic, double[] basePeakMz,
+      double[] basePeakIntensity, double mzMin, double mzMax, int[] levelBins, float[][] levelSum,
+      float[][] levelMax) {
+    this.scanNumbers = scanNumbers;
+    this.tic = tic;
+    this.basePeakMz = basePeakMz;
+    this.basePeakIntensity = basePeakIntensity;
+    this.mzMin = mzMin;
+    this.mzMax = mzMax;
+    this.levelBins = levelBins;
+    this.levelSum = levelSum;
+    this.levelMax = levelMax;
+  }
+
+  /**
+   * @param scanNumber the scan number
+   * @return index of the scan in this chromatogram index or -1 if the scan is not indexed
+   */
+  public int indexOf(int scanNumber) {
+    int index = Arrays.binarySearch(scanNumbers, scanNumber);
+    return index < 0 ? -1 : index;
+  }
+
+  /**
+   * @return true if this index describes exactly the given (sorted) scan numbers
+   */
+  public boolean isValidFor(@Nonnull int[] sortedScanNumbers) {
+    return Arrays.equals(scanNumbers, sortedScanNumbers);
+  }
+
+  public int getNumberOfScans() {
+    return scanNumbers.length;
+  }
+
+  public int getNumberOfLevels() {
+    return levelBins.length;
+  }
+
+  @Nonnull
+  public Range<Double> getMZRange() {
+    return Range.closed(mzMin, mzMax);
+  }
+
+  public double getTIC(int scanIndex) {
+    return tic[scanIndex];
+  }
+
+  public double getBasePeakMz(int scanIndex) {
+    return basePeakMz[scanIndex];
+  }
+
+  public double getBasePeakIntensity(int scanIndex) {
+    return basePeakIntensity[scanIndex];
+  }
+
+  /**
+   * @return true if the m/z range covers all indexed data points, so the stored TIC and base peak
+   * are exact for this range
+   */
+  public boolean encloses(@Nonnull Range<Double> mzRange) {
+    return mzRange.lowerEndpoint() <= mzMin && mzRange.upperEndpoint() >= mzMax;
+  }
+
+  /**
+   * Estimates the summed intensity of a scan within the m/z range. Bins that are only partially
+   * covered by the range contribute proportionally to the covered width.
+   *
+   * @param scanIndex index of the scan, see {@link #indexOf(int)}
+   * @param mzRange   the m/z range
+   * @return the estimated intensity
+   */
+  public double estimateTIC(int scanIndex, @Nonnull Range<Double> mzRange) {
+    if (encloses(mzRange)) {
+      return tic[scanIndex];
+    }
+    final int level = selectLevel(mzRange);
+    if (level < 0) {
+      return 0d;
+    }
+    final int bins = levelBins[level];
+    final double binWidth = (mzMax - mzMin) / bins;
+    final double lower = Math.max(mzRange.lowerEndpoint(), mzMin);
+    final double upper = Math.min(mzRange.upperEndpoint(), mzMax);
+    final int first = toBin(lower, bins);
+    final int last = toBin(upper, bins);
+    final float[] sums = levelSum[level];
+    final int offset = scanIndex * bins;
+
+    double sum = 0d;
+    for (int bin = first; bin <= last; bin++) {
+      final double binStart = mzMin + bin * binWidth;
+      final double covered =
+          Math.min(upper, binStart + binWidth) - Math.max(lower, binStart);
+      if (covered > 0d) {
+        sum += sums[offset + bin] * Math.min(1d, covered / binWidth);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Estimates the highest intensity of a scan within the m/z range. The estimate is an upper bound,
+   * because bins that overlap the range partially are fully taken into account.
+   *
+   * @param scanIndex index of the scan, see {@link #indexOf(int)}
+   * @param mzRange   the m/z range
+   * @return the highest intensity or 0 if there is no signal
+   */
+  public double estimateBasePeakIntensity(int scanIndex, @Nonnull Range<Double> mzRange) {
+    if (encloses(mzRange) || mzRange.contains(basePeakMz[scanIndex])) {
+      return basePeakIntensity[scanIndex];
+    }
+    final int level = selectLevel(mzRange);
+    if (level < 0) {
+      return 0d;
+    }
+    final int bins = levelBins[level];
+    final int first = toBin(Math.max(mzRange.lowerEndpoint(), mzMin), bins);
+    final int last = toBin(Math.min(mzRange.upperEndpoint(), mzMax), bins);
+    final float[] maxima = levelMax[level];
+    final int offset = scanIndex * bins;
+
+    double max = 0d;
+    for (int bin = first; bin <= last; bin++) {
+      max = Math.max(max, maxima[offset + bin]);
+    }
+    return max;
+  }
+
+  /**
+   * Picks the coarsest level that still resolves the m/z range with a few bins. Narrow ranges use
+   * the finest level.
+   *
+   * @return the level or -1 if the range does not overlap the indexed m/z range
+   */
+  private int selectLevel(@Nonnull Range<Double> mzRange) {
+    if (levelBins.length == 0 || mzRange.upperEndpoint() < mzMin
+        || mzRange.lowerEndpoint() > mzMax) {
+      return -1;
+    }
+    final double width = mzRange.upperEndpoint() - mzRange.lowerEndpoint();
+    for (int level = 0; level < levelBins.length; level++) {
+      final double binWidth = (mzMax - mzMin) / levelBins[level];
+      if (binWidth * 8 <= width) {
+        return level;
+      }
+    }
+    return levelBins.length - 1;
+  }
+
+  private int toBin(double mz, int bins) {
+    if (mzMax <= mzMin) {
+      return 0;
+    }
+    int bin = (int) ((mz - mzMin) / (mzMax - mzMin) * bins);
+    return Math.max(0, Math.min(bins - 1, bin));
+  }
+
+  /**
+   * Writes this index in a binary format, see {@link #readFrom(DataInputStream)}
+   */
+  public void writeTo(@Nonnull DataOutputStream out) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    out.writeInt(scanNumbers.length);
+    for (int i = 0; i < scanNumbers.length; i++) {
+      out.writeInt(scanNumbers[i]);
+      out.writeDouble(tic[i]);
+      out.writeDouble(basePeakMz[i]);
+      out.writeDouble(basePeakIntensity[i]);
+    }
+    out.writeDouble(mzMin);
+    out.writeDouble(mzMax);
+    out.writeInt(levelBins.length);
+    for (int level = 0; level < levelBins.length; level++) {
+      out.writeInt(levelBins[level]);
+      for (int i = 0; i < levelSum[level].length; i++) {
+        out.writeFloat(levelSum[level][i]);
+        out.writeFloat(levelMax[level][i]);
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads an index written by {@link #writeTo(DataOutputStream)}
+   *
+   * @throws IOException if the stream is corrupt or was written in an unknown format version
+   */
+  @Nonnull
+  public static ChromatogramIndex readFrom(@Nonnull DataInputStream in) throws IOException {
+    final int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unknown chromatogram index version " + version);
+    }
+    final int numScans = in.readInt();
+    final int[] scanNumbers = new int[numScans];
+    final double[] tic = new double[numScans];
+    final double[] basePeakMz = new double[numScans];
+    final double[] basePeakIntensity = new double[numScans];
+    for (int i = 0; i < numScans; i++) {
+      scanNumbers[i] = in.readInt();
+      tic[i] = in.readDouble();
+      basePeakMz[i] = in.readDouble();
+      basePeakIntensity[i] = in.readDouble();
+    }
+    final double mzMin = in.readDouble();
+    final double mzMax = in.readDouble();
+    final int numLevels = in.readInt();
+    final int[] levelBins = new int[numLevels];
+    final float[][] levelSum = new float[numLevels][];
+    final float[][] levelMax = new float[numLevels][];
+    for (int level = 0; level < numLevels; level++) {
+      levelBins[level] = in.readInt();
+      final int cells = levelBins[level] * numScans;
+      levelSum[level] = new float[cells];
+      levelMax[level] = new float[cells];
+      for (int i = 0; i < cells; i++) {
+        levelSum[level][i] = in.readFloat();
+        levelMax[level][i] = in.readFloat();
+      }
+    }
+    return new ChromatogramIndex(scanNumbers, tic, basePeakMz, basePeakIntensity, mzMin, mzMax,
+        levelBins, levelSum, levelMax);
+  }
+
+  /**
+   * Collects the data points of all scans of a file. Scans may be added in any order, but all scans
+   * have to be known when the builder is created.
+   */
+  public static class Builder {
+
+    private final int[] scanNumbers;
+    private final double[] tic;
+    private final double[] basePeakMz;
+    private final double[] basePeakIntensity;
+    private final double mzMin, mzMax;
+    private final int[] levelBins;
+    private final float[][] levelSum;
+    private final float[][] levelMax;
+
+    /**
+     * @param sortedScanNumbers all scan numbers of the file
+     * @param mzRange           expected m/z range of the data points. Data points outside of this
+     *                          range are only counted for the TIC and base peak of their scan, not
+     *                          for the m/z bins.
+     */
+    public Builder(@Nonnull int[] sortedScanNumbers, @Nonnull Range<Double> mzRange) {
+      this.scanNumbers = sortedScanNumbers.clone();
+      final int numScans = scanNumbers.length;
+      tic = new double[numScans];
+      basePeakMz = new double[numScans];
+      basePeakIntensity = new double[numScans];
+      mzMin = mzRange.lowerEndpoint();
+      mzMax = mzRange.upperEndpoint();
+
+      // cap the resolution of the levels for files with many scans, from coarse to fine levels
+      // until the cells are used up, skip levels that are not finer than the previous one
+      final int[] bins = new int[LEVEL_BINS.length];
+      int numLevels = 0;
+      long remainingCells = MAX_CELLS;
+      for (int levelBinCount : LEVEL_BINS) {
+        final int binCount =
+            (int) Math.min(levelBinCount, remainingCells / Math.max(1, numScans));
+        if (binCount < 1 || (numLevels > 0 && binCount <= bins[numLevels - 1])) {
+          break;
+        }
+        bins[numLevels++] = binCount;
+        remainingCells -= (long) binCount * numScans;
+      }
+      levelBins = Arrays.copyOf(bins, numLevels);
+      levelSum = new float[levelBins.length][];
+      levelMax = new float[levelBins.length][];
+      for (int level = 0; level < levelBins.length; level++) {
+        levelSum[level] = new float[levelBins[level] * numScans];
+        levelMax[level] = new float[levelBins[level] * numScans];
+      }
+    }
+
+    public void addScan(@Nonnull Scan scan, @Nonnull DataPoint[] dataPoints) {
+      final int scanIndex = Arrays.binarySearch(scanNumbers, scan.getScanNumber());
+      if (scanIndex < 0) {
+        throw new IllegalArgumentException(
+            "Scan " + scan.getScanNumber() + " was not announced to the chromatogram index");
+      }
+
+      double sum = 0d;
+      double maxIntensity = 0d;
+      double maxMz = 0d;
+      for (DataPoint dp : dataPoints) {
+        final double intensity = dp.getIntensity();
+        sum += intensity;
+        if (intensity > maxIntensity) {
+          maxIntensity = intensity;
+          maxMz = dp.getMZ();
+        }
+
+        final double mz = dp.getMZ();
+        if (mz < mzMin || mz > mzMax) {
+          continue;
+        }
+        final double relative = mzMax > mzMin ? (mz - mzMin) / (mzMax - mzMin) : 0d;
+        for (int level = 0; level < levelBins.length; level++) {
+          final int bins = levelBins[level];
+          final int bin = Math.max(0, Math.min(bins - 1, (int) (relative * bins)));
+          final int cell = scanIndex * bins + bin;
+          levelSum[level][cell] += (float) intensity;
+          if (intensity > levelMax[level][cell]) {
+            levelMax[level][cell] = (float) intensity;
+          }
+        }
+      }
+      tic[scanIndex] = sum;
+      basePeakMz[scanIndex] = maxMz;
+      basePeakIntensity[scanIndex] = maxIntensity;
+    }
+
+    @Nonnull
+    public ChromatogramIndex build() {
+      return new ChromatogramIndex(scanNumbers, tic, basePeakMz, basePeakIntensity, mzMin, mzMax,
+          levelBins, levelSum, levelMax);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+
+/**
+ * A raw data file whose scans are derived from the scans of other raw data files (e.g., cropped,
+ * filtered or merged). The data points are not copied to a temporary file, each scan is
+ * transformed from its parent scan when it is read. The most recently read scans of all derived
+ * files are kept as m/z and intensity arrays in one cache that is limited by its size in bytes
+ * ({@link #MAX_CACHE_BYTES}). The data points are written to the
+ * storage of this file by {@link #materialize()}, which is called before the project is saved or
+ * a parent file is removed.
+ */
+public class DerivedRawDataFileImpl extends RawDataFileImpl {
+
+  private static final Logger logger = Logger.getLogger(DerivedRawDataFileImpl.class.getName());
+
+  /**
+   * Maximum size of the cached scans of all derived files
+   */
+  private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+
+  // derived data points of the most recently read scans of all files, evicted by size
+  private static final Cache<DerivedScan, CachedDataPoints> cache = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_CACHE_BYTES)
+      .weigher((DerivedScan scan, CachedDataPoints values) -> values.getSizeInBytes()).build();
+
+  /**
+   * Creates the data points of a derived scan
+   */
+  @FunctionalInterface
+  public interface ScanTransform {
+
+    /**
+     * Called by several threads at once and may be called several times for the same scan, the
+     * result must only depend on the parent scan
+     *
+     * @param parentScan the scan of the parent raw data file
+     * @return a scan with the derived data points and spectrum type, or null for a scan without
+     *         data points
+     */
+    @Nullable
+    Scan apply(@Nonnull Scan parentScan);
+  }
+
+  private final List<DerivedScan> derivedScans = new ArrayList<>();
+  private final Set<RawDataFile> parentFiles = new HashSet<>();
+  private ScanTransform transform;
+
+  public DerivedRawDataFileImpl(String dataFileName, @Nonnull ScanTransform transform)
+      throws IOException {
+    super(dataFileName);
+    this.transform = transform;
+  }
+
+  /**
+   * Adds a scan that is derived from the given scan and keeps its scan number
+   */
+  public void addDerivedScan(@Nonnull Scan parentScan) throws IOException {
+    addDerivedScan(parentScan, parentScan.getScanNumber());
+  }
+
+  /**
+   * Adds a scan that is derived from the given scan
+   *
+   * @param scanNumber the number of the derived scan in this file
+   */
+  public synchronized void addDerivedScan(@Nonnull Scan parentScan, int scanNumber)
+      throws IOException {
+    if (transform == null) {
+      throw new IllegalStateException("Cannot add derived scans to a materialized file");
+    }
+    final DerivedScan scan = new DerivedScan(this, parentScan, scanNumber);
+    derivedScans.add(scan);
+    parentFiles.add(parentScan.getDataFile());
+    addScan(scan);
+  }
+
+  /**
+   * @return true if the scans of this file are derived from scans of the given file and were not
+   *         materialized yet
+   */
+  public synchronized boolean isDerivedFrom(@Nonnull RawDataFile file) {
+    return transform != null && parentFiles.contains(file);
+  }
+
+  public synchronized boolean isMaterialized() {
+    return transform == null;
+  }
+
+  /**
+   * Writes the data points of all derived scans to the storage of this file and releases the
+   * parent files. Later reads do not depend on the parent files anymore.
+   */
+  public synchronized void materialize() throws IOException {
+    if (transform == null) {
+      return;
+    }
+    logger.finest("Writing derived scans of " + getName() + " to the temporary file");
+    for (DerivedScan scan : derivedScans) {
+      final DataPoint[] dataPoints = scan.getDataPoints();
+      scan.setStorageID(storeDataPoints(dataPoints));
+    }
+    for (DerivedScan scan : derivedScans) {
+      scan.releaseParentScan();
+    }
+    cache.invalidateAll(derivedScans);
+    derivedScans.clear();
+    parentFiles.clear();
+    transform = null;
+  }
+
+  /**
+   * @return a copy of the derived data points of the scan, or null if this file was materialized
+   */
+  @Nullable
+  DataPoint[] readDerivedDataPoints(@Nonnull DerivedScan scan) {
+    final ScanTransform transform;
+    final Scan parentScan;
+    synchronized (this) {
+      if (this.transform == null) {
+        return null;
+      }
+      final CachedDataPoints cached = cache.getIfPresent(scan);
+      if (cached != null) {
+        return cached.toDataPoints();
+      }
+      transform = this.transform;
+      parentScan = scan.getParentScan();
+    }
+
+    // transform without the lock, other threads may read the same scan in the meantime
+    final Scan derived = transform.apply(parentScan);
+    final DataPoint[] dataPoints = derived != null ? derived.getDataPoints() : new DataPoint[0];
+    if (derived != null) {
+      scan.setDerivedSpectrumType(derived.getSpectrumType());
+    }
+
+    synchronized (this) {
+      // a materialized file reads its own storage
+      if (this.transform != null) {
+        cache.put(scan, new CachedDataPoints(dataPoints));
+      }
+    }
+    return dataPoints;
+  }
+
+  @Override
+  public synchronized void close() {
+    cache.invalidateAll(derivedScans);
+    super.close();
+  }
+
+  /**
+   * The m/z and intensity values of a derived scan
+   */
+  private static final class CachedDataPoints {
+
+    private final double[] mzValues;
+    private final double[] intensityValues;
+
+    private CachedDataPoints(DataPoint[] dataPoints) {
+      mzValues = new double[dataPoints.length];
+      intensityValues = new double[dataPoints.length];
+      for (int i = 0; i < dataPoints.length; i++) {
+        mzValues[i] = dataPoints[i].getMZ();
+        intensityValues[i] = dataPoints[i].getIntensity();
+      }
+    }
+
+    private DataPoint[] toDataPoints() {
+      final DataPoint[] dataPoints = new DataPoint[mzValues.length];
+      for (int i = 0; i < dataPoints.length; i++) {
+        dataPoints[i] = new SimpleDataPoint(mzValues[i], intensityValues[i]);
+      }
+      return dataPoints;
+    }
+
+    private int getSizeInBytes() {
+      // two arrays and the entry
+      return 2 * Double.BYTES * mzValues.length + 64;
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import javax.annotation.Nonnull;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.Scan;
+
+/**
+ * Scan of a {@link DerivedRawDataFileImpl}. The data points are created from the parent scan when
+ * they are read, until the file is materialized.
+ */
+class DerivedScan extends StorableScan {
+
+  private final DerivedRawDataFileImpl derivedFile;
+  private Scan parentScan;
+  private volatile MassSpectrumType derivedSpectrumType;
+
+  DerivedScan(DerivedRawDataFileImpl derivedFile, Scan parentScan, int scanNumber) {
+    // m/z range, base peak, TIC and number of data points are set by finishWriting()
+    super(derivedFile, -1, 0, scanNumber, parentScan.getMSLevel(),
+        parentScan.getRetentionTime(), parentScan.getPrecursorMZ(),
+        parentScan.getPrecursorCharge(), parentScan.getFragmentScanNumbers(), null,
+        parentScan.getPolarity(), parentScan.getScanDefinition(),
+        parentScan.getScanningMZRange(), parentScan.getMobility(), parentScan.getMobilityType());
+    this.derivedFile = derivedFile;
+    this.parentScan = parentScan;
+  }
+
+  @Override
+  @Nonnull
+  public DataPoint[] getDataPoints() {
+    final DataPoint[] dataPoints = derivedFile.readDerivedDataPoints(this);
+    return dataPoints != null ? dataPoints : super.getDataPoints();
+  }
+
+  @Override
+  public MassSpectrumType getSpectrumType() {
+    if (derivedSpectrumType == null) {
+      // the spectrum type is set by the transformation of the parent scan
+      getDataPoints();
+    }
+    return derivedSpectrumType != null ? derivedSpectrumType : super.getSpectrumType();
+  }
+
+  void setDerivedSpectrumType(MassSpectrumType spectrumType) {
+    this.derivedSpectrumType = spectrumType;
+  }
+
+  Scan getParentScan() {
+    return parentScan;
+  }
+
+  void releaseParentScan() {
+    parentScan = null;
+  }
+}
@@ -21,11 +21,19 @@ package io.github.mzmine.project.impl;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
+import java.util.logging.Logger;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.visualization.intensitytiles.IntensityTileCache;
 import io.github.mzmine.parameters.UserParameter;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskStatus;
 import javafx.application.Platform;
 import javafx.beans.property.ListProperty;
 import javafx.beans.property.SimpleListProperty;
@@ -38,6 +46,8 @@ import javafx.collections.ObservableList;
  */
 public class MZmineProjectImpl implements MZmineProject {
 
+  private static final Logger logger = Logger.getLogger(MZmineProjectImpl.class.getName());
+
   private Hashtable<UserParameter<?, ?>, Hashtable<RawDataFile, Object>> projectParametersAndValues;
 
   private final SimpleListProperty<RawDataFile> rawDataFilesProperty = //
@@ -157,9 +167,59 @@ public class MZmineProjectImpl implements MZmineProject {
       rawDataFilesProperty.get().remove(file);
     });
 
-    // Close the data file, which also removed the temporary data
-    file.close();
+    // Files derived from this file need their own copy of the data points
+    final List<DerivedRawDataFileImpl> derivedFiles = new ArrayList<>();
+    for (RawDataFile other : getDataFiles()) {
+      if (other instanceof DerivedRawDataFileImpl
+          && ((DerivedRawDataFileImpl) other).isDerivedFrom(file)) {
+        derivedFiles.add((DerivedRawDataFileImpl) other);
+      }
+    }
+    if (derivedFiles.isEmpty()) {
+      closeFile(file);
+      return;
+    }
+
+    // writing the derived scans reads all scans of this file, do not block the calling thread,
+    // which may be the GUI thread
+    MZmineCore.getTaskController().addTask(new AbstractTask() {
+      private int materializedFiles = 0;
+
+      @Override
+      public void run() {
+        setStatus(TaskStatus.PROCESSING);
+        for (DerivedRawDataFileImpl derivedFile : derivedFiles) {
+          try {
+            derivedFile.materialize();
+          } catch (IOException e) {
+            logger.severe("Could not write the scans of " + derivedFile + ": " + e.toString());
+          }
+          materializedFiles++;
+        }
+        // the parent file is closed in any case, even if the task was canceled
+        closeFile(file);
+        setStatus(TaskStatus.FINISHED);
+      }
 
+      @Override
+      public String getTaskDescription() {
+        return "Writing the scans of the files derived from " + file.getName();
+      }
+
+      @Override
+      public double getFinishedPercentage() {
+        return (double) materializedFiles / derivedFiles.size();
+      }
+    });
+  }
+
+  /**
+   * Closes the data file, which also removes the temporary data
+   */
+  private static void closeFile(RawDataFile file) {
+    file.close();
+    IntensityTileCache.getInstance().invalidate(file);
+    MassListCache.getInstance().invalidate(file);
   }
 
   @Override
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of decoded mass lists, shared by all modules that read the mass lists of the same
+ * (fragment) scans repeatedly, e.g., spectral matching, alignment by spectral similarity or
+ * MS/MS merging. Mass lists stored in the temporary file of a raw data file are read through the
+ * synchronized {@link RawDataFileImpl#readDataPoints(int)}; the cache keeps their m/z and
+ * intensity values as primitive arrays. Hot loops read these arrays directly through
+ * {@link #getValues(MassList)}, {@link #getDataPoints(MassList)} creates new data points for every
+ * request.
+ * <p>
+ * Entries are keyed by raw data file, scan number and mass list name and are loaded lazily on the
+ * first request. An entry is only valid for the mass list instance it was decoded from, a mass
+ * list that was replaced by a new one of the same name is decoded again. The cache is split into
+ * independently locked segments, each a least recently used map with an equal share of
+ * {@link #MAX_CACHE_BYTES}, so threads reading different spectra do not wait for each other.
+ */
+public class MassListCache {
+
+  private static final long MAX_CACHE_BYTES = 128L * 1024 * 1024;
+
+  // power of two
+  private static final int SEGMENTS = 16;
+
+  private static final MassListCache instance = new MassListCache();
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private MassListCache() {
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(MAX_CACHE_BYTES / SEGMENTS);
+    }
+  }
+
+  public static MassListCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * @return the data points of the mass list of the scan, or null if the scan does not have a mass
+   *         list of this name
+   */
+  @Nullable
+  public DataPoint[] getDataPoints(@Nonnull Scan scan, @Nonnull String massListName) {
+    final MassList massList = scan.getMassList(massListName);
+    return massList == null ? null : getDataPoints(massList);
+  }
+
+  /**
+   * Returns the data points of a mass list. Mass lists that are kept in memory are returned as they
+   * are; stored mass lists are decoded once and returned as a new array on every call, so callers
+   * may sort or modify the array.
+   */
+  @Nonnull
+  public DataPoint[] getDataPoints(@Nonnull MassList massList) {
+    if (!(massList instanceof StorableMassList)) {
+      return massList.getDataPoints();
+    }
+    return getEntry((StorableMassList) massList).toDataPoints();
+  }
+
+  /**
+   * @return the m/z and intensity values of the mass list of the scan, or null if the scan does not
+   *         have a mass list of this name
+   */
+  @Nullable
+  public Values getValues(@Nonnull Scan scan, @Nonnull String massListName) {
+    final MassList massList = scan.getMassList(massListName);
+    return massList == null ? null : getValues(massList);
+  }
+
+  /**
+   * Returns the m/z and intensity values of a mass list without creating data points. The values
+   * of stored mass lists are shared with the cache and must not be modified.
+   */
+  @Nonnull
+  public Values getValues(@Nonnull MassList massList) {
+    if (!(massList instanceof StorableMassList)) {
+      return new Values(massList.getDataPoints());
+    }
+    return getEntry((StorableMassList) massList).values;
+  }
+
+  private Entry getEntry(StorableMassList massList) {
+    final Scan scan = massList.getScan();
+    final Key key = new Key(scan.getDataFile(), scan.getScanNumber(), massList.getName());
+    final Segment segment = segments[key.hashCode() & (SEGMENTS - 1)];
+
+    Entry entry = segment.get(key);
+    // a mass list of the same name might have been replaced, the storage ID of the new one may be
+    // the same, or the stored data points might have been removed
+    final int storageID = massList.getStorageID();
+    if (entry != null && entry.massList == massList && entry.storageID == storageID) {
+      hits.increment();
+      return entry;
+    }
+
+    // decode outside of the lock, concurrent misses of the same mass list read it twice
+    misses.increment();
+    entry = new Entry(massList, storageID, new Values(massList.getDataPoints()));
+    evictions.add(segment.put(key, entry));
+    return entry;
+  }
+
+  /**
+   * Removes all mass lists of a raw data file, e.g., when the file is removed from the project.
+   */
+  public void invalidate(@Nonnull RawDataFile dataFile) {
+    for (Segment segment : segments) {
+      segment.invalidate(dataFile);
+    }
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return the share of requests that were answered from the cache
+   */
+  public double getHitRate() {
+    final long hitCount = hits.sum();
+    final long requests = hitCount + misses.sum();
+    return requests == 0 ? 0d : (double) hitCount / requests;
+  }
+
+  public long getCachedBytes() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      bytes += segment.getCachedBytes();
+    }
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return "Mass list cache: " + getHitCount() + " hits, " + getMissCount() + " misses, "
+        + getEvictionCount() + " evictions, " + getCachedBytes() / 1024 + " KB";
+  }
+
+  /**
+   * One least recently used map of the cache, all methods lock only this segment
+   */
+  private static final class Segment {
+
+    private final long maxBytes;
+    // access ordered, the eldest entry is the least recently used mass list
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes = 0;
+
+    private Segment(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    private synchronized Entry get(Key key) {
+      return entries.get(key);
+    }
+
+    /**
+     * @return the number of evicted entries
+     */
+    private synchronized int put(Key key, Entry entry) {
+      final Entry previous = entries.put(key, entry);
+      if (previous != null) {
+        cachedBytes -= previous.getSizeInBytes();
+      }
+      cachedBytes += entry.getSizeInBytes();
+
+      // a mass list larger than the segment is not kept either
+      int evicted = 0;
+      final Iterator<Entry> it = entries.values().iterator();
+      while (cachedBytes > maxBytes && it.hasNext()) {
+        cachedBytes -= it.next().getSizeInBytes();
+        it.remove();
+        evicted++;
+      }
+      return evicted;
+    }
+
+    private synchronized void invalidate(RawDataFile dataFile) {
+      final Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+      while (it.hasNext()) {
+        final Map.Entry<Key, Entry> entry = it.next();
+        if (entry.getKey().dataFile == dataFile) {
+          cachedBytes -= entry.getValue().getSizeInBytes();
+          it.remove();
+        }
+      }
+    }
+
+    private synchronized long getCachedBytes() {
+      return cachedBytes;
+    }
+  }
+
+  /**
+   * Decoded values of one stored mass list
+   */
+  private static final class Entry {
+
+    // identifies the mass list the values were decoded from
+    private final StorableMassList massList;
+    private final int storageID;
+    private final Values values;
+
+    private Entry(StorableMassList massList, int storageID, Values values) {
+      this.massList = massList;
+      this.storageID = storageID;
+      this.values = values;
+    }
+
+    private DataPoint[] toDataPoints() {
+      final DataPoint[] dataPoints = new DataPoint[values.mzValues.length];
+      for (int i = 0; i < dataPoints.length; i++) {
+        dataPoints[i] = new SimpleDataPoint(values.mzValues[i], values.intensityValues[i]);
+      }
+      return dataPoints;
+    }
+
+    private long getSizeInBytes() {
+      // two arrays and the entry
+      return 2L * Double.BYTES * values.mzValues.length + 96;
+    }
+  }
+
+  /**
+   * The m/z and intensity values of a mass list in the order of its data points
+   */
+  public static final class Values {
+
+    private final double[] mzValues;
+    private final double[] intensityValues;
+
+    private Values(DataPoint[] dataPoints) {
+      mzValues = new double[dataPoints.length];
+      intensityValues = new double[dataPoints.length];
+      for (int i = 0; i < dataPoints.length; i++) {
+        mzValues[i] = dataPoints[i].getMZ();
+        intensityValues[i] = dataPoints[i].getIntensity();
+      }
+    }
+
+    public int getNumberOfDataPoints() {
+      return mzValues.length;
+    }
+
+    /**
+     * @return the m/z values, must not be modified
+     */
+    @Nonnull
+    public double[] getMzValues() {
+      return mzValues;
+    }
+
+    /**
+     * @return the intensity values, must not be modified
+     */
+    @Nonnull
+    public double[] getIntensityValues() {
+      return intensityValues;
+    }
+  }
+
+  private static final class Key {
+
+    private final RawDataFile dataFile;
+    private final int scanNumber;
+    private final String massListName;
+    private final int hashCode;
+
+    private Key(RawDataFile dataFile, int scanNumber, String massListName) {
+      this.dataFile = dataFile;
+      this.scanNumber = scanNumber;
+      this.massListName = massListName;
+      // spread the bits, the lowest bits select the segment
+      final int h = (31 * System.identityHashCode(dataFile) + scanNumber) * 31
+          + massListName.hashCode();
+      hashCode = h ^ (h >>> 16);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key that = (Key) o;
+      return dataFile == that.dataFile && scanNumber == that.scanNumber
+          && Objects.equals(massListName, that.massListName);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -28,6 +28,7 @@ import io.github.mzmine.datamodel.RawDataFileWriter;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.files.MappedBufferUtils;
 import io.github.mzmine.util.javafx.FxColorUtil;
 import java.io.File;
 import java.io.IOException;
@@ -36,7 +37,9 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
@@ -44,8 +47,11 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -64,6 +70,10 @@ import javax.annotation.Nullable;
  * removeStoredDataPoints(), the dataPointsFile is not modified, the storage ID is just deleted from
  * the two TreeMaps. When the project is saved, the contents of the dataPointsFile are consolidated
  * - only data points referenced by the TreeMaps are saved (see the RawDataFileSaveHandler class).
+ * <p>
+ * Data points of a project that were saved uncompressed are memory-mapped in place from the project
+ * file (see {@link #openMappedDataPointsFile(File, long, long)}). They are copied to a temporary
+ * data points file as soon as new data points are stored.
  */
 public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
@@ -87,8 +97,28 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
   private File dataPointsFileName;
   private RandomAccessFile dataPointsFile;
 
+  // read-only data points within a project file, until they are copied on the first write
+  private static final int MAPPED_CHUNK_BITS = 30;
+  private static final long MAPPED_CHUNK_MASK = (1L << MAPPED_CHUNK_BITS) - 1;
+  private File mappedFile;
+  private RandomAccessFile mappedFileAccess;
+  private long mappedOffset, mappedLength;
+  private MappedByteBuffer[] mappedChunks;
+
+  // counts the changes of the stored data points, see getSavedDataPointsEntry()
+  private int dataPointsModCount;
+  private String savedDataPointsEntry;
+  private int savedDataPointsModCount = -1;
+
   private ObjectProperty<Color> color;
 
+  // TIC, base peak and binned intensities of all scans, see finishWriting()
+  private ChromatogramIndex chromatogramIndex;
+
+  // m/z indices of the data points by MS level, created on demand and only once per MS level
+  private final Map<Integer, CompletableFuture<ScanMzIndex>> scanMzIndices =
+      new ConcurrentHashMap<>();
+
   // To store mass lists that have been added but not yet reflected in the GUI
   // by the
   // notifyUpdatedMassLists() method
@@ -170,6 +200,118 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
   }
 
+  /**
+   * Maps the data points stored at the offset of a file, e.g., an uncompressed entry of a project
+   * file, instead of copying them to a temporary file. The file is only read, the data points are
+   * copied to a new data points file before any data points are added.
+   */
+  public synchronized void openMappedDataPointsFile(File file, long offset, long length)
+      throws IOException {
+
+    if (this.dataPointsFile != null || this.mappedFile != null) {
+      throw new IOException("Cannot open another data points file, because one is already open");
+    }
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final int numChunks = (int) ((length + MAPPED_CHUNK_MASK) >>> MAPPED_CHUNK_BITS);
+      final MappedByteBuffer[] chunks = new MappedByteBuffer[numChunks];
+      for (int i = 0; i < numChunks; i++) {
+        final long chunkOffset = (long) i << MAPPED_CHUNK_BITS;
+        chunks[i] = channel.map(MapMode.READ_ONLY, offset + chunkOffset,
+            Math.min(length - chunkOffset, 1L << MAPPED_CHUNK_BITS));
+      }
+      this.mappedChunks = chunks;
+    } catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+    this.mappedFile = file;
+    this.mappedFileAccess = raf;
+    this.mappedOffset = offset;
+    this.mappedLength = length;
+  }
+
+  /**
+   * @return true if the data points are still read from this file
+   */
+  public synchronized boolean isMappedFrom(@Nonnull File file) {
+    return file.equals(mappedFile);
+  }
+
+  /**
+   * Copies the mapped data points to a new temporary data points file, e.g., before new data points
+   * are stored or the mapped file is replaced. Does nothing if no data points are mapped.
+   */
+  public synchronized void copyMappedDataPoints() throws IOException {
+    if (mappedFile == null) {
+      return;
+    }
+
+    final File newFile = RawDataFileImpl.createNewDataPointsFile();
+    try (RandomAccessFile copy = new RandomAccessFile(newFile, "rw")) {
+      final FileChannel source = mappedFileAccess.getChannel();
+      final FileChannel target = copy.getChannel();
+      long copied = 0;
+      while (copied < mappedLength) {
+        copied += source.transferTo(mappedOffset + copied, mappedLength - copied, target);
+      }
+    }
+    logger.finest(() -> "Copied the data points of " + dataFileName + " from " + mappedFile
+        + " to " + newFile);
+
+    closeMappedDataPoints();
+    // the stored offsets stay valid, the copy starts at the first data point
+    openDataPointsFile(newFile);
+  }
+
+  private void closeMappedDataPoints() throws IOException {
+    // all reads of the chunks hold the monitor of this file, so no chunk is in use any more and
+    // the mapping can be released before the project file is replaced or deleted
+    for (MappedByteBuffer chunk : mappedChunks) {
+      MappedBufferUtils.unmap(chunk);
+    }
+    mappedChunks = null;
+    mappedFile = null;
+    mappedFileAccess.close();
+    mappedFileAccess = null;
+  }
+
+  /**
+   * Reads the bytes of the stored data points (m/z and intensity as doubles), e.g., to copy them
+   * to a project file
+   *
+   * @param buffer has to hold at least 16 bytes per data point
+   * @return the number of bytes
+   */
+  public synchronized int readDataPointsBytes(int ID, byte[] buffer) throws IOException {
+    final Long currentOffset = dataPointsOffsets.get(ID);
+    final Integer numOfDataPoints = dataPointsLengths.get(ID);
+
+    if ((currentOffset == null) || (numOfDataPoints == null)) {
+      throw new IllegalArgumentException("Unknown storage ID " + ID);
+    }
+
+    final int numOfBytes = numOfDataPoints * 2 * 8;
+    if (mappedChunks != null) {
+      int read = 0;
+      while (read < numOfBytes) {
+        final long position = currentOffset + read;
+        final ByteBuffer chunk =
+            mappedChunks[(int) (position >>> MAPPED_CHUNK_BITS)].duplicate();
+        ((Buffer) chunk).position((int) (position & MAPPED_CHUNK_MASK));
+        final int bytes = Math.min(numOfBytes - read, chunk.remaining());
+        chunk.get(buffer, read, bytes);
+        read += bytes;
+      }
+    } else {
+      dataPointsFile.seek(currentOffset);
+      dataPointsFile.readFully(buffer, 0, numOfBytes);
+    }
+    return numOfBytes;
+  }
+
   /**
    * @see io.github.mzmine.datamodel.RawDataFile#getNumOfScans()
    */
@@ -409,6 +551,9 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
   public synchronized int storeDataPoints(DataPoint dataPoints[]) throws IOException {
 
+    // copy on the first write, mapped project files are never modified
+    copyMappedDataPoints();
+
     if (dataPointsFile == null) {
       File newFile = RawDataFileImpl.createNewDataPointsFile();
       openDataPointsFile(newFile);
@@ -449,6 +594,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     dataPointsOffsets.put(currentID, currentOffset);
     dataPointsLengths.put(currentID, numOfDataPoints);
+    dataPointsModCount++;
 
     return currentID;
 
@@ -465,6 +611,19 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     final int numOfBytes = numOfDataPoints * 2 * 8;
 
+    if (mappedChunks != null) {
+      // a data point never crosses a chunk border, the chunk size is a multiple of 16 bytes
+      final DataPoint dataPoints[] = new DataPoint[numOfDataPoints];
+      for (int i = 0; i < numOfDataPoints; i++) {
+        final long position = currentOffset + i * 16L;
+        final MappedByteBuffer chunk = mappedChunks[(int) (position >>> MAPPED_CHUNK_BITS)];
+        final int chunkPosition = (int) (position & MAPPED_CHUNK_MASK);
+        dataPoints[i] =
+            new SimpleDataPoint(chunk.getDouble(chunkPosition), chunk.getDouble(chunkPosition + 8));
+      }
+      return dataPoints;
+    }
+
     if (buffer.capacity() < numOfBytes) {
       buffer = ByteBuffer.allocate(numOfBytes * 2);
     } else {
@@ -493,6 +652,39 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
   public synchronized void removeStoredDataPoints(int ID) throws IOException {
     dataPointsOffsets.remove(ID);
     dataPointsLengths.remove(ID);
+    dataPointsModCount++;
+  }
+
+  /**
+   * The number of changes of the stored data points. Use it with
+   * {@link #setSavedDataPointsEntry(String, int)} to record the state that was saved.
+   */
+  public synchronized int getDataPointsModCount() {
+    return dataPointsModCount;
+  }
+
+  /**
+   * Records the project file entry that contains the data points, e.g., after saving or opening a
+   * project
+   *
+   * @param entryName the name of the entry in the project file
+   * @param modCount  {@link #getDataPointsModCount()} of the saved data points
+   */
+  public synchronized void setSavedDataPointsEntry(@Nullable String entryName, int modCount) {
+    this.savedDataPointsEntry = entryName;
+    this.savedDataPointsModCount = modCount;
+  }
+
+  /**
+   * The consolidated data points are saved to the project file in the order of the storage IDs, so
+   * the entry can be copied as long as no data points were stored or removed.
+   *
+   * @return the name of the project file entry that contains the current data points or null if
+   *         they were changed since the project was saved or opened
+   */
+  @Nullable
+  public synchronized String getSavedDataPointsEntry() {
+    return savedDataPointsModCount == dataPointsModCount ? savedDataPointsEntry : null;
   }
 
   @Override
@@ -520,8 +712,30 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
    */
   @Override
   public synchronized RawDataFile finishWriting() throws IOException {
+    disposeScanMzIndices();
+    // the chromatogram index is built in the same pass over the data points, unless a valid index
+    // was already loaded from the project file
+    final int[] scanNumbers = getScanNumbers();
+    ChromatogramIndex.Builder indexBuilder = null;
+    if (chromatogramIndex == null || !chromatogramIndex.isValidFor(scanNumbers)) {
+      Range<Double> mzRange = null;
+      for (StorableScan scan : scans.values()) {
+        mzRange = mzRange == null ? scan.getScanningMZRange()
+            : mzRange.span(scan.getScanningMZRange());
+      }
+      indexBuilder = new ChromatogramIndex.Builder(scanNumbers,
+          mzRange != null ? mzRange : Range.singleton(0d));
+    }
+
     for (StorableScan scan : scans.values()) {
-      scan.updateValues();
+      final DataPoint[] dataPoints = scan.getDataPoints();
+      scan.updateValues(dataPoints);
+      if (indexBuilder != null) {
+        indexBuilder.addScan(scan, dataPoints);
+      }
+    }
+    if (indexBuilder != null) {
+      chromatogramIndex = indexBuilder.build();
     }
     logger.finest("Writing of scans to file " + dataPointsFileName + " finished");
     return this;
@@ -645,6 +859,74 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
     return getScanNumbers(msLevel).length;
   }
 
+  /**
+   * @return the chromatogram index of this file or null, if {@link #finishWriting()} was not called
+   * yet
+   */
+  @Nullable
+  public synchronized ChromatogramIndex getChromatogramIndex() {
+    return chromatogramIndex;
+  }
+
+  /**
+   * Sets a previously stored chromatogram index. The index is only used if it matches the scans of
+   * this file, otherwise it is recalculated in {@link #finishWriting()}.
+   */
+  public synchronized void setChromatogramIndex(@Nullable ChromatogramIndex chromatogramIndex) {
+    this.chromatogramIndex = chromatogramIndex;
+  }
+
+  /**
+   * The inverted m/z index of the data points of all scans of an MS level. The index is created by
+   * reading all scans once, which only pays off for the extraction of many chromatograms, e.g., in
+   * gap filling.
+   *
+   * @param msLevel the MS level
+   * @param create  create the index if it does not exist yet
+   * @return the index or null if it does not exist and create is false, or could not be created
+   */
+  @Nullable
+  public ScanMzIndex getScanMzIndex(int msLevel, boolean create) {
+    CompletableFuture<ScanMzIndex> index = scanMzIndices.get(msLevel);
+    if (index == null) {
+      if (!create) {
+        return null;
+      }
+      // the first caller builds the index, all others wait for it. Reading all scans takes long,
+      // so the index is built without holding the lock of this file
+      final CompletableFuture<ScanMzIndex> build = new CompletableFuture<>();
+      index = scanMzIndices.putIfAbsent(msLevel, build);
+      if (index == null) {
+        index = build;
+        ScanMzIndex built = null;
+        try {
+          built = ScanMzIndex.build(this, msLevel);
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Could not create m/z index of " + dataFileName, e);
+        } finally {
+          // failed builds are tried again by the next caller
+          if (built == null) {
+            scanMzIndices.remove(msLevel, build);
+          }
+          build.complete(built);
+        }
+      }
+    } else if (!create && !index.isDone()) {
+      return null;
+    }
+    return index.join();
+  }
+
+  private void disposeScanMzIndices() {
+    // indices that are still being built are disposed once they are complete
+    scanMzIndices.values().forEach(index -> index.thenAccept(built -> {
+      if (built != null) {
+        built.dispose();
+      }
+    }));
+    scanMzIndices.clear();
+  }
+
   public synchronized TreeMap<Integer, Long> getDataPointsOffsets() {
     return dataPointsOffsets;
   }
@@ -688,7 +970,12 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
   @Override
   public synchronized void close() {
+    disposeScanMzIndices();
     try {
+      // never delete a mapped project file
+      if (mappedFile != null) {
+        closeMappedDataPoints();
+      }
       if (dataPointsFileName != null) {
         dataPointsFile.close();
         dataPointsFileName.delete();
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.project.impl;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.util.files.MappedBufferUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+
+/**
+ * Inverted m/z index of all data points of the scans of one MS level. The data points are stored
+ * as postings (scan index, m/z, intensity) in a memory-mapped temporary file, grouped by m/z bins
+ * and in scan order within each bin. An extracted ion chromatogram only reads the postings of the
+ * bins that overlap the m/z range instead of all data points of all scans.
+ * <p>
+ * The index is created on demand by {@link RawDataFileImpl#getScanMzIndex(int, boolean)} and
+ * deleted when the raw data file is closed.
+ */
+public class ScanMzIndex {
+
+  private static final Logger logger = Logger.getLogger(ScanMzIndex.class.getName());
+
+  private static final double MIN_BIN_WIDTH = 0.01;
+  private static final int MAX_BINS = 1 << 22;
+
+  // every mapped chunk holds 1 GB, element sizes (4, 8) divide the chunk size
+  private static final int CHUNK_BITS = 30;
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  private final int[] scanNumbers;
+  private final double mzMin;
+  private final double binWidth;
+  // postings of bin i are [binOffsets[i], binOffsets[i + 1])
+  private final long[] binOffsets;
+
+  private final File file;
+  private final RandomAccessFile raf;
+  private final MappedByteBuffer[] scanChunks;
+  private final MappedByteBuffer[] mzChunks;
+  private final MappedByteBuffer[] intensityChunks;
+
+  // reading unmapped chunks crashes the JVM, dispose() waits for running reads
+  private final ReadWriteLock disposeLock = new ReentrantReadWriteLock();
+  private boolean disposed = false;
+
+  private ScanMzIndex(int[] scanNumbers, double mzMin, double binWidth, long[] binOffsets,
+      File file, RandomAccessFile raf) throws IOException {
+    this.scanNumbers = scanNumbers;
+    this.mzMin = mzMin;
+    this.binWidth = binWidth;
+    this.binOffsets = binOffsets;
+    this.file = file;
+    this.raf = raf;
+
+    final long numPostings = binOffsets[binOffsets.length - 1];
+    final FileChannel channel = raf.getChannel();
+    scanChunks = map(channel, 0, numPostings * Integer.BYTES);
+    mzChunks = map(channel, numPostings * Integer.BYTES, numPostings * Double.BYTES);
+    intensityChunks = map(channel, numPostings * (Integer.BYTES + Double.BYTES),
+        numPostings * Double.BYTES);
+  }
+
+  /**
+   * Reads all scans of an MS level twice: first to count the data points per m/z bin, then to
+   * write the postings to their bins.
+   */
+  @Nonnull
+  static ScanMzIndex build(@Nonnull RawDataFile dataFile, int msLevel) throws IOException {
+    final int[] scanNumbers = dataFile.getScanNumbers(msLevel).clone();
+    Arrays.sort(scanNumbers);
+
+    final Range<Double> mzRange = dataFile.getDataMZRange(msLevel);
+    final double mzMin = mzRange.lowerEndpoint();
+    final double span = mzRange.upperEndpoint() - mzMin;
+    final double binWidth = Math.max(MIN_BIN_WIDTH, span / MAX_BINS);
+    final int numBins = (int) Math.min(MAX_BINS, Math.floor(span / binWidth) + 1);
+
+    // count postings per bin
+    final long[] binOffsets = new long[numBins + 1];
+    for (int scanNumber : scanNumbers) {
+      for (DataPoint dp : dataFile.getScan(scanNumber).getDataPoints()) {
+        binOffsets[bin(dp.getMZ(), mzMin, binWidth, numBins) + 1]++;
+      }
+    }
+    for (int i = 1; i <= numBins; i++) {
+      binOffsets[i] += binOffsets[i - 1];
+    }
+
+    final File file = File.createTempFile("mzmine", ".mzindex");
+    file.deleteOnExit();
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    final long numPostings = binOffsets[numBins];
+    raf.setLength(numPostings * (Integer.BYTES + 2 * Double.BYTES));
+    final ScanMzIndex index =
+        new ScanMzIndex(scanNumbers, mzMin, binWidth, binOffsets, file, raf);
+
+    // write postings, scans are read in ascending order so every bin is in scan order
+    final long[] cursors = Arrays.copyOf(binOffsets, numBins);
+    for (int scanIndex = 0; scanIndex < scanNumbers.length; scanIndex++) {
+      final Scan scan = dataFile.getScan(scanNumbers[scanIndex]);
+      for (DataPoint dp : scan.getDataPoints()) {
+        final long posting = cursors[bin(dp.getMZ(), mzMin, binWidth, numBins)]++;
+        index.scanChunks[chunk(posting, Integer.BYTES)]
+            .putInt(position(posting, Integer.BYTES), scanIndex);
+        index.mzChunks[chunk(posting, Double.BYTES)]
+            .putDouble(position(posting, Double.BYTES), dp.getMZ());
+        index.intensityChunks[chunk(posting, Double.BYTES)]
+            .putDouble(position(posting, Double.BYTES), dp.getIntensity());
+      }
+    }
+
+    logger.finest(() -> "Created m/z index of " + numPostings + " data points in " + numBins
+        + " bins for MS level " + msLevel + " of " + dataFile.getName());
+    return index;
+  }
+
+  /**
+   * The most intense data point within the m/z range of every scan, like
+   * {@link io.github.mzmine.util.scans.ScanUtils#findBasePeak(Scan, Range)}
+   *
+   * @param requestedScans scan numbers
+   * @return the base peaks in the order of the requested scans, null if a scan has no data point
+   *         in the m/z range or is not part of this index
+   * @throws IllegalStateException if the index was disposed
+   */
+  @Nonnull
+  public DataPoint[] findBasePeaks(@Nonnull Range<Double> mzRange, @Nonnull int[] requestedScans) {
+    disposeLock.readLock().lock();
+    try {
+      if (disposed) {
+        throw new IllegalStateException("The m/z index of a closed raw data file was disposed");
+      }
+      return readBasePeaks(mzRange, requestedScans);
+    } finally {
+      disposeLock.readLock().unlock();
+    }
+  }
+
+  private DataPoint[] readBasePeaks(Range<Double> mzRange, int[] requestedScans) {
+    final double lower = mzRange.lowerEndpoint();
+    final double upper = mzRange.upperEndpoint();
+    final int numBins = binOffsets.length - 1;
+
+    final double[] bestMz = new double[scanNumbers.length];
+    final double[] bestIntensity = new double[scanNumbers.length];
+    Arrays.fill(bestMz, Double.NaN);
+
+    final int firstBin = bin(lower, mzMin, binWidth, numBins);
+    final int lastBin = bin(upper, mzMin, binWidth, numBins);
+    for (long p = binOffsets[firstBin]; p < binOffsets[lastBin + 1]; p++) {
+      final double mz = mzChunks[chunk(p, Double.BYTES)].getDouble(position(p, Double.BYTES));
+      if (mz < lower || mz > upper) {
+        continue;
+      }
+      final double intensity =
+          intensityChunks[chunk(p, Double.BYTES)].getDouble(position(p, Double.BYTES));
+      final int scanIndex =
+          scanChunks[chunk(p, Integer.BYTES)].getInt(position(p, Integer.BYTES));
+      // the first of equally intense data points in m/z order, as in the scan
+      if (Double.isNaN(bestMz[scanIndex]) || intensity > bestIntensity[scanIndex]
+          || (intensity == bestIntensity[scanIndex] && mz < bestMz[scanIndex])) {
+        bestMz[scanIndex] = mz;
+        bestIntensity[scanIndex] = intensity;
+      }
+    }
+
+    final DataPoint[] basePeaks = new DataPoint[requestedScans.length];
+    for (int i = 0; i < requestedScans.length; i++) {
+      final int scanIndex = Arrays.binarySearch(scanNumbers, requestedScans[i]);
+      if (scanIndex >= 0 && !Double.isNaN(bestMz[scanIndex])) {
+        basePeaks[i] = new SimpleDataPoint(bestMz[scanIndex], bestIntensity[scanIndex]);
+      }
+    }
+    return basePeaks;
+  }
+
+  /**
+   * Unmaps the chunks and deletes the temporary file. The index cannot be used afterwards.
+   */
+  void dispose() {
+    disposeLock.writeLock().lock();
+    try {
+      if (disposed) {
+        return;
+      }
+      disposed = true;
+      // mapped files cannot be deleted on Windows
+      for (MappedByteBuffer[] chunks : new MappedByteBuffer[][] {scanChunks, mzChunks,
+          intensityChunks}) {
+        for (MappedByteBuffer chunk : chunks) {
+          MappedBufferUtils.unmap(chunk);
+        }
+      }
+    } finally {
+      disposeLock.writeLock().unlock();
+    }
+    try {
+      raf.close();
+    } catch (IOException e) {
+      logger.warning("Could not close m/z index file " + file + ": " + e.toString());
+    }
+    file.delete();
+  }
+
+  private static int bin(double mz, double mzMin, double binWidth, int numBins) {
+    final int bin = (int) ((mz - mzMin) / binWidth);
+    return Math.max(0, Math.min(numBins - 1, bin));
+  }
+
+  private static int chunk(long element, int elementBytes) {
+    return (int) ((element * elementBytes) >>> CHUNK_BITS);
+  }
+
+  private static int position(long element, int elementBytes) {
+    return (int) ((element * elementBytes) & CHUNK_MASK);
+  }
+
+  private static MappedByteBuffer[] map(FileChannel channel, long start, long size)
+      throws IOException {
+    final int numChunks = (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+    final MappedByteBuffer[] chunks = new MappedByteBuffer[Math.max(numChunks, 1)];
+    for (int i = 0; i < chunks.length; i++) {
+      final long offset = (long) i << CHUNK_BITS;
+      chunks[i] = channel.map(MapMode.READ_WRITE, start + offset,
+          Math.max(0, Math.min(size - offset, 1L << CHUNK_BITS)));
+    }
+    return chunks;
+  }
+}
@@ -211,6 +211,13 @@ public class StorableScan implements Scan {
     return storageID;
   }
 
+  /**
+   * Sets the ID of the data points after they were written to the storage of the raw data file
+   */
+  protected void setStorageID(int storageID) {
+    this.storageID = storageID;
+  }
+
   /**
    * @see io.github.mzmine.datamodel.Scan#getNumberOfDataPoints()
    */
@@ -260,7 +267,14 @@ public class StorableScan implements Scan {
   }
 
   void updateValues() {
-    DataPoint dataPoints[] = getDataPoints();
+    updateValues(getDataPoints());
+  }
+
+  /**
+   * Updates the m/z range, base peak and TIC from already loaded data points of this scan
+   */
+  void updateValues(DataPoint dataPoints[]) {
+    numberOfDataPoints = dataPoints.length;
 
     // find m/z range and base peak
     if (dataPoints.length > 0) {
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nonnull;
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+
+/**
+ * Rows sorted by their average retention time, e.g., the standard compounds of a normalization.
+ * The retention times and m/z values are kept in primitive arrays, so range and nearest neighbour
+ * queries need a binary search and only look at the rows close in retention time. Queries do not
+ * change the index and can be run by several threads at once.
+ * <p>
+ * Rows are addressed by their position in the sorted order. {@link #getInputIndex(int)} gives the
+ * index of a row in the array the index was built from.
+ */
+public class FeatureListRowRTIndex {
+
+  private final FeatureListRow[] rows;
+  private final int[] inputIndices;
+  private final float[] rts;
+  private final double[] mzs;
+
+  public FeatureListRowRTIndex(@Nonnull FeatureListRow[] rows) {
+    final int n = rows.length;
+    final float[] inputRTs = new float[n];
+    for (int i = 0; i < n; i++) {
+      inputRTs[i] = rows[i].getAverageRT();
+    }
+    final Integer[] order = new Integer[n];
+    Arrays.setAll(order, i -> i);
+    Arrays.sort(order, Comparator.comparingDouble(i -> inputRTs[i]));
+
+    this.rows = new FeatureListRow[n];
+    this.inputIndices = new int[n];
+    this.rts = new float[n];
+    this.mzs = new double[n];
+    for (int position = 0; position < n; position++) {
+      final int i = order[position];
+      this.rows[position] = rows[i];
+      this.inputIndices[position] = i;
+      this.rts[position] = inputRTs[i];
+      this.mzs[position] = rows[i].getAverageMZ();
+    }
+  }
+
+  public int size() {
+    return rows.length;
+  }
+
+  public FeatureListRow getRow(int position) {
+    return rows[position];
+  }
+
+  /**
+   * @return the index of the row in the array that was used to build this index
+   */
+  public int getInputIndex(int position) {
+    return inputIndices[position];
+  }
+
+  public float getRT(int position) {
+    return rts[position];
+  }
+
+  /**
+   * @return the position of the first row with a retention time >= rt, or {@link #size()}
+   */
+  public int firstPositionAtOrAbove(float rt) {
+    int low = 0;
+    int high = rts.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (rts[middle] < rt) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the position of the first row with a retention time > rt, or {@link #size()}
+   */
+  public int firstPositionAbove(float rt) {
+    int low = 0;
+    int high = rts.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (rts[middle] <= rt) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Same rows as FeatureList.getRowsInsideScanAndMZRange(rtRange, mzRange), sorted by retention
+   * time
+   */
+  @Nonnull
+  public List<FeatureListRow> getRowsInsideScanAndMZRange(@Nonnull Range<Float> rtRange,
+      @Nonnull Range<Double> mzRange) {
+    final List<FeatureListRow> result = new ArrayList<>();
+    final int from = rtRange.hasLowerBound() ? firstPositionAtOrAbove(rtRange.lowerEndpoint()) : 0;
+    for (int position = from; position < rts.length; position++) {
+      if (!rtRange.contains(rts[position])) {
+        if (rtRange.hasUpperBound() && rts[position] > rtRange.upperEndpoint()) {
+          break;
+        }
+        continue;
+      }
+      if (mzRange.contains(mzs[position])) {
+        result.add(rows[position]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds the row with the smallest distance mzVsRTBalance * |m/z difference| + |RT difference|.
+   * Only the rows with a retention time difference below the best distance are compared. Of
+   * several rows with the same distance, the row with the highest input index is returned.
+   *
+   * @return the position of the nearest row or -1 if the index is empty
+   */
+  public int nearest(double mz, float rt, double mzVsRTBalance) {
+    final int start = firstPositionAtOrAbove(rt);
+    int best = -1;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    // below the retention time
+    for (int position = start - 1; position >= 0; position--) {
+      final double rtDistance = (double) rt - rts[position];
+      if (rtDistance > bestDistance) {
+        break;
+      }
+      final double distance = mzVsRTBalance * Math.abs(mz - mzs[position]) + rtDistance;
+      if (isBetter(distance, position, bestDistance, best)) {
+        best = position;
+        bestDistance = distance;
+      }
+    }
+    // at or above the retention time
+    for (int position = start; position < rts.length; position++) {
+      final double rtDistance = (double) rts[position] - rt;
+      if (rtDistance > bestDistance) {
+        break;
+      }
+      final double distance = mzVsRTBalance * Math.abs(mz - mzs[position]) + rtDistance;
+      if (isBetter(distance, position, bestDistance, best)) {
+        best = position;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  private boolean isBetter(double distance, int position, double bestDistance, int best) {
+    return best == -1 || distance < bestDistance
+        || (distance == bestDistance && inputIndices[position] > inputIndices[best]);
+  }
+}
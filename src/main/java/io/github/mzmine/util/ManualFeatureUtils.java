@@ -44,13 +44,14 @@ public class ManualFeatureUtils {
 
     int[] scanNumbers = dataFile.getScanNumbers(1, rtRange);
 
-    for (int scanNumber : scanNumbers) {
+    // Find most intense m/z features, a single feature does not justify creating the m/z index
+    DataPoint[] basePeaks = ScanUtils.findBasePeaks(dataFile, 1, scanNumbers, mzRange, false);
 
-      // Get next scan
-      Scan scan = dataFile.getScan(scanNumber);
+    for (int i = 0; i < scanNumbers.length; i++) {
 
-      // Find most intense m/z feature
-      DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+      // Get next scan
+      Scan scan = dataFile.getScan(scanNumbers[i]);
+      DataPoint basePeak = basePeaks[i];
 
       if (basePeak != null) {
         if (basePeak.getIntensity() > 0) {
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+
+/**
+ * Features or rows split into RT partitions, each with its members sorted by m/z in primitive
+ * arrays, so the features at an expected m/z are found by binary search. Two partitions are
+ * separated by a gap in retention time larger than the RT tolerance, so no feature of one
+ * partition is within the RT tolerance of a feature of another partition, and the partitions can
+ * be processed independently and in parallel.
+ * <p>
+ * Features are addressed by their index in the arrays the index was built from.
+ */
+public class RTPartitionedMZIndex {
+
+  // [partition][position], sorted by m/z and index
+  private final int[][] indicesByMZ;
+  private final double[][] mzs;
+  // [partition][member], sorted by index
+  private final int[][] members;
+  private final int[] partitionOf;
+
+  /**
+   * @param mzs m/z of each feature
+   * @param rts retention time of each feature
+   * @param rtTolerance RT tolerance used when searching for related features or null if the
+   *        retention time is not checked, which results in a single partition
+   */
+  public RTPartitionedMZIndex(@Nonnull double[] mzs, @Nonnull float[] rts,
+      @Nullable RTTolerance rtTolerance) {
+    final int n = mzs.length;
+    partitionOf = new int[n];
+
+    int numPartitions = n == 0 ? 0 : 1;
+    if (rtTolerance != null && n > 0) {
+      final Integer[] byRT = new Integer[n];
+      Arrays.setAll(byRT, i -> i);
+      Arrays.sort(byRT, Comparator.comparingDouble(i -> rts[i]));
+      for (int k = 1; k < n; k++) {
+        final float previous = rts[byRT[k - 1]];
+        final float current = rts[byRT[k]];
+        if (!rtTolerance.checkWithinTolerance(previous, current)
+            && !rtTolerance.checkWithinTolerance(current, previous)) {
+          numPartitions++;
+        }
+        partitionOf[byRT[k]] = numPartitions - 1;
+      }
+    }
+
+    final int[] sizes = new int[numPartitions];
+    for (int i = 0; i < n; i++) {
+      sizes[partitionOf[i]]++;
+    }
+    members = new int[numPartitions][];
+    for (int p = 0; p < numPartitions; p++) {
+      members[p] = new int[sizes[p]];
+    }
+    final int[] filled = new int[numPartitions];
+    for (int i = 0; i < n; i++) {
+      final int p = partitionOf[i];
+      members[p][filled[p]++] = i;
+    }
+
+    this.indicesByMZ = new int[numPartitions][];
+    this.mzs = new double[numPartitions][];
+    for (int p = 0; p < numPartitions; p++) {
+      final Integer[] order = Arrays.stream(members[p]).boxed().toArray(Integer[]::new);
+      // stable, features of equal m/z stay in the order of their index
+      Arrays.sort(order, Comparator.comparingDouble(i -> mzs[i]));
+      indicesByMZ[p] = new int[order.length];
+      this.mzs[p] = new double[order.length];
+      for (int position = 0; position < order.length; position++) {
+        indicesByMZ[p][position] = order[position];
+        this.mzs[p][position] = mzs[order[position]];
+      }
+    }
+  }
+
+  public int getNumberOfPartitions() {
+    return members.length;
+  }
+
+  /**
+   * @return the indices of the features in a partition in ascending order
+   */
+  @Nonnull
+  public int[] getMembers(int partition) {
+    return members[partition];
+  }
+
+  public int getPartition(int index) {
+    return partitionOf[index];
+  }
+
+  /**
+   * @return the indices of the features of a partition within the m/z range, sorted by m/z and
+   *         index
+   */
+  @Nonnull
+  public int[] getIndicesInMZRange(int partition, @Nonnull Range<Double> mzRange) {
+    final double[] values = mzs[partition];
+    int from = 0;
+    if (mzRange.hasLowerBound()) {
+      // first position inside the lower bound
+      final double lower = mzRange.lowerEndpoint();
+      final boolean open = mzRange.lowerBoundType() == BoundType.OPEN;
+      int high = values.length;
+      while (from < high) {
+        final int middle = (from + high) >>> 1;
+        if (values[middle] < lower || (open && values[middle] == lower)) {
+          from = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+    }
+    int to = from;
+    while (to < values.length && mzRange.contains(values[to])) {
+      to++;
+    }
+    return Arrays.copyOfRange(indicesByMZ[partition], from, to);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.files;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+
+/**
+ * Releases memory-mapped buffers explicitly. The JDK only unmaps a buffer when it is garbage
+ * collected, and some file systems (e.g., on Windows) do not delete or replace a file as long as
+ * it is mapped. The buffer must not be accessed after it was unmapped, so the callers have to make
+ * sure that no other reference (including duplicates and slices) is still used.
+ */
+public class MappedBufferUtils {
+
+  private static final Logger logger = Logger.getLogger(MappedBufferUtils.class.getName());
+
+  private static final Object unsafe;
+  private static final Method invokeCleaner;
+
+  static {
+    Object theUnsafe = null;
+    Method cleaner = null;
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      theUnsafe = field.get(null);
+      cleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (Exception | LinkageError e) {
+      logger.fine(() -> "Mapped buffers cannot be unmapped explicitly: " + e);
+    }
+    unsafe = theUnsafe;
+    invokeCleaner = cleaner;
+  }
+
+  /**
+   * Unmaps the buffer immediately if the JVM supports it. Otherwise, the mapping is released once
+   * the buffer is garbage collected.
+   *
+   * @return true if the buffer was unmapped
+   */
+  public static boolean unmap(@Nonnull MappedByteBuffer buffer) {
+    if (invokeCleaner == null) {
+      return false;
+    }
+    try {
+      invokeCleaner.invoke(unsafe, buffer);
+      return true;
+    } catch (Exception e) {
+      logger.fine(() -> "Could not unmap a buffer: " + e);
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.files;
+
+import static io.github.mzmine.util.files.ZipEntryLocation.CENTRAL_HEADER_SIGNATURE;
+import static io.github.mzmine.util.files.ZipEntryLocation.CENTRAL_HEADER_SIZE;
+import static io.github.mzmine.util.files.ZipEntryLocation.END_SIGNATURE;
+import static io.github.mzmine.util.files.ZipEntryLocation.END_SIZE;
+import static io.github.mzmine.util.files.ZipEntryLocation.LOCAL_HEADER_SIGNATURE;
+import static io.github.mzmine.util.files.ZipEntryLocation.LOCAL_HEADER_SIZE;
+import static io.github.mzmine.util.files.ZipEntryLocation.MAX_16;
+import static io.github.mzmine.util.files.ZipEntryLocation.MAX_32;
+import static io.github.mzmine.util.files.ZipEntryLocation.ZIP64_END_SIGNATURE;
+import static io.github.mzmine.util.files.ZipEntryLocation.ZIP64_END_SIZE;
+import static io.github.mzmine.util.files.ZipEntryLocation.ZIP64_EXTRA_ID;
+import static io.github.mzmine.util.files.ZipEntryLocation.ZIP64_LOCATOR_SIGNATURE;
+import static io.github.mzmine.util.files.ZipEntryLocation.ZIP64_LOCATOR_SIZE;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+/**
+ * Writes a ZIP file from entries of other ZIP files without inflating and deflating them again.
+ * Only the headers are written, the data is transferred between the file channels. Uses the zip64
+ * format for large entries and files, like {@link java.util.zip.ZipOutputStream}.
+ */
+public class RawZipWriter implements Closeable {
+
+  // version 2.0, or 4.5 for zip64
+  private static final int VERSION = 20;
+  private static final int VERSION_ZIP64 = 45;
+  // names are encoded in UTF-8
+  private static final int FLAG_UTF8 = 0x0800;
+
+  private final FileOutputStream out;
+  private final FileChannel channel;
+  private final List<CentralEntry> entries = new ArrayList<>();
+  private long position = 0;
+
+  public RawZipWriter(@Nonnull File file) throws IOException {
+    out = new FileOutputStream(file);
+    channel = out.getChannel();
+  }
+
+  /**
+   * Copies an entry of another ZIP file
+   *
+   * @param name   the name of the new entry, may differ from the source entry
+   * @param entry  the location of the entry in the source
+   * @param source the channel of the source ZIP file
+   */
+  public void copyEntry(@Nonnull String name, @Nonnull ZipEntryLocation entry,
+      @Nonnull FileChannel source) throws IOException {
+
+    final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    final boolean zip64 = entry.getSize() >= MAX_32 || entry.getCompressedSize() >= MAX_32;
+    final long localOffset = position;
+
+    final ByteBuffer header =
+        ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length + (zip64 ? 20 : 0))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(LOCAL_HEADER_SIGNATURE);
+    header.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION));
+    header.putShort((short) FLAG_UTF8);
+    header.putShort((short) entry.getMethod());
+    header.putInt(entry.getDosTime());
+    header.putInt((int) entry.getCrc());
+    header.putInt((int) (zip64 ? MAX_32 : entry.getCompressedSize()));
+    header.putInt((int) (zip64 ? MAX_32 : entry.getSize()));
+    header.putShort((short) nameBytes.length);
+    header.putShort((short) (zip64 ? 20 : 0));
+    header.put(nameBytes);
+    if (zip64) {
+      header.putShort((short) ZIP64_EXTRA_ID);
+      header.putShort((short) 16);
+      header.putLong(entry.getSize());
+      header.putLong(entry.getCompressedSize());
+    }
+    write(header);
+
+    long copied = 0;
+    while (copied < entry.getCompressedSize()) {
+      final long bytes = source.transferTo(entry.getDataOffset() + copied,
+          entry.getCompressedSize() - copied, channel);
+      if (bytes <= 0) {
+        throw new IOException("Unexpected end of the source of entry " + entry.getName());
+      }
+      copied += bytes;
+    }
+    position += copied;
+
+    entries.add(new CentralEntry(nameBytes, entry, localOffset));
+  }
+
+  /**
+   * Writes the central directory and closes the file
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      final long centralOffset = position;
+      for (CentralEntry e : entries) {
+        writeCentralHeader(e);
+      }
+      final long centralSize = position - centralOffset;
+
+      final boolean zip64 =
+          entries.size() >= MAX_16 || centralOffset >= MAX_32 || centralSize >= MAX_32;
+      if (zip64) {
+        final long zip64EndOffset = position;
+        final ByteBuffer zip64End = ByteBuffer.allocate(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        zip64End.putInt(ZIP64_END_SIGNATURE);
+        zip64End.putLong(ZIP64_END_SIZE - 12);
+        zip64End.putShort((short) VERSION_ZIP64);
+        zip64End.putShort((short) VERSION_ZIP64);
+        zip64End.putInt(0);
+        zip64End.putInt(0);
+        zip64End.putLong(entries.size());
+        zip64End.putLong(entries.size());
+        zip64End.putLong(centralSize);
+        zip64End.putLong(centralOffset);
+        zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+        zip64End.putInt(0);
+        zip64End.putLong(zip64EndOffset);
+        zip64End.putInt(1);
+        write(zip64End);
+      }
+
+      final ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      end.putInt(END_SIGNATURE);
+      end.putShort((short) 0);
+      end.putShort((short) 0);
+      end.putShort((short) Math.min(entries.size(), MAX_16));
+      end.putShort((short) Math.min(entries.size(), MAX_16));
+      end.putInt((int) Math.min(centralSize, MAX_32));
+      end.putInt((int) Math.min(centralOffset, MAX_32));
+      end.putShort((short) 0);
+      write(end);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeCentralHeader(CentralEntry e) throws IOException {
+    final ZipEntryLocation entry = e.entry;
+    final boolean largeSize = entry.getSize() >= MAX_32;
+    final boolean largeCompressedSize = entry.getCompressedSize() >= MAX_32;
+    final boolean largeOffset = e.localOffset >= MAX_32;
+    final int extraLength = (largeSize || largeCompressedSize || largeOffset ? 4 : 0)
+        + (largeSize ? 8 : 0) + (largeCompressedSize ? 8 : 0) + (largeOffset ? 8 : 0);
+    final int version = extraLength > 0 ? VERSION_ZIP64 : VERSION;
+
+    final ByteBuffer header =
+        ByteBuffer.allocate(CENTRAL_HEADER_SIZE + e.name.length + extraLength)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(CENTRAL_HEADER_SIGNATURE);
+    header.putShort((short) version);
+    header.putShort((short) version);
+    header.putShort((short) FLAG_UTF8);
+    header.putShort((short) entry.getMethod());
+    header.putInt(entry.getDosTime());
+    header.putInt((int) entry.getCrc());
+    header.putInt((int) (largeCompressedSize ? MAX_32 : entry.getCompressedSize()));
+    header.putInt((int) (largeSize ? MAX_32 : entry.getSize()));
+    header.putShort((short) e.name.length);
+    header.putShort((short) extraLength);
+    // comment length, disk number, internal and external attributes
+    header.putShort((short) 0);
+    header.putShort((short) 0);
+    header.putShort((short) 0);
+    header.putInt(0);
+    header.putInt((int) (largeOffset ? MAX_32 : e.localOffset));
+    header.put(e.name);
+    if (extraLength > 0) {
+      header.putShort((short) ZIP64_EXTRA_ID);
+      header.putShort((short) (extraLength - 4));
+      if (largeSize) {
+        header.putLong(entry.getSize());
+      }
+      if (largeCompressedSize) {
+        header.putLong(entry.getCompressedSize());
+      }
+      if (largeOffset) {
+        header.putLong(e.localOffset);
+      }
+    }
+    write(header);
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer);
+    }
+  }
+
+  private static class CentralEntry {
+
+    private final byte[] name;
+    private final ZipEntryLocation entry;
+    private final long localOffset;
+
+    private CentralEntry(byte[] name, ZipEntryLocation entry, long localOffset) {
+      this.name = name;
+      this.entry = entry;
+      this.localOffset = localOffset;
+    }
+  }
+}
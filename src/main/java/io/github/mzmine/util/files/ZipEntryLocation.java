@@ -0,0 +1,225 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * Position and header values of an entry within a ZIP file, read from the central directory and
+ * the local headers. {@link java.util.zip.ZipFile} does not expose the positions, but they are
+ * needed to memory-map uncompressed entries in place or to copy compressed entries to another
+ * archive without inflating them (see {@link RawZipWriter}).
+ */
+public class ZipEntryLocation {
+
+  static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  static final int END_SIGNATURE = 0x06054b50;
+  static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  static final int ZIP64_EXTRA_ID = 0x0001;
+
+  static final int END_SIZE = 22;
+  static final int ZIP64_END_SIZE = 56;
+  static final int ZIP64_LOCATOR_SIZE = 20;
+  static final int LOCAL_HEADER_SIZE = 30;
+  static final int CENTRAL_HEADER_SIZE = 46;
+  static final long MAX_32 = 0xffffffffL;
+  static final int MAX_16 = 0xffff;
+
+  private final String name;
+  private final int method;
+  private final int dosTime;
+  private final long crc;
+  private final long compressedSize;
+  private final long size;
+  private final long dataOffset;
+
+  ZipEntryLocation(String name, int method, int dosTime, long crc, long compressedSize, long size,
+      long dataOffset) {
+    this.name = name;
+    this.method = method;
+    this.dosTime = dosTime;
+    this.crc = crc;
+    this.compressedSize = compressedSize;
+    this.size = size;
+    this.dataOffset = dataOffset;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return {@link java.util.zip.ZipEntry#STORED} or {@link java.util.zip.ZipEntry#DEFLATED}
+   */
+  public int getMethod() {
+    return method;
+  }
+
+  /**
+   * @return the modification time in MS-DOS format, as stored in the headers
+   */
+  public int getDosTime() {
+    return dosTime;
+  }
+
+  public long getCrc() {
+    return crc;
+  }
+
+  public long getCompressedSize() {
+    return compressedSize;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the file position of the first byte of the (compressed) data
+   */
+  public long getDataOffset() {
+    return dataOffset;
+  }
+
+  /**
+   * Reads the locations of all entries of a ZIP file
+   *
+   * @return the entries by name in the order of the central directory
+   * @throws IOException if the file is not a readable ZIP file
+   */
+  @Nonnull
+  public static Map<String, ZipEntryLocation> readAll(@Nonnull File zipFile) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(zipFile, "r")) {
+
+      // the end record is followed by a comment of at most 64 kB
+      final long length = raf.length();
+      final int tailLength = (int) Math.min(length, END_SIZE + MAX_16);
+      final ByteBuffer tail = read(raf, length - tailLength, tailLength);
+      int end = -1;
+      for (int i = tailLength - END_SIZE; i >= 0; i--) {
+        if (tail.getInt(i) == END_SIGNATURE) {
+          end = i;
+          break;
+        }
+      }
+      if (end < 0) {
+        throw new IOException("Missing end of central directory in " + zipFile);
+      }
+
+      long numEntries = Short.toUnsignedLong(tail.getShort(end + 10));
+      long centralSize = Integer.toUnsignedLong(tail.getInt(end + 12));
+      long centralOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+      // large files have the sizes in the zip64 end record
+      final int locator = end - ZIP64_LOCATOR_SIZE;
+      if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+        final ByteBuffer zip64End = read(raf, tail.getLong(locator + 8), ZIP64_END_SIZE);
+        if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+          throw new IOException("Invalid zip64 end of central directory in " + zipFile);
+        }
+        numEntries = zip64End.getLong(32);
+        centralSize = zip64End.getLong(40);
+        centralOffset = zip64End.getLong(48);
+      }
+      if (centralSize > Integer.MAX_VALUE) {
+        throw new IOException("Central directory too large in " + zipFile);
+      }
+
+      final Map<String, ZipEntryLocation> entries = new LinkedHashMap<>();
+      final ByteBuffer central = read(raf, centralOffset, (int) centralSize);
+      int pos = 0;
+      for (long e = 0; e < numEntries; e++) {
+        if (central.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+          throw new IOException("Invalid central directory in " + zipFile);
+        }
+        final int method = Short.toUnsignedInt(central.getShort(pos + 10));
+        final int dosTime = central.getInt(pos + 12);
+        final long crc = Integer.toUnsignedLong(central.getInt(pos + 16));
+        long compressedSize = Integer.toUnsignedLong(central.getInt(pos + 20));
+        long size = Integer.toUnsignedLong(central.getInt(pos + 24));
+        final int nameLength = Short.toUnsignedInt(central.getShort(pos + 28));
+        final int extraLength = Short.toUnsignedInt(central.getShort(pos + 30));
+        final int commentLength = Short.toUnsignedInt(central.getShort(pos + 32));
+        long localOffset = Integer.toUnsignedLong(central.getInt(pos + 42));
+
+        final byte[] name = new byte[nameLength];
+        central.position(pos + CENTRAL_HEADER_SIZE);
+        central.get(name);
+
+        // zip64 extra field: the values that do not fit into 32 bits, in this order
+        if (size == MAX_32 || compressedSize == MAX_32 || localOffset == MAX_32) {
+          int extra = pos + CENTRAL_HEADER_SIZE + nameLength;
+          final int extraEnd = extra + extraLength;
+          while (extra + 4 <= extraEnd) {
+            final int id = Short.toUnsignedInt(central.getShort(extra));
+            final int dataLength = Short.toUnsignedInt(central.getShort(extra + 2));
+            if (id == ZIP64_EXTRA_ID) {
+              int field = extra + 4;
+              if (size == MAX_32) {
+                size = central.getLong(field);
+                field += 8;
+              }
+              if (compressedSize == MAX_32) {
+                compressedSize = central.getLong(field);
+                field += 8;
+              }
+              if (localOffset == MAX_32) {
+                localOffset = central.getLong(field);
+              }
+              break;
+            }
+            extra += 4 + dataLength;
+          }
+        }
+
+        final ByteBuffer local = read(raf, localOffset, LOCAL_HEADER_SIZE);
+        if (local.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+          throw new IOException("Invalid local header in " + zipFile);
+        }
+        final long dataOffset = localOffset + LOCAL_HEADER_SIZE
+            + Short.toUnsignedInt(local.getShort(26)) + Short.toUnsignedInt(local.getShort(28));
+
+        final String entryName = new String(name, StandardCharsets.UTF_8);
+        entries.put(entryName, new ZipEntryLocation(entryName, method, dosTime, crc,
+            compressedSize, size, dataOffset));
+
+        pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+      }
+      return entries;
+    }
+  }
+
+  private static ByteBuffer read(RandomAccessFile raf, long position, int length)
+      throws IOException {
+    final byte[] bytes = new byte[length];
+    raf.seek(position);
+    raf.readFully(bytes);
+    return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.annotation.Nonnull;
+
+/**
+ * Reads another input stream on a separate thread, e.g., to decompress a file while the data is
+ * parsed. The data is passed in blocks through a bounded queue, so the reading thread is at most
+ * a few blocks ahead of the consumer. Errors of the source stream are thrown by the read methods
+ * of this stream.
+ */
+public class BackgroundInputStream extends InputStream {
+
+  // marks the end of the source stream
+  private static final byte[] END = new byte[0];
+
+  private final InputStream source;
+  private final int blockSize;
+  private final BlockingQueue<byte[]> blocks;
+  private final Thread thread;
+
+  private volatile IOException error;
+  private volatile boolean closed;
+
+  private byte[] block;
+  private int position;
+
+  /**
+   * Starts reading the source stream
+   *
+   * @param source     the stream that is read and closed by the background thread
+   * @param blockSize  number of bytes that are passed at once
+   * @param numBlocks  maximum number of blocks that are read ahead
+   * @param threadName name of the background thread
+   */
+  public BackgroundInputStream(@Nonnull InputStream source, int blockSize, int numBlocks,
+      @Nonnull String threadName) {
+    this.source = source;
+    this.blockSize = blockSize;
+    this.blocks = new ArrayBlockingQueue<>(numBlocks);
+    this.thread = new Thread(this::readSource, threadName);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void readSource() {
+    try {
+      while (!closed) {
+        final byte[] buffer = source.readNBytes(blockSize);
+        if (buffer.length > 0) {
+          blocks.put(buffer);
+        }
+        if (buffer.length < blockSize) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      error = e;
+    } catch (InterruptedException e) {
+      // closed by the consumer
+      return;
+    } finally {
+      try {
+        source.close();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        }
+      }
+    }
+    try {
+      blocks.put(END);
+    } catch (InterruptedException e) {
+      // closed by the consumer
+    }
+  }
+
+  /**
+   * @return false if the end of the stream was reached
+   */
+  private boolean nextBlock() throws IOException {
+    if (block == END) {
+      return false;
+    }
+    if (block != null && position < block.length) {
+      return true;
+    }
+    try {
+      block = blocks.take();
+      position = 0;
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for the data");
+    }
+    if (block == END) {
+      if (error != null) {
+        throw new IOException("Could not read the data: " + error.getMessage(), error);
+      }
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!nextBlock()) {
+      return -1;
+    }
+    return block[position++] & 0xff;
+  }
+
+  @Override
+  public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!nextBlock()) {
+      return -1;
+    }
+    final int n = Math.min(len, block.length - position);
+    System.arraycopy(block, position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return block == null || block == END ? 0 : block.length - position;
+  }
+
+  /**
+   * Stops the background thread, which closes the source stream
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    thread.interrupt();
+    blocks.clear();
+    block = END;
+  }
+}
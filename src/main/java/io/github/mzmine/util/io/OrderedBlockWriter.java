@@ -0,0 +1,121 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Exports a list of items in blocks. The text of each block is created in memory by a parallel
+ * task, and the blocks are written to the output in the order of the items, so the output is the
+ * same as when all items are written one after another. Only a limited number of blocks is
+ * prepared ahead of the writer to limit the memory.
+ */
+public class OrderedBlockWriter {
+
+  /**
+   * Writes the text of a block of items
+   */
+  @FunctionalInterface
+  public interface BlockFormatter<T> {
+
+    /**
+     * Called by several threads at once, the formatter must not use shared state that is not
+     * thread-safe (e.g., {@link java.text.NumberFormat})
+     *
+     * @param block the items of this block
+     * @param writer in-memory writer for the text of this block
+     */
+    void format(@Nonnull List<T> block, @Nonnull BufferedWriter writer) throws IOException;
+  }
+
+  /**
+   * @param items      all items in the order of the output
+   * @param blockSize  the number of items formatted by one task
+   * @param formatter  creates the text of a block
+   * @param writer     the output
+   * @param isCanceled stops the export between blocks
+   * @param onWritten  called with the number of items of each block after it was written, or null
+   * @return false if the export was canceled
+   */
+  public static <T> boolean write(@Nonnull List<T> items, int blockSize,
+      @Nonnull BlockFormatter<T> formatter, @Nonnull Writer writer,
+      @Nonnull BooleanSupplier isCanceled, @Nullable IntConsumer onWritten) throws IOException {
+
+    final int numBlocks = (items.size() + blockSize - 1) / blockSize;
+    // prepare two blocks per thread while the writer waits for the next block
+    final int maxPending = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+    final ArrayDeque<CompletableFuture<String>> pending = new ArrayDeque<>(maxPending);
+
+    int nextBlock = 0;
+    try {
+      for (int b = 0; b < numBlocks; b++) {
+        while (nextBlock < numBlocks && pending.size() < maxPending) {
+          final List<T> block = items.subList(nextBlock * blockSize,
+              Math.min((nextBlock + 1) * blockSize, items.size()));
+          pending.add(CompletableFuture.supplyAsync(() -> format(block, formatter)));
+          nextBlock++;
+        }
+
+        final String text;
+        try {
+          text = pending.poll().join();
+        } catch (CompletionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw e;
+        }
+        if (isCanceled.getAsBoolean()) {
+          return false;
+        }
+        writer.write(text);
+        if (onWritten != null) {
+          onWritten.accept(Math.min(blockSize, items.size() - b * blockSize));
+        }
+      }
+      return true;
+    } finally {
+      // canceled or failed: do not prepare the remaining blocks
+      for (CompletableFuture<String> future : pending) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private static <T> String format(List<T> block, BlockFormatter<T> formatter) {
+    final StringWriter text = new StringWriter();
+    try (BufferedWriter writer = new BufferedWriter(text)) {
+      formatter.format(block, writer);
+    } catch (IOException e) {
+      throw new CompletionException(e);
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.maths.multivariate;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Parallel k-means clustering (Lloyd's algorithm) with k-means++ seeding. Like the Euclidean
+ * distance of Weka, each variable is normalized to the range 0 to 1, so that variables with large
+ * values do not dominate. The normalization is applied while computing the distances, the data
+ * matrix is not modified.
+ */
+public class KMeans extends MatrixAlgorithm {
+
+  private static final int MAX_ITERATIONS = 500;
+
+  private final int numberOfClusters;
+  private final long seed;
+
+  private int resultingClusters;
+
+  /**
+   * @param numberOfClusters number of clusters to generate
+   * @param seed             seed of the random choice of the initial centroids
+   */
+  public KMeans(int numberOfClusters, long seed) {
+    this.numberOfClusters = Math.max(1, numberOfClusters);
+    this.seed = seed;
+  }
+
+  /**
+   * @param data one row per item, missing values (NaN) are treated as the minimum of the variable
+   * @return the cluster of each item or null if canceled
+   */
+  @Nullable
+  public int[] cluster(@Nonnull double[][] data) {
+    final int n = data.length;
+    final int[] clusters = new int[n];
+    if (n == 0) {
+      resultingClusters = 0;
+      return clusters;
+    }
+    final int d = data[0].length;
+    final int k = Math.min(numberOfClusters, n);
+
+    // offset and scale of the normalization to the range 0 to 1
+    final double[] min = new double[d];
+    final double[] scale = new double[d];
+    computeNormalization(data, min, scale);
+
+    final double[][] centroids = initializeCentroids(data, min, scale, k);
+    if (centroids == null) {
+      return null;
+    }
+
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      if (isCanceled()) {
+        return null;
+      }
+      final boolean firstIteration = iteration == 0;
+      final long changed = IntStream.range(0, n).parallel().filter(i -> {
+        final int nearest = nearestCentroid(data[i], min, scale, centroids);
+        if (firstIteration || nearest != clusters[i]) {
+          clusters[i] = nearest;
+          return true;
+        }
+        return false;
+      }).count();
+      if (changed == 0) {
+        break;
+      }
+      updateCentroids(data, min, scale, clusters, centroids);
+      setFinishedPercentage((iteration + 1d) / MAX_ITERATIONS);
+    }
+
+    resultingClusters = k;
+    setFinishedPercentage(1d);
+    return clusters;
+  }
+
+  /**
+   * @return the number of clusters of the last result, less than requested if there are less items
+   */
+  public int getNumberOfClusters() {
+    return resultingClusters;
+  }
+
+  private static void computeNormalization(double[][] data, double[] min, double[] scale) {
+    final int d = min.length;
+    final int numBlocks = (d + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+    IntStream.range(0, numBlocks).parallel().forEach(block -> {
+      final int from = block * COLUMN_BLOCK;
+      final int to = Math.min(d, from + COLUMN_BLOCK);
+      final double[] max = new double[to - from];
+      Arrays.fill(min, from, to, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      for (double[] row : data) {
+        for (int j = from; j < to; j++) {
+          final double value = row[j];
+          if (value < min[j]) {
+            min[j] = value;
+          }
+          if (value > max[j - from]) {
+            max[j - from] = value;
+          }
+        }
+      }
+      for (int j = from; j < to; j++) {
+        if (min[j] == Double.POSITIVE_INFINITY) {
+          // only missing values
+          min[j] = 0;
+          scale[j] = 0;
+        } else {
+          final double range = max[j - from] - min[j];
+          scale[j] = range > 0 ? 1d / range : 0;
+        }
+      }
+    });
+  }
+
+  private static double normalized(double value, double min, double scale) {
+    return Double.isNaN(value) ? 0 : (value - min) * scale;
+  }
+
+  private static double squaredDistance(double[] row, double[] min, double[] scale,
+      double[] centroid) {
+    double sum = 0;
+    for (int j = 0; j < row.length; j++) {
+      final double diff = normalized(row[j], min[j], scale[j]) - centroid[j];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  private static int nearestCentroid(double[] row, double[] min, double[] scale,
+      double[][] centroids) {
+    int nearest = 0;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    for (int c = 0; c < centroids.length; c++) {
+      final double distance = squaredDistance(row, min, scale, centroids[c]);
+      if (distance < nearestDistance) {
+        nearestDistance = distance;
+        nearest = c;
+      }
+    }
+    return nearest;
+  }
+
+  private static double[] normalizedRow(double[] row, double[] min, double[] scale) {
+    final double[] result = new double[row.length];
+    for (int j = 0; j < row.length; j++) {
+      result[j] = normalized(row[j], min[j], scale[j]);
+    }
+    return result;
+  }
+
+  /**
+   * k-means++: each further centroid is chosen with a probability proportional to the squared
+   * distance to the nearest chosen centroid
+   */
+  private double[][] initializeCentroids(double[][] data, double[] min, double[] scale, int k) {
+    final int n = data.length;
+    final Random random = new Random(seed);
+    final double[][] centroids = new double[k][];
+    centroids[0] = normalizedRow(data[random.nextInt(n)], min, scale);
+
+    final double[] nearestDistance = new double[n];
+    Arrays.fill(nearestDistance, Double.POSITIVE_INFINITY);
+    for (int c = 1; c < k; c++) {
+      if (isCanceled()) {
+        return null;
+      }
+      final double[] last = centroids[c - 1];
+      final double total = IntStream.range(0, n).parallel().mapToDouble(i -> {
+        final double distance = squaredDistance(data[i], min, scale, last);
+        if (distance < nearestDistance[i]) {
+          nearestDistance[i] = distance;
+        }
+        return nearestDistance[i];
+      }).sum();
+
+      int chosen = random.nextInt(n);
+      if (total > 0) {
+        double target = random.nextDouble() * total;
+        for (int i = 0; i < n; i++) {
+          target -= nearestDistance[i];
+          if (target <= 0 && nearestDistance[i] > 0) {
+            chosen = i;
+            break;
+          }
+        }
+      }
+      centroids[c] = normalizedRow(data[chosen], min, scale);
+    }
+    return centroids;
+  }
+
+  /**
+   * Sets each centroid to the mean of its items. The columns are split between the threads, so
+   * no thread needs a copy of the centroids. Empty clusters keep their centroid.
+   */
+  private static void updateCentroids(double[][] data, double[] min, double[] scale,
+      int[] clusters, double[][] centroids) {
+    final int k = centroids.length;
+    final int d = min.length;
+    final int[] counts = new int[k];
+    for (int cluster : clusters) {
+      counts[cluster]++;
+    }
+    final int numBlocks = (d + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+    IntStream.range(0, numBlocks).parallel().forEach(block -> {
+      final int from = block * COLUMN_BLOCK;
+      final int to = Math.min(d, from + COLUMN_BLOCK);
+      final double[][] sums = new double[k][to - from];
+      for (int i = 0; i < data.length; i++) {
+        final double[] row = data[i];
+        final double[] sum = sums[clusters[i]];
+        for (int j = from; j < to; j++) {
+          sum[j - from] += normalized(row[j], min[j], scale[j]);
+        }
+      }
+      for (int c = 0; c < k; c++) {
+        if (counts[c] > 0) {
+          for (int j = from; j < to; j++) {
+            centroids[c][j] = sums[c][j - from] / counts[c];
+          }
+        }
+      }
+    });
+  }
+}
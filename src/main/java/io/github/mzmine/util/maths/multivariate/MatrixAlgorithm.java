@@ -0,0 +1,114 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.maths.multivariate;
+
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Base of the multivariate algorithms that work on a primitive data matrix, one row per item
+ * (sample or feature) and one column per variable. The rows are never copied. Tasks can read the
+ * progress and cancel the computation from another thread.
+ */
+public abstract class MatrixAlgorithm {
+
+  // Number of columns that are processed by one thread.
+  static final int COLUMN_BLOCK = 256;
+
+  private volatile double finishedPercentage;
+  private volatile boolean canceled;
+
+  public double getFinishedPercentage() {
+    return finishedPercentage;
+  }
+
+  protected void setFinishedPercentage(double finishedPercentage) {
+    this.finishedPercentage = Math.min(1d, Math.max(0d, finishedPercentage));
+  }
+
+  /**
+   * Stops the computation, the result of a canceled computation is null
+   */
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * Centers each column of the matrix and scales it to unity variance, in place and in parallel.
+   * Missing values (NaN) and constant columns are set to 0.
+   *
+   * @param data one row per item
+   */
+  public static void scaleToUnityVariance(@Nonnull double[][] data) {
+    final int n = data.length;
+    if (n == 0) {
+      return;
+    }
+    final int d = data[0].length;
+    final int numBlocks = (d + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+    IntStream.range(0, numBlocks).parallel().forEach(block -> {
+      final int from = block * COLUMN_BLOCK;
+      final int to = Math.min(d, from + COLUMN_BLOCK);
+      final double[] sum = new double[to - from];
+      final double[] sumOfSquares = new double[to - from];
+      final int[] count = new int[to - from];
+      for (double[] row : data) {
+        for (int j = from; j < to; j++) {
+          final double value = row[j];
+          if (!Double.isNaN(value)) {
+            sum[j - from] += value;
+            count[j - from]++;
+          }
+        }
+      }
+      for (int j = 0; j < sum.length; j++) {
+        sum[j] = count[j] == 0 ? 0 : sum[j] / count[j];
+      }
+      for (double[] row : data) {
+        for (int j = from; j < to; j++) {
+          final double value = row[j];
+          if (!Double.isNaN(value)) {
+            final double deviation = value - sum[j - from];
+            sumOfSquares[j - from] += deviation * deviation;
+          }
+        }
+      }
+      for (double[] row : data) {
+        for (int j = from; j < to; j++) {
+          final int c = j - from;
+          final double sd = count[c] > 1 ? Math.sqrt(sumOfSquares[c] / (count[c] - 1)) : 0;
+          row[j] = Double.isNaN(row[j]) || sd == 0 ? 0 : (row[j] - sum[c]) / sd;
+        }
+      }
+    });
+  }
+
+  static double squaredDistance(@Nonnull double[] a, @Nonnull double[] b) {
+    double sum = 0;
+    for (int j = 0; j < a.length; j++) {
+      final double diff = a[j] - b[j];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.maths.multivariate;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * Principal component analysis by a randomized truncated singular value decomposition (Halko,
+ * Martinsson and Tropp, 2011). Only the requested components are computed, from a few products of
+ * the data matrix with thin matrices, so neither the covariance matrix nor a full decomposition of
+ * the data is needed. The products are computed in parallel.
+ */
+public class PrincipalComponentAnalysis extends MatrixAlgorithm {
+
+  // Additional random vectors and power iterations for the accuracy of the components.
+  private static final int OVERSAMPLING = 10;
+  private static final int POWER_ITERATIONS = 3;
+
+  private final int numComponents;
+  private final long seed;
+
+  /**
+   * @param numComponents number of principal components
+   * @param seed          seed of the random start vectors
+   */
+  public PrincipalComponentAnalysis(int numComponents, long seed) {
+    this.numComponents = Math.max(1, numComponents);
+    this.seed = seed;
+  }
+
+  /**
+   * Projects the items on the principal components. The columns are centered, but not scaled,
+   * see {@link #scaleToUnityVariance(double[][])}.
+   *
+   * @param data one row per item, without missing values
+   * @return the scores as [component][item], or null if canceled. Components beyond the rank of
+   *         the data are 0.
+   */
+  @Nullable
+  public double[][] project(@Nonnull double[][] data) {
+    final int n = data.length;
+    final double[][] scores = new double[numComponents][n];
+    if (n == 0 || data[0].length == 0) {
+      return scores;
+    }
+    final int d = data[0].length;
+    final int rank = Math.min(numComponents + OVERSAMPLING, Math.min(n, d));
+    final int steps = 2 * POWER_ITERATIONS + 3;
+
+    final double[] mean = columnMeans(data);
+
+    // range of the data: Q = orth(A * random)
+    final Random random = new Random(seed);
+    final double[][] start = new double[rank][d];
+    for (int j = 0; j < d; j++) {
+      for (int c = 0; c < rank; c++) {
+        start[c][j] = random.nextGaussian();
+      }
+    }
+    double[][] q = multiply(data, mean, start);
+    orthonormalize(q);
+    setFinishedPercentage(1d / steps);
+
+    // power iterations for slowly decaying singular values
+    for (int i = 0; i < POWER_ITERATIONS; i++) {
+      if (isCanceled()) {
+        return null;
+      }
+      final double[][] z = multiplyTransposed(data, mean, q);
+      orthonormalize(z);
+      q = multiply(data, mean, z);
+      orthonormalize(q);
+      setFinishedPercentage((2d * i + 3) / steps);
+    }
+    if (isCanceled()) {
+      return null;
+    }
+
+    // B = Q^T * A, then B * B^T = U * S^2 * U^T, the scores are Q * U * S
+    final double[][] b = multiplyTransposed(data, mean, q);
+    final RealMatrix bbt = new Array2DRowRealMatrix(rank, rank);
+    for (int r = 0; r < rank; r++) {
+      for (int c = r; c < rank; c++) {
+        double sum = 0;
+        for (int j = 0; j < d; j++) {
+          sum += b[r][j] * b[c][j];
+        }
+        bbt.setEntry(r, c, sum);
+        bbt.setEntry(c, r, sum);
+      }
+    }
+    final EigenDecomposition eigen = new EigenDecomposition(bbt);
+    final double[] eigenvalues = eigen.getRealEigenvalues();
+    final Integer[] order = IntStream.range(0, rank).boxed().toArray(Integer[]::new);
+    Arrays.sort(order, (a, c) -> Double.compare(eigenvalues[c], eigenvalues[a]));
+
+    for (int component = 0; component < Math.min(numComponents, rank); component++) {
+      final int index = order[component];
+      final double singularValue = Math.sqrt(Math.max(0, eigenvalues[index]));
+      final double[] u = eigen.getEigenvector(index).toArray();
+      final double[] score = scores[component];
+      for (int c = 0; c < rank; c++) {
+        final double factor = u[c] * singularValue;
+        final double[] qc = q[c];
+        for (int i = 0; i < n; i++) {
+          score[i] += qc[i] * factor;
+        }
+      }
+    }
+
+    setFinishedPercentage(1d);
+    return scores;
+  }
+
+  private static double[] columnMeans(double[][] data) {
+    final int d = data[0].length;
+    final double[] mean = new double[d];
+    final int numBlocks = (d + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+    IntStream.range(0, numBlocks).parallel().forEach(block -> {
+      final int from = block * COLUMN_BLOCK;
+      final int to = Math.min(d, from + COLUMN_BLOCK);
+      for (double[] row : data) {
+        for (int j = from; j < to; j++) {
+          mean[j] += row[j];
+        }
+      }
+      for (int j = from; j < to; j++) {
+        mean[j] /= data.length;
+      }
+    });
+    return mean;
+  }
+
+  /**
+   * @param vectors [vector][column]
+   * @return (A - mean) * vectors as [vector][item]
+   */
+  private static double[][] multiply(double[][] data, double[] mean, double[][] vectors) {
+    final int n = data.length;
+    final int d = mean.length;
+    final double[][] result = new double[vectors.length][n];
+    IntStream.range(0, n).parallel().forEach(i -> {
+      final double[] row = data[i];
+      for (int c = 0; c < vectors.length; c++) {
+        final double[] vector = vectors[c];
+        double sum = 0;
+        for (int j = 0; j < d; j++) {
+          sum += (row[j] - mean[j]) * vector[j];
+        }
+        result[c][i] = sum;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @param vectors [vector][item]
+   * @return (A - mean)^T * vectors as [vector][column]
+   */
+  private static double[][] multiplyTransposed(double[][] data, double[] mean,
+      double[][] vectors) {
+    final int d = mean.length;
+    final double[][] result = new double[vectors.length][d];
+    final int numBlocks = (d + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+    IntStream.range(0, numBlocks).parallel().forEach(block -> {
+      final int from = block * COLUMN_BLOCK;
+      final int to = Math.min(d, from + COLUMN_BLOCK);
+      for (int i = 0; i < data.length; i++) {
+        final double[] row = data[i];
+        for (int c = 0; c < vectors.length; c++) {
+          final double weight = vectors[c][i];
+          final double[] target = result[c];
+          for (int j = from; j < to; j++) {
+            target[j] += (row[j] - mean[j]) * weight;
+          }
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Modified Gram-Schmidt, applied twice for numerical stability. Vectors that are linearly
+   * dependent on the previous ones are set to 0.
+   */
+  private static void orthonormalize(double[][] vectors) {
+    for (int pass = 0; pass < 2; pass++) {
+      for (int c = 0; c < vectors.length; c++) {
+        final double[] vector = vectors[c];
+        final double initialNorm = Math.sqrt(dot(vector, vector));
+        for (int p = 0; p < c; p++) {
+          final double[] previous = vectors[p];
+          final double dot = dot(vector, previous);
+          for (int i = 0; i < vector.length; i++) {
+            vector[i] -= dot * previous[i];
+          }
+        }
+        final double norm = Math.sqrt(dot(vector, vector));
+        for (int i = 0; i < vector.length; i++) {
+          vector[i] = norm > 1e-10 * initialNorm ? vector[i] / norm : 0;
+        }
+      }
+    }
+  }
+
+  private static double dot(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2006-2020 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package io.github.mzmine.util.maths.multivariate;
+
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Sammon's mapping, a projection that preserves the distances between the items. The mapping
+ * starts from the principal components and moves all items at once by a pseudo-Newton step with
+ * step halving (like the sammon function of Gavin Cawley for MATLAB), so each iteration is
+ * computed in parallel. The distances between the items are computed once, in parallel, and kept
+ * as a triangle of floats, which needs 4 bytes per pair of items.
+ */
+public class SammonsMapping extends MatrixAlgorithm {
+
+  // Number of items that are compared to the other items at once, so each row is read once per
+  // block when computing the distances.
+  private static final int ROW_BLOCK = 16;
+
+  private static final int MAX_STEP_HALVINGS = 20;
+  private static final double TOLERANCE = 1e-9;
+
+  private final int dimensions;
+  private final int iterations;
+
+  /**
+   * @param dimensions number of dimensions of the projection
+   * @param iterations maximum number of iterations
+   */
+  public SammonsMapping(int dimensions, int iterations) {
+    this.dimensions = Math.max(1, dimensions);
+    this.iterations = Math.max(0, iterations);
+  }
+
+  /**
+   * @param data one row per item, without missing values
+   * @return the projected coordinates as [dimension][item], or null if canceled
+   */
+  @Nullable
+  public double[][] project(@Nonnull double[][] data) {
+    final int n = data.length;
+    if (n < 2) {
+      return new double[dimensions][n];
+    }
+    if ((long) n * (n - 1) / 2 > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Too many items for Sammon's mapping: " + n);
+    }
+
+    final float[] distances = computeDistances(data);
+    if (distances == null) {
+      return null;
+    }
+    final PrincipalComponentAnalysis pca = new PrincipalComponentAnalysis(dimensions, 1);
+    final double[][] start = pca.project(data);
+    if (start == null || isCanceled()) {
+      return null;
+    }
+    setFinishedPercentage(0.05);
+
+    // coordinates as [item][dimension] while iterating
+    double[][] y = new double[n][dimensions];
+    for (int i = 0; i < n; i++) {
+      for (int k = 0; k < dimensions; k++) {
+        y[i][k] = start[k][i];
+      }
+    }
+
+    double sumOfDistances = 0;
+    for (float distance : distances) {
+      sumOfDistances += distance;
+    }
+    if (sumOfDistances == 0) {
+      // all items are equal
+      return start;
+    }
+
+    double error = computeError(distances, y) / sumOfDistances;
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      if (isCanceled()) {
+        return null;
+      }
+
+      final double[][] current = y;
+      final double[][] newtonStep = new double[n][];
+      IntStream.range(0, n).parallel()
+          .forEach(i -> newtonStep[i] = computeNewtonStep(distances, current, i));
+
+      // halve the step until the error decreases
+      double newError = error;
+      double[][] next = null;
+      double step = 1;
+      for (int halving = 0; halving < MAX_STEP_HALVINGS; halving++) {
+        final double factor = step;
+        final double[][] candidate = new double[n][dimensions];
+        IntStream.range(0, n).parallel().forEach(i -> {
+          for (int k = 0; k < dimensions; k++) {
+            candidate[i][k] = current[i][k] + factor * newtonStep[i][k];
+          }
+        });
+        newError = computeError(distances, candidate) / sumOfDistances;
+        if (newError < error) {
+          next = candidate;
+          break;
+        }
+        step /= 2;
+      }
+
+      setFinishedPercentage(0.05 + 0.95 * (iteration + 1d) / iterations);
+      if (next == null) {
+        // converged, no step reduces the error
+        break;
+      }
+      y = next;
+      final boolean converged = Math.abs(error - newError) <= TOLERANCE * error;
+      error = newError;
+      if (converged) {
+        break;
+      }
+    }
+
+    final double[][] result = new double[dimensions][n];
+    for (int i = 0; i < n; i++) {
+      for (int k = 0; k < dimensions; k++) {
+        result[k][i] = y[i][k];
+      }
+    }
+    setFinishedPercentage(1d);
+    return result;
+  }
+
+  /**
+   * @return the index of the pair in the triangle of distances
+   */
+  private static int pairIndex(int n, int i, int j) {
+    if (i > j) {
+      final int swap = i;
+      i = j;
+      j = swap;
+    }
+    // rows 0 .. i-1 contain n-1, n-2, ... pairs
+    return (int) ((long) i * (2L * n - i - 1) / 2) + (j - i - 1);
+  }
+
+  /**
+   * @return the Euclidean distances of all pairs of items, or null if canceled
+   */
+  private float[] computeDistances(double[][] data) {
+    final int n = data.length;
+    final int d = data[0].length;
+    final float[] distances = new float[(int) ((long) n * (n - 1) / 2)];
+    final int numBlocks = (n + ROW_BLOCK - 1) / ROW_BLOCK;
+    IntStream.range(0, numBlocks).parallel().forEach(block -> {
+      if (isCanceled()) {
+        return;
+      }
+      final int from = block * ROW_BLOCK;
+      final int to = Math.min(n, from + ROW_BLOCK);
+      final double[] sums = new double[to - from];
+      for (int j = from + 1; j < n; j++) {
+        final double[] other = data[j];
+        final int last = Math.min(to, j);
+        for (int i = from; i < last; i++) {
+          final double[] row = data[i];
+          double sum = 0;
+          for (int c = 0; c < d; c++) {
+            final double diff = row[c] - other[c];
+            sum += diff * diff;
+          }
+          sums[i - from] = sum;
+        }
+        for (int i = from; i < last; i++) {
+          distances[pairIndex(n, i, j)] = (float) Math.sqrt(sums[i - from]);
+        }
+      }
+    });
+    return isCanceled() ? null : distances;
+  }
+
+  /**
+   * @return the raw Sammon's stress, sum of (D* - d)^2 / D* over all pairs with D* > 0
+   */
+  private static double computeError(float[] distances, double[][] y) {
+    final int n = y.length;
+    return IntStream.range(0, n).parallel().mapToDouble(i -> {
+      double sum = 0;
+      int index = pairIndex(n, i, i + 1);
+      for (int j = i + 1; j < n; j++, index++) {
+        final double target = distances[index];
+        if (target > 0) {
+          final double diff = target - Math.sqrt(squaredDistance(y[i], y[j]));
+          sum += diff * diff / target;
+        }
+      }
+      return sum;
+    }).sum();
+  }
+
+  /**
+   * @return the pseudo-Newton step of one item: -gradient / |second derivative| per dimension
+   */
+  private static double[] computeNewtonStep(float[] distances, double[][] y, int i) {
+    final int n = y.length;
+    final int dims = y[i].length;
+    final double[] yi = y[i];
+    final double[] gradient = new double[dims];
+    final double[] hessian = new double[dims];
+    double sumOfDelta = 0;
+    for (int j = 0; j < n; j++) {
+      if (j == i) {
+        continue;
+      }
+      final double target = distances[pairIndex(n, i, j)];
+      final double distance = Math.sqrt(squaredDistance(yi, y[j]));
+      if (target <= 0 || distance <= 0) {
+        continue;
+      }
+      final double delta = 1d / distance - 1d / target;
+      final double inverseCube = 1d / (distance * distance * distance);
+      sumOfDelta += delta;
+      final double[] yj = y[j];
+      for (int k = 0; k < dims; k++) {
+        final double diff = yj[k] - yi[k];
+        gradient[k] += delta * diff;
+        hessian[k] += inverseCube * diff * diff;
+      }
+    }
+    final double[] step = new double[dims];
+    for (int k = 0; k < dims; k++) {
+      final double h = Math.abs(hessian[k] - sumOfDelta);
+      step[k] = h > 0 ? -gradient[k] / h : 0;
+    }
+    return step;
+  }
+}
@@ -55,6 +55,8 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.project.impl.ScanMzIndex;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import io.github.mzmine.util.scans.sorting.ScanSortMode;
 import io.github.mzmine.util.scans.sorting.ScanSorter;
@@ -131,6 +133,35 @@ public class ScanUtils {
     return basePeak;
   }
 
+  /**
+   * Find the base peaks of many scans of one MS level in a given m/z range. Uses the m/z index of
+   * the data file (see {@link RawDataFileImpl#getScanMzIndex(int, boolean)}) and falls back to
+   * {@link #findBasePeak(Scan, Range)} for each scan.
+   *
+   * @param dataFile    the data file
+   * @param msLevel     MS level of all scans
+   * @param scanNumbers scans to search
+   * @param mzRange     mz range to search in
+   * @param createIndex create the m/z index, if it does not exist yet
+   * @return the base peaks in the order of the scan numbers, null if a scan has no data point in
+   *         the m/z range
+   */
+  public static @Nonnull DataPoint[] findBasePeaks(@Nonnull RawDataFile dataFile, int msLevel,
+      @Nonnull int[] scanNumbers, @Nonnull Range<Double> mzRange, boolean createIndex) {
+    if (dataFile instanceof RawDataFileImpl) {
+      ScanMzIndex index = ((RawDataFileImpl) dataFile).getScanMzIndex(msLevel, createIndex);
+      if (index != null) {
+        return index.findBasePeaks(mzRange, scanNumbers);
+      }
+    }
+
+    DataPoint basePeaks[] = new DataPoint[scanNumbers.length];
+    for (int i = 0; i < scanNumbers.length; i++) {
+      basePeaks[i] = findBasePeak(dataFile.getScan(scanNumbers[i]), mzRange);
+    }
+    return basePeaks;
+  }
+
   /**
    * Calculate the total ion count of a scan within a given mass range.
    * 